@@ -0,0 +1,83 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.CompactExampleOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.parse.MappedArrayFileParser;
+
+
+/**
+ * Measures {@link ArrayFileParser#next()}, which reads the examples of every training round after
+ * the first, over an example file in each of the formats it can read: the original format through
+ * a stream, the original format memory mapped by {@link MappedArrayFileParser}, and the format
+ * written by {@link CompactExampleOutputStream}.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ArrayFileParserBenchmark {
+    /** How the example file is written and read. */
+    @Param({"stream", "mapped", "compact"})
+    public String format;
+
+    /** The parser. */
+    private ArrayFileParser parser;
+
+
+    /** Writes an example file of synthetic examples and opens it. */
+    @Setup
+    public void setup() throws IOException {
+        Object[][] arrays =
+                SyntheticData.exampleArrays(SyntheticData.network(), SyntheticData.examples(
+                        20000, 50000, 20, 5, SyntheticData.seed));
+        File file = SyntheticData.exampleFile(arrays, format.equals("compact"));
+        parser =
+                format.equals("mapped") ? new MappedArrayFileParser(file.getPath())
+                        : new ArrayFileParser(file.getPath());
+    }
+
+
+    /** Closes the parser. */
+    @TearDown
+    public void tearDown() {
+        parser.close();
+    }
+
+
+    /** Parses the next example, starting over at the end of the file. */
+    @Benchmark
+    public Object next() {
+        Object result = parser.next();
+        if (result == null) {
+            parser.reset();
+            result = parser.next();
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+
+
+/**
+ * Measures {@link Learner#getExampleArray(Object,boolean)}, which runs a learner's feature
+ * extractor and labeler on an example and indexes the results in its lexicons, both during
+ * training and when only the features are needed.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ExampleArrayBenchmark {
+    /** The number of words in each example. */
+    @Param({"20", "200"})
+    public int words;
+
+    /** The learner. */
+    private Learner learner;
+    /** The examples. */
+    private SyntheticData.Example[] examples;
+    /** The position of the next example. */
+    private int next;
+
+
+    /** Creates a learner whose lexicons already hold every feature and label. */
+    @Setup
+    public void setup() {
+        examples = SyntheticData.examples(10000, 50000, words, 5, SyntheticData.seed);
+        learner = SyntheticData.network();
+        SyntheticData.exampleArrays(learner, examples);
+    }
+
+
+    /** Converts the next example, including its labels. */
+    @Benchmark
+    public Object[] training() {
+        int i = next;
+        next = i + 1 == examples.length ? 0 : i + 1;
+        return learner.getExampleArray(examples[i], true);
+    }
+
+
+    /** Converts the next example's features only. */
+    @Benchmark
+    public Object[] testing() {
+        int i = next;
+        next = i + 1 == examples.length ? 0 : i + 1;
+        return learner.getExampleArray(examples[i], false);
+    }
+}
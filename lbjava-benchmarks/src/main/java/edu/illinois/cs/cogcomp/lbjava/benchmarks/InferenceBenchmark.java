@@ -0,0 +1,102 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.infer.BalasHook;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithValue;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+
+/**
+ * Measures ILP inference with the {@link BalasHook} solver over a chain of examples labeled by a
+ * trained network, subject to the constraints that no two adjacent examples both take the first
+ * label and that at least one example takes the second. Each invocation builds the constraints
+ * and the inference from scratch, since an {@link ILPInference} only solves its problem once.
+ * With <code>compiled</code> set, the constraints are compiled straight into ILP constraints
+ * rather than propositionalized first; see {@link ILPInference#setCompileConstraints(boolean)}.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InferenceBenchmark {
+    /** The number of examples in the chain. */
+    @Param({"4", "8"})
+    public int length;
+
+    /** Whether the constraints are compiled straight into ILP constraints. */
+    @Param({"false", "true"})
+    public boolean compiled;
+
+    /** The trained network. */
+    private SparseNetworkLearner network;
+    /** The chain. */
+    private SyntheticData.Example[] chain;
+
+
+    /** Trains the network on synthetic examples and picks the chain. */
+    @Setup
+    public void setup() {
+        SyntheticData.Example[] examples =
+                SyntheticData.examples(5000, 10000, 20, 3, SyntheticData.seed);
+        network = SyntheticData.network();
+        SyntheticData.train(network, SyntheticData.exampleArrays(network, examples), 3);
+        chain = new SyntheticData.Example[length];
+        System.arraycopy(examples, 0, chain, 0, length);
+    }
+
+
+    /** Solves the constrained problem and returns the first example's label. */
+    @Benchmark
+    public String infer() throws Exception {
+        FirstOrderVariable[] x = new FirstOrderVariable[length];
+        for (int i = 0; i < length; ++i)
+            x[i] = new FirstOrderVariable(network, chain[i]);
+
+        FirstOrderConstraint some = new FirstOrderEqualityWithValue(true, x[0], "l1");
+        FirstOrderConstraint constraint = null;
+        for (int i = 1; i < length; ++i) {
+            some =
+                    new FirstOrderDisjunction(some,
+                            new FirstOrderEqualityWithValue(true, x[i], "l1"));
+            FirstOrderConstraint adjacent =
+                    new FirstOrderNegation(new FirstOrderConjunction(
+                            new FirstOrderEqualityWithValue(true, x[i - 1], "l0"),
+                            new FirstOrderEqualityWithValue(true, x[i], "l0")));
+            constraint =
+                    constraint == null ? adjacent : new FirstOrderConjunction(constraint, adjacent);
+        }
+
+        ILPInference inference = new ILPInference(chain, new BalasHook());
+        inference.setCompileConstraints(compiled);
+        inference.addConstraint(new FirstOrderConjunction(constraint, some));
+        return inference.valueOf(network, chain[0]);
+    }
+}
@@ -0,0 +1,95 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.NeuralNetLearner;
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.Layer;
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.LayerKernel;
+
+
+/**
+ * Measures {@link Layer#activate(float[])} and
+ * {@link Layer#train(float[],float[],float[],float,float)} with each {@link LayerKernel}. The
+ * default sizes are those of the two layers of a {@link NeuralNetLearner} with its default
+ * {@link NeuralNetLearner.Parameters#hiddenCount hiddenCount} of 100 and
+ * {@link NeuralNetLearner.Parameters#outputCount outputCount} of 1: the hidden layer, with as many
+ * inputs as there are features, and the output layer.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LayerKernelBenchmark {
+    /** The kernel. */
+    @Param({"scalar", "blocked"})
+    public String kernel;
+
+    /** The numbers of inputs and outputs of the layer. */
+    @Param({"1000x100", "10000x100", "100x1"})
+    public String size;
+
+    /** The layer. */
+    private Layer layer;
+    /** The inputs. */
+    private float[] inputs;
+    /** The outputs, as computed from the inputs. */
+    private float[] outputs;
+    /** The errors of the outputs. */
+    private float[] errors;
+
+
+    /** Creates the layer and random inputs and errors. */
+    @Setup
+    public void setup() {
+        int x = size.indexOf('x');
+        int in = Integer.parseInt(size.substring(0, x));
+        int out = Integer.parseInt(size.substring(x + 1));
+        Random random = new Random(SyntheticData.seed);
+
+        layer = new Layer(in, out, random);
+        layer.setKernel(LayerKernel.forName(kernel));
+        inputs = new float[in];
+        for (int i = 0; i < in; ++i)
+            inputs[i] = random.nextFloat();
+        outputs = layer.activate(inputs).clone();
+        errors = new float[out];
+        for (int i = 0; i < out; ++i)
+            errors[i] = random.nextFloat() - 0.5f;
+    }
+
+
+    /** Activates the layer. */
+    @Benchmark
+    public float[] activate() {
+        return layer.activate(inputs);
+    }
+
+
+    /** Backpropagates the errors and updates the weights. */
+    @Benchmark
+    public float[] train() {
+        return layer.train(errors, inputs, outputs, 0.01f, 0.5f);
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+
+
+/**
+ * Measures {@link Lexicon#lookup(Feature)} on features the lexicon has seen, which is how every
+ * feature of every example is indexed, and on features it hasn't, which is common when a trained
+ * classifier is applied to new data.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class LexiconBenchmark {
+    /** The number of distinct words in the examples. */
+    @Param({"1000", "100000"})
+    public int vocabulary;
+
+    /** The lexicon. */
+    private Lexicon lexicon;
+    /** Features in the lexicon, in the order they appear in the examples. */
+    private Feature[] seen;
+    /** Features not in the lexicon. */
+    private Feature[] unseen;
+    /** The position of the next feature to look up. */
+    private int next;
+
+
+    /** Builds a lexicon from the features of synthetic examples. */
+    @Setup
+    public void setup() {
+        SyntheticData.Example[] examples =
+                SyntheticData.examples(10000, vocabulary, 20, 5, SyntheticData.seed);
+        SyntheticData.WordFeatures extractor = new SyntheticData.WordFeatures();
+        seen = new Feature[examples.length * 20];
+        unseen = new Feature[seen.length];
+        lexicon = new Lexicon();
+
+        int n = 0;
+        for (int i = 0; i < examples.length; ++i) {
+            FeatureVector v = extractor.classify(examples[i]);
+            for (int j = 0; j < v.featuresSize(); ++j, ++n) {
+                seen[n] = v.getFeature(j);
+                lexicon.lookup(seen[n], true);
+                unseen[n] =
+                        new DiscretePrimitiveStringFeature(SyntheticData.containingPackage,
+                                "Unseen", "", examples[i].words[j]);
+            }
+        }
+    }
+
+
+    /** Looks up the next feature the lexicon has seen. */
+    @Benchmark
+    public int lookup() {
+        int i = next;
+        next = i + 1 == seen.length ? 0 : i + 1;
+        return lexicon.lookup(seen[i]);
+    }
+
+
+    /** Looks up the next feature the lexicon hasn't seen. */
+    @Benchmark
+    public int lookupUnseen() {
+        int i = next;
+        next = i + 1 == unseen.length ? 0 : i + 1;
+        return lexicon.lookup(unseen[i]);
+    }
+}
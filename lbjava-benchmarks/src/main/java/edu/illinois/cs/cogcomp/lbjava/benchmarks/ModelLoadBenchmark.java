@@ -0,0 +1,66 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+
+/**
+ * Measures loading a trained model with {@link Learner#readLearner(String)}, which every
+ * application of a compiled classifier does before it classifies anything.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ModelLoadBenchmark {
+    /** The number of labels, and so of weight vectors in the model. */
+    @Param({"5", "50"})
+    public int labels;
+
+    /** The model file. */
+    private String modelFile;
+
+
+    /** Trains a network on synthetic examples and writes its model file. */
+    @Setup
+    public void setup() throws IOException {
+        SparseNetworkLearner network = SyntheticData.network();
+        SyntheticData.train(network, SyntheticData.exampleArrays(network, SyntheticData.examples(
+                10000, 50000, 20, labels, SyntheticData.seed)), 3);
+        File file = SyntheticData.temporaryFile(".lc");
+        network.writeModel(file.getPath());
+        modelFile = file.getPath();
+    }
+
+
+    /** Reads the model. */
+    @Benchmark
+    public Learner readLearner() {
+        return Learner.readLearner(modelFile);
+    }
+}
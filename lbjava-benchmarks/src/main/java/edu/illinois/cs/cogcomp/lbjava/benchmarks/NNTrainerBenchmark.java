@@ -0,0 +1,113 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.Layer;
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.MiniBatchNNTrainer;
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.NNTrainingInterface;
+import edu.illinois.cs.cogcomp.lbjava.neuralnet.SimpleNNTrainer;
+
+
+/**
+ * Measures one epoch of {@link NNTrainingInterface#train(float[][],float[][],int)} over dense
+ * synthetic examples, comparing {@link SimpleNNTrainer}, which updates the weights after every
+ * example, with {@link MiniBatchNNTrainer}, which splits batches of {@link #batch} examples among
+ * as many threads as there are processors.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NNTrainerBenchmark {
+    /** The number of inputs. */
+    public static final int inputs = 100;
+    /** The number of outputs. */
+    public static final int outputs = 2;
+    /** The number of examples in an epoch. */
+    public static final int examples = 2000;
+
+    /** The trainer. */
+    @Param({"simple", "minibatch"})
+    public String trainer;
+
+    /** The number of hidden units. */
+    @Param({"16", "100", "256"})
+    public int hidden;
+
+    /** The number of examples per batch of the mini-batch trainer. */
+    @Param({"32"})
+    public int batch;
+
+    /** The examples' inputs. */
+    private float[][] in;
+    /** The examples' labels. */
+    private float[][] out;
+    /** The trainer being measured. */
+    private NNTrainingInterface nn;
+
+
+    /**
+     * Generates examples labeled by a linear function of their inputs, and creates the network and
+     * trainer.
+     **/
+    @Setup
+    public void setup() {
+        Random random = new Random(SyntheticData.seed);
+        in = new float[examples][inputs];
+        out = new float[examples][outputs];
+        for (int e = 0; e < examples; ++e) {
+            float sum = 0;
+            for (int i = 0; i < inputs; ++i) {
+                in[e][i] = random.nextFloat();
+                sum += i % 2 == 0 ? in[e][i] : -in[e][i];
+            }
+            out[e][sum > 0 ? 1 : 0] = 1;
+        }
+
+        Layer[] layers =
+                {new Layer(inputs, hidden, new Random(1)), new Layer(hidden, outputs, new Random(2))};
+        nn =
+                trainer.equals("simple") ? new SimpleNNTrainer(layers, .3f, .6f)
+                        : new MiniBatchNNTrainer(layers, .3f, .6f, batch, Runtime.getRuntime()
+                                .availableProcessors());
+    }
+
+
+    /** Stops the mini-batch trainer's threads. */
+    @TearDown
+    public void tearDown() {
+        if (nn instanceof MiniBatchNNTrainer)
+            ((MiniBatchNNTrainer) nn).shutdown();
+    }
+
+
+    /** Trains for one epoch. */
+    @Benchmark
+    public NNTrainingInterface epoch() {
+        nn.train(in, out, 1);
+        return nn;
+    }
+}
@@ -0,0 +1,80 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+
+/**
+ * Measures {@link SparseNetworkLearner#scores(int[],double[])}, which scores an example against
+ * every label's linear threshold unit, and {@link SparseNetworkLearner#scores(Object)}, which also
+ * extracts the example's features.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class NetworkBenchmark {
+    /** The number of labels. */
+    @Param({"5", "50"})
+    public int labels;
+
+    /** The trained network. */
+    private SparseNetworkLearner network;
+    /** The examples. */
+    private SyntheticData.Example[] examples;
+    /** The examples' arrays. */
+    private Object[][] arrays;
+    /** The position of the next example. */
+    private int next;
+
+
+    /** Trains the network on synthetic examples. */
+    @Setup
+    public void setup() {
+        examples = SyntheticData.examples(10000, 50000, 20, labels, SyntheticData.seed);
+        network = SyntheticData.network();
+        arrays = SyntheticData.exampleArrays(network, examples);
+        SyntheticData.train(network, arrays, 3);
+    }
+
+
+    /** Scores the next example's arrays. */
+    @Benchmark
+    public ScoreSet scores() {
+        int i = next;
+        next = i + 1 == arrays.length ? 0 : i + 1;
+        return network.scores((int[]) arrays[i][0], (double[]) arrays[i][1]);
+    }
+
+
+    /** Extracts and scores the next example. */
+    @Benchmark
+    public ScoreSet scoresObject() {
+        int i = next;
+        next = i + 1 == examples.length ? 0 : i + 1;
+        return network.scores(examples[i]);
+    }
+}
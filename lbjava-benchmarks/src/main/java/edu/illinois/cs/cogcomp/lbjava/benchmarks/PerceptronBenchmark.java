@@ -0,0 +1,99 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+
+/**
+ * Measures {@link SparseAveragedPerceptron#learn(int[],double[],int[],double[])} and
+ * {@link SparseAveragedPerceptron#score(int[],double[])} on binary examples. The perceptron is
+ * trained for a few rounds before it is measured, so its weight vectors have reached the size they
+ * would have in the middle of training.
+ **/
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class PerceptronBenchmark {
+    /** The number of distinct words in the examples. */
+    @Param({"1000", "100000"})
+    public int vocabulary;
+
+    /** The perceptron. */
+    private SparseAveragedPerceptron perceptron;
+    /** The feature indexes of the examples. */
+    private int[][] features;
+    /** The feature values of the examples. */
+    private double[][] values;
+    /** The binary labels of the examples. */
+    private int[][] labels;
+    /** The label values of the examples. */
+    private double[] labelValues = {1};
+    /** The position of the next example. */
+    private int next;
+
+
+    /** Indexes synthetic examples and trains the perceptron on them. */
+    @Setup
+    public void setup() {
+        SparseNetworkLearner network = SyntheticData.network();
+        Object[][] arrays =
+                SyntheticData.exampleArrays(network, SyntheticData.examples(10000, vocabulary,
+                        20, 2, SyntheticData.seed));
+
+        features = new int[arrays.length][];
+        values = new double[arrays.length][];
+        labels = new int[arrays.length][];
+        for (int i = 0; i < arrays.length; ++i) {
+            features[i] = (int[]) arrays[i][0];
+            values[i] = (double[]) arrays[i][1];
+            labels[i] = new int[] {((int[]) arrays[i][2])[0]};
+        }
+
+        perceptron = new SparseAveragedPerceptron(0.1, 0, 1);
+        for (int r = 0; r < 3; ++r)
+            for (int i = 0; i < features.length; ++i)
+                perceptron.learn(features[i], values[i], labels[i], labelValues);
+    }
+
+
+    /** Trains the perceptron on the next example. */
+    @Benchmark
+    public void learn() {
+        int i = next;
+        next = i + 1 == features.length ? 0 : i + 1;
+        perceptron.learn(features[i], values[i], labels[i], labelValues);
+    }
+
+
+    /** Scores the next example. */
+    @Benchmark
+    public double score() {
+        int i = next;
+        next = i + 1 == features.length ? 0 : i + 1;
+        return perceptron.score(features[i], values[i]);
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Random;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.parse.CompactExampleOutputStream;
+
+
+/**
+ * Generates the data the benchmarks run on, so that their results can be reproduced without any
+ * external dataset. Examples are bags of words drawn from a vocabulary with a skewed distribution,
+ * roughly like the words of natural language text, and each example's label is a deterministic
+ * function of its words so that learners have something to learn. Every generator takes a seed,
+ * and the same seed always produces the same data.
+ **/
+public class SyntheticData {
+    /** The seed used by the benchmarks. */
+    public static final long seed = 0x4C424A61L;
+    /** The package of the classifiers defined here. */
+    public static final String containingPackage = "edu.illinois.cs.cogcomp.lbjava.benchmarks";
+
+
+    /** A synthetic example: a bag of words and a label. */
+    public static class Example {
+        /** The example's words. */
+        public final String[] words;
+        /** The example's label. */
+        public final String label;
+
+
+        /**
+         * Initializing constructor.
+         *
+         * @param w The example's words.
+         * @param l The example's label.
+         **/
+        public Example(String[] w, String l) {
+            words = w;
+            label = l;
+        }
+    }
+
+
+    /** Produces one discrete feature per word of an {@link Example}. */
+    public static class WordFeatures extends Classifier {
+        /** Default constructor. */
+        public WordFeatures() {
+            containingPackage = SyntheticData.containingPackage;
+            name = "WordFeatures";
+        }
+
+        public String getOutputType() {
+            return "discrete%";
+        }
+
+        public FeatureVector classify(Object o) {
+            String[] words = ((Example) o).words;
+            FeatureVector result = new FeatureVector();
+            for (int i = 0; i < words.length; ++i)
+                result.addFeature(new DiscretePrimitiveStringFeature(containingPackage, name, "",
+                        words[i]));
+            return result;
+        }
+    }
+
+
+    /** Produces the label of an {@link Example}. */
+    public static class Label extends Classifier {
+        /** Default constructor. */
+        public Label() {
+            containingPackage = SyntheticData.containingPackage;
+            name = "Label";
+        }
+
+        public String getOutputType() {
+            return "discrete";
+        }
+
+        public FeatureVector classify(Object o) {
+            return new FeatureVector(new DiscretePrimitiveStringFeature(containingPackage, name,
+                    "", ((Example) o).label));
+        }
+    }
+
+
+    /**
+     * Generates examples. Word <i>i</i> of the vocabulary is drawn with probability roughly
+     * proportional to <i>1 / (i + 1)</i>, and an example's label is determined by the rarest word
+     * it contains.
+     *
+     * @param n The number of examples.
+     * @param vocabulary The number of distinct words.
+     * @param words The number of words in each example.
+     * @param labels The number of distinct labels.
+     * @param seed The seed of the random number generator.
+     * @return The examples.
+     **/
+    public static Example[] examples(int n, int vocabulary, int words, int labels, long seed) {
+        Random random = new Random(seed);
+        Example[] result = new Example[n];
+
+        for (int i = 0; i < n; ++i) {
+            String[] w = new String[words];
+            int rarest = 0;
+            for (int j = 0; j < words; ++j) {
+                int word = (int) Math.pow(vocabulary + 1, random.nextDouble()) - 1;
+                rarest = Math.max(rarest, word);
+                w[j] = "w" + word;
+            }
+            result[i] = new Example(w, "l" + rarest % labels);
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Creates a multi-class learner over the features and labels of {@link Example}s, with a
+     * {@link SparseAveragedPerceptron} for each label.
+     *
+     * @return The new learner.
+     **/
+    public static SparseNetworkLearner network() {
+        SparseNetworkLearner result =
+                new SparseNetworkLearner(containingPackage + ".Network",
+                        new SparseAveragedPerceptron());
+        result.setExtractor(new WordFeatures());
+        result.setLabeler(new Label());
+        return result;
+    }
+
+
+    /**
+     * Converts examples to the arrays of feature and label indexes that learners train on,
+     * populating the learner's lexicons along the way.
+     *
+     * @param learner The learner whose lexicons index the features and labels.
+     * @param examples The examples.
+     * @return The example arrays.
+     **/
+    public static Object[][] exampleArrays(Learner learner, Example[] examples) {
+        Object[][] result = new Object[examples.length][];
+        for (int i = 0; i < examples.length; ++i)
+            result[i] = learner.getExampleArray(examples[i]);
+        return result;
+    }
+
+
+    /**
+     * Trains the given learner on the given example arrays.
+     *
+     * @param learner The learner.
+     * @param arrays The example arrays produced by {@link #exampleArrays(Learner,Example[])}.
+     * @param rounds The number of passes over the examples.
+     **/
+    public static void train(Learner learner, Object[][] arrays, int rounds) {
+        for (int r = 0; r < rounds; ++r)
+            for (int i = 0; i < arrays.length; ++i)
+                learner.learn((int[]) arrays[i][0], (double[]) arrays[i][1], (int[]) arrays[i][2],
+                        (double[]) arrays[i][3]);
+        learner.doneLearning();
+    }
+
+
+    /**
+     * Writes example arrays to a temporary example file of the kind produced by
+     * {@link BatchTrainer#preExtract(String)}. The file is deleted when the JVM exits.
+     *
+     * @param arrays The example arrays.
+     * @param compact Whether to write the format of {@link CompactExampleOutputStream}.
+     * @return The example file.
+     **/
+    public static File exampleFile(Object[][] arrays, boolean compact) throws IOException {
+        File result = temporaryFile(".ex");
+        ExceptionlessOutputStream out =
+                ExceptionlessOutputStream.openBufferedStream(result.toURI().toURL());
+        if (compact)
+            out = new ExceptionlessOutputStream(new CompactExampleOutputStream(out));
+        for (int i = 0; i < arrays.length; ++i)
+            BatchTrainer.writeExample(out, (int[]) arrays[i][0], (double[]) arrays[i][1],
+                    (int[]) arrays[i][2], (double[]) arrays[i][3]);
+        out.close();
+
+        return result;
+    }
+
+
+    /**
+     * Creates a temporary file name that is deleted when the JVM exits.
+     *
+     * @param suffix The file name's suffix.
+     * @return The file.
+     **/
+    public static File temporaryFile(String suffix) throws IOException {
+        File result = File.createTempFile("lbjava-benchmark", suffix);
+        result.deleteOnExit();
+        return result;
+    }
+}
@@ -34,6 +34,11 @@ public class ClassifierAssignment extends Declaration {
      * (&oslash;) The expression representing the field to cache this classifier's result in.
      **/
     public Name cacheIn;
+    /**
+     * The maximum number of values cached when <code>cachedinmap</code> is given a size, or 0 if
+     * the cache is unbounded.
+     **/
+    public int cacheSize;
     /**
      * Whether the classifier will have a single example feature vector cache.
      **/
@@ -49,15 +54,17 @@ public class ClassifierAssignment extends Declaration {
      * @param a The input specification of the classifier.
      * @param e The expression representing the classifier.
      * @param ca The expression representing the field to cache this classifier's result in.
+     * @param cs The maximum number of values cached in a map, or 0 for no limit.
      * @param sc Whether or not to make a single example cache.
      **/
     public ClassifierAssignment(String co, ClassifierReturnType t, Name n, Argument a,
-            ClassifierExpression e, Name ca, boolean sc) {
+            ClassifierExpression e, Name ca, int cs, boolean sc) {
         super(co, n, t.line, t.byteOffset);
         returnType = t;
         argument = a;
         expression = e;
         cacheIn = ca;
+        cacheSize = cs;
         singleExampleCache = sc;
     }
 
@@ -71,7 +78,7 @@ public class ClassifierAssignment extends Declaration {
      **/
     public ClassifierAssignment(ClassifierReturnType t, TokenValue i, Argument a,
             ClassifierExpression e) {
-        this(null, t, new Name(i), a, e, null, false);
+        this(null, t, new Name(i), a, e, null, 0, false);
     }
 
     /**
@@ -85,7 +92,7 @@ public class ClassifierAssignment extends Declaration {
      **/
     public ClassifierAssignment(ClassifierReturnType t, TokenValue i, Argument a,
             ClassifierExpression e, Name c) {
-        this(null, t, new Name(i), a, e, c, false);
+        this(null, t, new Name(i), a, e, c, 0, false);
     }
 
     /**
@@ -99,7 +106,7 @@ public class ClassifierAssignment extends Declaration {
      **/
     public ClassifierAssignment(ClassifierReturnType t, TokenValue i, Argument a,
             ClassifierExpression e, boolean sc) {
-        this(null, t, new Name(i), a, e, null, sc);
+        this(null, t, new Name(i), a, e, null, 0, sc);
     }
 
     /**
@@ -114,7 +121,40 @@ public class ClassifierAssignment extends Declaration {
      **/
     public ClassifierAssignment(ClassifierReturnType t, TokenValue i, Argument a,
             ClassifierExpression e, Name c, boolean sc) {
-        this(null, t, new Name(i), a, e, c, sc);
+        this(null, t, new Name(i), a, e, c, 0, sc);
+    }
+
+    /**
+     * Parser's constructor for classifiers cached in a map of bounded size. Line and byte offset
+     * information is taken from the type.
+     *
+     * @param t The return type of the classifier.
+     * @param i The identifier token representing the classifier's name.
+     * @param a The input specification of the classifier.
+     * @param e The expression representing the classifier.
+     * @param s The literal token representing the maximum number of values cached.
+     * @param sc Whether or not to make a single example cache.
+     **/
+    public ClassifierAssignment(ClassifierReturnType t, TokenValue i, Argument a,
+            ClassifierExpression e, TokenValue s, boolean sc) {
+        this(null, t, new Name(i), a, e, new Name(mapCache), parseCacheSize(s), sc);
+    }
+
+
+    /**
+     * Parses the size given to <code>cachedinmap</code>.
+     *
+     * @param s The literal token representing the size.
+     * @return The size, or -1 if the token doesn't represent a positive integer. (A size of 0
+     *         means no limit, and is only given when no size was written.)
+     **/
+    private static int parseCacheSize(TokenValue s) {
+        try {
+            int result = s.toInt();
+            return result > 0 ? result : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
     }
 
 
@@ -155,7 +195,7 @@ public class ClassifierAssignment extends Declaration {
         return new ClassifierAssignment(comment, (ClassifierReturnType) returnType.clone(),
                 (Name) name.clone(), (Argument) argument.clone(),
                 (ClassifierExpression) expression.clone(), (Name) (cacheIn == null ? null
-                        : cacheIn.clone()), singleExampleCache);
+                        : cacheIn.clone()), cacheSize, singleExampleCache);
     }
 
 
@@ -189,8 +229,11 @@ public class ClassifierAssignment extends Declaration {
         if (cacheIn != null) {
             buffer.append("cachedin");
 
-            if (cacheIn.toString().equals(ClassifierAssignment.mapCache))
+            if (cacheIn.toString().equals(ClassifierAssignment.mapCache)) {
                 buffer.append("map");
+                if (cacheSize != 0)
+                    buffer.append("(" + cacheSize + ")");
+            }
             else {
                 buffer.append(" ");
                 cacheIn.write(buffer);
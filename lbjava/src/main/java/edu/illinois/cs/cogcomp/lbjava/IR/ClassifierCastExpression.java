@@ -36,12 +36,13 @@ public class ClassifierCastExpression extends ClassifierExpression {
 
 
     /**
-     * Sets the <code>cacheIn</code> member variable to the argument.
+     * Sets the <code>cacheIn</code> and <code>cacheSize</code> member variables to the arguments.
      *
      * @param c The new expression for the <code>cacheIn</code> member variable.
+     * @param s The new value for the <code>cacheSize</code> member variable.
      **/
-    public void setCacheIn(Name c) {
-        expression.setCacheIn(c);
+    public void setCacheIn(Name c, int s) {
+        expression.setCacheIn(c, s);
     }
 
 
@@ -34,6 +34,11 @@ public abstract class ClassifierExpression extends ASTNode implements CodeGenera
      * (&oslash;) The expression representing the field to cache this classifier's result in.
      **/
     public Name cacheIn;
+    /**
+     * The maximum number of values cached when {@link #cacheIn} names a map, or 0 if the cache is
+     * unbounded.
+     **/
+    public int cacheSize;
     /**
      * Whether the classifier will have a single example feature vector cache.
      **/
@@ -75,7 +80,19 @@ public abstract class ClassifierExpression extends ASTNode implements CodeGenera
      * @param c The new expression for the <code>cacheIn</code> member variable.
      **/
     public void setCacheIn(Name c) {
+        setCacheIn(c, 0);
+    }
+
+
+    /**
+     * Sets the <code>cacheIn</code> and <code>cacheSize</code> member variables to the arguments.
+     *
+     * @param c The new expression for the <code>cacheIn</code> member variable.
+     * @param s The new value for the <code>cacheSize</code> member variable.
+     **/
+    public void setCacheIn(Name c, int s) {
         cacheIn = c;
+        cacheSize = s;
     }
 
 
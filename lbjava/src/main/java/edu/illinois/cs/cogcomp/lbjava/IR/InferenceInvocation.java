@@ -134,9 +134,11 @@ public class InferenceInvocation extends ClassifierExpression {
         if (cacheIn != null) {
             buffer.append("cachedin");
 
-            if (cacheIn.toString().equals(ClassifierAssignment.mapCache))
+            if (cacheIn.toString().equals(ClassifierAssignment.mapCache)) {
                 buffer.append("map");
-            else {
+                if (cacheSize != 0)
+                    buffer.append("(" + cacheSize + ")");
+            } else {
                 buffer.append(" ");
                 cacheIn.write(buffer);
             }
@@ -62,14 +62,14 @@ import edu.illinois.cs.cogcomp.lbjava.frontend.sym;
  * while compiling. Don't forget to put quotes around <code>&lt;a&gt;</code> if there is more than
  * one such argument or if the argument has a parameter.</td>
  * </tr>
- * <!-- Doesn't work well because of interned features.
  * <tr>
  * <td valign=top><code>-p</code></td>
  * <td>
  * Train in parallel: When this option is enabled, learners that don't depend on each other are
- * trained concurrently.</td>
+ * trained concurrently, at most one per available processor at a time. Any parsers and hard-coded
+ * classifiers shared by several learners must then be safe to call from several threads at
+ * once.</td>
  * </tr>
- * -->
  * <tr>
  * <td valign=top nowrap><code>-s</code></td>
  * <td>Print the names of all declarations and quit.</td>
@@ -547,7 +547,7 @@ public class Main {
                         + "    -c               Compile to Java only\n"
                         + "    -d <dir>         Write generated class files to <dir>\n"
                         + "    -j <a>           Send the specified arguments to javac\n"
-                        // + "    -p               Train in parallel\n"
+                        + "    -p               Train in parallel\n"
                         + "    -s               Print the names of all declarations and quit\n"
                         + "    -t <n>           Enables default progress output during training\n"
                         + "    -v               Print the version number and quit\n"
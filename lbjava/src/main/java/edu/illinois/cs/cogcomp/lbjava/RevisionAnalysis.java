@@ -478,6 +478,7 @@ public class RevisionAnalysis extends Pass {
                 (oldLCE.comment == null ? lce.comment != null : !oldLCE.comment.equals(lce.comment))
                         || (oldLCE.cacheIn == null ? lce.cacheIn != null : !oldLCE.cacheIn
                                 .equals(lce.cacheIn))
+                        || oldLCE.cacheSize != lce.cacheSize
                         || oldLCE.singleExampleCache != lce.singleExampleCache
                         || (oldLCE.evaluation == null ? lce.evaluation != null : !oldLCE.evaluation
                                 .equals(lce.evaluation));
@@ -196,7 +196,9 @@ import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
  * <td align=right>A18</td>
  * <td>
  * The {@link ClassifierExpression#cacheIn} member variable is set when the containing
- * {@link ClassifierAssignment} had a <code>cached</code> or <code>cachedin</code> modifier.</td>
+ * {@link ClassifierAssignment} had a <code>cached</code> or <code>cachedin</code> modifier, along
+ * with {@link ClassifierExpression#cacheSize} when a size was given to
+ * <code>cachedinmap</code>.</td>
  * </tr>
  * <tr valign=top>
  * <td align=right>A19</td>
@@ -582,6 +584,12 @@ import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
  * There can be no more than one <code>encoding</code> clause in a
  * {@link LearningClassifierExpression}.</td>
  * </tr>
+ * <tr valign=top>
+ * <td align=right>B63</td>
+ * <td>
+ * The size given in parentheses after the <code>cachedinmap</code> keyword must be a positive
+ * integer.</td>
+ * </tr>
  * </table>
  *
  * @see RevisionAnalysis
@@ -985,7 +993,12 @@ public class SemanticAnalysis extends Pass {
                 reportError(ca.line, "Conjunctive classifiers' outputs cannot be cached (in a "
                         + "member variable or otherwise).");
 
-            ca.expression.setCacheIn(ca.cacheIn); // A18
+            // B63
+            if (ca.cacheSize < 0)
+                reportError(ca.line, "The size of a cachedinmap cache must be a positive "
+                        + "integer.");
+
+            ca.expression.setCacheIn(ca.cacheIn, ca.cacheSize); // A18
         }
 
         currentRT = (ClassifierReturnType) ca.returnType.clone(); // A4
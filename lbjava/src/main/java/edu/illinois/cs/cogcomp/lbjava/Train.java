@@ -22,6 +22,8 @@ import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.Map;
 import java.util.TreeSet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import edu.illinois.cs.cogcomp.lbjava.IR.AST;
 import edu.illinois.cs.cogcomp.lbjava.IR.ClassifierAssignment;
@@ -33,6 +35,7 @@ import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression;
 import edu.illinois.cs.cogcomp.lbjava.IR.ParameterSet;
 import edu.illinois.cs.cogcomp.lbjava.learn.Accuracy;
 import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.ConcurrentLexicon;
 import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
 import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
 import edu.illinois.cs.cogcomp.lbjava.learn.TestingMetric;
@@ -161,6 +164,16 @@ public class Train extends Pass {
      * the names of the learners that the learner named by the key depends on.
      **/
     protected HashMap learnerDependencies;
+    /**
+     * Executes the training threads when {@link Main#concurrentTraining} is enabled, running at
+     * most one per available processor at a time.
+     **/
+    protected ExecutorService pool;
+    /**
+     * The number of training threads submitted to {@link #pool} that haven't finished yet. Guarded
+     * by {@link #pool}.
+     **/
+    protected int running;
 
 
     // Constructor.
@@ -253,9 +266,11 @@ public class Train extends Pass {
             }
 
             if (thread != null) {
-                thread.start();
+                if (Main.concurrentTraining)
+                    submit(thread);
+                else {
+                    thread.start();
 
-                if (!Main.concurrentTraining) {
                     try {
                         thread.join();
                     } catch (InterruptedException e) {
@@ -269,6 +284,54 @@ public class Train extends Pass {
     }
 
 
+    /**
+     * <!-- submit(TrainingThread) --> Runs the given training thread's code on {@link #pool}. The
+     * thread object itself is never started; it only serves as the task.
+     *
+     * @param thread The training thread.
+     **/
+    protected void submit(final TrainingThread thread) {
+        synchronized (pool) {
+            ++running;
+        }
+
+        pool.execute(new Runnable() {
+            public void run() {
+                try {
+                    thread.run();
+                } finally {
+                    synchronized (pool) {
+                        if (--running == 0)
+                            pool.notifyAll();
+                    }
+                }
+            }
+        });
+    }
+
+
+    /**
+     * <!-- awaitTraining() --> Waits until every training thread submitted to {@link #pool} has
+     * finished, including those submitted by other training threads as they finish, and then shuts
+     * the pool down. A learner whose dependencies fail to train is never submitted.
+     **/
+    protected void awaitTraining() {
+        synchronized (pool) {
+            while (running > 0) {
+                try {
+                    pool.wait();
+                } catch (InterruptedException e) {
+                    System.err.println("LBJava ERROR: Training has been interrupted.");
+                    fatalError = true;
+                    break;
+                }
+            }
+        }
+
+        pool.shutdown();
+    }
+
+
     /**
      * <!-- run(AST) --> Runs this pass on all nodes of the indicated type.
      *
@@ -294,15 +357,22 @@ public class Train extends Pass {
         runOnChildren(ast);
 
         fillLearnerDependorsDAG();
-        executeReadyThreads(null);
 
-        for (int i = 0; i < threads.length; ++i) {
-            try {
-                threads[i].join();
-            } catch (InterruptedException e) {
-                System.err.println("LBJava ERROR: Training of " + threads[i].getName()
-                        + " has been interrupted.");
-                fatalError = true;
+        if (Main.concurrentTraining) {
+            pool = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+            executeReadyThreads(null);
+            awaitTraining();
+        } else {
+            executeReadyThreads(null);
+
+            for (int i = 0; i < threads.length; ++i) {
+                try {
+                    threads[i].join();
+                } catch (InterruptedException e) {
+                    System.err.println("LBJava ERROR: Training of " + threads[i].getName()
+                            + " has been interrupted.");
+                    fatalError = true;
+                }
             }
         }
 
@@ -389,7 +459,9 @@ public class Train extends Pass {
 
     /**
      * This class contains the code that trains a learning classifier. It is a subclass of
-     * <code>Thread</code> so that it may be executed concurrently.
+     * <code>Thread</code> so that it may be executed concurrently, although when
+     * {@link Main#concurrentTraining} is enabled, its {@link #run()} method is executed by
+     * {@link Train#pool} instead of by starting it.
      *
      * @author Nick Rizzolo
      **/
@@ -443,6 +515,12 @@ public class Train extends Pass {
             classDir = Main.classDirectory == null ? "" : Main.classDirectory + File.separator;
             learner = getLearner(classDir);
 
+            // Learners that others depend on may be classifying examples for several of them at
+            // once when training concurrently.
+            HashSet dependors = (HashSet) SemanticAnalysis.dependorGraph.get(n);
+            if (Main.concurrentTraining && dependors != null && dependors.size() > 0)
+                learner.setLexiconType(ConcurrentLexicon.class);
+
             preExtract =
                     lce.preExtract != null && !lce.preExtract.value.equals("false")
                             && !lce.preExtract.value.equals("\"false\"")
@@ -466,7 +544,8 @@ public class Train extends Pass {
                     // Implies preExtractToDisk is true because of RevisionAnalysis;
                     // therefore, exFilePath != null
                     parser =
-                            new ArrayFileParser(exFilePath, lce.preExtract.value.endsWith("Zip\""));
+                            ArrayFileParser.open(exFilePath,
+                                    lce.preExtract.value.endsWith("Zip\""));
                     if (lce.pruneStatus != RevisionAnalysis.UNAFFECTED)
                         learner.readLexiconOnDemand(classDir + getName() + ".lex");
                 } else
@@ -482,7 +561,7 @@ public class Train extends Pass {
                     // UNAFFECTED. So, like above, as soon as we know pruneStatus ==
                     // UNAFFECTED, we know testExFilePath != null
                     testParser =
-                            new ArrayFileParser(testExFilePath,
+                            ArrayFileParser.open(testExFilePath,
                                     lce.preExtract.value.endsWith("Zip\""));
                 else
                     testParser = getParser("getTestParser");
@@ -303,7 +303,9 @@ public class TranslateToJava extends Pass {
         } else if (Main.sourceDirectory != null)
             name = Main.sourceDirectory + File.separator + name;
 
-        Main.fileNames.add(name);
+        synchronized (Main.fileNames) {
+            Main.fileNames.add(name);
+        }
 
         PrintStream out = null;
 
@@ -357,9 +359,10 @@ public class TranslateToJava extends Pass {
         if (lce.cacheIn != null) {
             field = lce.cacheIn.toString();
             cachedInMap = field.equals(ClassifierAssignment.mapCache);
-            if (cachedInMap)
-                out.println("  private static final WeakHashMap __valueCache "
-                        + "= new WeakHashMap();\n");
+            if (cachedInMap) {
+                generateValueCache(out, lce);
+                out.println();
+            }
         }
 
         HashSet invoked = (HashSet) SemanticAnalysis.invokedGraph.get(lceName);
@@ -1140,6 +1143,31 @@ public class TranslateToJava extends Pass {
     }
 
 
+    /**
+     * Generates the declaration of the map in which a classifier declared with
+     * <code>cachedinmap</code> caches its values. When the source gave the cache a size, the map is
+     * a {@link edu.illinois.cs.cogcomp.lbjava.classify.ValueCache}, which evicts the least recently
+     * used values and counts hits and misses, and a static <code>getValueCache()</code> method is
+     * generated to access it. Otherwise, it is an unbounded, synchronized
+     * <code>WeakHashMap</code>.
+     *
+     * @param out The stream to write to.
+     * @param ce The classifier being cached.
+     **/
+    private static void generateValueCache(PrintStream out, ClassifierExpression ce) {
+        if (ce.cacheSize > 0) {
+            out.println("  private static final edu.illinois.cs.cogcomp.lbjava.classify.ValueCache "
+                    + "__valueCache =");
+            out.println("    new edu.illinois.cs.cogcomp.lbjava.classify.ValueCache("
+                    + ce.cacheSize + ");");
+            out.println("  public static edu.illinois.cs.cogcomp.lbjava.classify.ValueCache "
+                    + "getValueCache() { return __valueCache; }");
+        } else
+            out.println("  private static final java.util.Map __valueCache "
+                    + "= java.util.Collections.synchronizedMap(new WeakHashMap());");
+    }
+
+
     /**
      * This method generates the methods that return the features and values representing a
      * classification. Implementations generated here take care of all caching we may want to take
@@ -1535,7 +1563,7 @@ public class TranslateToJava extends Pass {
         out.println("{");
 
         if (cachedInMap)
-            out.println("  private static final WeakHashMap __valueCache " + "= new WeakHashMap();");
+            generateValueCache(out, cn);
 
         String referentNoDots = cn.referent.toString().replace('.', '$');
         out.println("  private static final " + cn.referent + " __" + referentNoDots + " = new "
@@ -1627,7 +1655,7 @@ public class TranslateToJava extends Pass {
         out.println("{");
 
         if (cachedInMap)
-            out.println("  private static final WeakHashMap __valueCache " + "= new WeakHashMap();");
+            generateValueCache(out, cc);
 
         HashSet<String> invoked = SemanticAnalysis.invokedGraph.get(ccName);
         if (invoked != null && invoked.size() > 0) {
@@ -1909,7 +1937,7 @@ public class TranslateToJava extends Pass {
         out.println("{");
 
         if (cachedInMap)
-            out.println("  private static final WeakHashMap __valueCache " + "= new WeakHashMap();");
+            generateValueCache(out, ii);
 
         String iiClassifierName = ii.classifier.toString();
         out.println("  private static final " + iiClassifierName + " __" + iiClassifierName
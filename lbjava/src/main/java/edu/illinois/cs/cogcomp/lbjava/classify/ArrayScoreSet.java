@@ -0,0 +1,324 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+
+
+/**
+ * A <code>ScoreSet</code> that stores its scores in a primitive array rather than a sorted map of
+ * {@link Score} objects. The values being scored are typically given as indexes into a label
+ * lexicon, and their string representations are only looked up when they are first needed.
+ * Learners can therefore produce one of these score sets with a single allocation of each array.
+ *
+ * <p>
+ * The {@link edu.illinois.cs.cogcomp.lbjava.learn.Softmax Softmax} and
+ * {@link edu.illinois.cs.cogcomp.lbjava.learn.Sigmoid Sigmoid} normalizers work directly on the
+ * primitive array. The
+ * first time a method that returns <code>Score</code> objects is called, such as
+ * {@link #toArray()} or {@link #getScore(String)}, those objects are created, and from then on
+ * they hold the scores so that modifying them modifies the set, just as in a
+ * <code>ScoreSet</code>. As in a <code>ScoreSet</code>, {@link #toArray()} and {@link #values()}
+ * order the scores by value.
+ *
+ * @see edu.illinois.cs.cogcomp.lbjava.learn.Softmax
+ * @see edu.illinois.cs.cogcomp.lbjava.learn.Sigmoid
+ **/
+public class ArrayScoreSet extends ScoreSet {
+    /** The lexicon of values, or <code>null</code> if the values were given as strings. */
+    private Lexicon lexicon;
+    /** The indexes in {@link #lexicon} of the values being scored. */
+    private int[] indexes;
+    /** The values being scored, filled in as they are needed. */
+    private String[] values;
+    /** Whether {@link #values} belongs to the caller and must be copied before it is modified. */
+    private boolean sharedValues;
+    /** The scores, until {@link #objects} is created. */
+    private double[] scores;
+    /** <code>Score</code> objects holding the scores, once any have been requested. */
+    private Score[] objects;
+    /** The number of scores in the set. */
+    private int size;
+
+
+    /**
+     * Creates a set of the given scores for the values with the given indexes in a lexicon. This
+     * set takes ownership of the arrays.
+     *
+     * @param l The lexicon of values.
+     * @param i The indexes of the values in the lexicon.
+     * @param s The scores, pair-wise associated with <code>i</code>.
+     * @param n The number of scores to take from the arrays.
+     **/
+    public ArrayScoreSet(Lexicon l, int[] i, double[] s, int n) {
+        super((Map) null);
+        lexicon = l;
+        indexes = i;
+        scores = s;
+        size = n;
+    }
+
+    /**
+     * Creates a set of the given scores for the given values. This set takes ownership of the
+     * array of scores but never modifies the array of values, so it may be shared.
+     *
+     * @param v The values being scored.
+     * @param s The scores, pair-wise associated with <code>v</code>.
+     **/
+    public ArrayScoreSet(String[] v, double[] s) {
+        super((Map) null);
+        values = v;
+        sharedValues = true;
+        scores = s;
+        size = Math.min(v.length, s.length);
+    }
+
+
+    /** Returns the number of scores in this set. */
+    public int size() {
+        return size;
+    }
+
+
+    /**
+     * Returns the value with the given position in this set.
+     *
+     * @param i The position.
+     * @return The value.
+     **/
+    public String value(int i) {
+        if (values == null)
+            values = new String[scores.length];
+        if (values[i] == null)
+            values[i] = lexicon.lookupKey(indexes[i]).getStringValue();
+        return values[i];
+    }
+
+
+    /**
+     * Returns the score with the given position in this set.
+     *
+     * @param i The position.
+     * @return The score.
+     **/
+    public double score(int i) {
+        return objects == null ? scores[i] : objects[i].score;
+    }
+
+
+    /**
+     * Sets the score with the given position in this set.
+     *
+     * @param i The position.
+     * @param s The new score.
+     **/
+    public void setScore(int i, double s) {
+        if (objects == null)
+            scores[i] = s;
+        else
+            objects[i].score = s;
+    }
+
+
+    /**
+     * Returns the position of the given value in this set.
+     *
+     * @param v The value.
+     * @return Its position, or -1 if it has no score in this set.
+     **/
+    public int indexOf(String v) {
+        for (int i = 0; i < size; ++i)
+            if (value(i).equals(v))
+                return i;
+        return -1;
+    }
+
+
+    /**
+     * Sets the score for a particular classification value.
+     *
+     * @param v The classification value.
+     * @param s The score.
+     **/
+    public void put(String v, double s) {
+        int i = indexOf(v);
+        if (i != -1) {
+            setScore(i, s);
+            return;
+        }
+
+        if (size == scores.length) {
+            int capacity = Math.max(4, size * 2);
+            scores = Arrays.copyOf(scores, capacity);
+            if (indexes != null)
+                indexes = Arrays.copyOf(indexes, capacity);
+            if (objects != null)
+                objects = Arrays.copyOf(objects, capacity);
+        }
+
+        if (values == null)
+            values = new String[scores.length];
+        else if (sharedValues || values.length < scores.length) {
+            values = Arrays.copyOf(values, scores.length);
+            sharedValues = false;
+        }
+
+        if (indexes != null)
+            indexes[size] = -1;
+        values[size] = v;
+        scores[size] = s;
+        if (objects != null)
+            objects[size] = new Score(v, s);
+        ++size;
+    }
+
+
+    /**
+     * Retrieves the set of values that have scores associated with them in this score set.
+     *
+     * @return A sorted set of <code>String</code>s.
+     **/
+    public Set values() {
+        Set result = new TreeSet();
+        for (int i = 0; i < size; ++i)
+            result.add(value(i));
+        return result;
+    }
+
+
+    /**
+     * Returns the double precision score for a particular classification value.
+     *
+     * @param v The classification value.
+     * @return The associated score.
+     **/
+    public double get(String v) {
+        int i = indexOf(v);
+        if (i == -1)
+            throw new NullPointerException("No score for value '" + v + "'.");
+        return score(i);
+    }
+
+
+    /**
+     * Retrieves the {@link Score} object associated with the given classification value.
+     *
+     * @param v The classification value.
+     * @return The associated {@link Score} object, or <code>null</code> if there is none.
+     **/
+    public Score getScore(String v) {
+        int i = indexOf(v);
+        return i == -1 ? null : createObjects()[i];
+    }
+
+
+    /**
+     * Retrieves the value with the highest score in this set. Ties are broken in favor of the
+     * value that comes first in sorted order, as in a <code>ScoreSet</code>.
+     **/
+    public String highScoreValue() {
+        String result = null;
+        double highScore = Double.NEGATIVE_INFINITY;
+
+        for (int i = 0; i < size; ++i) {
+            double score = score(i);
+            if (score > highScore || score == highScore && result != null
+                    && value(i).compareTo(result) < 0) {
+                highScore = score;
+                result = value(i);
+            }
+        }
+
+        return result;
+    }
+
+
+    /**
+     * Returns an array view of the <code>Score</code>s contained in this set, sorted by value.
+     * Modifying the <code>Score</code>s modifies this set.
+     *
+     * @return An array of <code>Score</code>s.
+     **/
+    public Score[] toArray() {
+        Score[] result = Arrays.copyOf(createObjects(), size);
+        Arrays.sort(result);
+        return result;
+    }
+
+
+    /** Creates the <code>Score</code> objects if they don't exist yet. */
+    private Score[] createObjects() {
+        if (objects == null) {
+            Score[] result = new Score[scores.length];
+            for (int i = 0; i < size; ++i)
+                result[i] = new Score(value(i), scores[i]);
+            objects = result;
+        }
+
+        return objects;
+    }
+
+
+    /**
+     * Replaces each score <i>s</i> with <i>e<sup>alpha * s</sup></i> divided by the sum of those
+     * quantities over all scores.
+     *
+     * @param alpha The constant multiplied by each score.
+     **/
+    public void softmax(double alpha) {
+        double sum = 0;
+
+        for (int i = 0; i < size; ++i) {
+            double s = Math.exp(alpha * score(i));
+            setScore(i, s);
+            sum += s;
+        }
+
+        for (int i = 0; i < size; ++i)
+            setScore(i, score(i) / sum);
+    }
+
+
+    /**
+     * Replaces each score <i>s</i> with <i>1 / (1 + e<sup>-alpha * s</sup>)</i>.
+     *
+     * @param alpha The constant multiplied by each score.
+     **/
+    public void sigmoid(double alpha) {
+        for (int i = 0; i < size; ++i)
+            setScore(i, 1 / (1 + Math.exp(-alpha * score(i))));
+    }
+
+
+    /**
+     * Produces a deep copy of this object.
+     *
+     * @return A deep copy of this object.
+     **/
+    public Object clone() {
+        double[] s = new double[size];
+        for (int i = 0; i < size; ++i)
+            s[i] = score(i);
+
+        ArrayScoreSet result;
+        if (indexes == null)
+            result = new ArrayScoreSet(Arrays.copyOf(values, size), s);
+        else {
+            result = new ArrayScoreSet(lexicon, Arrays.copyOf(indexes, size), s, size);
+            if (values != null)
+                result.values = Arrays.copyOf(values, size);
+        }
+
+        return result;
+    }
+}
@@ -166,6 +166,17 @@ public class DiscreteArrayFeature extends DiscretePrimitiveFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteArrayFeature</code> mixes the array index into the
+     * fingerprint of the underlying primitive feature.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), arrayIndex);
+    }
+
+
     /**
      * Two <code>DiscreteArrayFeature</code>s are equivalent when their containing packages,
      * identifiers, indices, and values are equivalent.
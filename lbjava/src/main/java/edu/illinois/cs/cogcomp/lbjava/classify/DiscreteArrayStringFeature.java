@@ -183,6 +183,17 @@ public class DiscreteArrayStringFeature extends DiscretePrimitiveStringFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteArrayStringFeature</code> mixes the array index into the
+     * fingerprint of the underlying primitive feature.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), arrayIndex);
+    }
+
+
     /**
      * Two <code>DiscreteArrayStringFeature</code>s are equivalent when their containing packages,
      * identifiers, indices, and values are equivalent.
@@ -287,6 +287,18 @@ public class DiscreteConjunctiveFeature extends DiscreteFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteConjunctiveFeature</code> combines the fingerprints of its
+     * two arguments with those of its package and classifier.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), left.fingerprint()),
+                right.fingerprint());
+    }
+
+
     /**
      * Two conjunctions are equivalent when their arguments are equivalent.
      *
@@ -215,6 +215,18 @@ public class DiscretePrimitiveFeature extends DiscreteFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscretePrimitiveFeature</code> is computed from the decoded
+     * characters of its containing package, generating classifier, identifier, and value.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), fingerprint(identifier)),
+                fingerprint(value));
+    }
+
+
     /**
      * Two <code>DiscretePrimitive(String)Feature</code>s are equivalent when their containing
      * packages, identifiers, and values are equivalent.
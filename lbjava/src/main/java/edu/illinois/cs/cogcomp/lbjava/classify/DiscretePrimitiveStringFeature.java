@@ -225,6 +225,19 @@ public class DiscretePrimitiveStringFeature extends DiscreteFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscretePrimitiveStringFeature</code> is computed from the
+     * characters of its containing package, generating classifier, identifier, and value, so that
+     * it agrees with an equivalent {@link DiscretePrimitiveFeature}.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), fingerprint(identifier)),
+                fingerprint(value));
+    }
+
+
     /**
      * Two <code>DiscretePrimitiveStringFeature</code>s are equivalent when their containing
      * packages, identifiers, and values are equivalent.
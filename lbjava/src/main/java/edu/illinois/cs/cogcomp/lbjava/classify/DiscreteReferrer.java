@@ -164,6 +164,17 @@ public abstract class DiscreteReferrer extends DiscreteFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteReferrer</code> extends the fingerprint of its package and
+     * classifier with that of its referent.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), referent.fingerprint());
+    }
+
+
     /**
      * Used to sort features into an order that is convenient both to page through and for the
      * lexicon to read off disk.
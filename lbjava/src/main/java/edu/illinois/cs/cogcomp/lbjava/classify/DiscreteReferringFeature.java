@@ -190,6 +190,17 @@ public class DiscreteReferringFeature extends DiscreteReferrer {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteReferringFeature</code> adds the fingerprint of its
+     * identifier to the fingerprint of the referrer.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), fingerprint(identifier));
+    }
+
+
     /**
      * Two <code>DiscreteReferringFeature</code>s are equivalent when their containing packages,
      * identifiers, and referent features are equivalent.
@@ -192,6 +192,17 @@ public class DiscreteReferringStringFeature extends DiscreteReferrer {
     }
 
 
+    /**
+     * The fingerprint of a <code>DiscreteReferringStringFeature</code> adds the fingerprint of its
+     * identifier to the fingerprint of the referrer.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), fingerprint(identifier));
+    }
+
+
     /**
      * Two <code>DiscreteReferringStringFeature</code>s are equivalent when their containing
      * packages, identifiers, and referent features are equivalent.
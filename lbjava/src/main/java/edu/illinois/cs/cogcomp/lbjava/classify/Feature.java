@@ -349,6 +349,66 @@ public abstract class Feature implements Cloneable, Comparable, Serializable {
     }
 
 
+    /**
+     * A 64 bit hash of this feature, used by lexicons that index features without storing them in a
+     * <code>Map</code>. Like {@link #hashCode()}, it is a function of {@link #containingPackage}
+     * and {@link #generatingClassifier}, but it hashes all of their characters into 64 bits rather
+     * than combining their 32 bit hash codes. Equivalent features must have equal fingerprints.
+     * Unequal features rarely share a fingerprint, but they may, so a fingerprint match must be
+     * confirmed with {@link #equals(Object)}.
+     *
+     * @return The fingerprint of this <code>Feature</code>.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(0, fingerprint(containingPackage)),
+                fingerprint(generatingClassifier));
+    }
+
+
+    /**
+     * Combines a fingerprint computed so far with the hash of one more field. For a fixed
+     * <code>h</code>, distinct values of <code>v</code> always produce distinct results.
+     *
+     * @param h The fingerprint so far.
+     * @param v The hash of the next field.
+     * @return The combined fingerprint.
+     **/
+    protected static long mixFingerprint(long h, long v) {
+        h = (h ^ v) * 0x9e3779b97f4a7c15L;
+        return h ^ (h >>> 32);
+    }
+
+
+    /**
+     * Computes a 64 bit hash of every character in the given string, for use in fingerprints.
+     * <code>String.hashCode()</code> can't be used here, since short strings such as "Aa" and "BB"
+     * share its 32 bit hash.
+     *
+     * @param s The string.
+     * @return The 64 bit FNV-1a hash of its characters.
+     **/
+    protected static long fingerprint(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0; i < s.length(); ++i) {
+            h ^= s.charAt(i);
+            h *= 0x100000001b3L;
+        }
+        return h;
+    }
+
+
+    /**
+     * Computes the same hash as {@link #fingerprint(String)} of the string this byte string
+     * decodes to, so that equivalent features agree whatever their encoding.
+     *
+     * @param s The byte string.
+     * @return The 64 bit FNV-1a hash of its decoded characters.
+     **/
+    protected static long fingerprint(ByteString s) {
+        return fingerprint(s.toString());
+    }
+
+
     /**
      * Two <code>Feature</code>s are equal when their packages and generating classifiers are
      * equivalent.
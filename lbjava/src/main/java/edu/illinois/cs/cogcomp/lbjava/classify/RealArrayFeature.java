@@ -137,6 +137,17 @@ public class RealArrayFeature extends RealPrimitiveFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealArrayFeature</code> adds the array index to the fingerprint
+     * computed for a primitive real feature.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), arrayIndex);
+    }
+
+
     /**
      * Two <code>RealArrayFeature</code>s are equivalent when their containing packages,
      * identifiers, indices, and values are equivalent.
@@ -154,6 +154,17 @@ public class RealArrayStringFeature extends RealPrimitiveStringFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealArrayStringFeature</code> adds the array index to the
+     * fingerprint computed for a primitive real feature.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), arrayIndex);
+    }
+
+
     /**
      * Two <code>RealArrayStringFeature</code>s are equivalent when their containing packages,
      * identifiers, indices, and values are equivalent.
@@ -254,6 +254,18 @@ public class RealConjunctiveFeature extends RealFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealConjunctiveFeature</code> combines the fingerprints of its two
+     * arguments with those of its package and classifier.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), left.fingerprint()),
+                right.fingerprint());
+    }
+
+
     /**
      * Two conjunctions are equivalent when their arguments are equivalent.
      *
@@ -161,6 +161,18 @@ public class RealPrimitiveFeature extends RealFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealPrimitiveFeature</code> is computed from its containing
+     * package, generating classifier, identifier, and the bits of its value.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), fingerprint(identifier)),
+                Double.doubleToLongBits(value));
+    }
+
+
     /**
      * Two <code>RealPrimitiveFeature</code>s are equivalent when their containing packages and
      * identifiers are equivalent and their values are equal.
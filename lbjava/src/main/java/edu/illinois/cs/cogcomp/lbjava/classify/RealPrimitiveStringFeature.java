@@ -167,6 +167,19 @@ public class RealPrimitiveStringFeature extends RealFeature {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealPrimitiveStringFeature</code> is computed from its containing
+     * package, generating classifier, identifier, and the bits of its value, so that it agrees with
+     * an equivalent {@link RealPrimitiveFeature}.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(mixFingerprint(super.fingerprint(), fingerprint(identifier)),
+                Double.doubleToLongBits(value));
+    }
+
+
     /**
      * Two <code>RealPrimitiveStringFeature</code>s are equivalent when their containing packages
      * and identifiers are equivalent and their values are equal.
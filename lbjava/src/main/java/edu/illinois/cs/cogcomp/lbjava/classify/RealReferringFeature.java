@@ -168,6 +168,17 @@ public class RealReferringFeature extends RealReferrer {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealReferringFeature</code> adds the fingerprint of its identifier
+     * to the fingerprint of the referrer.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), fingerprint(identifier));
+    }
+
+
     /**
      * Two <code>RealReferringFeature</code>s are equivalent when their containing packages,
      * identifiers, and referent features are equivalent.
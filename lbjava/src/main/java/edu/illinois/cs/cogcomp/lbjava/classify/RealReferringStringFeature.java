@@ -170,6 +170,17 @@ public class RealReferringStringFeature extends RealReferrer {
     }
 
 
+    /**
+     * The fingerprint of a <code>RealReferringStringFeature</code> adds the fingerprint of its
+     * identifier to the fingerprint of the referrer.
+     *
+     * @return The fingerprint of this feature.
+     **/
+    public long fingerprint() {
+        return mixFingerprint(super.fingerprint(), fingerprint(identifier));
+    }
+
+
     /**
      * Two <code>RealReferringStringFeature</code>s are equivalent when their containing packages,
      * identifiers, and referent features are equivalent.
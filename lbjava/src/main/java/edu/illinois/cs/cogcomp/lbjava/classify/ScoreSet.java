@@ -18,6 +18,7 @@ import java.util.TreeMap;
  * A score set is simply a set of <code>Score</code>s.
  *
  * @see Score
+ * @see ArrayScoreSet
  * @author Nick Rizzolo
  **/
 public class ScoreSet implements Cloneable {
@@ -58,6 +59,15 @@ public class ScoreSet implements Cloneable {
             set.put(scores[i].value, scores[i]);
     }
 
+    /**
+     * Used by subclasses that store their scores in some other way.
+     *
+     * @param m The map of scores, or <code>null</code> if it won't be used.
+     **/
+    protected ScoreSet(Map m) {
+        set = m;
+    }
+
 
     /** Returns the number of scores in this set. */
     public int size() {
@@ -146,7 +156,7 @@ public class ScoreSet implements Cloneable {
     public String toString() {
         String result = "{";
 
-        if (set.size() > 0) {
+        if (size() > 0) {
             Score[] scores = toArray();
             Arrays.sort(scores);
             result += " " + scores[0];
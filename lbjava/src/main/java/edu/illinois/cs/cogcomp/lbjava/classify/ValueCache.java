@@ -0,0 +1,216 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.classify;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+
+/**
+ * A thread-safe cache of classifier values with a bounded number of entries, used by classifiers
+ * declared <code>cachedinmap(</code><i>size</i><code>)</code> in an LBJava source file. Entries
+ * are spread over a number of independently locked segments by the hash codes of their keys, so
+ * that threads classifying different examples rarely wait for each other, and each segment
+ * evicts its least recently used entry when it is full. Keys are compared with
+ * <code>equals(Object)</code>, as in the unbounded <code>WeakHashMap</code> used by
+ * <code>cachedinmap</code>, but are strongly referenced until they are evicted.
+ *
+ * <p>
+ * The numbers of hits, misses, and evictions are counted, so that the size of the cache can be
+ * tuned. Generated classifiers make their cache available through a static
+ * <code>getValueCache()</code> method.
+ **/
+public class ValueCache {
+    /** The largest number of segments a cache is divided into. */
+    public static final int maxSegments = 16;
+
+
+    /** The maximum number of entries in the cache. */
+    private final int capacity;
+    /** The segments; each is an access ordered map that evicts its eldest entry when full. */
+    private final Segment[] segments;
+    /** The number of calls to {@link #get(Object)} that found a value. */
+    private final AtomicLong hits = new AtomicLong();
+    /** The number of calls to {@link #get(Object)} that found no value. */
+    private final AtomicLong misses = new AtomicLong();
+    /** The number of entries evicted to make room for new ones. */
+    private final AtomicLong evictions = new AtomicLong();
+
+
+    /**
+     * Creates an empty cache.
+     *
+     * @param c The maximum number of entries in the cache; must be positive.
+     **/
+    public ValueCache(int c) {
+        if (c < 1)
+            throw new IllegalArgumentException("LBJava ERROR: ValueCache: The size of a cache "
+                    + "must be positive, not " + c + ".");
+        capacity = c;
+
+        int S = 1;
+        while (S < maxSegments && 2 * S <= c)
+            S *= 2;
+        segments = new Segment[S];
+        for (int i = 0; i < S; ++i)
+            segments[i] = new Segment(c / S + (i < c % S ? 1 : 0));
+    }
+
+
+    /**
+     * Returns the segment responsible for the given key.
+     *
+     * @param key The key.
+     * @return The segment.
+     **/
+    private Segment segmentFor(Object key) {
+        int h = key == null ? 0 : key.hashCode();
+        h ^= (h >>> 20) ^ (h >>> 12);
+        h ^= (h >>> 7) ^ (h >>> 4);
+        return segments[h & (segments.length - 1)];
+    }
+
+
+    /**
+     * Returns the value cached for the given key, counting a hit or a miss.
+     *
+     * @param key The key, usually an example object.
+     * @return The cached value, or <code>null</code> if there is none.
+     **/
+    public Object get(Object key) {
+        Segment segment = segmentFor(key);
+        Object result;
+        synchronized (segment) {
+            result = segment.get(key);
+        }
+
+        if (result == null)
+            misses.incrementAndGet();
+        else
+            hits.incrementAndGet();
+        return result;
+    }
+
+
+    /**
+     * Caches a value for the given key, evicting the least recently used entry of its segment if
+     * the segment is full.
+     *
+     * @param key The key, usually an example object.
+     * @param value The value.
+     * @return The value previously cached for the key, or <code>null</code> if there was none.
+     **/
+    public Object put(Object key, Object value) {
+        Segment segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.put(key, value);
+        }
+    }
+
+
+    /** Removes every entry from the cache, leaving the counters as they are. */
+    public void clear() {
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                segments[i].clear();
+            }
+    }
+
+
+    /** Returns the maximum number of entries in the cache. */
+    public int getCapacity() {
+        return capacity;
+    }
+
+
+    /** Returns the number of entries currently in the cache. */
+    public int size() {
+        int result = 0;
+        for (int i = 0; i < segments.length; ++i)
+            synchronized (segments[i]) {
+                result += segments[i].size();
+            }
+        return result;
+    }
+
+
+    /** Returns the number of calls to {@link #get(Object)} that found a value. */
+    public long getHits() {
+        return hits.get();
+    }
+
+
+    /** Returns the number of calls to {@link #get(Object)} that found no value. */
+    public long getMisses() {
+        return misses.get();
+    }
+
+
+    /** Returns the number of entries evicted to make room for new ones. */
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+
+    /** Returns the fraction of calls to {@link #get(Object)} that found a value. */
+    public double getHitRate() {
+        long h = hits.get(), total = h + misses.get();
+        return total == 0 ? 0 : h / (double) total;
+    }
+
+
+    /** Sets every counter back to zero. */
+    public void resetCounters() {
+        hits.set(0);
+        misses.set(0);
+        evictions.set(0);
+    }
+
+
+    /** Returns a summary of the cache's size and counters. */
+    public String toString() {
+        return "ValueCache(" + size() + " / " + capacity + " entries, " + getHits() + " hits, "
+                + getMisses() + " misses, " + getEvictions() + " evictions)";
+    }
+
+
+    /**
+     * One independently locked part of a {@link ValueCache}: a map in access order that removes its
+     * eldest entry when an insertion makes it exceed its capacity.
+     **/
+    private class Segment extends LinkedHashMap<Object, Object> {
+        /** The maximum number of entries in this segment. */
+        private final int capacity;
+
+
+        /**
+         * Creates an empty segment.
+         *
+         * @param c The maximum number of entries in this segment.
+         **/
+        public Segment(int c) {
+            super(Math.min(c, 1 << 16) * 4 / 3 + 1, 0.75f, true);
+            capacity = c;
+        }
+
+
+        /**
+         * Evicts the eldest entry when this segment has grown past its capacity.
+         *
+         * @param eldest The least recently used entry.
+         * @return Whether to remove it.
+         **/
+        protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+            if (size() <= capacity)
+                return false;
+            evictions.incrementAndGet();
+            return true;
+        }
+    }
+}
@@ -0,0 +1,651 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.infer;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+
+import edu.illinois.cs.cogcomp.infer.ilp.ILPSolver;
+
+
+/**
+ * Translates a first order constraint straight into the rows of an ILP problem, without
+ * propositionalizing it first. The constraint built by a constraint declaration for a head object
+ * already has the structure of the problem: each quantifier's collection is enumerated, each
+ * equality is bound to its first order variables, and each operator is translated to linear
+ * inequalities over the Boolean variables of those first order variables, as
+ * {@link ILPInference}'s visitors would translate the simplified propositional constraint. No
+ * <code>Propositional*</code> objects are created, and nothing is simplified by rewriting; instead,
+ * constants are folded as they are met.
+ *
+ * <p>
+ * Constraints that must hold are translated directly into rows; any other constraint that is not a
+ * single variable, such as a conjunction nested in a disjunction, is represented by a new Boolean
+ * variable tied to its operands with two rows. Identical subexpressions share one variable.
+ * Literals are represented as <code>int</code>s: twice the index of a variable, plus one if it is
+ * negated, or one of the constants {@link #TRUE} and {@link #FALSE}.
+ *
+ * @see ILPInference#setCompileConstraints(boolean)
+ **/
+public class ILPConstraintCompiler {
+    /** The literal that is always true. */
+    public static final int TRUE = -1;
+    /** The literal that is always false. */
+    public static final int FALSE = -2;
+
+    /** Distinguishes the kinds of variables created for subexpressions. */
+    private static final int AND = 0, OR = 1, AT_LEAST = 2;
+
+
+    /** The ILP algorithm receiving the rows. */
+    protected ILPSolver solver;
+    /** Whether to print the variables created for subexpressions. */
+    protected boolean verbose;
+    /** Maps each first order variable to the values it may take and their variables' indexes. */
+    protected HashMap<FirstOrderVariable, Values> variables;
+    /** Maps each subexpression represented by a variable to that variable's index. */
+    protected HashMap<Key, Integer> subexpressions;
+    /** Set when a constraint that must hold turns out to be false. */
+    protected boolean unsatisfiable;
+    /** The number of rows added to the solver. */
+    protected int rows;
+
+
+    /**
+     * Creates a compiler that adds rows to the given ILP algorithm.
+     *
+     * @param s The ILP algorithm.
+     * @param v Whether to print the variables created for subexpressions.
+     **/
+    public ILPConstraintCompiler(ILPSolver s, boolean v) {
+        solver = s;
+        verbose = v;
+        variables = new HashMap<FirstOrderVariable, Values>();
+        subexpressions = new HashMap<Key, Integer>();
+    }
+
+
+    /**
+     * Records the ILP variables that represent the values of a first order variable.
+     *
+     * @param v The first order variable, as consolidated by the constraint.
+     * @param values The values it may take.
+     * @param indexes The index of the ILP variable of each value.
+     **/
+    public void addVariable(FirstOrderVariable v, String[] values, int[] indexes) {
+        variables.put(v, new Values(values, indexes));
+    }
+
+
+    /** Returns whether a constraint that must hold turned out to be false. */
+    public boolean isUnsatisfiable() {
+        return unsatisfiable;
+    }
+
+
+    /** Returns the number of rows added to the solver so far. */
+    public int getRows() {
+        return rows;
+    }
+
+
+    /**
+     * Adds the rows that force the given constraint to hold.
+     *
+     * @param c The constraint.
+     **/
+    public void require(FirstOrderConstraint c) {
+        if (c instanceof FirstOrderConjunction) {
+            for (Iterator I = ((FirstOrderConjunction) c).children.iterator(); I.hasNext();)
+                require((FirstOrderConstraint) I.next());
+        } else if (c instanceof UniversalQuantifier) {
+            Quantifier q = (Quantifier) c;
+            int index = q.initialize();
+            for (Iterator I = q.collection.iterator(); I.hasNext();) {
+                q.enclosingQuantificationSettings.set(index, I.next());
+                q.constraint.setQuantificationVariables(q.enclosingQuantificationSettings);
+                require(q.constraint);
+            }
+            q.enclosingQuantificationSettings.removeElementAt(index);
+        } else if (c instanceof QuantifiedConstraintInvocation) {
+            FirstOrderConstraint invoked = ((QuantifiedConstraintInvocation) c).constraint;
+            if (invoked == null)
+                unsatisfiable = true;
+            else
+                require(invoked);
+        } else if (c instanceof FirstOrderEqualityWithVariable) {
+            int[][] clauses = equalityClauses((FirstOrderEqualityWithVariable) c);
+            if (clauses == null)
+                unsatisfiable = true;
+            else
+                for (int i = 0; i < clauses.length; ++i)
+                    atLeast(clauses[i], clauses[i].length, 1);
+        } else if (c instanceof FirstOrderDisjunction || c instanceof ExistentialQuantifier) {
+            int[] l = operands(c);
+            atLeast(l, l.length, 1);
+        } else if (c instanceof FirstOrderImplication) {
+            FirstOrderImplication i = (FirstOrderImplication) c;
+            int left = literal(i.left);
+            if (left == FALSE)
+                return;
+            if (left == TRUE)
+                require(i.right);
+            else
+                atLeast(new int[] {negate(left), literal(i.right)}, 2, 1);
+        } else if (c instanceof FirstOrderDoubleImplication) {
+            FirstOrderDoubleImplication d = (FirstOrderDoubleImplication) c;
+            equal(literal(d.left), literal(d.right));
+        } else if (c instanceof AtLeastQuantifier) {
+            AtLeastQuantifier q = (AtLeastQuantifier) c;
+            int[] l = operands(q);
+            atLeast(l, l.length, q.m);
+        } else if (c instanceof AtMostQuantifier) {
+            AtMostQuantifier q = (AtMostQuantifier) c;
+            int[] l = operands(q);
+            for (int i = 0; i < l.length; ++i)
+                l[i] = negate(l[i]);
+            atLeast(l, l.length, l.length - q.m);
+        } else
+            set(literal(c), true);
+    }
+
+
+    /**
+     * Returns a literal whose value is the value of the given constraint, adding a variable and the
+     * rows defining it if the constraint is not a constant or a single variable.
+     *
+     * @param c The constraint.
+     * @return The literal.
+     **/
+    public int literal(FirstOrderConstraint c) {
+        if (c instanceof FirstOrderEqualityWithValue) {
+            FirstOrderEqualityWithValue e = (FirstOrderEqualityWithValue) c;
+            int result = lookup(e.left, e.right);
+            return e.equality ? result : negate(result);
+        }
+
+        if (c instanceof FirstOrderNegation)
+            return negate(literal(((FirstOrderNegation) c).constraint));
+        if (c instanceof FirstOrderConstant || c instanceof FirstOrderEqualityTwoValues)
+            return c.evaluate() ? TRUE : FALSE;
+
+        if (c instanceof FirstOrderEqualityWithVariable) {
+            int[][] clauses = equalityClauses((FirstOrderEqualityWithVariable) c);
+            if (clauses == null)
+                return FALSE;
+            int[] l = new int[clauses.length];
+            for (int i = 0; i < clauses.length; ++i)
+                l[i] = subexpression(OR, 1, clauses[i], clauses[i].length);
+            return subexpression(AND, l.length, l, l.length);
+        }
+
+        if (c instanceof FirstOrderConjunction || c instanceof UniversalQuantifier) {
+            int[] l = operands(c);
+            return subexpression(AND, l.length, l, l.length);
+        }
+
+        if (c instanceof FirstOrderDisjunction || c instanceof ExistentialQuantifier) {
+            int[] l = operands(c);
+            return subexpression(OR, 1, l, l.length);
+        }
+
+        if (c instanceof FirstOrderImplication) {
+            FirstOrderImplication i = (FirstOrderImplication) c;
+            return subexpression(OR, 1, new int[] {negate(literal(i.left)), literal(i.right)}, 2);
+        }
+
+        if (c instanceof FirstOrderDoubleImplication) {
+            FirstOrderDoubleImplication d = (FirstOrderDoubleImplication) c;
+            int left = literal(d.left), right = literal(d.right);
+            int[] l =
+                    {subexpression(OR, 1, new int[] {negate(left), right}, 2),
+                            subexpression(OR, 1, new int[] {left, negate(right)}, 2)};
+            return subexpression(AND, 2, l, 2);
+        }
+
+        if (c instanceof AtLeastQuantifier) {
+            AtLeastQuantifier q = (AtLeastQuantifier) c;
+            int[] l = operands(q);
+            return subexpression(AT_LEAST, q.m, l, l.length);
+        }
+
+        if (c instanceof AtMostQuantifier) {
+            AtMostQuantifier q = (AtMostQuantifier) c;
+            int[] l = operands(q);
+            for (int i = 0; i < l.length; ++i)
+                l[i] = negate(l[i]);
+            return subexpression(AT_LEAST, l.length - q.m, l, l.length);
+        }
+
+        if (c instanceof QuantifiedConstraintInvocation) {
+            FirstOrderConstraint invoked = ((QuantifiedConstraintInvocation) c).constraint;
+            return invoked == null ? FALSE : literal(invoked);
+        }
+
+        throw new IllegalArgumentException("LBJava ERROR: ILPConstraintCompiler: Can't compile a "
+                + c.getClass().getName() + ".");
+    }
+
+
+    /**
+     * Returns the literals of the operands of an n-ary operator or a quantifier, enumerating the
+     * quantifier's collection.
+     *
+     * @param c The operator or quantifier.
+     * @return The literals of its operands.
+     **/
+    protected int[] operands(FirstOrderConstraint c) {
+        if (c instanceof FirstOrderNAryConstraint) {
+            FirstOrderNAryConstraint n = (FirstOrderNAryConstraint) c;
+            int[] result = new int[n.children.size()];
+            int i = 0;
+            for (Iterator I = n.children.iterator(); I.hasNext();)
+                result[i++] = literal((FirstOrderConstraint) I.next());
+            return result;
+        }
+
+        Quantifier q = (Quantifier) c;
+        int[] result = new int[q.collection.size()];
+        int index = q.initialize();
+        int i = 0;
+        for (Iterator I = q.collection.iterator(); I.hasNext();) {
+            q.enclosingQuantificationSettings.set(index, I.next());
+            q.constraint.setQuantificationVariables(q.enclosingQuantificationSettings);
+            result[i++] = literal(q.constraint);
+        }
+        q.enclosingQuantificationSettings.removeElementAt(index);
+        return result;
+    }
+
+
+    /**
+     * Returns the literal of the ILP variable representing the given first order variable taking
+     * the given value.
+     *
+     * @param v The first order variable.
+     * @param value The value.
+     * @return The literal, or {@link #FALSE} if the variable can't take the value.
+     **/
+    protected int lookup(FirstOrderVariable v, String value) {
+        Values values = variables.get(v);
+        if (values == null)
+            throw new IllegalArgumentException("LBJava ERROR: ILPConstraintCompiler: No ILP "
+                    + "variables were created for " + v + ".");
+        for (int i = 0; i < values.values.length; ++i)
+            if (values.values[i].equals(value))
+                return 2 * values.indexes[i];
+        return FALSE;
+    }
+
+
+    /**
+     * Returns the clauses whose conjunction is equivalent to the given equality between two first
+     * order variables, each a pair of literals of which one must be true, translated as
+     * {@link FirstOrderEqualityWithVariable#propositionalize()} would translate it.
+     *
+     * @param e The equality.
+     * @return The clauses, or <code>null</code> if the equality is false.
+     **/
+    protected int[][] equalityClauses(FirstOrderEqualityWithVariable e) {
+        Values left = variables.get(e.left), right = variables.get(e.right);
+        if (left == null || right == null)
+            throw new IllegalArgumentException("LBJava ERROR: ILPConstraintCompiler: No ILP "
+                    + "variables were created for " + (left == null ? e.left : e.right) + ".");
+        if (left.values.length == 0 || right.values.length == 0)
+            return null;
+        if (left.values.length == 1 && right.values.length == 1)
+            return left.values[0].equals(right.values[0]) == e.equality ? new int[0][] : null;
+
+        int[] leftLiterals = new int[left.values.length];
+        int[] rightLiterals = new int[left.values.length];
+        int size = 0;
+        for (int i = 0; i < left.values.length; ++i)
+            for (int j = 0; j < right.values.length; ++j)
+                if (left.values[i].equals(right.values[j])) {
+                    leftLiterals[size] = 2 * left.indexes[i];
+                    rightLiterals[size++] = 2 * right.indexes[j];
+                    break;
+                }
+
+        if (size == 0)
+            return null;
+        if (e.equality && size == left.values.length && size == right.values.length)
+            --size;
+
+        int[][] result = new int[e.equality ? 2 * size : size][];
+        for (int i = 0, c = 0; i < size; ++i) {
+            int r = e.equality ? rightLiterals[i] : negate(rightLiterals[i]);
+            result[c++] = new int[] {negate(leftLiterals[i]), r};
+            if (e.equality)
+                result[c++] = new int[] {negate(r), leftLiterals[i]};
+        }
+        return result;
+    }
+
+
+    /**
+     * Negates a literal.
+     *
+     * @param l The literal.
+     * @return Its negation.
+     **/
+    public static int negate(int l) {
+        if (l == TRUE)
+            return FALSE;
+        if (l == FALSE)
+            return TRUE;
+        return l ^ 1;
+    }
+
+
+    /**
+     * Removes the constants from the first <code>n</code> literals, moving the rest to the front.
+     *
+     * @param l The literals.
+     * @param n The number of literals.
+     * @return The number of non-constant literals.
+     **/
+    private static int removeConstants(int[] l, int n) {
+        int size = 0;
+        for (int i = 0; i < n; ++i)
+            if (l[i] >= 0)
+                l[size++] = l[i];
+        return size;
+    }
+
+
+    /**
+     * Counts the {@link #TRUE} literals.
+     *
+     * @param l The literals.
+     * @param n The number of literals.
+     * @return The number of them that are {@link #TRUE}.
+     **/
+    private static int countTrue(int[] l, int n) {
+        int result = 0;
+        for (int i = 0; i < n; ++i)
+            if (l[i] == TRUE)
+                ++result;
+        return result;
+    }
+
+
+    /**
+     * Adds the rows that force at least <code>m</code> of the given literals to be true.
+     *
+     * @param l The literals.
+     * @param n The number of literals.
+     * @param m The number that must be true.
+     **/
+    protected void atLeast(int[] l, int n, int m) {
+        m -= countTrue(l, n);
+        if (m <= 0)
+            return;
+        n = removeConstants(l, n);
+        if (m > n)
+            unsatisfiable = true;
+        else if (n == 1)
+            set(l[0], true);
+        else if (m == n)
+            for (int i = 0; i < n; ++i)
+                set(l[i], true);
+        else
+            addRow(l, n, 0, 0, m, true);
+    }
+
+
+    /**
+     * Adds the row that forces two literals to be equal.
+     *
+     * @param a The first literal.
+     * @param b The second literal.
+     **/
+    protected void equal(int a, int b) {
+        if (a < 0 || b < 0) {
+            if (a < 0 && b < 0) {
+                if (a != b)
+                    unsatisfiable = true;
+            } else if (a < 0)
+                set(b, a == TRUE);
+            else
+                set(a, b == TRUE);
+            return;
+        }
+
+        // A literal always equals itself and never equals its negation.
+        if (a >> 1 == b >> 1) {
+            if (a != b)
+                unsatisfiable = true;
+            return;
+        }
+
+        int[] indexes = {a >> 1, b >> 1};
+        double[] coefficients = {1, -1};
+        double bound = 0;
+        if ((a & 1) != 0) {
+            coefficients[0] = -1;
+            --bound;
+        }
+        if ((b & 1) != 0) {
+            coefficients[1] = 1;
+            ++bound;
+        }
+        solver.addEqualityConstraint(indexes, coefficients, bound);
+        ++rows;
+    }
+
+
+    /**
+     * Adds the row that fixes the value of a literal.
+     *
+     * @param l The literal.
+     * @param value The value it must take.
+     **/
+    protected void set(int l, boolean value) {
+        if (l < 0) {
+            if ((l == TRUE) != value)
+                unsatisfiable = true;
+            return;
+        }
+
+        boolean positive = value == ((l & 1) == 0);
+        solver.addEqualityConstraint(new int[] {l >> 1}, new double[] {1}, positive ? 1 : 0);
+        ++rows;
+    }
+
+
+    /**
+     * Adds a row over the given literals and an optional extra variable, where each negated literal
+     * <code>!x</code> is written <code>1 - x</code>. A variable appearing in several literals gets
+     * a single coefficient, their sum, so that a repeated literal counts as often as it appears and
+     * a literal and its negation cancel out. If every coefficient cancels out, no row is added, and
+     * the constraint is unsatisfiable if the bound can't be met.
+     *
+     * @param l The literals.
+     * @param n The number of literals.
+     * @param extra The literal of the extra variable, which must not be negated and must not be
+     *        the variable of any of the literals.
+     * @param extraCoefficient The extra variable's coefficient, or 0 if there is no extra
+     *        variable.
+     * @param bound The bound.
+     * @param greater Whether the sum must be at least the bound rather than at most.
+     **/
+    private void addRow(int[] l, int n, int extra, double extraCoefficient, double bound,
+            boolean greater) {
+        int[] sorted = Arrays.copyOf(l, n);
+        Arrays.sort(sorted);
+        int[] indexes = new int[n + 1];
+        double[] coefficients = new double[n + 1];
+        int size = 0;
+        for (int i = 0; i < n; ++i) {
+            double coefficient = 1;
+            if ((sorted[i] & 1) != 0) {
+                coefficient = -1;
+                --bound;
+            }
+
+            // Sorting put the literals of each variable next to each other.
+            int index = sorted[i] >> 1;
+            if (size > 0 && indexes[size - 1] == index)
+                coefficients[size - 1] += coefficient;
+            else {
+                indexes[size] = index;
+                coefficients[size++] = coefficient;
+            }
+        }
+
+        if (extraCoefficient != 0) {
+            indexes[size] = extra >> 1;
+            coefficients[size++] = extraCoefficient;
+        }
+
+        int nonZero = 0;
+        for (int i = 0; i < size; ++i)
+            if (coefficients[i] != 0) {
+                indexes[nonZero] = indexes[i];
+                coefficients[nonZero++] = coefficients[i];
+            }
+
+        if (nonZero == 0) {
+            if (greater ? bound > 0 : bound < 0)
+                unsatisfiable = true;
+            return;
+        }
+
+        indexes = Arrays.copyOf(indexes, nonZero);
+        coefficients = Arrays.copyOf(coefficients, nonZero);
+        if (greater)
+            solver.addGreaterThanConstraint(indexes, coefficients, bound);
+        else
+            solver.addLessThanConstraint(indexes, coefficients, bound);
+        ++rows;
+    }
+
+
+    /**
+     * Returns a literal that is true iff at least <code>m</code> of the given literals are true,
+     * creating a variable for it if there isn't one already.
+     *
+     * @param kind {@link #AND}, {@link #OR}, or {@link #AT_LEAST}, which only affects how
+     *        variables are described.
+     * @param m The number of literals that must be true.
+     * @param l The literals.
+     * @param n The number of literals.
+     * @return The literal.
+     **/
+    protected int subexpression(int kind, int m, int[] l, int n) {
+        m -= countTrue(l, n);
+        if (m <= 0)
+            return TRUE;
+        n = removeConstants(l, n);
+        if (m > n)
+            return FALSE;
+        if (n == 1)
+            return l[0];
+
+        int[] operands = Arrays.copyOf(l, n);
+        Arrays.sort(operands);
+        if (m == n)
+            kind = AND;
+        else if (m == 1)
+            kind = OR;
+        Key key = new Key(m, operands);
+        Integer I = subexpressions.get(key);
+
+        if (I == null) {
+            int index = solver.addBooleanVariable(0);
+            if (verbose)
+                System.out.println(index + ": " + key.describe(kind));
+            I = new Integer(index);
+            subexpressions.put(key, I);
+
+            // The variable implies that at least m operands are true, and is implied by it.
+            addRow(operands, n, 2 * index, -m, 0, true);
+            addRow(operands, n, 2 * index, -(n - m + 1), m - 1, false);
+        }
+
+        return 2 * I.intValue();
+    }
+
+
+    /** The values a first order variable may take and their ILP variables' indexes. */
+    protected static class Values {
+        /** The values. */
+        final String[] values;
+        /** The index of each value's variable. */
+        final int[] indexes;
+
+
+        /**
+         * Creates the record.
+         *
+         * @param v The values.
+         * @param i The index of each value's variable.
+         **/
+        Values(String[] v, int[] i) {
+            values = v;
+            indexes = i;
+        }
+    }
+
+
+    /** Identifies a subexpression by its sorted operands and the number that must be true. */
+    protected static class Key {
+        /** The number of operands that must be true. */
+        final int m;
+        /** The operands, sorted. */
+        final int[] operands;
+
+
+        /**
+         * Creates the key.
+         *
+         * @param m The number of operands that must be true.
+         * @param o The operands, sorted.
+         **/
+        Key(int m, int[] o) {
+            this.m = m;
+            operands = o;
+        }
+
+
+        /**
+         * Describes the subexpression the way {@link ILPInference} does.
+         *
+         * @param kind {@link #AND}, {@link #OR}, or {@link #AT_LEAST}.
+         * @return The description.
+         **/
+        String describe(int kind) {
+            StringBuffer result = new StringBuffer();
+            if (kind == AT_LEAST)
+                result.append("atl").append(m).append("of");
+            for (int i = 0; i < operands.length; ++i) {
+                if (i > 0)
+                    result.append(kind == OR ? "|" : "&");
+                if ((operands[i] & 1) != 0)
+                    result.append('!');
+                result.append(operands[i] >> 1);
+            }
+            return result.toString();
+        }
+
+
+        public int hashCode() {
+            return 31 * Arrays.hashCode(operands) + m;
+        }
+
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key))
+                return false;
+            Key k = (Key) o;
+            return m == k.m && Arrays.equals(operands, k.operands);
+        }
+    }
+}
@@ -15,6 +15,7 @@ import java.util.Iterator;
 import edu.illinois.cs.cogcomp.lbjava.classify.Score;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.util.Metrics;
 import edu.illinois.cs.cogcomp.infer.ilp.ILPSolver;
 
 
@@ -38,6 +39,13 @@ public class ILPInference extends Inference {
 
     /** Keeps the next ID number for objects of this class. */
     protected static int nextID = 0;
+    /**
+     * The registry given to each new instance of this class to receive the timings of its phases,
+     * or <code>null</code>.
+     **/
+    protected static Metrics defaultMetrics;
+    /** The value of {@link #compileConstraints} given to each new instance of this class. */
+    protected static boolean defaultCompileConstraints;
 
 
     /** The identification number for this object, used in debug file names. */
@@ -78,6 +86,23 @@ public class ILPInference extends Inference {
      * problem's solution is printed to <code>STDOUT</code>.
      **/
     protected int verbosity;
+    /**
+     * Receives the time in seconds spent in each phase of inference, under the names
+     * <code>ilp.variables.seconds</code> (scoring the first order variables),
+     * <code>ilp.propositionalization.seconds</code>, <code>ilp.simplification.seconds</code>,
+     * <code>ilp.translation.seconds</code>, and <code>ilp.solution.seconds</code>, or
+     * <code>ilp.compilation.seconds</code> in place of the middle three when
+     * {@link #compileConstraints} is set, as well as the number of ILP variables created for the
+     * first order variables, under <code>ilp.variables</code>. May be <code>null</code>.
+     **/
+    protected Metrics metrics;
+    /**
+     * When set, the first order constraint is translated straight into ILP constraints by an
+     * {@link ILPConstraintCompiler} instead of being propositionalized, simplified, and then
+     * translated. This skips building a propositional copy of the constraint for every head object,
+     * but may create more temporary variables, since the constraint is not simplified first.
+     **/
+    protected boolean compileConstraints;
 
 
     /** Don't use this constructor, since it doesn't set an ILP algorithm. */
@@ -130,10 +155,84 @@ public class ILPInference extends Inference {
         super(h);
         solver = a;
         verbosity = v;
+        metrics = defaultMetrics;
+        compileConstraints = defaultCompileConstraints;
         ID = nextID++;
     }
 
 
+    /**
+     * Sets the registry given to each new instance of this class to receive the timings of its
+     * phases. Since inference objects are usually created by generated code, this is the simplest
+     * way to measure them.
+     *
+     * @param m The registry, or <code>null</code> to stop measuring new instances.
+     **/
+    public static void setDefaultMetrics(Metrics m) {
+        defaultMetrics = m;
+    }
+
+
+    /** Returns the registry given to each new instance of this class. */
+    public static Metrics getDefaultMetrics() {
+        return defaultMetrics;
+    }
+
+
+    /**
+     * Sets the registry that receives the timings of this inference's phases.
+     *
+     * @param m The registry, or <code>null</code> to stop measuring.
+     **/
+    public void setMetrics(Metrics m) {
+        metrics = m;
+    }
+
+
+    /**
+     * Sets whether new instances of this class compile their constraints straight into ILP
+     * constraints. Since inference objects are usually created by generated code, this is the
+     * simplest way to enable compilation.
+     *
+     * @param c The value of {@link #compileConstraints} for new instances.
+     **/
+    public static void setDefaultCompileConstraints(boolean c) {
+        defaultCompileConstraints = c;
+    }
+
+
+    /** Returns whether new instances of this class compile their constraints. */
+    public static boolean getDefaultCompileConstraints() {
+        return defaultCompileConstraints;
+    }
+
+
+    /**
+     * Sets whether this inference compiles its constraints straight into ILP constraints.
+     *
+     * @param c The value of {@link #compileConstraints}.
+     **/
+    public void setCompileConstraints(boolean c) {
+        compileConstraints = c;
+    }
+
+
+    /**
+     * Records the time since the given moment as the duration of the named phase, if there is a
+     * {@link #metrics} registry.
+     *
+     * @param phase The name of the phase.
+     * @param start When the phase started, according to <code>System.nanoTime()</code>.
+     * @return The current value of <code>System.nanoTime()</code>, when the next phase starts.
+     **/
+    protected long recordPhase(String phase, long start) {
+        long now = System.nanoTime();
+        if (metrics != null)
+            metrics.recordSeconds("ilp." + phase + ".seconds", now - start);
+        return now;
+    }
+
+
     /**
      * Adds a constraint to the inference.
      *
@@ -158,6 +257,10 @@ public class ILPInference extends Inference {
         solver.setMaximize(true);
         constraint.consolidateVariables(variables);
         indexMap = new HashMap();
+        ILPConstraintCompiler compiler = null;
+        if (compileConstraints)
+            compiler = new ILPConstraintCompiler(solver, verbosity >= VERBOSITY_HIGH);
+        long phaseStart = System.nanoTime();
 
         if (verbosity > VERBOSITY_NONE)
             System.out.println("variables: (" + new Date() + ")");
@@ -181,6 +284,13 @@ public class ILPInference extends Inference {
                 weights[idx] = scores[idx].score;
             int[] indexes = solver.addDiscreteVariable(weights);
 
+            if (compiler != null) {
+                String[] values = new String[scores.length];
+                for (int j = 0; j < scores.length; ++j)
+                    values[j] = scores[j].value;
+                compiler.addVariable(v, values, indexes);
+            }
+
             for (int j = 0; j < scores.length; ++j) {
                 indexMap.put(new PropositionalVariable(v.getClassifier(), v.getExample(),
                         scores[j].value), new Integer(indexes[j]));
@@ -204,36 +314,67 @@ public class ILPInference extends Inference {
             }
         }
 
-        if (verbosity > VERBOSITY_NONE)
-            System.out.println("propositionalization: (" + new Date() + ")");
-        PropositionalConstraint propositional =
-                ((FirstOrderConstraint) constraint).propositionalize();
+        if (metrics != null)
+            metrics.record("ilp.variables", indexMap.size(), "variables");
+        phaseStart = recordPhase("variables", phaseStart);
 
-        if (verbosity > VERBOSITY_NONE)
-            System.out.println("simplification: (" + new Date() + ")");
-        if (propositional instanceof PropositionalConjunction)
-            propositional = ((PropositionalConjunction) propositional).simplify(true);
-        else
-            propositional = propositional.simplify();
+        if (compiler != null) {
+            if (verbosity > VERBOSITY_NONE)
+                System.out.println("compilation: (" + new Date() + ")");
+            compiler.require((FirstOrderConstraint) constraint);
+            phaseStart = recordPhase("compilation", phaseStart);
 
-        if (propositional instanceof PropositionalConstant) {
-            if (propositional.evaluate()) {
-                tautology = true;
-                return;
-            } else {
+            if (compiler.isUnsatisfiable()) {
                 System.err.println("ILP ERROR: Unsatisfiable constraints!");
                 solver.addEqualityConstraint(new int[] {0}, new double[] {1}, 2);
+            } else if (compiler.getRows() == 0) {
+                tautology = true;
+                return;
+            }
+        } else {
+            if (verbosity > VERBOSITY_NONE)
+                System.out.println("propositionalization: (" + new Date() + ")");
+            PropositionalConstraint propositional =
+                    ((FirstOrderConstraint) constraint).propositionalize();
+
+            phaseStart = recordPhase("propositionalization", phaseStart);
+
+            if (verbosity > VERBOSITY_NONE)
+                System.out.println("simplification: (" + new Date() + ")");
+            if (propositional instanceof PropositionalConjunction)
+                propositional = ((PropositionalConjunction) propositional).simplify(true);
+            else
+                propositional = propositional.simplify();
+            phaseStart = recordPhase("simplification", phaseStart);
+
+            if (propositional instanceof PropositionalConstant) {
+                if (propositional.evaluate()) {
+                    tautology = true;
+                    return;
+                } else {
+                    System.err.println("ILP ERROR: Unsatisfiable constraints!");
+                    solver.addEqualityConstraint(new int[] {0}, new double[] {1}, 2);
+                }
             }
-        }
 
-        if (verbosity > VERBOSITY_NONE)
-            System.out.println("translation: (" + new Date() + ")");
-        topLevel = true;
-        propositional.runVisit(this);
+            if (verbosity > VERBOSITY_NONE)
+                System.out.println("translation: (" + new Date() + ")");
+            topLevel = true;
+            propositional.runVisit(this);
+
+            // Visiting a single literal only looks up its variable, so it's fixed here.
+            if (propositional instanceof PropositionalVariable
+                    || propositional instanceof PropositionalNegation)
+                solver.addEqualityConstraint(new int[] {returnIndex}, new double[] {1},
+                        returnNegation ? 0 : 1);
+            phaseStart = recordPhase("translation", phaseStart);
+        }
 
         if (verbosity > VERBOSITY_NONE)
             System.out.println("solution: (" + new Date() + ")");
-        if (!solver.solve())
+        boolean solved = solver.solve();
+        recordPhase("solution", phaseStart);
+        if (!solved)
             throw new InferenceNotOptimalException(solver, head);
         int variableIndex = 0;
         if (verbosity > VERBOSITY_NONE)
@@ -0,0 +1,41 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+
+/**
+ * A learner that can be trained on several threads at once without any locking, in the style of
+ * the "Hogwild!" algorithm of Niu, Recht, R&eacute; and Wright (2011). Threads update the shared
+ * weights directly, so when two examples learned at the same time share a feature, one update may
+ * overwrite the other. With sparse examples this is rare, and the learning lost is small compared
+ * to the cost of synchronizing every update. Only learners whose updates touch just the weights
+ * of the example's features should implement this interface; {@link AdaGrad}, for instance,
+ * updates every element of its vectors with every example, so its threads would collide on all
+ * of them. A single value that every update touches, like the bias of
+ * {@link StochasticGradientDescent}, must be updated atomically until the round ends.
+ *
+ * <p>
+ * {@link BatchTrainer} trains learners this way over pre-extracted examples when asked to with
+ * {@link BatchTrainer#setAsynchronous(boolean)}. Each round ends only when every thread is done,
+ * so {@link Learner#doneWithRound()} and {@link Learner#doneLearning()} are still called on a
+ * single thread, after all of the round's updates.
+ *
+ * @see BatchTrainer#setAsynchronous(boolean)
+ **/
+public interface AsynchronousLearner {
+    /**
+     * Prepares this learner for a round of asynchronous training, typically by allocating all the
+     * weights that will be updated so that no thread needs to grow a shared array. After this
+     * method returns, and until {@link Learner#doneWithRound()} is called,
+     * {@link Learner#learn(int[],double[],int[],double[])} may be called from several threads at
+     * once.
+     *
+     * @param numFeatures All feature indexes in the round's examples are less than this number.
+     **/
+    public void startAsynchronousRound(int numFeatures);
+}
@@ -10,22 +10,34 @@ package edu.illinois.cs.cogcomp.lbjava.learn;
 import java.io.BufferedOutputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.lang.reflect.Field;
-import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.Sort;
+import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
 import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.CompactExampleOutputStream;
 import edu.illinois.cs.cogcomp.lbjava.parse.FoldParser;
 import edu.illinois.cs.cogcomp.lbjava.parse.FoldSeparator;
 import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+import edu.illinois.cs.cogcomp.lbjava.parse.PrefetchingParser;
+import edu.illinois.cs.cogcomp.lbjava.util.Metrics;
 import edu.illinois.cs.cogcomp.lbjava.util.StudentT;
 import edu.illinois.cs.cogcomp.lbjava.util.TableFormat;
 
@@ -145,6 +157,10 @@ public class BatchTrainer {
     }
 
 
+    /** The number of examples handed to a pre-extraction thread at a time. */
+    protected static final int extractionChunkSize = 256;
+
+
     // Instance member variables.
     /** The learning classifier being trained. */
     protected Learner learner;
@@ -165,6 +181,27 @@ public class BatchTrainer {
     protected int examples;
     /** The number of features extracted during pre-extraction. */
     protected int lexiconSize;
+    /**
+     * The number of threads that extract features during pre-extraction and train folds during
+     * cross validation.
+     **/
+    protected int threads = 1;
+    /**
+     * The number of folds after which concurrent tuning abandons parameter settings that are
+     * clearly losing, or 0 to evaluate every setting on every fold.
+     **/
+    protected int abandonAfter = 2;
+    /** Whether example files are written in the compact format. */
+    protected boolean compactExamples;
+    /** Whether compact example files store feature values as <code>float</code>s. */
+    protected boolean floatValues;
+    /**
+     * Whether {@link #train(int,int,DoneWithRound)} trains an {@link AsynchronousLearner} on
+     * {@link #threads} threads at once.
+     **/
+    protected boolean asynchronous;
+    /** Receives measurements of pre-extraction and training, or <code>null</code>. */
+    protected Metrics metrics;
 
 
     // Constructors.
@@ -211,7 +248,7 @@ public class BatchTrainer {
      * @param z Whether or not the example file is compressed.
      **/
     public BatchTrainer(Learner l, String p, boolean z) {
-        this(l, new ArrayFileParser(p, z));
+        this(l, ArrayFileParser.open(p, z));
     }
 
     /**
@@ -224,7 +261,7 @@ public class BatchTrainer {
      * @param o The number of examples in between status messages on STDOUT.
      **/
     public BatchTrainer(Learner l, String p, boolean z, int o) {
-        this(l, new ArrayFileParser(p, z), o);
+        this(l, ArrayFileParser.open(p, z), o);
     }
 
     /**
@@ -238,7 +275,7 @@ public class BatchTrainer {
      * @param i The indentation spacing for status messages.
      **/
     public BatchTrainer(Learner l, String p, boolean z, int o, String i) {
-        this(l, new ArrayFileParser(p, z), o, i);
+        this(l, ArrayFileParser.open(p, z), o, i);
     }
 
     /**
@@ -297,6 +334,138 @@ public class BatchTrainer {
         return parser;
     }
 
+    /** Returns the value of {@link #threads}. */
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * <!-- setThreads(int) --> Sets the number of threads that extract features during
+     * pre-extraction. When this is greater than 1, the extractor and labeler of {@link #learner}
+     * must be safe to call from several threads at once. Cross validation over pre-extracted
+     * examples also trains up to this many folds at once, and asynchronous training (see
+     * {@link #setAsynchronous(boolean)}) uses this many threads.
+     *
+     * @param t The number of threads; must be at least 1.
+     **/
+    public void setThreads(int t) {
+        if (t < 1)
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: BatchTrainer.setThreads: The number of threads must be "
+                            + "positive, not " + t + ".");
+        threads = t;
+    }
+
+    /**
+     * <!-- setCompactExamples(boolean,boolean) --> Sets whether the examples written by
+     * {@link #preExtract(String,boolean,Lexicon.CountPolicy)} and
+     * {@link #pruneDataset(String,boolean,Lexicon.PruningPolicy,Learner)} are stored in the format
+     * written by {@link CompactExampleOutputStream}, which is typically several times smaller and
+     * is read by {@link ArrayFileParser} just like the original format.
+     *
+     * @param compact Whether to write the compact format.
+     * @param floats Whether the compact format stores feature and label values as
+     *        <code>float</code>s, losing precision in values other than 1.
+     **/
+    public void setCompactExamples(boolean compact, boolean floats) {
+        compactExamples = compact;
+        floatValues = floats;
+    }
+
+    /** Returns the value of {@link #asynchronous}. */
+    public boolean getAsynchronous() {
+        return asynchronous;
+    }
+
+    /**
+     * <!-- setAsynchronous(boolean) --> Sets whether {@link #train(int,int,DoneWithRound)} trains
+     * {@link #learner} on {@link #threads} threads at once, each applying its updates without
+     * locking as described in {@link AsynchronousLearner}. This only happens when training over
+     * pre-extracted examples; otherwise, training proceeds on a single thread as usual. Since
+     * updates made at the same time may overwrite each other, the learned weights can differ
+     * slightly from run to run.
+     *
+     * @param a Whether to train asynchronously.
+     * @throws IllegalArgumentException If <code>a</code> is <code>true</code> and
+     *         {@link #learner} is not an {@link AsynchronousLearner}.
+     **/
+    public void setAsynchronous(boolean a) {
+        if (a && !(learner instanceof AsynchronousLearner))
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: BatchTrainer.setAsynchronous: " + learner.getClass().getName()
+                            + " can't be trained asynchronously.");
+        asynchronous = a;
+    }
+
+    /**
+     * <!-- setPrefetch(int) --> Wraps {@link #parser} in a {@link PrefetchingParser}, so that
+     * examples are read and parsed on a background thread while this trainer extracts features
+     * from or learns the examples before them. Parsers of pre-extracted examples, which are
+     * already fast to read, and parsers that already prefetch are left as they are. This should
+     * be called before pre-extraction or training begins.
+     *
+     * @param c The maximum number of examples read ahead; must be positive.
+     **/
+    public void setPrefetch(int c) {
+        if (c < 1)
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: BatchTrainer.setPrefetch: The number of examples read ahead "
+                            + "must be positive, not " + c + ".");
+        if (!(parser instanceof ArrayFileParser || parser instanceof PrefetchingParser))
+            parser = new PrefetchingParser(parser, c);
+    }
+
+    /** Returns the value of {@link #metrics}. */
+    public Metrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * <!-- setMetrics(Metrics) --> Sets the registry that receives measurements of pre-extraction
+     * and training, independently of {@link #progressOutput}. Each measurement's name starts with
+     * the name of {@link #learner}, followed by:
+     *
+     * <ul>
+     * <li> <code>preExtract.examples</code>, <code>preExtract.seconds</code>, and
+     * <code>preExtract.examplesPerSecond</code> at the end of pre-extraction,
+     * <li> <code>lexiconSize</code> every {@link #progressOutput} examples during pre-extraction,
+     * at its end, and at the end of every round of training without pre-extraction,
+     * <li> <code>train.examples</code>, <code>train.roundSeconds</code>, and
+     * <code>train.examplesPerSecond</code> at the end of every round of training, and
+     * <li> <code>train.parsingSeconds</code>, <code>train.extractionSeconds</code>, and
+     * <code>train.learningSeconds</code>, the time spent in each phase of a round, unless the
+     * round is trained asynchronously or {@link #learner} overrides
+     * {@link Learner#learn(Object)}.
+     * </ul>
+     *
+     * @param m The registry, or <code>null</code> to stop taking measurements.
+     **/
+    public void setMetrics(Metrics m) {
+        metrics = m;
+    }
+
+    /** Returns the value of {@link #abandonAfter}. */
+    public int getAbandonAfter() {
+        return abandonAfter;
+    }
+
+    /**
+     * <!-- setAbandonAfter(int) --> Sets the number of folds after which
+     * {@link #tune(Learner.Parameters[],int[],int,FoldParser.SplitPolicy,double,TestingMetric)}
+     * stops evaluating a parameter setting when tuning concurrently, if the confidence interval on
+     * its performance so far lies entirely below the confidence interval of the best setting so
+     * far.
+     *
+     * @param f The number of folds, which must be at least 2, or 0 to never abandon a setting.
+     **/
+    public void setAbandonAfter(int f) {
+        if (f != 0 && f < 2)
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: BatchTrainer.setAbandonAfter: The number of folds must be 0 "
+                            + "or at least 2, not " + f + ".");
+        abandonAfter = f;
+    }
+
 
     /**
      * <!-- setIsTraining(boolean) --> Sets the static <code>isTraining</code> flag inside
@@ -404,6 +573,11 @@ public class BatchTrainer {
      * method is reading the existing file.
      *
      * <p>
+     * If {@link #threads} is greater than 1, features are extracted on that many threads. The
+     * examples are still read from the parser and written in order, and the lexicon is built in the
+     * same order, so the results are identical to those produced by a single thread.
+     *
+     * <p>
      * Note that this method does <i>not</i> write the feature lexicon it produces to disk.
      *
      * @param exampleFile The full path to a file into which examples will be written, or
@@ -432,15 +606,11 @@ public class BatchTrainer {
         if (exampleFile != null) {
             fExampleFile = new File(exampleFile);
             if (fExampleFile.exists()) {
-                int lastSlash = exampleFile.lastIndexOf(File.separatorChar);
-
+                // In the same directory, so that it can be moved into place.
                 try {
-                    if (lastSlash == -1)
-                        fTempFile = File.createTempFile("LBJ", null);
-                    else
-                        fTempFile =
-                                File.createTempFile("LBJ", null,
-                                        new File(exampleFile.substring(0, lastSlash)));
+                    fTempFile =
+                            File.createTempFile("LBJ", null, fExampleFile.getAbsoluteFile()
+                                    .getParentFile());
                 } catch (Exception e) {
                     System.err
                             .println("LBJava ERROR: BatchTrainer.preExtract: Can't create temporary "
@@ -480,60 +650,74 @@ public class BatchTrainer {
                 eos = new ExceptionlessOutputStream(baos);
         }
 
+        if (compactExamples)
+            eos = new ExceptionlessOutputStream(new CompactExampleOutputStream(eos, floatValues));
+
         // Write examples to the output stream.
         boolean alreadyExtracted = parser instanceof ArrayFileParser;
         if (alreadyExtracted)
             ((ArrayFileParser) parser).setIncludePruned(true);
 
-        for (Object example = parser.next(); example != null; example = parser.next()) {
-            if (progressOutput > 0 && examples % progressOutput == 0)
-                System.out.println("  " + learner.name + ", pre-extract: " + messageIndent
-                        + examples + " examples at " + new Date());
-
-            if (example == FoldSeparator.separator)
-                eos.writeInt(-1);
-            else {
-                ++examples;
-                Object[] exampleArray =
-                        alreadyExtracted ? (Object[]) example : preExtractLearner
-                                .getExampleArray(example);
-
-                int[] featureIndexes = (int[]) exampleArray[0];
-                double[] featureValues = (double[]) exampleArray[1];
-                int[] labelIndexes = (int[]) exampleArray[2];
-                double[] labelValues = (double[]) exampleArray[3];
+        long start = System.currentTimeMillis();
+        long startNanos = System.nanoTime();
+        if (threads > 1 && !alreadyExtracted)
+            parallelPreExtract(preExtractLearner, eos);
+        else {
+            for (Object example = parser.next(); example != null; example = parser.next()) {
+                if (progressOutput > 0 && examples % progressOutput == 0) {
+                    System.out.println("  " + learner.name + ", pre-extract: " + messageIndent
+                            + examples + " examples at " + new Date());
+                    recordLexiconSize(preExtractLearner);
+                }
 
-                if (alreadyExtracted && countPolicy != Lexicon.CountPolicy.none) {
-                    int labelIndex =
-                            countPolicy == Lexicon.CountPolicy.perClass ? labelIndexes[0] : -1;
-                    for (int i = 0; i < featureIndexes.length; ++i) {
-                        lexicon.lookup(lexicon.lookupKey(featureIndexes[i]), true, labelIndex);
+                if (example == FoldSeparator.separator)
+                    eos.writeInt(-1);
+                else {
+                    ++examples;
+                    Object[] exampleArray =
+                            alreadyExtracted ? (Object[]) example : preExtractLearner
+                                    .getExampleArray(example);
+
+                    int[] featureIndexes = (int[]) exampleArray[0];
+                    double[] featureValues = (double[]) exampleArray[1];
+                    int[] labelIndexes = (int[]) exampleArray[2];
+                    double[] labelValues = (double[]) exampleArray[3];
+
+                    if (alreadyExtracted && countPolicy != Lexicon.CountPolicy.none) {
+                        int labelIndex =
+                                countPolicy == Lexicon.CountPolicy.perClass ? labelIndexes[0] : -1;
+                        for (int i = 0; i < featureIndexes.length; ++i) {
+                            lexicon.lookup(lexicon.lookupKey(featureIndexes[i]), true, labelIndex);
+                        }
                     }
-                }
 
-                writeExample(eos, featureIndexes, featureValues, labelIndexes, labelValues, lexicon);
+                    writeExample(eos, featureIndexes, featureValues, labelIndexes, labelValues, lexicon);
+                }
             }
         }
 
-        if (progressOutput > 0)
+        if (progressOutput > 0) {
+            long elapsed = Math.max(1, System.currentTimeMillis() - start);
             System.out.println("  " + learner.name + ", pre-extract: " + messageIndent + examples
-                    + " examples at " + new Date());
+                    + " examples at " + new Date() + " (" + (examples * 1000L / elapsed)
+                    + " examples per second)");
+        }
+
+        if (metrics != null) {
+            long elapsed = System.nanoTime() - startNanos;
+            metrics.record(metricName("preExtract.examples"), examples, "examples");
+            metrics.recordSeconds(metricName("preExtract.seconds"), elapsed);
+            metrics.record(metricName("preExtract.examplesPerSecond"), examples * 1e9
+                    / Math.max(1, elapsed), "examples/s");
+            recordLexiconSize(preExtractLearner);
+        }
 
         parser.close();
         eos.close();
 
         if (copy) {
-            try {
-                FileChannel in = (new FileInputStream(fTempFile)).getChannel();
-                FileChannel out = (new FileOutputStream(fExampleFile)).getChannel();
-                in.transferTo(0, fTempFile.length(), out);
-                in.close();
-                out.close();
-            } catch (Exception e) {
-                System.err.println("LBJava ERROR: Can't copy example file:");
-                e.printStackTrace();
-                System.exit(1);
-            }
+            replaceExampleFile(fTempFile, fExampleFile);
+            fTempFile = fExampleFile;
         }
 
         setIsTraining(false);
@@ -541,7 +725,7 @@ public class BatchTrainer {
 
         // Set up a new parser to read the pre-extracted examples.
         if (fTempFile != null)
-            parser = new ArrayFileParser(fTempFile.getPath(), zip);
+            parser = ArrayFileParser.open(fTempFile.getPath(), zip);
         else
             parser = new ArrayFileParser(baos.toByteArray(), zip);
 
@@ -550,6 +734,196 @@ public class BatchTrainer {
     }
 
 
+    /**
+     * <!-- parallelPreExtract(Learner,ExceptionlessOutputStream) --> Reads examples from
+     * {@link #parser} in chunks and extracts their labels and features on {@link #threads} threads,
+     * then converts and writes the extracted examples on this thread in the order they were read.
+     * Only the labeler and extractor are called from the other threads; the parser and the
+     * lexicons are only accessed from this one.
+     *
+     * @param preExtractLearner The learner whose lexicons index the extracted features.
+     * @param eos The stream to which the examples are written.
+     **/
+    protected void parallelPreExtract(Learner preExtractLearner, ExceptionlessOutputStream eos) {
+        final Classifier labeler = preExtractLearner.getLabeler();
+        final Classifier extractor = preExtractLearner.getExtractor();
+        Lexicon lexicon = preExtractLearner.getLexicon();
+        ExecutorService pool = newPool(threads, learner.name + "$extractor");
+        LinkedList<Future<Object[]>> inFlight = new LinkedList<Future<Object[]>>();
+        boolean parsed = false;
+
+        try {
+            while (true) {
+                // Keep every thread busy with a chunk waiting behind it.
+                while (!parsed && inFlight.size() < 2 * threads) {
+                    final Object[] chunk = new Object[extractionChunkSize];
+                    int n = 0;
+                    while (n < chunk.length) {
+                        Object example = parser.next();
+                        if (example == null) {
+                            parsed = true;
+                            break;
+                        }
+                        chunk[n++] = example;
+                    }
+
+                    if (n == 0)
+                        break;
+                    final int size = n;
+                    inFlight.add(pool.submit(new Callable<Object[]>() {
+                        public Object[] call() {
+                            Object[] result = new Object[size];
+                            for (int i = 0; i < size; ++i)
+                                result[i] =
+                                        chunk[i] == FoldSeparator.separator ? chunk[i]
+                                                : new FeatureVector[] {labeler.classify(chunk[i]),
+                                                        extractor.classify(chunk[i])};
+                            return result;
+                        }
+                    }));
+                }
+
+                if (inFlight.isEmpty())
+                    break;
+                Object[] extracted = await(inFlight.removeFirst());
+
+                for (int i = 0; i < extracted.length; ++i) {
+                    if (progressOutput > 0 && examples % progressOutput == 0) {
+                        System.out.println("  " + learner.name + ", pre-extract: "
+                                + messageIndent + examples + " examples at " + new Date());
+                        recordLexiconSize(preExtractLearner);
+                    }
+
+                    if (extracted[i] == FoldSeparator.separator)
+                        eos.writeInt(-1);
+                    else {
+                        ++examples;
+                        FeatureVector[] vectors = (FeatureVector[]) extracted[i];
+                        Object[] exampleArray =
+                                preExtractLearner.getExampleArray(vectors[0], vectors[1], true);
+                        writeExample(eos, (int[]) exampleArray[0], (double[]) exampleArray[1],
+                                (int[]) exampleArray[2], (double[]) exampleArray[3], lexicon);
+                    }
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     * <!-- metricName(String) --> Prefixes the name of a measurement with the name of
+     * {@link #learner}.
+     *
+     * @param name The name of the measurement.
+     * @return The full name.
+     **/
+    protected String metricName(String name) {
+        return learner.name + "." + name;
+    }
+
+
+    /**
+     * <!-- recordLexiconSize(Learner) --> Records the number of features in the given learner's
+     * feature lexicon in {@link #metrics}, if there is one.
+     *
+     * @param l The learner whose lexicon is being built.
+     **/
+    protected void recordLexiconSize(Learner l) {
+        if (metrics != null && l.getCurrentLexicon() != null)
+            metrics.record(metricName("lexiconSize"), l.getCurrentLexicon().size(), "features");
+    }
+
+
+    /**
+     * <!-- learnsExampleArrays() --> Determines whether {@link #learner} learns an example object
+     * simply by converting it with {@link Learner#getExampleArray(Object)} and learning the
+     * resulting arrays, in which case the two steps can be timed separately. This is the case when
+     * the learner inherits {@link Learner#learn(Object)}, and also when it is a learner generated
+     * by the LBJava compiler from a learning algorithm that inherits it. A generated learner
+     * overrides <code>learn(Object)</code> only to check the example's type and hand it to the
+     * learner's shared instance when it is a clone, and its <code>getExampleArray(Object)</code>
+     * and <code>learn(int[],double[],int[],double[])</code> hand themselves over the same way.
+     *
+     * @return Whether the learning of {@link #learner} can be split into extraction and learning.
+     **/
+    protected boolean learnsExampleArrays() {
+        try {
+            Class declaring = learnerClass.getMethod("learn", Object.class).getDeclaringClass();
+            if (declaring.equals(Learner.class))
+                return true;
+            return declaring.equals(learnerClass) && isGenerated(learnerClass)
+                    && learnerClass.getSuperclass().getMethod("learn", Object.class)
+                            .getDeclaringClass().equals(Learner.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * <!-- isGenerated(Class) --> Determines whether the given learner class was generated by the
+     * LBJava compiler, which gives every learner it generates an <code>isClone</code> flag and an
+     * <code>unclone()</code> method that clears it.
+     *
+     * @param c The learner's class.
+     * @return Whether the class declares both.
+     **/
+    protected static boolean isGenerated(Class c) {
+        try {
+            return c.getDeclaredField("isClone").getType().equals(boolean.class)
+                    && c.getDeclaredMethod("unclone") != null;
+        } catch (NoSuchFieldException e) {
+            return false;
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+
+    /**
+     * <!-- newPool(int,String) --> Creates a fixed size pool of daemon threads.
+     *
+     * @param n The number of threads.
+     * @param name The name given to each thread.
+     * @return The pool.
+     **/
+    protected static ExecutorService newPool(int n, final String name) {
+        return Executors.newFixedThreadPool(n, new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread t = new Thread(r, name);
+                t.setDaemon(true);
+                return t;
+            }
+        });
+    }
+
+
+    /**
+     * <!-- await(Future) --> Waits for the given task to finish, rethrowing anything it threw.
+     *
+     * @param task The task.
+     * @return The task's result.
+     **/
+    protected static <T> T await(Future<T> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LBJava ERROR: BatchTrainer: Interrupted while waiting for "
+                    + "a worker thread.", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException)
+                throw (RuntimeException) cause;
+            if (cause instanceof Error)
+                throw (Error) cause;
+            throw new RuntimeException(cause);
+        }
+    }
+
+
     /**
      * <!-- fillInSizes() --> This method sets the {@link #examples} and {@link #lexiconSize}
      * variables by querying {@link #parser} and {@link #learner} respectively. It sets
@@ -668,15 +1042,11 @@ public class BatchTrainer {
         if (exampleFile != null) {
             fExampleFile = new File(exampleFile);
             if (fExampleFile.exists()) {
-                int lastSlash = exampleFile.lastIndexOf(File.separatorChar);
-
+                // In the same directory, so that it can be moved into place.
                 try {
-                    if (lastSlash == -1)
-                        fTempFile = File.createTempFile("LBJ", null);
-                    else
-                        fTempFile =
-                                File.createTempFile("LBJ", null,
-                                        new File(exampleFile.substring(0, lastSlash)));
+                    fTempFile =
+                            File.createTempFile("LBJ", null, fExampleFile.getAbsoluteFile()
+                                    .getParentFile());
                 } catch (Exception e) {
                     System.err
                             .println("LBJava ERROR: BatchTrainer.preExtract: Can't create temporary "
@@ -716,6 +1086,9 @@ public class BatchTrainer {
                 eos = new ExceptionlessOutputStream(baos);
         }
 
+        if (compactExamples)
+            eos = new ExceptionlessOutputStream(new CompactExampleOutputStream(eos, floatValues));
+
         // Write examples to the output stream.
         examples = 0;
 
@@ -772,17 +1145,8 @@ public class BatchTrainer {
         eos.close();
 
         if (copy) {
-            try {
-                FileChannel in = (new FileInputStream(fTempFile)).getChannel();
-                FileChannel out = (new FileOutputStream(fExampleFile)).getChannel();
-                in.transferTo(0, fTempFile.length(), out);
-                in.close();
-                out.close();
-            } catch (Exception e) {
-                System.err.println("LBJava ERROR: Can't copy example file:");
-                e.printStackTrace();
-                System.exit(1);
-            }
+            replaceExampleFile(fTempFile, fExampleFile);
+            fTempFile = fExampleFile;
         }
 
         lexiconSize = lexicon.getCutoff();
@@ -790,12 +1154,31 @@ public class BatchTrainer {
 
         // Set up a new parser to read the pre-extracted and pruned examples.
         if (fTempFile != null)
-            parser = new ArrayFileParser(fTempFile.getPath(), zip);
+            parser = ArrayFileParser.open(fTempFile.getPath(), zip);
         else
             parser = new ArrayFileParser(baos.toByteArray(), zip);
     }
 
 
+    /**
+     * <!-- replaceExampleFile(File,File) --> Moves a newly written example file over an existing
+     * one. The existing file is replaced rather than truncated and rewritten, since a parser may
+     * still map it; such a mapping keeps the old contents until it is released.
+     *
+     * @param written The newly written example file.
+     * @param existing The example file it replaces.
+     **/
+    private static void replaceExampleFile(File written, File existing) {
+        try {
+            Files.move(written.toPath(), existing.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            System.err.println("LBJava ERROR: Can't replace example file '" + existing + "':");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
     /**
      * <!-- interface DoneWithRound --> Provides access to a hook into {@link #train(int)} so that
      * additional processing can be performed at the end of each round. This processing supplements
@@ -868,29 +1251,54 @@ public class BatchTrainer {
         } else
             setIsTraining(true);
 
+        boolean inParallel =
+                asynchronous && threads > 1 && lexiconSize > 0 && parser instanceof ArrayFileParser;
+        boolean timePhases = metrics != null && !inParallel && learnsExampleArrays();
+
         for (int i = start; i <= rounds; ++i) {
             int examples = 0;
-
-            for (Object example = parser.next(); example != null; example = parser.next()) {
-                if (example == FoldSeparator.separator)
-                    continue;
-
-                if (progressOutput > 0 && examples % progressOutput == 0) {
-                    System.out.print("  " + learner.name + ": " + messageIndent);
-                    if (rounds != 1)
-                        System.out.print("Round " + i + ", ");
-                    System.out.println(examples + " examples processed at " + new Date());
+            long roundStart = System.nanoTime(), extracting = 0, learning = 0;
+
+            if (inParallel)
+                examples = learnAsynchronously(i, rounds);
+            else
+                for (Object example = parser.next(); example != null; example = parser.next()) {
+                    if (example == FoldSeparator.separator)
+                        continue;
+
+                    if (progressOutput > 0 && examples % progressOutput == 0)
+                        reportProgress(i, rounds, examples);
+
+                    if (timePhases) {
+                        long t0 = System.nanoTime();
+                        Object[] exampleArray = learner.getExampleArray(example);
+                        long t1 = System.nanoTime();
+                        learner.learn((int[]) exampleArray[0], (double[]) exampleArray[1],
+                                (int[]) exampleArray[2], (double[]) exampleArray[3]);
+                        extracting += t1 - t0;
+                        learning += System.nanoTime() - t1;
+                    } else
+                        learner.learn(example);
+                    ++examples;
                 }
 
-                learner.learn(example);
-                ++examples;
-            }
-
-            if (progressOutput > 0) {
-                System.out.print("  " + learner.name + ": " + messageIndent);
-                if (rounds != 1)
-                    System.out.print("Round " + i + ", ");
-                System.out.println(examples + " examples processed at " + new Date());
+            if (progressOutput > 0)
+                reportProgress(i, rounds, examples);
+
+            if (metrics != null) {
+                long elapsed = System.nanoTime() - roundStart;
+                metrics.record(metricName("train.examples"), examples, "examples");
+                metrics.recordSeconds(metricName("train.roundSeconds"), elapsed);
+                metrics.record(metricName("train.examplesPerSecond"), examples * 1e9
+                        / Math.max(1, elapsed), "examples/s");
+                if (timePhases) {
+                    metrics.recordSeconds(metricName("train.parsingSeconds"), elapsed
+                            - extracting - learning);
+                    metrics.recordSeconds(metricName("train.extractionSeconds"), extracting);
+                    metrics.recordSeconds(metricName("train.learningSeconds"), learning);
+                }
+                if (lexiconSize == 0)
+                    recordLexiconSize(learner);
             }
 
             parser.reset();
@@ -904,6 +1312,84 @@ public class BatchTrainer {
     }
 
 
+    /**
+     * <!-- reportProgress(int,int,int) --> Prints the number of examples processed so far in a
+     * round of training.
+     *
+     * @param round The 1-based number of the round.
+     * @param rounds The total number of rounds.
+     * @param examples The number of examples processed so far in the round.
+     **/
+    protected void reportProgress(int round, int rounds, int examples) {
+        System.out.print("  " + learner.name + ": " + messageIndent);
+        if (rounds != 1)
+            System.out.print("Round " + round + ", ");
+        System.out.println(examples + " examples processed at " + new Date());
+    }
+
+
+    /**
+     * <!-- learnAsynchronously(int,int) --> Makes one pass over {@link #parser}, training
+     * {@link #learner} on {@link #threads} threads at once as described in
+     * {@link AsynchronousLearner}. Examples are read in chunks on this thread and each chunk is
+     * learned by whichever thread is free. This method returns only after every chunk has been
+     * learned, so that the round ends at the same point for every thread.
+     *
+     * @param round The 1-based number of the round.
+     * @param rounds The total number of rounds.
+     * @return The number of examples learned.
+     **/
+    protected int learnAsynchronously(int round, int rounds) {
+        ((AsynchronousLearner) learner).startAsynchronousRound(lexiconSize);
+        final Learner roundLearner = learner;
+        ExecutorService pool = newPool(threads, learner.name + "$learner");
+        LinkedList<Future<?>> inFlight = new LinkedList<Future<?>>();
+        boolean parsed = false;
+        int examples = 0;
+
+        try {
+            while (!parsed || !inFlight.isEmpty()) {
+                // Keep every thread busy with a chunk waiting behind it.
+                while (!parsed && inFlight.size() < 2 * threads) {
+                    final Object[] chunk = new Object[extractionChunkSize];
+                    int n = 0;
+                    while (n < chunk.length) {
+                        Object example = parser.next();
+                        if (example == null) {
+                            parsed = true;
+                            break;
+                        }
+                        if (example == FoldSeparator.separator)
+                            continue;
+
+                        if (progressOutput > 0 && examples % progressOutput == 0)
+                            reportProgress(round, rounds, examples);
+                        chunk[n++] = example;
+                        ++examples;
+                    }
+
+                    if (n == 0)
+                        break;
+                    final int size = n;
+                    inFlight.add(pool.submit(new Runnable() {
+                        public void run() {
+                            for (int i = 0; i < size; ++i)
+                                roundLearner.learn(chunk[i]);
+                        }
+                    }));
+                }
+
+                if (!inFlight.isEmpty())
+                    await(inFlight.removeFirst());
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        return examples;
+    }
+
+
     /**
      * <!-- crossValidation(int[],int,FoldParser.SplitPolicy,double,TestingMetric,boolean) -->
      * Performs cross validation, computing a confidence interval on the performance of the learner
@@ -968,31 +1454,35 @@ public class BatchTrainer {
         Lexicon labelLexicon = learner.getLabelLexicon();
 
         // Train and get testing performances for each fold.
-        for (int i = 0; i < k; foldParser.setPivot(++i)) {
-            if (statusMessages || progressOutput > 0)
-                System.out.println("  " + learner.name + ": " + messageIndent
-                        + "Training against subset " + i + " at " + new Date());
-            final int fold = i;
-            messageIndent += "  ";
-
-            train(totalRounds, new DoneWithRound() {
-                int r = 0;
-
-                public void doneWithRound(int round) {
-                    if (round < totalRounds && rounds[r] == round)
-                        performances[r++][fold] =
-                                crossValidationTesting(foldParser, metric, true, false);
-                }
-            });
+        if (threads > 1 && k > 1 && foldParser.getParser() instanceof ArrayFileParser)
+            parallelCrossValidation(foldParser, rounds, metric, statusMessages, performances);
+        else {
+            for (int i = 0; i < k; foldParser.setPivot(++i)) {
+                if (statusMessages || progressOutput > 0)
+                    System.out.println("  " + learner.name + ": " + messageIndent
+                            + "Training against subset " + i + " at " + new Date());
+                final int fold = i;
+                messageIndent += "  ";
+
+                train(totalRounds, new DoneWithRound() {
+                    int r = 0;
+
+                    public void doneWithRound(int round) {
+                        if (round < totalRounds && rounds[r] == round)
+                            performances[r++][fold] =
+                                    crossValidationTesting(foldParser, metric, true, false);
+                    }
+                });
 
-            performances[rounds.length - 1][i] =
-                    crossValidationTesting(foldParser, metric, false, statusMessages);
-            messageIndent = messageIndent.substring(2);
+                performances[rounds.length - 1][i] =
+                        crossValidationTesting(foldParser, metric, false, statusMessages);
+                messageIndent = messageIndent.substring(2);
 
-            learner.forget();
-            if (labelLexicon != null && labelLexicon.size() > 0
-                    && learner.getLabelLexicon().size() == 0)
-                learner.setLabelLexicon(labelLexicon);
+                learner.forget();
+                if (labelLexicon != null && labelLexicon.size() > 0
+                        && learner.getLabelLexicon().size() == 0)
+                    learner.setLabelLexicon(labelLexicon);
+            }
         }
 
         parser = foldParser.getParser();
@@ -1023,6 +1513,116 @@ public class BatchTrainer {
     }
 
 
+    /**
+     * <!-- parallelCrossValidation(FoldParser,int[],TestingMetric,boolean,double[][]) --> Trains
+     * and tests a clone of {@link #learner} on each fold concurrently, using up to
+     * {@link #threads} threads. Each fold reads the pre-extracted examples through its own
+     * {@link ArrayFileParser#duplicate() duplicate} of the example parser. {@link #learner} itself
+     * is left untouched.
+     *
+     * @param foldParser The cross validation parser that splits up the pre-extracted data.
+     * @param rounds The sorted training rounds after which performance should be evaluated.
+     * @param metric The metric used to evaluate the performance of the learner.
+     * @param statusMessages If set <code>true</code> status messages will be produced, even if
+     *        {@link #progressOutput} is zero.
+     * @param performances Receives the performance after <code>rounds[r]</code> rounds of
+     *        training on fold <code>i</code> in <code>performances[r][i]</code>.
+     **/
+    protected void parallelCrossValidation(FoldParser foldParser, int[] rounds,
+            TestingMetric metric, boolean statusMessages, double[][] performances) {
+        int k = performances[0].length;
+        ExecutorService pool = newPool(Math.min(threads, k), "LBJava cross validation");
+        Future<?>[] tasks = new Future<?>[k];
+
+        try {
+            for (int i = 0; i < k; ++i)
+                tasks[i] =
+                        pool.submit(foldTask(cloneSharingLexicon(), foldParser, i, rounds, metric,
+                                statusMessages, performances));
+            for (int i = 0; i < k; ++i)
+                await(tasks[i]);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+
+    /**
+     * <!-- cloneSharingLexicon() --> Clones {@link #learner} without copying its feature lexicon,
+     * which the clone shares instead. Training on pre-extracted examples never modifies the
+     * lexicon, so many such clones may be trained at once.
+     *
+     * @return The clone.
+     **/
+    protected Learner cloneSharingLexicon() {
+        Lexicon lexicon = learner.lexicon;
+        learner.lexicon = null;
+        try {
+            Learner result = (Learner) learner.clone();
+            result.lexicon = lexicon;
+            return result;
+        } finally {
+            learner.lexicon = lexicon;
+        }
+    }
+
+
+    /**
+     * <!-- foldTask(Learner,FoldParser,int,int[],TestingMetric,boolean,double[][]) --> Creates a
+     * task that performs one iteration of cross validation over pre-extracted examples: it trains
+     * the given learner on every fold except one and tests it on that fold.
+     *
+     * @param foldLearner The learner to train, which must not have done any learning.
+     * @param foldParser The cross validation parser that splits up the pre-extracted data. The
+     *        task reads the examples through a parser of its own with the same split.
+     * @param fold The index of the fold to test on.
+     * @param rounds The sorted training rounds after which performance should be evaluated.
+     * @param metric The metric used to evaluate the performance of the learner.
+     * @param statusMessages If set <code>true</code> status messages will be produced, even if
+     *        {@link #progressOutput} is zero.
+     * @param performances Receives the performance after <code>rounds[r]</code> rounds of
+     *        training in <code>performances[r][fold]</code>.
+     * @return The task.
+     **/
+    protected Runnable foldTask(Learner foldLearner, FoldParser foldParser, final int fold,
+            final int[] rounds, final TestingMetric metric, final boolean statusMessages,
+            final double[][] performances) {
+        final int totalRounds = rounds[rounds.length - 1];
+        final FoldParser foldExamples =
+                new FoldParser(foldParser, ((ArrayFileParser) foldParser.getParser()).duplicate());
+        foldExamples.setPivot(fold);
+
+        final BatchTrainer trainer =
+                new BatchTrainer(foldLearner, foldExamples, progressOutput, messageIndent + "  ");
+        trainer.examples = examples;
+        trainer.lexiconSize = lexiconSize;
+
+        return new Runnable() {
+            public void run() {
+                if (statusMessages || progressOutput > 0)
+                    System.out.println("  " + learner.name + ": " + messageIndent
+                            + "Training against subset " + fold + " at " + new Date());
+
+                trainer.train(totalRounds, new DoneWithRound() {
+                    int r = 0;
+
+                    public void doneWithRound(int round) {
+                        if (round < totalRounds && rounds[r] == round)
+                            performances[r++][fold] =
+                                    trainer.crossValidationTesting(foldExamples, metric, true,
+                                            false);
+                    }
+                });
+
+                performances[rounds.length - 1][fold] =
+                        trainer.crossValidationTesting(foldExamples, metric, false,
+                                statusMessages);
+                foldExamples.close();
+            }
+        };
+    }
+
+
     /**
      * <!-- crossValidationTesting(FoldParser,TestingMetric,boolean,boolean) --> Tests the learner
      * as a subroutine inside cross validation.
@@ -1114,23 +1714,48 @@ public class BatchTrainer {
         int best = -1;
         String[] parameterStrings = new String[parameters.length];
         double[][] scores = new double[parameters.length][];
+        boolean[] abandoned = new boolean[parameters.length];
+        double[][][] parallelResults = null;
+        if (threads > 1 && parser instanceof ArrayFileParser) {
+            if (!(k > 1 || splitPolicy == FoldParser.SplitPolicy.manual))
+                throw new IllegalArgumentException(
+                        "LBJava ERROR: BatchTrainer.tune: if the data splitting "
+                                + "policy is not 'Manual', the number of folds must be greater "
+                                + "than 1.");
+            if (splitPolicy == FoldParser.SplitPolicy.manual)
+                k = -1;
+            Arrays.sort(rounds);
+
+            FoldParser foldParser;
+            if (examples > 0)
+                foldParser = new FoldParser(parser, k, splitPolicy, 0, false, examples);
+            else
+                foldParser = new FoldParser(parser, k, splitPolicy, 0, false);
+            parallelResults =
+                    parallelTune(parameters, rounds, foldParser, alpha, metric, abandoned);
+        }
 
         for (int i = 0; i < parameters.length; ++i) {
             parameterStrings[i] = parameters[i].nonDefaultString();
+            double[][] results;
 
-            // Status message.
-            if (progressOutput > 0)
-                System.out.println("  " + learner.name + ": " + messageIndent
-                        + "Trying parameters (" + parameterStrings[i] + ")");
-
-            learner.setParameters(parameters[i]);
-            messageIndent += "  ";
-            double[][] results = crossValidation(rounds, k, splitPolicy, alpha, metric, false);
-            messageIndent = messageIndent.substring(2);
+            if (parallelResults != null)
+                results = parallelResults[i];
+            else {
+                // Status message.
+                if (progressOutput > 0)
+                    System.out.println("  " + learner.name + ": " + messageIndent
+                            + "Trying parameters (" + parameterStrings[i] + ")");
+
+                learner.setParameters(parameters[i]);
+                messageIndent += "  ";
+                results = crossValidation(rounds, k, splitPolicy, alpha, metric, false);
+                messageIndent = messageIndent.substring(2);
+            }
 
             // Update best scores, rounds, and parameters.
             int bestRounds = 0;
-            if (best == -1 || results[0][0] > scores[best][0])
+            if (!abandoned[i] && (best == -1 || results[0][0] > scores[best][0]))
                 best = i;
             scores[i] = results[0];
 
@@ -1138,7 +1763,7 @@ public class BatchTrainer {
                 if (results[j][0] > scores[i][0]) {
                     bestRounds = j;
                     scores[i] = results[j];
-                    if (results[j][0] > scores[best][0])
+                    if (!abandoned[i] && results[j][0] > scores[best][0])
                         best = i;
                 }
 
@@ -1188,6 +1813,116 @@ public class BatchTrainer {
     }
 
 
+    /**
+     * <!-- parallelTune(Learner.Parameters[],int[],FoldParser,double,TestingMetric,boolean[]) -->
+     * Cross validates every parameter setting concurrently over the pre-extracted examples, running
+     * up to {@link #threads} folds of any settings at once. Every setting's first fold is evaluated
+     * before any setting's second fold, and so on, so that after {@link #abandonAfter} folds, each
+     * setting whose confidence interval lies entirely below that of the setting with the best
+     * average performance so far can be abandoned. The confidence intervals of abandoned settings
+     * are computed from the folds they completed.
+     *
+     * @param parameters An array of parameter settings objects.
+     * @param rounds The sorted training rounds after which performance of the learner should be
+     *        evaluated on the testing data.
+     * @param foldParser The cross validation parser that splits up the pre-extracted data.
+     * @param alpha The fraction of the distribution to leave outside the confidence interval.
+     * @param metric A metric with which to evaluate the learner.
+     * @param abandoned Receives <code>true</code> for each abandoned setting.
+     * @return An array of results for each setting, in the form returned by cross validation.
+     **/
+    protected double[][][] parallelTune(Learner.Parameters[] parameters, int[] rounds,
+            FoldParser foldParser, double alpha, TestingMetric metric, boolean[] abandoned) {
+        int k = foldParser.getK();
+        int P = parameters.length;
+        double[][][] performances = new double[P][rounds.length][k];
+        int[] folds = new int[P];
+        Arrays.fill(folds, k);
+
+        if (progressOutput > 0)
+            for (int i = 0; i < P; ++i)
+                System.out.println("  " + learner.name + ": " + messageIndent
+                        + "Trying parameters " + (i + 1) + " (" + parameters[i].nonDefaultString()
+                        + ")");
+
+        ExecutorService pool = newPool(threads, "LBJava tuning");
+        Future<?>[] tasks = new Future<?>[P];
+
+        try {
+            for (int j = 0; j < k; ++j) {
+                for (int i = 0; i < P; ++i) {
+                    if (abandoned[i])
+                        continue;
+                    Learner foldLearner = cloneSharingLexicon();
+                    foldLearner.setParameters(parameters[i]);
+                    tasks[i] =
+                            pool.submit(foldTask(foldLearner, foldParser, j, rounds, metric,
+                                    false, performances[i]));
+                }
+
+                for (int i = 0; i < P; ++i)
+                    if (!abandoned[i])
+                        await(tasks[i]);
+
+                if (abandonAfter > 0 && j + 1 >= abandonAfter && j + 1 < k)
+                    abandonLosers(performances, j + 1, alpha, abandoned, folds);
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+
+        double[][][] results = new double[P][rounds.length][];
+        for (int i = 0; i < P; ++i)
+            for (int r = 0; r < rounds.length; ++r)
+                results[i][r] =
+                        StudentT.confidenceInterval(Arrays.copyOf(performances[i][r], folds[i]),
+                                alpha);
+        return results;
+    }
+
+
+    /**
+     * <!-- abandonLosers(double[][][],int,double,boolean[],int[]) --> Marks as abandoned every
+     * setting whose confidence interval, after the rounds of training that gave its best average
+     * performance so far, lies entirely below that of the setting with the best average.
+     *
+     * @param performances The performances of each setting after each round on each fold.
+     * @param n The number of folds completed by the settings that haven't been abandoned.
+     * @param alpha The fraction of the distribution to leave outside the confidence interval.
+     * @param abandoned Whether each setting has been abandoned; updated by this method.
+     * @param folds The number of folds completed by each setting; updated by this method.
+     **/
+    protected void abandonLosers(double[][][] performances, int n, double alpha,
+            boolean[] abandoned, int[] folds) {
+        double[][] intervals = new double[performances.length][];
+        int best = -1;
+
+        for (int i = 0; i < performances.length; ++i) {
+            if (abandoned[i])
+                continue;
+            for (int r = 0; r < performances[i].length; ++r) {
+                double[] interval =
+                        StudentT.confidenceInterval(Arrays.copyOf(performances[i][r], n), alpha);
+                if (intervals[i] == null || interval[0] > intervals[i][0])
+                    intervals[i] = interval;
+            }
+            if (best == -1 || intervals[i][0] > intervals[best][0])
+                best = i;
+        }
+
+        for (int i = 0; i < performances.length; ++i)
+            if (intervals[i] != null
+                    && intervals[i][0] + intervals[i][1] < intervals[best][0]
+                            - intervals[best][1]) {
+                abandoned[i] = true;
+                folds[i] = n;
+                if (progressOutput > 0)
+                    System.out.println("  " + learner.name + ": " + messageIndent
+                            + "Abandoning parameters " + (i + 1) + " after " + n + " folds");
+            }
+    }
+
+
     /**
      * <!-- tune(Learner.Parameters[],int[],Parser,TestingMetric) --> Tune learning algorithm
      * parameters against a development set. Note that this interface takes both an array of
@@ -0,0 +1,383 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.IVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.IVector2D;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+
+
+/**
+ * A {@link Lexicon} that may be shared by many threads calling
+ * {@link Learner#getExampleArray(Object,boolean)} at the same time, whether or not they are
+ * training. Lookups of features already in the lexicon never block; they are served by a
+ * <code>ConcurrentHashMap</code>. New features are assigned their indexes one at a time while
+ * holding this object's monitor, so indexes are still handed out densely in ascending order starting
+ * from 0. Feature counts are accumulated in blocks of atomic integers instead of
+ * {@link #featureCounts} and {@link #perClassFeatureCounts}, and are folded into those fields
+ * whenever a method that reads them is called.
+ *
+ * <p>
+ * Methods that reorganize the whole lexicon, such as {@link #prune(Lexicon.PruningPolicy)},
+ * {@link #discardPrunedFeatures()}, and {@link #write(ExceptionlessOutputStream)}, should only be
+ * called when no other thread is looking features up.
+ *
+ * <p>
+ * A learner can be made to use this class with
+ * <code>learner.setLexiconType(ConcurrentLexicon.class)</code>, which also converts any lexicon the
+ * learner reads from disk.
+ *
+ * @see Learner#setLexiconType(Class)
+ **/
+public class ConcurrentLexicon extends Lexicon {
+    /**
+     * Set once {@link #lexicon} has been populated, so that {@link #lazyMapCreation()} doesn't
+     * need to synchronize.
+     **/
+    private volatile boolean mapCreated;
+    /** Set when counts have been made that are not yet in {@link #featureCounts}. */
+    private volatile boolean countsPending;
+    /** Global feature counts not yet folded into {@link #featureCounts}. */
+    private volatile ConcurrentCounts globalCounts;
+    /**
+     * Per class feature counts not yet folded into {@link #perClassFeatureCounts}, indexed by
+     * label.
+     **/
+    private volatile ConcurrentCounts[] perClassCounts;
+
+
+    /** Creates an empty lexicon. */
+    public ConcurrentLexicon() {}
+
+    /**
+     * Creates an empty lexicon with the given encoding.
+     *
+     * @param e The encoding to use when adding features to this lexicon.
+     **/
+    public ConcurrentLexicon(String e) {
+        super(e);
+    }
+
+
+    /** Clears the data structures associated with this instance. */
+    public void clear() {
+        super.clear();
+        lexicon = new ConcurrentHashMap();
+        mapCreated = true;
+        allocateCounts();
+    }
+
+
+    /**
+     * Replaces any pending counts with empty structures appropriate for the current counting
+     * policy.
+     **/
+    private void allocateCounts() {
+        countsPending = false;
+        globalCounts = featureCounts == null ? null : new ConcurrentCounts();
+        perClassCounts = perClassFeatureCounts == null ? null : new ConcurrentCounts[0];
+    }
+
+
+    /**
+     * <!-- countFeatures(CountPolicy) --> Call this method to initialize the lexicon to count
+     * feature occurrences on each call to <code>lookup(feature, true)</code>, or to discard all its
+     * feature counts and stop counting.
+     *
+     * @see Lexicon#countFeatures(Lexicon.CountPolicy)
+     * @param policy The new feature counting policy.
+     **/
+    public synchronized void countFeatures(CountPolicy policy) {
+        super.countFeatures(policy);
+        allocateCounts();
+    }
+
+
+    /**
+     * <!-- perClassToGlobalCounts() --> Collapses per-class feature counts into global counts.
+     **/
+    public synchronized void perClassToGlobalCounts() {
+        super.perClassToGlobalCounts();
+        allocateCounts();
+    }
+
+
+    /**
+     * Adds the given feature to the lexicon unless another thread added it first.
+     *
+     * @param f The feature to add.
+     * @param label The label of the example containing this feature, or -1 if we aren't doing per
+     *        class feature counting.
+     * @return The integer key that the feature maps to.
+     **/
+    protected synchronized int addFeature(Feature f, int label) {
+        int index = mapLookup(f);
+        if (index >= 0) {
+            incrementCount(index, label);
+            return index;
+        }
+
+        return super.addFeature(f, label);
+    }
+
+
+    /**
+     * Children of conjunctive and referring features are stored in a {@link ChildLexicon} that is
+     * not thread-safe, so this method is synchronized.
+     *
+     * @param f The feature to look up.
+     * @param label The label of the example containing this feature, or -1 if we aren't doing per
+     *        class feature counting.
+     * @return A feature equivalent to <code>f</code> that is stored in this lexicon.
+     **/
+    public synchronized Feature getChildFeature(Feature f, int label) {
+        return super.getChildFeature(f, label);
+    }
+
+
+    /**
+     * <!-- lookupKey(int) --> Does a reverse lexicon lookup. This method is synchronized, since the
+     * inverted map may be growing in another thread.
+     *
+     * @param i The integer key to look up.
+     * @return The feature that maps to the given integer.
+     **/
+    public synchronized Feature lookupKey(int i) {
+        return super.lookupKey(i);
+    }
+
+
+    /**
+     * Increments the count of the feature with the given index without locking.
+     *
+     * @param index The index of the feature.
+     * @param label The label of the example containing this feature, which is ignored if we aren't
+     *        doing per class feature counting.
+     **/
+    protected void incrementCount(int index, int label) {
+        if (globalCounts != null)
+            globalCounts.increment(index);
+        else if (perClassCounts != null)
+            labelCounts(label).increment(index);
+        else
+            return;
+        if (!countsPending)
+            countsPending = true;
+    }
+
+
+    /**
+     * Returns the pending counts associated with the given label, creating them if necessary.
+     *
+     * @param label The label.
+     * @return The counts for that label.
+     **/
+    private ConcurrentCounts labelCounts(int label) {
+        ConcurrentCounts[] counts = perClassCounts;
+        if (label < counts.length && counts[label] != null)
+            return counts[label];
+
+        synchronized (this) {
+            counts = perClassCounts;
+            if (label >= counts.length)
+                counts = Arrays.copyOf(counts, label + 1);
+            if (counts[label] == null)
+                counts[label] = new ConcurrentCounts();
+            perClassCounts = counts;
+            return counts[label];
+        }
+    }
+
+
+    /** Folds all pending counts into {@link #featureCounts} or {@link #perClassFeatureCounts}. */
+    protected synchronized void synchronizeCounts() {
+        if (!countsPending)
+            return;
+        countsPending = false;
+
+        if (globalCounts != null && featureCounts != null)
+            globalCounts.drainInto(featureCounts);
+        else if (perClassCounts != null && perClassFeatureCounts != null) {
+            ConcurrentCounts[] counts = perClassCounts;
+            for (int i = 0; i < counts.length; ++i)
+                if (counts[i] != null)
+                    counts[i].drainInto(perClassFeatureCounts, i);
+        }
+    }
+
+
+    /**
+     * Permanently discards any features that have been pruned as well as all feature counts.
+     **/
+    public synchronized void discardPrunedFeatures() {
+        super.discardPrunedFeatures();
+        allocateCounts();
+    }
+
+
+    /** Returns a deep clone of this lexicon. */
+    public Object clone() {
+        ConcurrentLexicon clone = (ConcurrentLexicon) super.clone();
+        if (lexicon != null)
+            clone.lexicon = new ConcurrentHashMap(lexicon);
+        else
+            clone.mapCreated = false;
+        clone.allocateCounts();
+        return clone;
+    }
+
+
+    /**
+     * Overwrites the data in this object with a deep copy of the data in the given lexicon.
+     *
+     * @param l The lexicon to copy.
+     **/
+    protected synchronized void copyContents(Lexicon l) {
+        mapCreated = false;
+        super.copyContents(l);
+        allocateCounts();
+    }
+
+
+    /**
+     * <!-- read(ExceptionlessInputStream,boolean) --> Reads the binary representation of a lexicon
+     * from the specified stream, overwriting the data in this object.
+     *
+     * @param in The input stream.
+     * @param readCounts Whether or not to read the feature counts.
+     **/
+    public synchronized void read(ExceptionlessInputStream in, boolean readCounts) {
+        mapCreated = false;
+        super.read(in, readCounts);
+        allocateCounts();
+    }
+
+
+    /** Populates {@link #lexicon} as a <code>ConcurrentHashMap</code> if it isn't already. */
+    protected void lazyMapCreation() {
+        if (!mapCreated)
+            createMap();
+    }
+
+
+    /** Does the work of {@link #lazyMapCreation()} while holding this object's monitor. */
+    private synchronized void createMap() {
+        if (lexicon == null) {
+            int N = lexiconInv.size();
+            Map map = new ConcurrentHashMap(Math.max(16, N * 4 / 3 + 1));
+            for (int i = 0; i < N; ++i)
+                map.put(lexiconInv.get(i), new Integer(i));
+            lexicon = map;
+        } else if (!(lexicon instanceof ConcurrentHashMap))
+            lexicon = new ConcurrentHashMap(lexicon);
+
+        mapCreated = true;
+    }
+
+
+    /**
+     * A growable array of integer counts that can be incremented by many threads at once. The
+     * counts are stored in fixed size blocks of atomic integers so that growing the array never
+     * requires copying counts that other threads may be incrementing.
+     **/
+    private static class ConcurrentCounts {
+        /** The base 2 logarithm of the number of counts in each block. */
+        private static final int blockBits = 12;
+        /** The number of counts in each block. */
+        private static final int blockSize = 1 << blockBits;
+
+        /** The blocks of counts; a <code>null</code> block has no counts yet. */
+        private volatile AtomicIntegerArray[] blocks = new AtomicIntegerArray[0];
+
+
+        /**
+         * Increments the count at the given index.
+         *
+         * @param i The index.
+         **/
+        public void increment(int i) {
+            int b = i >>> blockBits;
+            AtomicIntegerArray[] current = blocks;
+            AtomicIntegerArray block = b < current.length ? current[b] : null;
+            if (block == null)
+                block = createBlock(b);
+            block.incrementAndGet(i & (blockSize - 1));
+        }
+
+
+        /**
+         * Creates the block with the given index if it doesn't exist already.
+         *
+         * @param b The block index.
+         * @return The block.
+         **/
+        private synchronized AtomicIntegerArray createBlock(int b) {
+            AtomicIntegerArray[] current = blocks;
+            if (b < current.length && current[b] != null)
+                return current[b];
+
+            AtomicIntegerArray[] grown =
+                    Arrays.copyOf(current, Math.max(current.length, Math.max(b + 1,
+                            current.length * 2)));
+            grown[b] = new AtomicIntegerArray(blockSize);
+            blocks = grown;
+            return grown[b];
+        }
+
+
+        /**
+         * Adds every count to the corresponding element of the given vector and resets it to 0.
+         *
+         * @param v The vector to add the counts to.
+         **/
+        public void drainInto(IVector v) {
+            AtomicIntegerArray[] current = blocks;
+            for (int b = 0; b < current.length; ++b) {
+                if (current[b] == null)
+                    continue;
+                for (int j = 0; j < blockSize; ++j) {
+                    int c = current[b].getAndSet(j, 0);
+                    if (c != 0) {
+                        int i = (b << blockBits) + j;
+                        v.set(i, v.get(i) + c);
+                    }
+                }
+            }
+        }
+
+
+        /**
+         * Adds every count to the corresponding element of the given row of a two dimensional
+         * vector and resets it to 0.
+         *
+         * @param v The vector to add the counts to.
+         * @param row The row of <code>v</code> these counts belong in.
+         **/
+        public void drainInto(IVector2D v, int row) {
+            AtomicIntegerArray[] current = blocks;
+            for (int b = 0; b < current.length; ++b) {
+                if (current[b] == null)
+                    continue;
+                for (int j = 0; j < blockSize; ++j) {
+                    int c = current[b].getAndSet(j, 0);
+                    if (c != 0) {
+                        int i = (b << blockBits) + j;
+                        v.set(row, i, v.get(row, i) + c);
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,313 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+
+
+/**
+ * A {@link Lexicon} that indexes its features by their 64 bit {@link Feature#fingerprint()
+ * fingerprints} in an open addressing hash table made of two primitive arrays, instead of in a
+ * <code>HashMap</code>. Each entry costs 12 bytes plus the table's slack, rather than a map entry
+ * and a boxed <code>Integer</code>, and a lookup touches contiguous memory until it finds a slot
+ * with the same fingerprint. That feature is then compared to the feature in {@link #lexiconInv}
+ * with <code>equals(Object)</code> to rule out fingerprint collisions, so lookups return exactly
+ * what <code>Lexicon</code> would.
+ *
+ * <p>
+ * The table is built from {@link #lexiconInv} whenever the lexicon is read, so existing lexicon
+ * files can be used without retraining, either by calling
+ * <code>learner.setLexiconType(FingerprintLexicon.class)</code> before the learner reads its
+ * lexicon, or with {@link Lexicon#convertTo(Class)}. {@link #lexicon} is never populated;
+ * {@link #getMap()} builds a new map each time it is called.
+ *
+ * @see Learner#setLexiconType(Class)
+ **/
+public class FingerprintLexicon extends Lexicon {
+    /** The smallest capacity of the table. */
+    private static final int minimumCapacity = 16;
+    /** The table grows when more than this fraction of its slots are filled. */
+    private static final double maximumLoad = 0.6;
+
+    /**
+     * The fingerprints of the features in each slot of the table, or <code>null</code> if the table
+     * needs to be built from {@link #lexiconInv}.
+     **/
+    private long[] fingerprints;
+    /** The index of the feature in each slot of the table, or -1 if the slot is empty. */
+    private int[] indexes;
+    /** The number of filled slots in the table. */
+    private int entries;
+
+
+    /** Creates an empty lexicon. */
+    public FingerprintLexicon() {}
+
+    /**
+     * Creates an empty lexicon with the given encoding.
+     *
+     * @param e The encoding to use when adding features to this lexicon.
+     **/
+    public FingerprintLexicon(String e) {
+        super(e);
+    }
+
+
+    /** Clears the data structures associated with this instance. */
+    public void clear() {
+        super.clear();
+        lexicon = null;
+        allocate(minimumCapacity);
+    }
+
+
+    /**
+     * Replaces the table with an empty one.
+     *
+     * @param capacity The number of slots in the new table, which must be a power of 2.
+     **/
+    private void allocate(int capacity) {
+        fingerprints = new long[capacity];
+        indexes = new int[capacity];
+        Arrays.fill(indexes, -1);
+        entries = 0;
+    }
+
+
+    /**
+     * Returns the smallest power of 2 capacity that can hold the given number of entries.
+     *
+     * @param n The number of entries.
+     * @return The capacity.
+     **/
+    private static int capacityFor(int n) {
+        int capacity = minimumCapacity;
+        while (capacity * maximumLoad < n)
+            capacity <<= 1;
+        return capacity;
+    }
+
+
+    /**
+     * Spreads the bits of a fingerprint and picks its first slot in a table with
+     * <code>mask + 1</code> slots.
+     *
+     * @param fingerprint The fingerprint.
+     * @param mask One less than the capacity of the table.
+     * @return The slot to start probing from.
+     **/
+    private static int slot(long fingerprint, int mask) {
+        fingerprint ^= fingerprint >>> 33;
+        fingerprint *= 0xff51afd7ed558ccdL;
+        fingerprint ^= fingerprint >>> 33;
+        return (int) fingerprint & mask;
+    }
+
+
+    /**
+     * Finds the index the given feature maps to by probing the table from the feature's
+     * fingerprint.
+     *
+     * @param f The feature to look up.
+     * @return The feature's index, or -1 if it isn't in the lexicon.
+     **/
+    protected int mapLookup(Feature f) {
+        lazyMapCreation();
+        long fingerprint = f.fingerprint();
+        int mask = indexes.length - 1;
+        for (int s = slot(fingerprint, mask);; s = (s + 1) & mask) {
+            int index = indexes[s];
+            if (index == -1)
+                return -1;
+            if (fingerprints[s] == fingerprint && f.equals(lexiconInv.get(index)))
+                return index;
+        }
+    }
+
+
+    /**
+     * Records in the table that the given feature maps to the given index, replacing the index of
+     * an equivalent feature if there is one.
+     *
+     * @param f The feature.
+     * @param index Its index.
+     **/
+    protected void mapPut(Feature f, int index) {
+        lazyMapCreation();
+        long fingerprint = f.fingerprint();
+        int mask = indexes.length - 1;
+        int s = slot(fingerprint, mask);
+        for (; indexes[s] != -1; s = (s + 1) & mask) {
+            if (fingerprints[s] == fingerprint && f.equals(lexiconInv.get(indexes[s]))) {
+                indexes[s] = index;
+                return;
+            }
+        }
+
+        if (entries + 1 > indexes.length * maximumLoad) {
+            grow();
+            mask = indexes.length - 1;
+            for (s = slot(fingerprint, mask); indexes[s] != -1; s = (s + 1) & mask);
+        }
+
+        fingerprints[s] = fingerprint;
+        indexes[s] = index;
+        ++entries;
+    }
+
+
+    /**
+     * Doubles the capacity of the table, reinserting the stored fingerprints so that no feature
+     * needs to be fingerprinted again.
+     **/
+    private void grow() {
+        long[] oldFingerprints = fingerprints;
+        int[] oldIndexes = indexes;
+        allocate(oldIndexes.length << 1);
+        int mask = indexes.length - 1;
+
+        for (int i = 0; i < oldIndexes.length; ++i) {
+            if (oldIndexes[i] == -1)
+                continue;
+            int s = slot(oldFingerprints[i], mask);
+            while (indexes[s] != -1)
+                s = (s + 1) & mask;
+            fingerprints[s] = oldFingerprints[i];
+            indexes[s] = oldIndexes[i];
+            ++entries;
+        }
+    }
+
+
+    /** Rebuilds the table from {@link #lexiconInv}. */
+    private void rebuild() {
+        int N = lexiconInv.size();
+        allocate(capacityFor(N));
+        for (int i = 0; i < N; ++i) {
+            Feature f = lexiconInv.get(i);
+            if (f != null)
+                mapPut(f, i);
+        }
+    }
+
+
+    /** Builds the table from {@link #lexiconInv} if it was discarded. */
+    protected void lazyMapCreation() {
+        if (indexes == null)
+            rebuild();
+    }
+
+
+    /**
+     * Builds a new map from every feature in this lexicon to its index. Since this lexicon doesn't
+     * store such a map, this is an expensive operation.
+     *
+     * @return An unmodifiable map from features to <code>Integer</code> indexes.
+     **/
+    public Map getMap() {
+        int N = lexiconInv.size();
+        Map result = new HashMap(N * 4 / 3 + 1);
+        for (int i = 0; i < N; ++i)
+            result.put(lexiconInv.get(i), new Integer(i));
+        return Collections.unmodifiableMap(result);
+    }
+
+
+    /**
+     * <!-- prune(PruningPolicy) --> Rearranges the order in which features appear in the lexicon
+     * as in {@link Lexicon#prune(Lexicon.PruningPolicy)}, then rebuilds the table.
+     *
+     * @param policy The type of pruning to perform.
+     * @return A map from features' original indexes to their new ones, or <code>null</code> if
+     *         <code>policy</code> indicates no pruning.
+     **/
+    public int[] prune(PruningPolicy policy) {
+        int[] result = super.prune(policy);
+        if (result != null)
+            rebuild();
+        return result;
+    }
+
+
+    /**
+     * Permanently discards any features that have been pruned via
+     * {@link #prune(Lexicon.PruningPolicy)} as well as all feature counts.
+     **/
+    public void discardPrunedFeatures() {
+        if (pruneCutoff == -1)
+            return;
+        super.discardPrunedFeatures();
+        rebuild();
+    }
+
+
+    /**
+     * Discard features at the provided indices, then rebuilds the table.
+     *
+     * @param dumpthese the indexes of the features to dump.
+     */
+    public void discardPrunedFeatures(int[] dumpthese) {
+        super.discardPrunedFeatures(dumpthese);
+        rebuild();
+    }
+
+
+    /** Returns a deep clone of this lexicon. */
+    public Object clone() {
+        FingerprintLexicon clone = (FingerprintLexicon) super.clone();
+        if (indexes != null) {
+            clone.fingerprints = (long[]) fingerprints.clone();
+            clone.indexes = (int[]) indexes.clone();
+        }
+        return clone;
+    }
+
+
+    /**
+     * Overwrites the data in this object with a deep copy of the data in the given lexicon.
+     *
+     * @param l The lexicon to copy.
+     **/
+    protected void copyContents(Lexicon l) {
+        fingerprints = null;
+        indexes = null;
+        super.copyContents(l);
+    }
+
+
+    /**
+     * <!-- read(ExceptionlessInputStream,boolean) --> Reads the binary representation of a lexicon
+     * from the specified stream, overwriting the data in this object, and builds the table.
+     *
+     * @param in The input stream.
+     * @param readCounts Whether or not to read the feature counts.
+     **/
+    public void read(ExceptionlessInputStream in, boolean readCounts) {
+        fingerprints = null;
+        indexes = null;
+        super.read(in, readCounts);
+    }
+
+
+    /** Returns whether the given Lexicon object is equal to this one. */
+    public boolean equals(Object o) {
+        return super.equals(o) && lexiconInv.equals(((Lexicon) o).lexiconInv);
+    }
+
+
+    /** Returns a hash code for this lexicon. */
+    public int hashCode() {
+        return super.hashCode();
+    }
+}
@@ -0,0 +1,205 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.util.Arrays;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.DVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+
+
+/**
+ * A <code>DVector</code> that stores its elements as <code>float</code>s, halving the memory and
+ * disk space taken by a weight vector at the cost of rounding every element to single precision.
+ * Unlike a {@link QuantizedDVector}, this vector can still be modified, so a learner whose weights
+ * are stored this way may continue training.
+ *
+ * @see SparseWeightVector#withPrecision(int)
+ **/
+public class FloatDVector extends DVector {
+    /** The number written in place of a vector's size to indicate that this class follows. */
+    static final int tag = -32;
+
+    /** The elements. */
+    private float[] elements;
+    /** The number of elements. */
+    private int length;
+
+
+    /** Creates an empty vector. */
+    public FloatDVector() {
+        super(1);
+        elements = new float[SparseWeightVector.defaultCapacity];
+    }
+
+    /**
+     * Creates a copy of the given vector rounded to single precision.
+     *
+     * @param v The vector to copy.
+     **/
+    public FloatDVector(DVector v) {
+        super(1);
+        length = v.size();
+        elements = new float[Math.max(length, 1)];
+        for (int i = 0; i < length; ++i)
+            elements[i] = (float) v.get(i);
+    }
+
+
+    /**
+     * Returns the element at the given index, or 0 if the index is past the end of the vector.
+     *
+     * @param i The index.
+     * @return The element.
+     **/
+    public double get(int i) {
+        return get(i, 0);
+    }
+
+
+    /**
+     * Returns the element at the given index.
+     *
+     * @param i The index.
+     * @param d The value to return if <code>i</code> is past the end of the vector.
+     * @return The element.
+     **/
+    public double get(int i, double d) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        return i < length ? elements[i] : d;
+    }
+
+
+    /**
+     * Sets the element at the given index, growing the vector with zeros if necessary.
+     *
+     * @param i The index.
+     * @param v The new value, which will be rounded to single precision.
+     * @return The element's previous value.
+     **/
+    public double set(int i, double v) {
+        return set(i, v, 0);
+    }
+
+
+    /**
+     * Sets the element at the given index.
+     *
+     * @param i The index.
+     * @param v The new value, which will be rounded to single precision.
+     * @param d The value of any elements added to the vector to make room for index
+     *        <code>i</code>.
+     * @return The element's previous value.
+     **/
+    public double set(int i, double v, double d) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        if (i >= length) {
+            if (i >= elements.length)
+                elements = Arrays.copyOf(elements, Math.max(i + 1, 2 * elements.length));
+            Arrays.fill(elements, length, i + 1, (float) d);
+            length = i + 1;
+        }
+
+        double result = elements[i];
+        elements[i] = (float) v;
+        return result;
+    }
+
+
+    /** Returns the number of elements in the vector. */
+    public int size() {
+        return length;
+    }
+
+
+    /** Removes all elements from the vector. */
+    public void clear() {
+        length = 0;
+    }
+
+
+    /** Returns the largest element in the vector. */
+    public double max() {
+        double result = -Double.MAX_VALUE;
+        for (int i = 0; i < length; ++i)
+            result = Math.max(result, elements[i]);
+        return result;
+    }
+
+
+    /** Returns a copy of the elements in a new array. */
+    public double[] toArray() {
+        double[] result = new double[length];
+        for (int i = 0; i < length; ++i)
+            result[i] = elements[i];
+        return result;
+    }
+
+
+    /**
+     * Writes the number of elements followed by the elements themselves as <code>float</code>s.
+     *
+     * @param out The output stream.
+     **/
+    public void write(ExceptionlessOutputStream out) {
+        out.writeInt(length);
+        for (int i = 0; i < length; ++i)
+            out.writeFloat(elements[i]);
+    }
+
+
+    /**
+     * Reads a vector as written by {@link #write(ExceptionlessOutputStream)}, overwriting the
+     * contents of this one.
+     *
+     * @param in The input stream.
+     **/
+    public void read(ExceptionlessInputStream in) {
+        length = in.readInt();
+        elements = new float[Math.max(length, 1)];
+        for (int i = 0; i < length; ++i)
+            elements[i] = in.readFloat();
+    }
+
+
+    /** Returns a deep copy of this vector. */
+    public Object clone() {
+        FloatDVector result = new FloatDVector();
+        result.elements = elements.clone();
+        result.length = length;
+        return result;
+    }
+
+
+    /** Two vectors are equal when they have the same elements. */
+    public boolean equals(Object o) {
+        if (!(o instanceof DVector))
+            return false;
+        DVector v = (DVector) o;
+        if (v.size() != length)
+            return false;
+        for (int i = 0; i < length; ++i)
+            if (v.get(i) != elements[i])
+                return false;
+        return true;
+    }
+
+
+    /** Returns a hash code computed from the elements of the vector. */
+    public int hashCode() {
+        int result = length;
+        for (int i = 0; i < length; ++i) {
+            long bits = Double.doubleToLongBits(elements[i]);
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+        return result;
+    }
+}
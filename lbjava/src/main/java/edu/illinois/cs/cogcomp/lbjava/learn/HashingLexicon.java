@@ -0,0 +1,356 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+
+
+/**
+ * A {@link Lexicon} that implements the "hashing trick" of Weinberger et al. (2009): instead of
+ * storing features and assigning them consecutive indexes, it maps each feature directly to one
+ * of a fixed number of buckets by hashing its {@link Feature#fingerprint() fingerprint}. No
+ * <code>Feature</code> objects are ever stored, so the lexicon takes constant memory however many
+ * distinct features training produces, and since looking a feature up modifies nothing, any
+ * number of threads may extract examples at once. The lexicon file written for a learner that
+ * uses it holds only the number of buckets and whether hashing is signed.
+ *
+ * <p>
+ * Distinct features may share a bucket. With signed hashing (the default), another bit of the
+ * hash decides whether each feature's value is negated before it is used, so that colliding
+ * features cancel rather than reinforce each other on average. Signs are applied by
+ * {@link #hash(FeatureVector,int[],double[])}, which {@link Learner} calls when extracting
+ * examples. {@link #lookup(Feature,boolean,int)} returns a feature's bucket alone, so any other
+ * code that converts features to indexes must also multiply each value by {@link #sign(Feature)}
+ * to train on the same features.
+ *
+ * <p>
+ * Since the original features aren't stored, {@link #lookupKey(int)} returns a placeholder
+ * feature naming the bucket, features can't be counted, and the lexicon can't be pruned or
+ * converted to or from any other type of lexicon. Enable hashing with
+ * {@link Learner#setFeatureHashing(int,boolean)} before training.
+ *
+ * @see Learner#setFeatureHashing(int,boolean)
+ **/
+public class HashingLexicon extends Lexicon {
+    /** The default number of buckets. */
+    public static final int defaultBuckets = 1 << 20;
+    /** The generating classifier of the placeholder features returned by {@link #lookupKey(int)}. */
+    public static final String bucketClassifier = "bucket";
+
+    /** The number of buckets features are hashed into. */
+    private int buckets;
+    /** Whether feature values are multiplied by a sign derived from the hash. */
+    private boolean signed;
+
+
+    /** Creates a lexicon with {@link #defaultBuckets} buckets and signed hashing. */
+    public HashingLexicon() {
+        this(defaultBuckets, true);
+    }
+
+    /**
+     * Creates a lexicon with the given number of buckets.
+     *
+     * @param b The number of buckets; must be positive.
+     * @param s Whether feature values are multiplied by a sign derived from the hash.
+     **/
+    public HashingLexicon(int b, boolean s) {
+        if (b < 1)
+            throw new IllegalArgumentException("LBJava ERROR: HashingLexicon: The number of "
+                    + "buckets must be positive, not " + b + ".");
+        buckets = b;
+        signed = s;
+    }
+
+
+    /** Returns the number of buckets features are hashed into. */
+    public int getBuckets() {
+        return buckets;
+    }
+
+
+    /** Returns whether feature values are multiplied by a sign derived from the hash. */
+    public boolean isSigned() {
+        return signed;
+    }
+
+
+    /**
+     * Every bucket is an index that features may map to, so the size of this lexicon is the number
+     * of buckets.
+     **/
+    public int size() {
+        return buckets;
+    }
+
+
+    /**
+     * Spreads the bits of a feature's fingerprint. The lowest bit of the result determines the
+     * feature's sign, and the rest determine its bucket.
+     *
+     * @param f The feature, which should already be a lexicon key.
+     * @return The hash.
+     **/
+    private static long hash(Feature f) {
+        long h = f.fingerprint();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+
+    /**
+     * Returns the bucket of the given hash.
+     *
+     * @param h The hash.
+     * @return The bucket.
+     **/
+    private int bucket(long h) {
+        return (int) ((h >>> 1) % buckets);
+    }
+
+
+    /**
+     * Returns the bucket the given feature hashes to.
+     *
+     * @param f The feature to look up.
+     * @return The feature's bucket, which is never -1.
+     **/
+    protected int mapLookup(Feature f) {
+        return bucket(hash(f));
+    }
+
+
+    /**
+     * Returns the sign that multiplies the given feature's value: -1 if hashing is signed and the
+     * feature's hash calls for it, and 1 otherwise.
+     *
+     * @param f The feature, which should already be a lexicon key.
+     * @return The feature's sign.
+     **/
+    public double sign(Feature f) {
+        return signed && (hash(f) & 1) != 0 ? -1 : 1;
+    }
+
+
+    /**
+     * Returns the bucket of the given feature. Unlike a value converted by
+     * {@link #hash(FeatureVector,int[],double[])}, the bucket carries no sign; callers building
+     * examples themselves must multiply the feature's value by {@link #sign(Feature)}.
+     *
+     * @param f The feature to look up.
+     * @param training Whether or not the learner is currently training.
+     * @param label The label of the example containing this feature, or -1.
+     * @return The feature's bucket, which is never -1.
+     **/
+    public int lookup(Feature f, boolean training, int label) {
+        return super.lookup(f, training, label);
+    }
+
+
+    /**
+     * Converts the features in the given vector to bucket indexes and values, negating the values
+     * of features whose hashes call for it if hashing is signed. Values are added to the given
+     * array rather than assigned.
+     *
+     * @param vector The features of an example.
+     * @param indexes An array at least as long as <code>vector</code> to hold the buckets.
+     * @param values An array at least as long as <code>vector</code> to hold the values.
+     **/
+    public void hash(FeatureVector vector, int[] indexes, double[] values) {
+        int F = vector.featuresSize();
+        for (int f = 0; f < F; ++f) {
+            Feature feature = vector.getFeature(f);
+            long h = hash(feature.getFeatureKey(this, false, -1));
+            indexes[f] = bucket(h);
+            if (signed && (h & 1) != 0)
+                values[f] -= feature.getStrength();
+            else
+                values[f] += feature.getStrength();
+        }
+    }
+
+
+    /**
+     * Children of conjunctive and referring features don't need to be stored, so the given feature
+     * is simply returned.
+     *
+     * @param f The feature to look up.
+     * @param label Ignored.
+     * @return <code>f</code>.
+     **/
+    public Feature getChildFeature(Feature f, int label) {
+        return f;
+    }
+
+
+    /**
+     * <!-- lookupKey(int) --> Returns a placeholder for the features in the given bucket: a
+     * discrete feature produced by {@link #bucketClassifier} whose value is the bucket's index.
+     *
+     * @param i The bucket.
+     * @return The placeholder, or <code>null</code> if there is no such bucket.
+     **/
+    public Feature lookupKey(int i) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        if (i >= buckets)
+            return null;
+        return new DiscretePrimitiveStringFeature("", bucketClassifier, "", Integer.toString(i));
+    }
+
+
+    /**
+     * Builds a new map from the placeholder of every bucket to its index. This is an expensive
+     * operation.
+     *
+     * @return An unmodifiable map from features to <code>Integer</code> indexes.
+     **/
+    public Map getMap() {
+        Map result = new HashMap(buckets * 4 / 3 + 1);
+        for (int i = 0; i < buckets; ++i)
+            result.put(lookupKey(i), new Integer(i));
+        return Collections.unmodifiableMap(result);
+    }
+
+
+    /** Hashing lexicons are always fully populated. */
+    protected void lazyMapCreation() {}
+
+
+    /**
+     * Hashing lexicons can't count features, so this method throws an
+     * <code>UnsupportedOperationException</code> unless the policy is
+     * {@link Lexicon.CountPolicy#none}.
+     *
+     * @param policy The new feature counting policy.
+     **/
+    public void countFeatures(CountPolicy policy) {
+        if (policy != CountPolicy.none)
+            throw unsupported("count features");
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public int[] prune(PruningPolicy policy) {
+        throw unsupported("be pruned");
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public void discardPrunedFeatures() {
+        throw unsupported("be pruned");
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public void discardPrunedFeatures(int[] dumpthese) {
+        throw unsupported("be pruned");
+    }
+
+
+    /**
+     * Creates the exception thrown when an unsupported operation is attempted.
+     *
+     * @param what A description of the operation.
+     * @return The exception.
+     **/
+    private static UnsupportedOperationException unsupported(String what) {
+        return new UnsupportedOperationException("LBJava ERROR: A HashingLexicon can't " + what
+                + ".");
+    }
+
+
+    /**
+     * <!-- convertTo(Class) --> Returns this lexicon if it has the given type. Since the features
+     * that were hashed aren't known, it can't be converted to any other type.
+     *
+     * @param type The class of the lexicon to return.
+     * @return This lexicon.
+     **/
+    public Lexicon convertTo(Class type) {
+        if (getClass().equals(type))
+            return this;
+        throw unsupported("be converted to a " + type.getName());
+    }
+
+
+    /**
+     * Checks that the given lexicon is empty, since its features' indexes can't be preserved.
+     * Nothing needs to be copied, as hashed features are never encoded. Used by
+     * {@link #convertTo(Class)}.
+     *
+     * @param l The lexicon to copy.
+     **/
+    protected void copyContents(Lexicon l) {
+        if (l.size() > 0)
+            throw unsupported("be made from a lexicon that already contains features");
+    }
+
+
+    /** Returns whether the given object is a hashing lexicon with the same settings. */
+    public boolean equals(Object o) {
+        if (!(o instanceof HashingLexicon))
+            return false;
+        HashingLexicon l = (HashingLexicon) o;
+        return buckets == l.buckets && signed == l.signed;
+    }
+
+
+    /** Returns a hash code for this lexicon. */
+    public int hashCode() {
+        return signed ? buckets : -buckets;
+    }
+
+
+    /**
+     * <!-- write(ExceptionlessOutputStream) --> Writes the number of buckets and whether hashing
+     * is signed, laid out like the header of a <code>Lexicon</code> with no features whose pruning
+     * cutoff is the number of buckets.
+     *
+     * @param out The output stream.
+     **/
+    public void write(ExceptionlessOutputStream out) {
+        out.writeString(getClass().getName());
+        out.writeString(null);
+        out.writeInt(0);
+        out.writeInt(buckets);
+        out.writeBoolean(signed);
+    }
+
+
+    /**
+     * <!-- read(ExceptionlessInputStream,boolean) --> Reads the settings written by
+     * {@link #write(ExceptionlessOutputStream)}, not including the class name.
+     *
+     * @param in The input stream.
+     * @param readCounts Ignored, since there are no counts.
+     **/
+    public void read(ExceptionlessInputStream in, boolean readCounts) {
+        in.readString();
+        in.readInt();
+        buckets = in.readInt();
+        signed = in.readBoolean();
+    }
+
+
+    /** Returns a text representation of this lexicon. */
+    public String toString() {
+        return "HashingLexicon(" + buckets + (signed ? " signed" : "") + " buckets)";
+    }
+}
@@ -45,6 +45,11 @@ public abstract class Learner extends Classifier {
     protected Lexicon lexicon;
     /** Stores the label {@link Lexicon}. */
     protected Lexicon labelLexicon;
+    /**
+     * The type of {@link Lexicon} this learner uses for its feature lexicon. Lexicons created by
+     * this learner or read from disk will be of this type.
+     **/
+    protected Class lexiconType = Lexicon.class;
     /** The encoding used by this learner's feature lexicon. */
     protected String encoding;
     /**
@@ -82,7 +87,7 @@ public abstract class Learner extends Classifier {
      **/
     protected Learner(String n) {
         super(n);
-        lexicon = new Lexicon();
+        lexicon = createLexicon();
         labelLexicon = new Lexicon();
         predictions = new FVector();
     }
@@ -108,7 +113,7 @@ public abstract class Learner extends Classifier {
         super(n);
         setLabeler(l);
         setExtractor(e);
-        lexicon = new Lexicon();
+        lexicon = createLexicon();
         labelLexicon = new Lexicon();
         predictions = new FVector();
     }
@@ -186,6 +191,85 @@ public abstract class Learner extends Classifier {
     }
 
 
+    /**
+     * Sets the type of {@link Lexicon} this learner uses for its feature lexicon. The current
+     * feature lexicon, if any, is converted to the new type, as will be any feature lexicon read
+     * from disk later. For example, setting the type to {@link ConcurrentLexicon} allows many
+     * threads to call {@link #getExampleArray(Object,boolean)} at once.
+     *
+     * @param t A class that extends {@link Lexicon}.
+     **/
+    public void setLexiconType(Class t) {
+        if (!Lexicon.class.isAssignableFrom(t))
+            throw new IllegalArgumentException("LBJava ERROR: Learner.setLexiconType: "
+                    + t.getName() + " does not extend Lexicon.");
+        lexiconType = t;
+        if (lexicon != null)
+            lexicon = lexicon.convertTo(t);
+    }
+
+
+    /** Returns the type of {@link Lexicon} this learner uses for its feature lexicon. */
+    public Class getLexiconType() {
+        return lexiconType;
+    }
+
+
+    /**
+     * Makes this learner map features straight to indexes by hashing them instead of storing them
+     * in its feature lexicon, which is replaced by a {@link HashingLexicon}. This must be done
+     * before training begins, since the features already in the lexicon can't be rehashed.
+     *
+     * @param buckets The number of indexes features are hashed into.
+     * @param signed Whether a second hash decides the sign of each feature's value, so that
+     *        collisions tend to cancel out.
+     **/
+    public void setFeatureHashing(int buckets, boolean signed) {
+        if (lexicon != null && !(lexicon instanceof HashingLexicon) && lexicon.size() > 0)
+            throw new IllegalArgumentException("LBJava ERROR: Learner.setFeatureHashing: "
+                    + "Feature hashing must be enabled before any features are added to the "
+                    + "lexicon.");
+        lexiconType = HashingLexicon.class;
+        lexicon = new HashingLexicon(buckets, signed);
+    }
+
+
+    /**
+     * Creates a new, empty feature lexicon of type {@link #lexiconType}. A {@link HashingLexicon}
+     * keeps the settings of the current one.
+     **/
+    protected Lexicon createLexicon() {
+        if (lexicon instanceof HashingLexicon) {
+            HashingLexicon hashing = (HashingLexicon) lexicon;
+            return new HashingLexicon(hashing.getBuckets(), hashing.isSigned());
+        }
+
+        Lexicon result = null;
+        try {
+            result = (Lexicon) lexiconType.newInstance();
+        } catch (Exception e) {
+            System.err.println("Can't instantiate '" + lexiconType.getName() + "': " + e);
+            System.exit(1);
+        }
+        return result;
+    }
+
+
+    /**
+     * Converts the given lexicon to type {@link #lexiconType} unless it is already an instance of
+     * that type.
+     *
+     * @param l A feature lexicon, possibly just read from disk.
+     * @return A lexicon of type {@link #lexiconType}, or <code>null</code> if <code>l</code> was
+     *         <code>null</code>.
+     **/
+    protected Lexicon adaptLexicon(Lexicon l) {
+        if (l == null || lexiconType.isInstance(l))
+            return l;
+        return l.convertTo(lexiconType);
+    }
+
+
     /** Returns the feature lexicon. */
     public Lexicon getLexicon() {
         demandLexicon();
@@ -314,7 +398,7 @@ public abstract class Learner extends Classifier {
      **/
     public Lexicon getLexiconDiscardCounts() {
         if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0))
-            lexicon = Lexicon.readLexicon(lexFilePath, false);
+            lexicon = adaptLexicon(Lexicon.readLexicon(lexFilePath, false, lexiconType));
         else
             lexicon.countFeatures(Lexicon.CountPolicy.none);
         return lexicon;
@@ -711,10 +795,29 @@ public abstract class Learner extends Classifier {
                 && ((Object[]) example)[1] instanceof double[])
             return (Object[]) example;
 
-        if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
-            readLexicon(lexFilePath);
-            readLexiconOnDemand = false;
-        }
+        return getExampleArray(training ? labeler.classify(example) : null,
+                extractor.classify(example), training);
+    }
+
+
+    /**
+     * Converts the label and feature vectors already extracted from an example into an array of
+     * arrays as described in {@link #getExampleArray(Object,boolean)}. This allows the (often
+     * expensive) extraction to be done elsewhere, for instance on another thread, while the
+     * lexicons are updated in the order the examples arrive.
+     *
+     * @param labelVector The labels extracted by {@link #labeler}, or <code>null</code> if
+     *        <code>training</code> is <code>false</code>.
+     * @param featureVector The features extracted by {@link #extractor}.
+     * @param training Whether or not labels should be converted.
+     * @return The converted example array.
+     **/
+    public Object[] getExampleArray(FeatureVector labelVector, FeatureVector featureVector,
+            boolean training) {
+        // Checked before the lock so threads extracting examples at once don't contend for it
+        // once the lexicon has been read.
+        if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0))
+            demandLexicon();
 
         Object[] exampleArray = null;
         Lexicon.CountPolicy countPolicy = lexicon.getCountPolicy();
@@ -722,19 +825,23 @@ public abstract class Learner extends Classifier {
 
         // Get example labels
         if (training) {
-            FeatureVector labelVector = labeler.classify(example);
             int F = labelVector.featuresSize();
             int[] labelArray = new int[F];
             double[] labelValues = new double[F];
 
-            for (int f = 0; f < F; ++f) {
-                Feature label = labelVector.getFeature(f);
-                if (label.isDiscrete())
-                    labelArray[f] = labelLexicon.lookup(label, true);
-                else
-                    labelArray[f] = labelLexicon.lookup(label.getFeatureKey(labelLexicon), true);
-                labelValues[f] += label.getStrength();
-                createPrediction(labelArray[f]);
+            // The label lexicon and predictions are small and rarely grow, so a lock keeps them
+            // consistent when several threads extract examples at once.
+            synchronized (labelLexicon) {
+                for (int f = 0; f < F; ++f) {
+                    Feature label = labelVector.getFeature(f);
+                    if (label.isDiscrete())
+                        labelArray[f] = labelLexicon.lookup(label, true);
+                    else
+                        labelArray[f] =
+                                labelLexicon.lookup(label.getFeatureKey(labelLexicon), true);
+                    labelValues[f] += label.getStrength();
+                    createPrediction(labelArray[f]);
+                }
             }
 
             exampleArray = new Object[] {null, null, labelArray, labelValues};
@@ -749,13 +856,18 @@ public abstract class Learner extends Classifier {
             exampleArray = new Object[2];
 
         // Get example features.
-        FeatureVector featureVector = extractor.classify(example);
         int F = featureVector.featuresSize();
         int[] exampleArrayFeatures = new int[F];
         double[] exampleArrayValues = new double[F];
         exampleArray[0] = exampleArrayFeatures;
         exampleArray[1] = exampleArrayValues;
 
+        if (lexicon instanceof HashingLexicon) {
+            ((HashingLexicon) lexicon).hash(featureVector, exampleArrayFeatures,
+                    exampleArrayValues);
+            return exampleArray;
+        }
+
         for (int f = 0; f < F; ++f) {
             Feature feature = featureVector.getFeature(f);
             exampleArrayFeatures[f] =
@@ -818,7 +930,8 @@ public abstract class Learner extends Classifier {
      * that use this.
      **/
     public void forget() {
-        lexicon = new Lexicon(encoding);
+        lexicon = createLexicon();
+        lexicon.setEncoding(encoding);
         labelLexicon = new Lexicon();
         predictions = new FVector();
         initialize(0, 0);
@@ -934,6 +1047,8 @@ public abstract class Learner extends Classifier {
      **/
     public int getPrunedLexiconSize() {
         if ((lexicon == null || lexicon.size() == 0) && readLexiconOnDemand) {
+            if (MappedModel.readMagic(lexFilePath) == MappedModel.lexiconMagic)
+                return MappedLexicon.open(lexFilePath).getCutoff();
             ExceptionlessInputStream in =
                     ExceptionlessInputStream.openCompressedStream(lexFilePath);
             int result = Lexicon.readPrunedSize(in);
@@ -1142,12 +1257,13 @@ public abstract class Learner extends Classifier {
     /**
      * Reads only the learned function's model and label lexicon from the specified location in
      * binary form, overwriting whatever model data may have already existed in this object. This
-     * location is then cached in {@link #lcFilePath}.
+     * location is then cached in {@link #lcFilePath}. If the location contains a mapped learner
+     * file written by {@link MappedModel}, its weights are mapped rather than read.
      *
      * @param url The location from which to read the model.
      **/
     public void readModel(URL url) {
-        ExceptionlessInputStream in = ExceptionlessInputStream.openCompressedStream(url);
+        ExceptionlessInputStream in = MappedModel.openModel(url);
         String s = in.readString();
         String expected = getClass().getName();
 
@@ -1189,7 +1305,7 @@ public abstract class Learner extends Classifier {
      * @param url The location from which to read the feature lexicon.
      **/
     public void readLexicon(URL url) {
-        lexicon = Lexicon.readLexicon(url);
+        lexicon = adaptLexicon(Lexicon.readLexicon(url, true, lexiconType));
         lexFilePath = url;
     }
 
@@ -1276,7 +1392,7 @@ public abstract class Learner extends Classifier {
      * @return The learner read from the location.
      **/
     public static Learner readLearner(URL url, boolean whole) {
-        ExceptionlessInputStream in = ExceptionlessInputStream.openCompressedStream(url);
+        ExceptionlessInputStream in = MappedModel.openModel(url);
         Learner result = readLearner(in, whole);
         in.close();
         result.lcFilePath = url;
@@ -1411,7 +1527,7 @@ public abstract class Learner extends Classifier {
      * @see #readLexiconOnDemand
      * @return The lexicon just read into {@link #lexicon}.
      **/
-    public Lexicon demandLexicon() {
+    public synchronized Lexicon demandLexicon() {
         if (readLexiconOnDemand && (lexicon == null || lexicon.size() == 0)) {
             readLexicon(lexFilePath);
             readLexiconOnDemand = false;
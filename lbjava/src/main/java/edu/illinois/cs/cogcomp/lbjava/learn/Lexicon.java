@@ -83,8 +83,28 @@ public class Lexicon implements Cloneable, Serializable {
      * @return The lexicon.
      **/
     public static Lexicon readLexicon(URL url, boolean readCounts) {
+        return readLexicon(url, readCounts, null);
+    }
+
+
+    /**
+     * <!-- readLexicon(URL,boolean,Class) --> Reads a feature lexicon from the specified location
+     * as in {@link #readLexicon(URL,boolean)}, except that a lexicon stored as a plain
+     * <code>Lexicon</code> is read into a new instance of the given type instead. If the location
+     * contains a mapped lexicon file, a {@link MappedLexicon} is returned regardless of the type.
+     *
+     * @param url The location from which to read the feature lexicon.
+     * @param readCounts Whether or not to read the feature counts.
+     * @param type The class to read plain lexicons into, or <code>null</code> to always use the
+     *        class named in the stream.
+     * @return The lexicon.
+     **/
+    public static Lexicon readLexicon(URL url, boolean readCounts, Class type) {
+        if (MappedModel.readMagic(url) == MappedModel.lexiconMagic)
+            return MappedLexicon.open(url);
+
         ExceptionlessInputStream in = ExceptionlessInputStream.openCompressedStream(url);
-        Lexicon result = readLexicon(in, readCounts);
+        Lexicon result = readLexicon(in, readCounts, type);
         in.close();
         return result;
     }
@@ -112,16 +132,35 @@ public class Lexicon implements Cloneable, Serializable {
      * @return The lexicon.
      **/
     public static Lexicon readLexicon(ExceptionlessInputStream in, boolean readCounts) {
+        return readLexicon(in, readCounts, null);
+    }
+
+
+    /**
+     * <!-- readLexicon(ExceptionlessInputStream,boolean,Class) --> Reads a feature lexicon from the
+     * specified stream as in {@link #readLexicon(ExceptionlessInputStream,boolean)}, except that a
+     * lexicon stored as a plain <code>Lexicon</code> is read into a new instance of the given type
+     * instead. The given type must store its data in the same format as <code>Lexicon</code>.
+     *
+     * @param in The stream from which to read the feature lexicon.
+     * @param readCounts Whether or not to read the feature counts.
+     * @param type The class to read plain lexicons into, or <code>null</code> to always use the
+     *        class named in the stream.
+     * @return The lexicon.
+     **/
+    public static Lexicon readLexicon(ExceptionlessInputStream in, boolean readCounts, Class type) {
         String name = in.readString();
         if (name == null)
             return null;
         Class clazz = ClassUtils.getClass(name);
+        if (type != null && clazz.equals(Lexicon.class))
+            clazz = type;
 
         Lexicon lexicon = null;
         try {
             lexicon = (Lexicon) clazz.newInstance();
         } catch (Exception e) {
-            System.err.println("Can't instantiate '" + name + "': " + e);
+            System.err.println("Can't instantiate '" + clazz.getName() + "': " + e);
             System.exit(1);
         }
 
@@ -267,6 +306,7 @@ public class Lexicon implements Cloneable, Serializable {
      * <!-- perClassToGlobalCounts() --> Collapses per-class feature counts into global counts.
      **/
     public void perClassToGlobalCounts() {
+        synchronizeCounts();
         if (perClassFeatureCounts == null)
             throw new IllegalArgumentException(
                     "LBJava ERROR: Lexicon.perClassToGlobalCounts: Cannot be called if "
@@ -297,8 +337,32 @@ public class Lexicon implements Cloneable, Serializable {
      * @return A boolean indicating if the given feature is currently in the lexicon.
      **/
     public boolean contains(Feature f) {
+        return mapLookup(f) >= 0;
+    }
+
+
+    /**
+     * Finds the index the given feature maps to in {@link #lexicon}, creating the map first if
+     * necessary. This method neither counts the feature nor adds it to the lexicon.
+     *
+     * @param f The feature to look up.
+     * @return The feature's index, or -1 if it isn't in the lexicon.
+     **/
+    protected int mapLookup(Feature f) {
         lazyMapCreation();
-        return lexicon.containsKey(f);
+        Integer I = (Integer) lexicon.get(f);
+        return I == null ? -1 : I.intValue();
+    }
+
+
+    /**
+     * Records in {@link #lexicon} that the given feature maps to the given index.
+     *
+     * @param f The feature.
+     * @param index Its index.
+     **/
+    protected void mapPut(Feature f, int index) {
+        lexicon.put(f, new Integer(index));
     }
 
 
@@ -353,35 +417,47 @@ public class Lexicon implements Cloneable, Serializable {
                     "LBJava ERROR: Lexicon.lookup: A label has been supplied when not "
                             + "training with per class feature counts.");
 
-        lazyMapCreation();
-        Integer I = (Integer) lexicon.get(f);
+        int index = mapLookup(f);
 
-        if (I == null) {
+        if (index < 0) {
             if (!training)
                 return getCutoff();
-
-            f = f.encode(encoding);
-
-            if (lexiconChildren != null) {
-                Feature c = lexiconChildren.remove(f);
-                if (c != null)
-                    f = c;
-            }
-
-            int key = lexiconInv.size();
-            lexicon.put(f, new Integer(key));
-            lexiconInv.add(f);
-            incrementCount(key, label);
-            return key;
+            return addFeature(f, label);
         }
 
-        int index = I.intValue();
         if (training)
             incrementCount(index, label);
         return index;
     }
 
 
+    /**
+     * Called by {@link #lookup(Feature,boolean,int)} during training when the given feature was not
+     * found in {@link #lexicon}, this method encodes the feature, gives it the next available index,
+     * and counts it.
+     *
+     * @param f The feature to add.
+     * @param label The label of the example containing this feature, or -1 if we aren't doing per
+     *        class feature counting.
+     * @return The integer key that the feature now maps to.
+     **/
+    protected int addFeature(Feature f, int label) {
+        f = f.encode(encoding);
+
+        if (lexiconChildren != null) {
+            Feature c = lexiconChildren.remove(f);
+            if (c != null)
+                f = c;
+        }
+
+        int key = lexiconInv.size();
+        lexiconInv.add(f);
+        mapPut(f, key);
+        incrementCount(key, label);
+        return key;
+    }
+
+
     /**
      * Used to lookup the children of conjunctive and referring features during training, this
      * method checks {@link #lexiconChildren} if the feature isn't present in {@link #lexicon} and
@@ -394,10 +470,8 @@ public class Lexicon implements Cloneable, Serializable {
      * @return A feature equivalent to <code>f</code> that is stored in this lexicon.
      **/
     public Feature getChildFeature(Feature f, int label) {
-        lazyMapCreation();
-        Integer I = (Integer) lexicon.get(f);
-        if (I != null) {
-            int index = I.intValue();
+        int index = mapLookup(f);
+        if (index >= 0) {
             incrementCount(index, label);
             return lexiconInv.get(index);
         }
@@ -423,6 +497,15 @@ public class Lexicon implements Cloneable, Serializable {
     }
 
 
+    /**
+     * Makes sure that {@link #featureCounts} and {@link #perClassFeatureCounts} reflect every count
+     * made so far. Methods of this class call it before they read the counts. Implementations that
+     * count features somewhere other than those two fields should override this method to fold
+     * their counts into them; by default, it does nothing.
+     **/
+    protected void synchronizeCounts() {}
+
+
     /**
      * Used to lookup the children of conjunctive and referring features while writing the lexicon,
      * this method checks {@link #lexiconChildren} if the feature isn't present in {@link #lexicon}
@@ -435,10 +518,9 @@ public class Lexicon implements Cloneable, Serializable {
      * @throws UnsupportedOperationException If the feature isn't found anywhere in the lexicon.
      **/
     public int lookupChild(Feature f) {
-        lazyMapCreation();
-        Integer I = (Integer) lexicon.get(f);
-        if (I != null)
-            return I.intValue();
+        int index = mapLookup(f);
+        if (index >= 0)
+            return index;
 
         if (lexiconChildren == null)
             throw new UnsupportedOperationException(
@@ -504,6 +586,7 @@ public class Lexicon implements Cloneable, Serializable {
     public boolean isPruned(int i, int label, PruningPolicy policy) {
         if (policy.isNone())
             return false;
+        synchronizeCounts();
 
         if (featureCounts == null && perClassFeatureCounts == null)
             throw new IllegalArgumentException(
@@ -549,6 +632,7 @@ public class Lexicon implements Cloneable, Serializable {
             pruneCutoff = -1;
             return null;
         }
+        synchronizeCounts();
 
         if (featureCounts == null && perClassFeatureCounts == null)
             throw new UnsupportedOperationException(
@@ -653,6 +737,7 @@ public class Lexicon implements Cloneable, Serializable {
     public void discardPrunedFeatures() {
         if (pruneCutoff == -1)
             return;
+        synchronizeCounts();
         featureCounts = null;
         perClassFeatureCounts = null;
         for (int i = lexiconInv.size() - 1; i >= pruneCutoff; --i) {
@@ -699,6 +784,7 @@ public class Lexicon implements Cloneable, Serializable {
      * <!-- clone() --> Returns a deep clone of this lexicon implemented as a <code>HashMap</code>.
      **/
     public Object clone() {
+        synchronizeCounts();
         Lexicon clone = null;
         try {
             clone = (Lexicon) super.clone();
@@ -724,11 +810,66 @@ public class Lexicon implements Cloneable, Serializable {
     }
 
 
+    /**
+     * <!-- convertTo(Class) --> Returns a lexicon of the given type containing the same features at
+     * the same indexes as this one, along with the same counts, pruning cutoff, and encoding. If
+     * this lexicon already has the given type, it is returned as is.
+     *
+     * @param type The class of the lexicon to return. It must extend <code>Lexicon</code> and have
+     *        a no-argument constructor.
+     * @return A lexicon of the given type equivalent to this one.
+     **/
+    public Lexicon convertTo(Class type) {
+        if (getClass().equals(type))
+            return this;
+
+        Lexicon result = null;
+        try {
+            result = (Lexicon) type.newInstance();
+        } catch (Exception e) {
+            System.err.println("Can't instantiate '" + type.getName() + "': " + e);
+            System.exit(1);
+        }
+
+        result.copyContents(this);
+        return result;
+    }
+
+
+    /**
+     * Overwrites the data in this object with a deep copy of the data in the given lexicon. Used by
+     * {@link #convertTo(Class)}.
+     *
+     * @param l The lexicon to copy.
+     **/
+    protected void copyContents(Lexicon l) {
+        l.synchronizeCounts();
+        encoding = l.encoding;
+        encodingSet = l.encodingSet;
+        pruneCutoff = l.pruneCutoff;
+        lexiconInv = (FVector) l.lexiconInv.clone();
+        featureCounts = l.featureCounts == null ? null : (IVector) l.featureCounts.clone();
+        perClassFeatureCounts =
+                l.perClassFeatureCounts == null ? null : (IVector2D) l.perClassFeatureCounts
+                        .clone();
+        lexicon = null;
+        lazyMapCreation();
+
+        lexiconChildren = null;
+        if (l.lexiconChildren != null) {
+            lexiconChildren = (ChildLexicon) l.lexiconChildren.clone();
+            lexiconChildren.setParent(this);
+        }
+    }
+
+
     /** Returns whether the given Lexicon object is equal to this one. */
     public boolean equals(Object o) {
         if (!o.getClass().equals(getClass()))
             return false;
         Lexicon l = (Lexicon) o;
+        synchronizeCounts();
+        l.synchronizeCounts();
         return pruneCutoff == l.pruneCutoff
                 && (lexicon == null ? l.lexicon == null : lexicon.equals(l.lexicon))
                 && (featureCounts == null ? l.featureCounts == null : featureCounts
@@ -752,6 +893,7 @@ public class Lexicon implements Cloneable, Serializable {
      * @param out The output stream.
      **/
     public void write(ExceptionlessOutputStream out) {
+        synchronizeCounts();
         out.writeString(getClass().getName());
         if (lexiconChildren == null)
             out.writeString(null);
@@ -927,6 +1069,7 @@ public class Lexicon implements Cloneable, Serializable {
      * @param p Whether or not to include package names in the output.
      **/
     public void printCountTable(boolean p) {
+        synchronizeCounts();
         int rows = lexiconInv.size();
         String[] rowLabels = new String[rows];
         String[] columnLabels = null;
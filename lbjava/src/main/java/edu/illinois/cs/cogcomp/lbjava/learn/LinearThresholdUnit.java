@@ -11,6 +11,7 @@ import java.util.Arrays;
 
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.ArrayScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
 import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
@@ -47,6 +48,12 @@ import edu.illinois.cs.cogcomp.lbjava.util.FVector;
  * Fitting a "thick separator" instead of just a hyperplane is also supported through this class.
  *
  * <p>
+ * The weights are written with the number of bits each given by {@link #weightPrecision}. With
+ * fewer than 64 bits, a model takes less space on disk and, once read, in memory, but its weights
+ * are rounded (see {@link SparseWeightVector#withPrecision(int)}). The weights used for training
+ * are not affected.
+ *
+ * <p>
  * This algorithm's user-configurable parameters are stored in member fields of this class. They may
  * be set via either a constructor that names each parameter explicitly or a constructor that takes
  * an instance of {@link edu.illinois.cs.cogcomp.lbjava.learn.LinearThresholdUnit.Parameters
@@ -72,6 +79,8 @@ public abstract class LinearThresholdUnit extends Learner {
     public static final SparseWeightVector defaultWeightVector = new SparseWeightVector();
     /** any weight less than this is considered irrelevant. This is for prunning. */
     public static final double defaultFeaturePruningThreshold = 0.000001;
+    /** Default for {@link #weightPrecision}. */
+    public static final int defaultWeightPrecision = 64;
 
     /**
      * The rate at which weights are updated; default {@link #defaultLearningRate}.
@@ -106,6 +115,12 @@ public abstract class LinearThresholdUnit extends Learner {
     protected String[] allowableValues;
     /** feature pruning threshold caps magnitude of useful features. */
     public double featurePruningThreshold;
+    /**
+     * The number of bits with which each weight is written: 64, 32, 16, or 8; default
+     * {@link #defaultWeightPrecision}. When a model is read, this is set to the precision it was
+     * written with.
+     **/
+    protected int weightPrecision;
 
     /**
      * Default constructor. The learning rate and threshold take default values, while the name of
@@ -344,6 +359,7 @@ public abstract class LinearThresholdUnit extends Learner {
         positiveThickness = p.thickness + p.positiveThickness;
         negativeThickness = p.thickness + p.negativeThickness;
         featurePruningThreshold = p.featurePruningThreshold;
+        setWeightPrecision(p.weightPrecision);
     }
 
     /**
@@ -361,6 +377,7 @@ public abstract class LinearThresholdUnit extends Learner {
         p.positiveThickness = positiveThickness;
         p.negativeThickness = negativeThickness;
         p.featurePruningThreshold = featurePruningThreshold;
+        p.weightPrecision = weightPrecision;
         return p;
     }
 
@@ -431,6 +448,27 @@ public abstract class LinearThresholdUnit extends Learner {
     }
 
 
+    /**
+     * Returns the current value of the {@link #weightPrecision} variable.
+     *
+     * @return The value of the {@link #weightPrecision} variable.
+     **/
+    public int getWeightPrecision() {
+        return weightPrecision;
+    }
+
+
+    /**
+     * Sets the {@link #weightPrecision} member variable to the specified value.
+     *
+     * @param b The new value for {@link #weightPrecision}; 64, 32, 16, or 8.
+     **/
+    public void setWeightPrecision(int b) {
+        SparseWeightVector.checkPrecision(b);
+        weightPrecision = b;
+    }
+
+
     /**
      * Returns the current value of the {@link #positiveThickness} variable.
      *
@@ -606,10 +644,7 @@ public abstract class LinearThresholdUnit extends Learner {
      **/
     public ScoreSet scores(int[] exampleFeatures, double[] exampleValues) {
         double s = score(exampleFeatures, exampleValues) - threshold;
-        ScoreSet result = new ScoreSet();
-        result.put(allowableValues[0], -s);
-        result.put(allowableValues[1], s);
-        return result;
+        return new ArrayScoreSet(allowableValues, new double[] {-s, s});
     }
 
 
@@ -684,6 +719,30 @@ public abstract class LinearThresholdUnit extends Learner {
     }
 
 
+    /**
+     * Returns the weight that {@link #score(int[],double[])} multiplies the value of the given
+     * feature by. Subclasses that override the score method must override this method as well.
+     *
+     * @param featureIndex The feature index.
+     * @return The feature's weight.
+     **/
+    public double getFeatureWeight(int featureIndex) {
+        return weightVector.getWeight(featureIndex, initialWeight);
+    }
+
+
+    /**
+     * Returns the amount that {@link #score(int[],double[])} adds to the dot product of the weights
+     * with the example. Subclasses that override the score method must override this method as
+     * well.
+     *
+     * @return The amount added to the dot product.
+     **/
+    public double getScoreBias() {
+        return bias;
+    }
+
+
     /**
      * Resets the weight vector to associate the default weight with all features.
      **/
@@ -723,6 +782,20 @@ public abstract class LinearThresholdUnit extends Learner {
      * @param out The output stream.
      **/
     public void write(ExceptionlessOutputStream out) {
+        write(out, weightVector, bias);
+    }
+
+
+    /**
+     * Writes the learned function's internal representation in binary form, with the given weights
+     * and bias in place of {@link #weightVector} and {@link #bias}, so that a derived class can write
+     * a different model than the one it trains without modifying itself.
+     *
+     * @param out The output stream.
+     * @param weights The weights to write.
+     * @param b The bias to write.
+     **/
+    protected void write(ExceptionlessOutputStream out, SparseWeightVector weights, double b) {
         super.write(out);
 
         if (allowableValues == null)
@@ -738,8 +811,11 @@ public abstract class LinearThresholdUnit extends Learner {
         out.writeDouble(learningRate);
         out.writeDouble(positiveThickness);
         out.writeDouble(negativeThickness);
-        out.writeDouble(bias);
-        weightVector.write(out);
+        out.writeDouble(b);
+        if (weights.getPrecision() == weightPrecision)
+            weights.write(out);
+        else
+            weights.withPrecision(weightPrecision).write(out);
     }
 
 
@@ -769,6 +845,7 @@ public abstract class LinearThresholdUnit extends Learner {
         negativeThickness = in.readDouble();
         bias = in.readDouble();
         weightVector = SparseWeightVector.readWeightVector(in);
+        weightPrecision = weightVector.getPrecision();
     }
 
 
@@ -816,6 +893,11 @@ public abstract class LinearThresholdUnit extends Learner {
         public double negativeThickness;
         /** feature pruning threshold caps magnitude of useful features. */
         public double featurePruningThreshold;
+        /**
+         * The number of bits with which each weight is written; default
+         * {@link LinearThresholdUnit#defaultWeightPrecision}.
+         **/
+        public int weightPrecision;
 
         /** Sets all the default values. */
         public Parameters() {
@@ -825,6 +907,7 @@ public abstract class LinearThresholdUnit extends Learner {
             threshold = defaultThreshold;
             thickness = defaultThickness;
             featurePruningThreshold = defaultFeaturePruningThreshold;
+            weightPrecision = defaultWeightPrecision;
         }
 
 
@@ -847,6 +930,7 @@ public abstract class LinearThresholdUnit extends Learner {
             positiveThickness = p.positiveThickness;
             negativeThickness = p.negativeThickness;
             featurePruningThreshold = p.featurePruningThreshold;
+            weightPrecision = p.weightPrecision;
         }
 
 
@@ -881,6 +965,8 @@ public abstract class LinearThresholdUnit extends Learner {
                 result += ", negativeThickness = " + negativeThickness;
             if (featurePruningThreshold != LinearThresholdUnit.defaultFeaturePruningThreshold)
                 result += ", featurePruningThreshold = " + featurePruningThreshold;
+            if (weightPrecision != LinearThresholdUnit.defaultWeightPrecision)
+                result += ", weightPrecision = " + weightPrecision;
             if (result.startsWith(", "))
                 result = result.substring(2);
             return result;
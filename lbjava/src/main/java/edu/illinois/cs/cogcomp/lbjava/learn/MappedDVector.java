@@ -0,0 +1,170 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.nio.ByteBuffer;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.DVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+
+
+/**
+ * A read-only <code>DVector</code> whose elements are stored in a flat array of
+ * <code>double</code>s or <code>float</code>s inside a (typically memory mapped) buffer. Elements
+ * are read with absolute gets, so many threads can share one of these vectors without
+ * synchronization. Any attempt to modify the vector results in an
+ * <code>UnsupportedOperationException</code>.
+ *
+ * @see MappedModel
+ **/
+public class MappedDVector extends DVector {
+    /** The buffer containing the elements. */
+    private final ByteBuffer buffer;
+    /** The position in {@link #buffer} of the first element. */
+    private final int offset;
+    /** The number of elements. */
+    private final int length;
+    /** Whether the elements are stored as <code>float</code>s rather than <code>double</code>s. */
+    private final boolean floats;
+
+
+    /**
+     * Creates a view of the given elements.
+     *
+     * @param b The buffer containing the elements.
+     * @param o The position in <code>b</code> of the first element.
+     * @param l The number of elements.
+     * @param f Whether the elements are stored as <code>float</code>s.
+     **/
+    public MappedDVector(ByteBuffer b, int o, int l, boolean f) {
+        super(1);
+        buffer = b;
+        offset = o;
+        length = l;
+        floats = f;
+    }
+
+
+    /** Returns the number of bits used to store each element; either 32 or 64. */
+    public int getPrecision() {
+        return floats ? 32 : 64;
+    }
+
+
+    /**
+     * Returns the element at the given index, or 0 if the index is past the end of the vector.
+     *
+     * @param i The index.
+     * @return The element.
+     **/
+    public double get(int i) {
+        return get(i, 0);
+    }
+
+
+    /**
+     * Returns the element at the given index.
+     *
+     * @param i The index.
+     * @param d The value to return if <code>i</code> is past the end of the vector.
+     * @return The element.
+     **/
+    public double get(int i, double d) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        if (i >= length)
+            return d;
+        return floats ? buffer.getFloat(offset + (i << 2)) : buffer.getDouble(offset + (i << 3));
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public double set(int i, double v) {
+        throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public double set(int i, double v, double d) {
+        throw readOnly();
+    }
+
+
+    /** Creates the exception thrown when modification is attempted. */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException(
+                "LBJava ERROR: Weights read from a mapped model can't be modified.");
+    }
+
+
+    /** Returns the number of elements in the vector. */
+    public int size() {
+        return length;
+    }
+
+
+    /** Returns the largest element in the vector. */
+    public double max() {
+        double result = -Double.MAX_VALUE;
+        for (int i = 0; i < length; ++i)
+            result = Math.max(result, get(i));
+        return result;
+    }
+
+
+    /** Returns a copy of the elements in a new array. */
+    public double[] toArray() {
+        double[] result = new double[length];
+        for (int i = 0; i < length; ++i)
+            result[i] = get(i);
+        return result;
+    }
+
+
+    /**
+     * Writes the vector in the same binary form as any other <code>DVector</code>.
+     *
+     * @param out The output stream.
+     **/
+    public void write(ExceptionlessOutputStream out) {
+        out.writeInt(length);
+        for (int i = 0; i < length; ++i)
+            out.writeDouble(get(i));
+    }
+
+
+    /** Returns a modifiable copy of this vector stored on the heap. */
+    public Object clone() {
+        return new DVector(toArray());
+    }
+
+
+    /** Two vectors are equal when they have the same elements. */
+    public boolean equals(Object o) {
+        if (!(o instanceof DVector))
+            return false;
+        DVector v = (DVector) o;
+        if (v.size() != length)
+            return false;
+        for (int i = 0; i < length; ++i)
+            if (v.get(i) != get(i))
+                return false;
+        return true;
+    }
+
+
+    /** Returns a hash code computed from the elements of the vector. */
+    public int hashCode() {
+        int result = length;
+        for (int i = 0; i < length; ++i) {
+            long bits = Double.doubleToLongBits(get(i));
+            result = 31 * result + (int) (bits ^ (bits >>> 32));
+        }
+        return result;
+    }
+}
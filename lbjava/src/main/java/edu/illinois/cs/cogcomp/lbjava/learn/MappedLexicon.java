@@ -0,0 +1,348 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Map;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+
+
+/**
+ * A read-only {@link Lexicon} that is queried in place inside a (typically memory mapped) buffer
+ * rather than being deserialized onto the heap. The buffer holds the {@link Feature#fingerprint()
+ * fingerprints} of the lexicon's features in ascending order alongside their indexes, so a lookup
+ * is a binary search. Each feature's complete binary representation is also stored, both so that
+ * {@link #lookupKey(int)} can reconstruct it on demand and so that a lookup can confirm that the
+ * feature with a matching fingerprint really is the one looked up. Features that share a
+ * fingerprint are stored next to each other, and a lookup compares each of them in turn.
+ *
+ * <p>
+ * Mapped lexicons store no feature counts, and any attempt to add features to or prune one results
+ * in an <code>UnsupportedOperationException</code>. The buffer is only read with absolute gets, so
+ * a mapped lexicon may be shared by many threads.
+ *
+ * @see MappedModel
+ **/
+public class MappedLexicon extends Lexicon {
+    /** The size in bytes of the header. */
+    private static final int headerSize = 16;
+
+    /** The contents of the mapped lexicon file. */
+    private ByteBuffer buffer;
+    /** The number of features in the lexicon. */
+    private int features;
+
+
+    /** Creates an empty lexicon. */
+    public MappedLexicon() {}
+
+    /**
+     * Creates a lexicon that views the given contents of a mapped lexicon file.
+     *
+     * @param b The contents of the file, as written by {@link #write(Lexicon,String)}.
+     **/
+    public MappedLexicon(ByteBuffer b) {
+        if (b.getInt(0) != MappedModel.lexiconMagic || b.getInt(4) != MappedModel.version)
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: MappedLexicon: Buffer does not contain a mapped lexicon of a "
+                            + "supported version.");
+        buffer = b;
+        features = b.getInt(8);
+        pruneCutoff = b.getInt(12);
+    }
+
+
+    /**
+     * Maps the mapped lexicon file at the specified location.
+     *
+     * @param url The location of the file.
+     * @return The lexicon.
+     **/
+    public static MappedLexicon open(URL url) {
+        return new MappedLexicon(MappedModel.map(url));
+    }
+
+
+    /**
+     * Writes the given lexicon to the specified file in the format read by this class. Feature
+     * counts are not written.
+     *
+     * @param lexicon The lexicon to convert.
+     * @param filename The name of the file to write.
+     **/
+    public static void write(Lexicon lexicon, String filename) {
+        int N = lexicon.size();
+        final long[] fingerprints = new long[N];
+        Integer[] order = new Integer[N];
+        int[] offsets = new int[N + 1];
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream featureOut = new ExceptionlessOutputStream(bytes);
+
+        for (int i = 0; i < N; ++i) {
+            Feature f = lexicon.lookupKey(i);
+            fingerprints[i] = f.fingerprint();
+            order[i] = i;
+            featureOut.flush();
+            offsets[i] = bytes.size();
+            f.write(featureOut);
+        }
+        featureOut.close();
+        offsets[N] = bytes.size();
+
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                long f1 = fingerprints[i1.intValue()], f2 = fingerprints[i2.intValue()];
+                return f1 < f2 ? -1 : f1 > f2 ? 1 : 0;
+            }
+        });
+
+        if (headerSize + 16L * N + 4 + bytes.size() > Integer.MAX_VALUE) {
+            System.err.println("Can't write '" + filename + "': mapped lexicon would be larger "
+                    + "than 2 GB");
+            System.exit(1);
+        }
+
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            out.writeInt(MappedModel.lexiconMagic);
+            out.writeInt(MappedModel.version);
+            out.writeInt(N);
+            out.writeInt(lexicon.pruneCutoff);
+            for (int i = 0; i < N; ++i)
+                out.writeLong(fingerprints[order[i].intValue()]);
+            for (int i = 0; i < N; ++i)
+                out.writeInt(order[i].intValue());
+            for (int i = 0; i <= N; ++i)
+                out.writeInt(offsets[i]);
+            bytes.writeTo(out);
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Can't write '" + filename + "': " + e);
+            System.exit(1);
+        }
+    }
+
+
+    /** Detaches this lexicon from its buffer, leaving it empty. */
+    public void clear() {
+        super.clear();
+        lexicon = null;
+        buffer = null;
+        features = 0;
+    }
+
+
+    /** Returns the number of features in the lexicon. */
+    public int size() {
+        return features;
+    }
+
+
+    /**
+     * Finds the index of the given feature by binary searching the sorted fingerprints for the
+     * first one that matches, and then comparing the feature with each stored feature that has
+     * that fingerprint.
+     *
+     * @param f The feature to look up.
+     * @return The feature's index, or -1 if it isn't in the lexicon.
+     **/
+    protected int mapLookup(Feature f) {
+        long fingerprint = f.fingerprint();
+        int low = 0, high = features;
+
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (buffer.getLong(headerSize + (middle << 3)) < fingerprint)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+
+        for (; low < features && buffer.getLong(headerSize + (low << 3)) == fingerprint; ++low) {
+            int index = buffer.getInt(headerSize + (features << 3) + (low << 2));
+            if (f.equals(lookupKey(index)))
+                return index;
+        }
+
+        return -1;
+    }
+
+
+    /** Mapped lexicons are always fully populated. */
+    protected void lazyMapCreation() {}
+
+
+    /**
+     * Builds a new map from every feature in this lexicon to its index. Since this lexicon doesn't
+     * store such a map, this is an expensive operation.
+     *
+     * @return An unmodifiable map from features to <code>Integer</code> indexes.
+     **/
+    public Map getMap() {
+        Map result = new HashMap(features * 4 / 3 + 1);
+        for (int i = 0; i < features; ++i)
+            result.put(lookupKey(i), new Integer(i));
+        return Collections.unmodifiableMap(result);
+    }
+
+
+    /**
+     * <!-- lookupKey(int) --> Reconstructs the feature with the given index from its binary
+     * representation.
+     *
+     * @param i The integer key to look up.
+     * @return The feature that maps to the given integer, or <code>null</code> if there is none.
+     **/
+    public Feature lookupKey(int i) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        if (i >= features)
+            return null;
+
+        int offsets = headerSize + features * 12;
+        int start = buffer.getInt(offsets + (i << 2));
+        int end = buffer.getInt(offsets + ((i + 1) << 2));
+        ExceptionlessInputStream in =
+                new ExceptionlessInputStream(MappedModel.openStream(buffer, offsets
+                        + ((features + 1) << 2) + start, end - start));
+        Feature result = Feature.readFeature(in);
+        in.close();
+        return result;
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    protected int addFeature(Feature f, int label) {
+        throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public Feature getChildFeature(Feature f, int label) {
+        throw readOnly();
+    }
+
+
+    /**
+     * Mapped lexicons can't count features, so this method throws an
+     * <code>UnsupportedOperationException</code> unless the policy is
+     * {@link Lexicon.CountPolicy#none}.
+     *
+     * @param policy The new feature counting policy.
+     **/
+    public void countFeatures(CountPolicy policy) {
+        if (policy != CountPolicy.none)
+            throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public int[] prune(PruningPolicy policy) {
+        throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public void discardPrunedFeatures() {
+        throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public void discardPrunedFeatures(int[] dumpthese) {
+        throw readOnly();
+    }
+
+
+    /** Creates the exception thrown when modification is attempted. */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException("LBJava ERROR: MappedLexicon is read-only.");
+    }
+
+
+    /**
+     * Returns an ordinary <code>Lexicon</code> on the heap containing the same features at the same
+     * indexes as this one. The arguments of conjunctive and referring features are added to the new
+     * lexicon's children as they would have been during training, so that it can be written.
+     *
+     * @return The heap lexicon.
+     **/
+    public Lexicon toLexicon() {
+        Lexicon result = new Lexicon();
+        for (int i = 0; i < features; ++i)
+            result.lookup(lookupKey(i).getFeatureKey(result, true, -1), true);
+        result.pruneCutoff = pruneCutoff;
+        return result;
+    }
+
+
+    /**
+     * <!-- convertTo(Class) --> Returns this lexicon if it has the given type, and otherwise
+     * converts the result of {@link #toLexicon()}.
+     *
+     * @param type The class of the lexicon to return.
+     * @return A lexicon of the given type equivalent to this one.
+     **/
+    public Lexicon convertTo(Class type) {
+        if (getClass().equals(type))
+            return this;
+        return toLexicon().convertTo(type);
+    }
+
+
+    /** Returns whether the given object is a mapped lexicon with the same contents. */
+    public boolean equals(Object o) {
+        if (!(o instanceof MappedLexicon))
+            return false;
+        MappedLexicon l = (MappedLexicon) o;
+        return buffer == null ? l.buffer == null : buffer.equals(l.buffer);
+    }
+
+
+    /** Returns a hash code for this lexicon. */
+    public int hashCode() {
+        return features;
+    }
+
+
+    /**
+     * <!-- write(ExceptionlessOutputStream) --> Writes the binary representation of an ordinary
+     * <code>Lexicon</code> containing the same features.
+     *
+     * @param out The output stream.
+     **/
+    public void write(ExceptionlessOutputStream out) {
+        toLexicon().write(out);
+    }
+
+
+    /**
+     * Mapped lexicons can't be read from streams; use {@link #open(URL)} instead.
+     *
+     * @param in The input stream.
+     * @param readCounts Whether or not to read the feature counts.
+     **/
+    public void read(ExceptionlessInputStream in, boolean readCounts) {
+        throw new UnsupportedOperationException(
+                "LBJava ERROR: MappedLexicon can't be read from a stream.");
+    }
+}
@@ -0,0 +1,430 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.DVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+
+
+/**
+ * Converts a trained learner and its feature lexicon into read-only files that are memory mapped
+ * when loaded instead of being deserialized onto the heap. Loading such a model takes time
+ * proportional to the size of its label lexicon and its non-weight parameters rather than to the
+ * number of features, and the operating system shares the mapped pages among every JVM that loads
+ * the same files.
+ *
+ * <p>
+ * A mapped learner file contains every weight vector that the learner writes through
+ * {@link SparseWeightVector} as a flat array of <code>double</code>s (or <code>float</code>s, if
+ * requested), followed by the learner's usual binary representation in which each of those weight
+ * vectors has been replaced by a reference to its array. When read, the weight vectors become
+ * {@link MappedDVector}s viewing the arrays in place. The feature lexicon is converted into a
+ * {@link MappedLexicon}.
+ *
+ * <p>
+ * {@link Learner#readModel(URL)}, {@link Learner#readLearner(URL,boolean)}, and
+ * {@link Lexicon#readLexicon(URL,boolean,Class)} recognize mapped files by their first four bytes,
+ * so the converted files can simply replace the originals. Mapped models can't be trained further;
+ * any attempt to modify their weights or add features to their lexicons results in an
+ * <code>UnsupportedOperationException</code>. Each file must be smaller than 2 GB.
+ *
+ * <h3>Usage</h3> <blockquote> <code>
+ *     java edu.illinois.cs.cogcomp.lbjava.learn.MappedModel [-f] &lt;model.lc&gt; &lt;model.lex&gt;
+ *     &lt;mapped.lc&gt; &lt;mapped.lex&gt;
+ *   </code> </blockquote>
+ *
+ * <h4>Input</h4> <code>&lt;model.lc&gt;</code> and <code>&lt;model.lex&gt;</code> are the files
+ * written by a learner's {@link Learner#write(String,String)} method. With <code>-f</code>, weights
+ * are stored as <code>float</code>s, halving the size of the learner file at the cost of some
+ * precision.
+ *
+ * <h4>Output</h4> The mapped learner and lexicon are written to <code>&lt;mapped.lc&gt;</code> and
+ * <code>&lt;mapped.lex&gt;</code>.
+ **/
+public class MappedModel {
+    /** The first four bytes of a mapped learner file, which spell "LBJM". */
+    public static final int learnerMagic = 0x4C424A4D;
+    /** The first four bytes of a mapped lexicon file, which spell "LBJL". */
+    public static final int lexiconMagic = 0x4C424A4C;
+    /** The version of the mapped file formats written by this class. */
+    public static final int version = 1;
+    /** The size in bytes of the fixed length part of a mapped learner file's header. */
+    private static final int headerSize = 28;
+    /** The size in bytes of each entry in a mapped learner file's table of weight vectors. */
+    private static final int entrySize = 12;
+
+    /** The weight vectors collected so far by a learner being written by this thread. */
+    private static final ThreadLocal<List<DVector>> writing = new ThreadLocal<List<DVector>>();
+    /** The mapped learner file being read by this thread. */
+    private static final ThreadLocal<Reader> reading = new ThreadLocal<Reader>();
+
+
+    public static void main(String[] args) {
+        boolean floats = false;
+        String lcFile = null, lexFile = null, mappedLcFile = null, mappedLexFile = null;
+
+        try {
+            int a = 0;
+            if (args[a].equals("-f")) {
+                floats = true;
+                ++a;
+            }
+            lcFile = args[a++];
+            lexFile = args[a++];
+            mappedLcFile = args[a++];
+            mappedLexFile = args[a++];
+            if (args.length > a)
+                throw new Exception();
+        } catch (Exception e) {
+            System.err.println("usage: java edu.illinois.cs.cogcomp.lbjava.learn.MappedModel [-f] "
+                    + "<model.lc> <model.lex> <mapped.lc> <mapped.lex>");
+            System.exit(1);
+        }
+
+        writeLearner(Learner.readLearner(lcFile), mappedLcFile, floats);
+        MappedLexicon.write(Lexicon.readLexicon(lexFile), mappedLexFile);
+    }
+
+
+    /**
+     * Returns the first four bytes of the given location as an <code>int</code>, or 0 if they
+     * can't be read.
+     *
+     * @param url The location.
+     * @return The magic number at the start of the location.
+     **/
+    public static int readMagic(URL url) {
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(url.openStream());
+            return in.readInt();
+        } catch (IOException e) {
+            return 0;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Maps the contents of the given location into memory. Locations other than files, such as
+     * entries in jar files, can't be mapped, so they are read into a heap buffer instead.
+     *
+     * @param url The location.
+     * @return A buffer containing everything at that location.
+     **/
+    public static ByteBuffer map(URL url) {
+        try {
+            if (url.getProtocol().equals("file")) {
+                RandomAccessFile file = new RandomAccessFile(new File(url.toURI()), "r");
+                try {
+                    FileChannel channel = file.getChannel();
+                    if (channel.size() > Integer.MAX_VALUE)
+                        throw new IOException("file is larger than 2 GB");
+                    return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                } finally {
+                    file.close();
+                }
+            }
+
+            InputStream in = url.openStream();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] block = new byte[1 << 16];
+            for (int n = in.read(block); n != -1; n = in.read(block))
+                bytes.write(block, 0, n);
+            in.close();
+            return ByteBuffer.wrap(bytes.toByteArray());
+        } catch (IOException e) {
+            System.err.println("Can't map '" + url + "': " + e);
+            System.exit(1);
+        } catch (URISyntaxException e) {
+            System.err.println("Can't map '" + url + "': " + e);
+            System.exit(1);
+        }
+
+        return null;
+    }
+
+
+    /**
+     * Returns a stream over the given region of a buffer. The buffer's position and limit are not
+     * affected.
+     *
+     * @param buffer The buffer.
+     * @param offset The position of the first byte in the region.
+     * @param length The number of bytes in the region.
+     * @return A stream that reads the region.
+     **/
+    static InputStream openStream(ByteBuffer buffer, int offset, int length) {
+        ByteBuffer region = buffer.duplicate();
+        region.limit(offset + length);
+        region.position(offset);
+        return new BufferInputStream(region);
+    }
+
+
+    /**
+     * Opens a stream from which a learner can be read as written by
+     * {@link Learner#write(ExceptionlessOutputStream)}. If the given location contains a mapped
+     * learner file, it is mapped, and until the returned stream is closed, weight vectors read by
+     * this thread will view their weights in the mapped file. Otherwise, the location is opened as
+     * an ordinary compressed stream.
+     *
+     * @param url The location of the learner.
+     * @return A stream containing the learner.
+     **/
+    public static ExceptionlessInputStream openModel(URL url) {
+        if (readMagic(url) != learnerMagic)
+            return ExceptionlessInputStream.openCompressedStream(url);
+
+        Reader reader = new Reader(map(url), url);
+        final Reader previous = reading.get();
+        reading.set(reader);
+        return new ExceptionlessInputStream(openStream(reader.buffer, reader.stubOffset,
+                reader.stubLength)) {
+            public void close() {
+                super.close();
+                reading.set(previous);
+            }
+        };
+    }
+
+
+    /**
+     * Writes the given learner to the specified file as a mapped learner file. The learner's
+     * feature lexicon is not written; see {@link MappedLexicon#write(Lexicon,String)}.
+     *
+     * @param learner The learner.
+     * @param filename The name of the file to write.
+     * @param floats Whether to store weights as <code>float</code>s rather than
+     *        <code>double</code>s.
+     **/
+    public static void writeLearner(Learner learner, String filename, boolean floats) {
+        List<DVector> vectors = new ArrayList<DVector>();
+        List<DVector> previous = writing.get();
+        ByteArrayOutputStream stub = new ByteArrayOutputStream();
+        ExceptionlessOutputStream stubOut = new ExceptionlessOutputStream(stub);
+        writing.set(vectors);
+        try {
+            learner.write(stubOut);
+            stubOut.close();
+        } finally {
+            writing.set(previous);
+        }
+
+        int bytesPerWeight = floats ? 4 : 8;
+        long size = align(headerSize + (long) entrySize * vectors.size());
+        long[] offsets = new long[vectors.size()];
+        for (int i = 0; i < offsets.length; ++i) {
+            offsets[i] = size;
+            size = align(size + (long) bytesPerWeight * vectors.get(i).size());
+        }
+        long stubOffset = size;
+        if (stubOffset + stub.size() > Integer.MAX_VALUE) {
+            System.err.println("Can't write '" + filename + "': mapped learner would be larger "
+                    + "than 2 GB");
+            System.exit(1);
+        }
+
+        try {
+            DataOutputStream out =
+                    new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)));
+            out.writeInt(learnerMagic);
+            out.writeInt(version);
+            out.writeInt(bytesPerWeight);
+            out.writeInt(vectors.size());
+            out.writeLong(stubOffset);
+            out.writeInt(stub.size());
+            for (int i = 0; i < offsets.length; ++i) {
+                out.writeLong(offsets[i]);
+                out.writeInt(vectors.get(i).size());
+            }
+            pad(out);
+
+            for (int i = 0; i < offsets.length; ++i) {
+                DVector v = vectors.get(i);
+                int N = v.size();
+                for (int j = 0; j < N; ++j) {
+                    if (floats)
+                        out.writeFloat((float) v.get(j));
+                    else
+                        out.writeDouble(v.get(j));
+                }
+                pad(out);
+            }
+
+            stub.writeTo(out);
+            out.close();
+        } catch (IOException e) {
+            System.err.println("Can't write '" + filename + "': " + e);
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Rounds the given file position up to a multiple of 8.
+     *
+     * @param position The position.
+     * @return The aligned position.
+     **/
+    private static long align(long position) {
+        return (position + 7) & ~7L;
+    }
+
+
+    /**
+     * Writes zeros to the given stream until the number of bytes written to it is a multiple of 8.
+     *
+     * @param out The stream.
+     **/
+    private static void pad(DataOutputStream out) throws IOException {
+        while (out.size() % 8 != 0)
+            out.writeByte(0);
+    }
+
+
+    /**
+     * Called by {@link SparseWeightVector} to write a vector of weights. If a mapped learner file
+     * is being written by this thread, the vector is set aside to be stored in the file's weight
+     * arrays and a reference to it is written to the given stream.
+     *
+     * @param out The output stream.
+     * @param v The weights.
+     * @return <code>true</code> iff a reference was written in place of the weights.
+     **/
+    static boolean writeVector(ExceptionlessOutputStream out, DVector v) {
+        List<DVector> vectors = writing.get();
+        if (vectors == null)
+            return false;
+        out.writeInt(vectors.size());
+        vectors.add(v);
+        return true;
+    }
+
+
+    /**
+     * Called by {@link SparseWeightVector} to read a vector of weights. If a mapped learner file is
+     * being read by this thread, a reference is read from the given stream and a view of the
+     * corresponding weights is returned.
+     *
+     * @param in The input stream.
+     * @return The mapped weights, or <code>null</code> if no mapped learner file is being read.
+     **/
+    static DVector readVector(ExceptionlessInputStream in) {
+        Reader reader = reading.get();
+        if (reader == null)
+            return null;
+        int i = in.readInt();
+        return new MappedDVector(reader.buffer, reader.offsets[i], reader.sizes[i], reader.floats);
+    }
+
+
+    /** The parsed header of a mapped learner file. */
+    private static class Reader {
+        /** The contents of the file. */
+        public ByteBuffer buffer;
+        /** Whether weights are stored as <code>float</code>s. */
+        public boolean floats;
+        /** The position of each weight vector's array. */
+        public int[] offsets;
+        /** The number of weights in each weight vector. */
+        public int[] sizes;
+        /** The position of the learner's binary representation. */
+        public int stubOffset;
+        /** The length of the learner's binary representation. */
+        public int stubLength;
+
+
+        /**
+         * Parses the header of the given mapped learner file.
+         *
+         * @param b The contents of the file.
+         * @param url The location of the file, for error messages.
+         **/
+        public Reader(ByteBuffer b, URL url) {
+            buffer = b;
+            if (b.getInt(4) != version) {
+                System.err.println("Can't read '" + url + "': unsupported mapped learner version "
+                        + b.getInt(4));
+                System.exit(1);
+            }
+
+            floats = b.getInt(8) == 4;
+            int N = b.getInt(12);
+            stubOffset = (int) b.getLong(16);
+            stubLength = b.getInt(24);
+            offsets = new int[N];
+            sizes = new int[N];
+            for (int i = 0; i < N; ++i) {
+                offsets[i] = (int) b.getLong(headerSize + i * entrySize);
+                sizes[i] = b.getInt(headerSize + i * entrySize + 8);
+            }
+        }
+    }
+
+
+    /** An input stream that reads the remaining bytes of a buffer. */
+    private static class BufferInputStream extends InputStream {
+        /** The buffer. */
+        private ByteBuffer buffer;
+
+
+        /**
+         * Creates a stream over the remaining bytes of the given buffer.
+         *
+         * @param b The buffer, whose position will advance as the stream is read.
+         **/
+        public BufferInputStream(ByteBuffer b) {
+            buffer = b;
+        }
+
+
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xff : -1;
+        }
+
+
+        public int read(byte[] b, int off, int len) {
+            if (len == 0)
+                return 0;
+            if (!buffer.hasRemaining())
+                return -1;
+            len = Math.min(len, buffer.remaining());
+            buffer.get(b, off, len);
+            return len;
+        }
+
+
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
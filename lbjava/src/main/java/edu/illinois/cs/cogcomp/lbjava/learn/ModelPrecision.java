@@ -0,0 +1,177 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import java.io.File;
+
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+
+
+/**
+ * Rewrites a trained learner with its weights stored in fewer bits, and reports how much accuracy
+ * the rounding costs. Learners that store their weights this way are read as usual; see
+ * {@link LinearThresholdUnit#setWeightPrecision(int)}. Only {@link LinearThresholdUnit}s and
+ * {@link SparseNetworkLearner}s of them can be converted.
+ *
+ * <h3>Usage</h3> <blockquote> <code>
+ *     java edu.illinois.cs.cogcomp.lbjava.learn.ModelPrecision [-b &lt;bits&gt;]
+ *     [-t &lt;examples&gt;] &lt;model.lc&gt; &lt;converted.lc&gt;
+ *   </code> </blockquote>
+ *
+ * <h4>Input</h4> <code>&lt;model.lc&gt;</code> is the learner file written by a learner's
+ * {@link Learner#write(String,String)} method. <code>&lt;bits&gt;</code> is the number of bits with
+ * which each weight is stored: 32 for <code>float</code>s, or 16 or 8 for quantized integers (see
+ * {@link QuantizedDVector}). It defaults to 16. <code>&lt;examples&gt;</code> is an optional file
+ * of testing examples pre-extracted with the same feature lexicon as the learner, as produced by
+ * {@link BatchTrainer#preExtract(String)}.
+ *
+ * <h4>Output</h4> The converted learner is written to <code>&lt;converted.lc&gt;</code>, and the
+ * sizes of the two files are printed to <code>STDOUT</code>. When testing examples are given, the
+ * accuracy of both learners on them and the difference between the two are printed as well. The
+ * feature lexicon is unchanged, so the original <code>.lex</code> file may be used with the
+ * converted learner.
+ **/
+public class ModelPrecision {
+    /** The default number of bits with which each weight is stored. */
+    public static final int defaultBits = 16;
+
+
+    public static void main(String[] args) {
+        int bits = defaultBits;
+        String testFile = null, lcFile = null, convertedLcFile = null;
+
+        try {
+            int a = 0;
+            for (; args[a].startsWith("-"); a += 2) {
+                if (args[a].equals("-b"))
+                    bits = Integer.parseInt(args[a + 1]);
+                else if (args[a].equals("-t"))
+                    testFile = args[a + 1];
+                else
+                    throw new Exception();
+            }
+
+            lcFile = args[a++];
+            convertedLcFile = args[a++];
+            if (args.length > a)
+                throw new Exception();
+        } catch (Exception e) {
+            System.err.println("usage: java edu.illinois.cs.cogcomp.lbjava.learn.ModelPrecision "
+                    + "[-b <bits>] [-t <examples>] <model.lc> <converted.lc>");
+            System.exit(1);
+        }
+
+        Learner learner = Learner.readLearner(lcFile);
+        int original = precision(learner);
+        convert(learner, bits);
+        learner.writeModel(convertedLcFile);
+
+        System.out.println("Weight precision: " + original + " bits -> " + bits + " bits");
+        System.out.println("Learner file:     " + new File(lcFile).length() + " bytes -> "
+                + new File(convertedLcFile).length() + " bytes");
+
+        if (testFile != null) {
+            Learner converted = Learner.readLearner(convertedLcFile);
+            Parser parser = ArrayFileParser.open(testFile, false);
+            double before = accuracy(Learner.readLearner(lcFile), parser);
+            double after = accuracy(converted, parser);
+            parser.close();
+
+            System.out.println("Accuracy:         " + percent(before) + " -> " + percent(after)
+                    + " (" + (after >= before ? "+" : "") + percent(after - before) + ")");
+        }
+    }
+
+
+    /**
+     * Formats a fraction as a percentage.
+     *
+     * @param f The fraction.
+     * @return The percentage with three decimal places.
+     **/
+    private static String percent(double f) {
+        return String.format("%.3f%%", 100 * f);
+    }
+
+
+    /**
+     * Returns the number of bits with which the given learner's weights are stored. For a
+     * {@link SparseNetworkLearner}, this is the precision of its first LTU.
+     *
+     * @param learner The learner.
+     * @return The precision.
+     **/
+    public static int precision(Learner learner) {
+        if (learner instanceof LinearThresholdUnit)
+            return ((LinearThresholdUnit) learner).getWeightVector().getPrecision();
+        checkConvertible(learner);
+
+        SparseNetworkLearner network = (SparseNetworkLearner) learner;
+        int N = network.getNetwork().size();
+        for (int i = 0; i < N; ++i)
+            if (network.getLTU(i) != null)
+                return precision((Learner) network.getLTU(i));
+        return network.getBaseLTU().getWeightPrecision();
+    }
+
+
+    /**
+     * Sets the number of bits with which the given learner's weights will be written.
+     *
+     * @param learner The learner.
+     * @param bits The number of bits; 64, 32, 16, or 8.
+     **/
+    public static void convert(Learner learner, int bits) {
+        if (learner instanceof LinearThresholdUnit)
+            ((LinearThresholdUnit) learner).setWeightPrecision(bits);
+        else {
+            checkConvertible(learner);
+            ((SparseNetworkLearner) learner).setWeightPrecision(bits);
+        }
+    }
+
+
+    /**
+     * Throws an <code>IllegalArgumentException</code> unless the given learner's weights can be
+     * converted.
+     *
+     * @param learner The learner.
+     **/
+    private static void checkConvertible(Learner learner) {
+        if (!(learner instanceof LinearThresholdUnit || learner instanceof SparseNetworkLearner))
+            throw new IllegalArgumentException("LBJava ERROR: ModelPrecision: Can't convert the "
+                    + "weights of a " + learner.getClass().getName() + "; only "
+                    + "LinearThresholdUnits and SparseNetworkLearners are supported.");
+    }
+
+
+    /**
+     * Computes the accuracy of the given learner on the examples produced by the given parser,
+     * which is reset afterward. If the parser is an {@link ArrayFileParser}, its examples are
+     * labeled already; otherwise, the learner's labeler is used as the oracle.
+     *
+     * @param learner The learner.
+     * @param parser The testing examples.
+     * @return The fraction of examples classified correctly.
+     **/
+    public static double accuracy(Learner learner, Parser parser) {
+        double result;
+
+        if (parser instanceof ArrayFileParser) {
+            ArrayFileParser afp = (ArrayFileParser) parser;
+            afp.setIncludePruned(true);
+            result = new Accuracy().test(learner, null, parser);
+            afp.setIncludePruned(false);
+        } else
+            result = new Accuracy().test(learner, learner.getLabeler(), parser);
+
+        parser.reset();
+        return result;
+    }
+}
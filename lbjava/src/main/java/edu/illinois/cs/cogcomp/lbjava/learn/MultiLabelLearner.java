@@ -110,6 +110,7 @@ public class MultiLabelLearner extends SparseNetworkLearner {
      * @return A vector containing the features described above.
      **/
     public FeatureVector classify(int[] exampleFeatures, double[] exampleValues) {
+        learnPending();
         FeatureVector result = new FeatureVector();
 
         for (int i = 0; i < network.size(); ++i) {
@@ -95,10 +95,6 @@ public class NeuralNetLearner extends Learner {
 
     }
     
-    /** used to store inputs so we don't realloc these arrays over and over. This is an optimization
-     * only possible because we know this guys is not multithreaded. */
-    private float inputs[] = null;
-    
     /** used to store inputs so we don't realloc these arrays over and over. This is an optimization
      * only possible because we know this guys is not multithreaded. */
     private float outputs[] = null;
@@ -168,7 +164,6 @@ public class NeuralNetLearner extends Learner {
 	        for (int i = 0; i < layerSizes.length-1; i++) {
 	            l[i] = new Layer(layerSizes[i], layerSizes[i+1], r);
 	        }
-			inputs = new float[l[0].getNumberInputs()];
 			outputs = new float[l[l.length-1].getNumberOutputs()];
 			trainer = new SimpleNNTrainer(parameters.layers, parameters.learningRate, parameters.momentum);
         }
@@ -232,15 +227,13 @@ public class NeuralNetLearner extends Learner {
 
 
     /**
-     * Populate the input and output vectors with the values for only those 
-     * features that are represented.
+     * Populate the output vector with the values for only those labels that are represented.
+     * The inputs are not copied into a dense vector; the first layer reads the sparse example
+     * directly, so the cost of an example scales with its number of active features rather than
+     * the size of the lexicon.
      */
-    final private void populateNNVector(int[] exampleFeatures, double[] exampleValues, int[] exampleLabels,
-            double[] labelValues) {
-		Arrays.fill(inputs,0.0f);
+    final private void populateNNVector(int[] exampleLabels, double[] labelValues) {
 		Arrays.fill(outputs,0.0f);
-		for (int i = 0; i < exampleFeatures.length; i++)
-			inputs[exampleFeatures[i]] = (float)exampleValues[i];
 		if (exampleLabels != null)
 			for (int i = 0; i < exampleLabels.length; i++)
 				outputs[exampleLabels[i]] = (float)labelValues[i];
@@ -256,8 +249,8 @@ public class NeuralNetLearner extends Learner {
      **/
     public void learn(int[] exampleFeatures, double[] exampleValues, int[] exampleLabels,
             double[] labelValues) {
-    	this.populateNNVector(exampleFeatures, exampleValues, exampleLabels, labelValues);
-		this.trainer.train(inputs, outputs);
+    	this.populateNNVector(exampleLabels, labelValues);
+		this.trainer.train(exampleFeatures, exampleValues, outputs);
     }
 
     /**
@@ -277,10 +270,8 @@ public class NeuralNetLearner extends Learner {
      * @return The classification of the example as a feature.
      **/
     public Feature featureValue(int[] f, double[] v) {
-    	this.populateNNVector(f, v, null, null);
-    	
     	// this returns the activation energies for ALL layers, we only wan the output layer
-    	float[][] results = this.trainer.activate(inputs);
+    	float[][] results = this.trainer.activate(f, v);
 
     	// the last vector contains the score, this is the output of the last layer.
     	return  new RealPrimitiveStringFeature(containingPackage, name, "", results [results.length-1][0]);
@@ -294,8 +285,7 @@ public class NeuralNetLearner extends Learner {
      * @return The computed real value.
      **/
     public double realValue(int[] exampleFeatures, double[] exampleValues) {
-    	this.populateNNVector(exampleFeatures, exampleValues, null, null);
-    	return (double) this.trainer.activate(inputs)[0][0];
+    	return (double) this.trainer.activate(exampleFeatures, exampleValues)[0][0];
     }
 
     /**
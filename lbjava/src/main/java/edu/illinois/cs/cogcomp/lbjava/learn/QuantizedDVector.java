@@ -0,0 +1,248 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.learn;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.DVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+
+
+/**
+ * A read-only <code>DVector</code> whose elements are stored as 8 or 16 bit integers. The vector
+ * is divided into blocks of {@link #blockSize} consecutive elements, each with its own scale, and
+ * every element is stored as the nearest integer multiple of its block's scale. The scale is
+ * chosen so that the largest magnitude in the block maps to the largest representable integer, so
+ * the error of any element is at most half a step, or 1/254th (8 bits) or 1/65534th (16 bits) of
+ * the largest magnitude in its block. Since neighboring features in a lexicon tend to be of
+ * similar frequency, per-block scales lose much less than a single scale for the whole vector.
+ *
+ * <p>
+ * Quantized weights are meant for models that are done training. Any attempt to modify the vector
+ * results in an <code>UnsupportedOperationException</code>.
+ *
+ * @see SparseWeightVector#withPrecision(int)
+ **/
+public class QuantizedDVector extends DVector {
+    /** The number of consecutive elements that share a scale. */
+    public static final int blockSize = 64;
+
+    /** The number of bits used to store each element; either 8 or 16. */
+    private int bits;
+    /** The elements, when {@link #bits} is 8. */
+    private byte[] bytes;
+    /** The elements, when {@link #bits} is 16. */
+    private short[] shorts;
+    /** The scale of each block. */
+    private float[] scales;
+    /** The number of elements. */
+    private int length;
+
+
+    /**
+     * Creates an empty vector to be filled by {@link #read(ExceptionlessInputStream)}.
+     *
+     * @param b The number of bits used to store each element; either 8 or 16.
+     **/
+    public QuantizedDVector(int b) {
+        super(1);
+        if (b != 8 && b != 16)
+            throw new IllegalArgumentException("LBJava ERROR: Weights can only be quantized to 8 "
+                    + "or 16 bits, not " + b + ".");
+        bits = b;
+        allocate(0);
+    }
+
+    /**
+     * Creates a quantized copy of the given vector.
+     *
+     * @param v The vector to copy.
+     * @param b The number of bits used to store each element; either 8 or 16.
+     **/
+    public QuantizedDVector(DVector v, int b) {
+        this(b);
+        allocate(v.size());
+        int largest = (1 << (bits - 1)) - 1;
+
+        for (int block = 0; block < scales.length; ++block) {
+            int start = block * blockSize;
+            int end = Math.min(start + blockSize, length);
+            double magnitude = 0;
+            for (int i = start; i < end; ++i)
+                magnitude = Math.max(magnitude, Math.abs(v.get(i)));
+            if (magnitude == 0)
+                continue;
+
+            scales[block] = (float) (magnitude / largest);
+            for (int i = start; i < end; ++i) {
+                long q = Math.round(v.get(i) / scales[block]);
+                q = Math.max(-largest, Math.min(largest, q));
+                if (bits == 8)
+                    bytes[i] = (byte) q;
+                else
+                    shorts[i] = (short) q;
+            }
+        }
+    }
+
+
+    /**
+     * Allocates storage for the given number of elements.
+     *
+     * @param n The number of elements.
+     **/
+    private void allocate(int n) {
+        length = n;
+        scales = new float[(n + blockSize - 1) / blockSize];
+        bytes = bits == 8 ? new byte[n] : null;
+        shorts = bits == 16 ? new short[n] : null;
+    }
+
+
+    /** Returns the number of bits used to store each element. */
+    public int getBits() {
+        return bits;
+    }
+
+
+    /**
+     * Returns the element at the given index, or 0 if the index is past the end of the vector.
+     *
+     * @param i The index.
+     * @return The element.
+     **/
+    public double get(int i) {
+        return get(i, 0);
+    }
+
+
+    /**
+     * Returns the element at the given index.
+     *
+     * @param i The index.
+     * @param d The value to return if <code>i</code> is past the end of the vector.
+     * @return The element.
+     **/
+    public double get(int i, double d) {
+        if (i < 0)
+            throw new ArrayIndexOutOfBoundsException(i);
+        if (i >= length)
+            return d;
+        return (bits == 8 ? bytes[i] : shorts[i]) * (double) scales[i / blockSize];
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public double set(int i, double v) {
+        throw readOnly();
+    }
+
+
+    /** Throws an <code>UnsupportedOperationException</code>. */
+    public double set(int i, double v, double d) {
+        throw readOnly();
+    }
+
+
+    /** Creates the exception thrown when modification is attempted. */
+    private static UnsupportedOperationException readOnly() {
+        return new UnsupportedOperationException(
+                "LBJava ERROR: Quantized weights can't be modified.");
+    }
+
+
+    /** Returns the number of elements in the vector. */
+    public int size() {
+        return length;
+    }
+
+
+    /** Returns the largest element in the vector. */
+    public double max() {
+        double result = -Double.MAX_VALUE;
+        for (int i = 0; i < length; ++i)
+            result = Math.max(result, get(i));
+        return result;
+    }
+
+
+    /** Returns a copy of the elements in a new array. */
+    public double[] toArray() {
+        double[] result = new double[length];
+        for (int i = 0; i < length; ++i)
+            result[i] = get(i);
+        return result;
+    }
+
+
+    /**
+     * Writes the number of elements, the scale of each block, and then the quantized elements.
+     *
+     * @param out The output stream.
+     **/
+    public void write(ExceptionlessOutputStream out) {
+        out.writeInt(length);
+        for (int i = 0; i < scales.length; ++i)
+            out.writeFloat(scales[i]);
+        for (int i = 0; i < length; ++i) {
+            if (bits == 8)
+                out.writeByte(bytes[i]);
+            else
+                out.writeShort(shorts[i]);
+        }
+    }
+
+
+    /**
+     * Reads a vector as written by {@link #write(ExceptionlessOutputStream)} with the same number
+     * of bits per element as this one, overwriting the contents of this vector.
+     *
+     * @param in The input stream.
+     **/
+    public void read(ExceptionlessInputStream in) {
+        allocate(in.readInt());
+        for (int i = 0; i < scales.length; ++i)
+            scales[i] = in.readFloat();
+        for (int i = 0; i < length; ++i) {
+            if (bits == 8)
+                bytes[i] = in.readByte();
+            else
+                shorts[i] = in.readShort();
+        }
+    }
+
+
+    /** Returns a modifiable copy of this vector stored as <code>double</code>s. */
+    public Object clone() {
+        return new DVector(toArray());
+    }
+
+
+    /** Two vectors are equal when they have the same elements. */
+    public boolean equals(Object o) {
+        if (!(o instanceof DVector))
+            return false;
+        DVector v = (DVector) o;
+        if (v.size() != length)
+            return false;
+        for (int i = 0; i < length; ++i)
+            if (v.get(i) != get(i))
+                return false;
+        return true;
+    }
+
+
+    /** Returns a hash code computed from the elements of the vector. */
+    public int hashCode() {
+        int result = length;
+        for (int i = 0; i < length; ++i) {
+            long l = Double.doubleToLongBits(get(i));
+            result = 31 * result + (int) (l ^ (l >>> 32));
+        }
+        return result;
+    }
+}
@@ -7,6 +7,7 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
+import edu.illinois.cs.cogcomp.lbjava.classify.ArrayScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.classify.Score;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
 
@@ -52,6 +53,11 @@ public class Sigmoid extends Normalizer {
      * @return The normalized set of scores.
      **/
     public ScoreSet normalize(ScoreSet scores) {
+        if (scores instanceof ArrayScoreSet) {
+            ((ArrayScoreSet) scores).sigmoid(alpha);
+            return scores;
+        }
+
         Score[] array = scores.toArray();
         for (int i = 0; i < array.length; ++i)
             array[i].score = 1 / (1 + Math.exp(-alpha * array[i].score));
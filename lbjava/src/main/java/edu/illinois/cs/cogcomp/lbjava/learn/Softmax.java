@@ -7,6 +7,7 @@
  */
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
+import edu.illinois.cs.cogcomp.lbjava.classify.ArrayScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.classify.Score;
 import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
 
@@ -53,6 +54,11 @@ public class Softmax extends Normalizer {
      * @return The normalized set of scores.
      **/
     public ScoreSet normalize(ScoreSet scores) {
+        if (scores instanceof ArrayScoreSet) {
+            ((ArrayScoreSet) scores).softmax(alpha);
+            return scores;
+        }
+
         Score[] array = scores.toArray();
         double sum = 0;
 
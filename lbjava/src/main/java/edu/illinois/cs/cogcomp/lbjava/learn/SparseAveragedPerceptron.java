@@ -38,9 +38,22 @@ import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
  *
  * <p>
  * The above description is a useful way to think about the operation of this {@link Learner}.
- * However, the user should note that this implementation never explicitly stores
+ * However, the user should note that during training, this implementation never explicitly stores
  * <i>w<sup>*</sup></i>. Instead, it is computed efficiently on demand. Thus, interspersed online
- * training and evaluation is efficient and operates as expected.
+ * training and evaluation is efficient and operates as expected. When training is done (see
+ * {@link #doneLearning()}) and when a model is read, <i>w<sup>*</sup></i> is computed once and
+ * stored so that predictions don't need to recompute it. Training may still resume afterward.
+ *
+ * <p>
+ * When {@link #compactModel} is set, models are written with <i>w<sup>*</sup></i> in place of the
+ * information needed to compute it, halving the number of weights that are read when the model is
+ * loaded and kept in memory afterward, as well as the size of a {@link MappedModel}. (The size of
+ * a compressed model file may not shrink, since averaged weights compress less well than the
+ * information they're computed from.) Such a model makes the same predictions from every feature
+ * it has a weight for, but if training is resumed from it, the averaging starts over from
+ * <i>w<sup>*</sup></i>. It is also the better way to write a model with reduced
+ * {@link LinearThresholdUnit#weightPrecision}, since only <i>w<sup>*</sup></i> is rounded rather
+ * than the two vectors it is computed from.
  *
  * <p>
  * It is assumed that {@link Learner#labeler} is a single discrete classifier that produces the same
@@ -55,6 +68,8 @@ import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
 public class SparseAveragedPerceptron extends SparsePerceptron {
     /** Default for {@link LinearThresholdUnit#weightVector}. */
     public static final AveragedWeightVector defaultWeightVector = new AveragedWeightVector();
+    /** Default for {@link #compactModel}. */
+    public static final boolean defaultCompactModel = false;
 
     /**
      * Holds the same reference as {@link LinearThresholdUnit#weightVector} casted to
@@ -72,6 +87,11 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
 
     /** Keeps the extra information necessary to compute the averaged bias. */
     protected double averagedBias;
+    /**
+     * Whether models are written with only the averaged weights and bias, discarding what is
+     * needed to resume training exactly; default {@link #defaultCompactModel}.
+     **/
+    protected boolean compactModel;
 
 
     /**
@@ -225,6 +245,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
      **/
     public Learner.Parameters getParameters() {
         Parameters p = new Parameters((SparsePerceptron.Parameters) super.getParameters());
+        p.compactModel = compactModel;
         return p;
     }
 
@@ -237,6 +258,23 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
     public void setParameters(Parameters p) {
         super.setParameters(p);
         awv = (AveragedWeightVector) weightVector;
+        compactModel = p.compactModel;
+    }
+
+
+    /** Returns the value of {@link #compactModel}. */
+    public boolean getCompactModel() {
+        return compactModel;
+    }
+
+
+    /**
+     * Sets the value of {@link #compactModel}.
+     *
+     * @param c Whether models are written with only the averaged weights and bias.
+     **/
+    public void setCompactModel(boolean c) {
+        compactModel = c;
     }
 
 
@@ -259,6 +297,25 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
     }
 
 
+    /**
+     * Returns the averaged weight of the given feature, which is the weight used by
+     * {@link #score(int[],double[])}.
+     *
+     * @param featureIndex The feature index.
+     * @return The feature's averaged weight.
+     **/
+    public double getFeatureWeight(int featureIndex) {
+        return awv.getAveragedWeight(featureIndex, initialWeight);
+    }
+
+
+    /** Returns the averaged bias, which is the bias used by {@link #score(int[],double[])}. */
+    public double getScoreBias() {
+        int examples = awv.getExamples();
+        return examples > 0 ? (examples * bias - averagedBias) / (double) examples : 0;
+    }
+
+
     /**
      * Scales the feature vector produced by the extractor by the learning rate and adds it to the
      * weight vector.
@@ -332,6 +389,16 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
     }
 
 
+    /**
+     * Computes and stores the averaged weights so that predictions made before training resumes
+     * don't need to compute them.
+     **/
+    public void doneLearning() {
+        super.doneLearning();
+        awv.materialize(initialWeight);
+    }
+
+
     /** Resets the weight vector to all zeros. */
     public void forget() {
         super.forget();
@@ -360,13 +427,22 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
 
 
     /**
-     * Writes the learned function's internal representation in binary form.
+     * Writes the learned function's internal representation in binary form. When
+     * {@link #compactModel} is set, the averaged weights and bias are written in place of the
+     * weights and bias used during training, along with running sums that make them average to
+     * themselves, so that any reader of the usual representation gets the same predictions.
      *
      * @param out The output stream.
      **/
     public void write(ExceptionlessOutputStream out) {
-        super.write(out);
-        out.writeDouble(averagedBias);
+        if (!compactModel) {
+            super.write(out);
+            out.writeDouble(averagedBias);
+            return;
+        }
+
+        super.write(out, awv.collapse(initialWeight), getScoreBias());
+        out.writeDouble(0);
     }
 
 
@@ -381,6 +457,8 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         super.read(in);
         awv = (AveragedWeightVector) weightVector;
         averagedBias = in.readDouble();
+        if (awv.getPrecision() == 64 && !(awv.getRawWeights() instanceof MappedDVector))
+            awv.materialize(initialWeight);
     }
 
 
@@ -394,9 +472,17 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
      * @author Nick Rizzolo
      **/
     public static class Parameters extends SparsePerceptron.Parameters {
+        /**
+         * Whether models are written with only the averaged weights and bias; default
+         * {@link SparseAveragedPerceptron#defaultCompactModel}.
+         **/
+        public boolean compactModel;
+
+
         /** Sets all the default values. */
         public Parameters() {
             weightVector = (AveragedWeightVector) defaultWeightVector.clone();
+            compactModel = defaultCompactModel;
         }
 
 
@@ -406,12 +492,14 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
          **/
         public Parameters(SparsePerceptron.Parameters p) {
             super(p);
+            compactModel = defaultCompactModel;
         }
 
 
         /** Copy constructor. */
         public Parameters(Parameters p) {
             super(p);
+            compactModel = p.compactModel;
         }
 
 
@@ -424,6 +512,22 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         public void setParameters(Learner l) {
             ((SparseAveragedPerceptron) l).setParameters(this);
         }
+
+
+        /**
+         * Creates a string representation of these parameters in which only those parameters that
+         * differ from their default values are mentioned.
+         **/
+        public String nonDefaultString() {
+            String result = super.nonDefaultString();
+
+            if (compactModel != SparseAveragedPerceptron.defaultCompactModel)
+                result += ", compactModel = " + compactModel;
+
+            if (result.startsWith(", "))
+                result = result.substring(2);
+            return result;
+        }
     }
 
 
@@ -444,6 +548,14 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         public DVector averagedWeights;
         /** Counts the total number of training examples this vector has seen. */
         protected int examples;
+        /**
+         * The averaged weights as computed by {@link #materialize(double)}, or <code>null</code>
+         * if they haven't been computed since this vector last changed. This array is never
+         * modified once stored here.
+         **/
+        protected volatile double[] averaged;
+        /** The default weight with which {@link #averaged} was computed. */
+        protected double averagedDefault;
 
 
         /** Simply instantiates the weight vectors. */
@@ -473,6 +585,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
 
         /** Increments the {@link #examples} variable. */
         public void correctExample() {
+            averaged = null;
             ++examples;
         }
 
@@ -490,6 +603,9 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
          * @return The weight of the feature.
          **/
         public double getAveragedWeight(int featureIndex, double defaultW) {
+            double[] a = averaged;
+            if (a != null && featureIndex < a.length && defaultW == averagedDefault)
+                return a[featureIndex];
             if (examples == 0)
                 return 0;
             double aw = averagedWeights.get(featureIndex, defaultW);
@@ -522,6 +638,19 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
          **/
         public double dot(int[] exampleFeatures, double[] exampleValues, double defaultW) {
             double sum = 0;
+            double[] a = averaged;
+
+            if (a != null && defaultW == averagedDefault) {
+                for (int i = 0; i < exampleFeatures.length; i++) {
+                    int featureIndex = exampleFeatures[i];
+                    double w =
+                            featureIndex < a.length ? a[featureIndex] : getAveragedWeight(
+                                    featureIndex, defaultW);
+                    sum += w * exampleValues[i];
+                }
+
+                return sum;
+            }
 
             for (int i = 0; i < exampleFeatures.length; i++) {
                 double w = getAveragedWeight(exampleFeatures[i], defaultW);
@@ -532,6 +661,58 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         }
 
 
+        /**
+         * Computes every averaged weight and stores them in {@link #averaged}, where
+         * {@link #getAveragedWeight(int,double)} and {@link #dot(int[],double[],double)} find them
+         * until this vector changes.
+         *
+         * @param defaultW The default weight.
+         **/
+        public void materialize(double defaultW) {
+            averaged = null;
+            double[] a = new double[Math.max(weights.size(), averagedWeights.size())];
+            for (int i = 0; i < a.length; ++i)
+                a[i] = getAveragedWeight(i, defaultW);
+            averagedDefault = defaultW;
+            averaged = a;
+        }
+
+
+        /**
+         * Creates a vector whose weights are this vector's averaged weights, and whose running sums
+         * are empty, so that its averaged weights are the same as this vector's. Unless the default
+         * weight is not 0, the running sums take no space at all.
+         *
+         * @param defaultW The default weight.
+         * @return The new vector.
+         **/
+        public AveragedWeightVector collapse(double defaultW) {
+            double[] a = new double[Math.max(weights.size(), averagedWeights.size())];
+            for (int i = 0; i < a.length; ++i)
+                a[i] = getAveragedWeight(i, defaultW);
+
+            AveragedWeightVector result = new AveragedWeightVector();
+            result.weights = new DVector(a);
+            if (defaultW != 0)
+                result.averagedWeights = new DVector(new double[a.length]);
+            result.examples = Math.min(examples, 1);
+            return result;
+        }
+
+
+        /**
+         * Sets the weight of the given feature, discarding {@link #averaged}.
+         *
+         * @param featureIndex The feature index.
+         * @param w The new weight.
+         * @param defaultW The default weight.
+         **/
+        public void setWeight(int featureIndex, double w, double defaultW) {
+            averaged = null;
+            super.setWeight(featureIndex, w, defaultW);
+        }
+
+
         /**
          * Takes the dot product of the regular, non-averaged, Perceptron weight vector with the
          * given vector, using the hard coded default weight.
@@ -602,6 +783,13 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         }
 
 
+        /** Empties the weight map, discarding {@link #averaged}. */
+        public void clear() {
+            averaged = null;
+            super.clear();
+        }
+
+
         /**
          * Adds a new value to the current averaged weight indexed by the supplied feature index.
          *
@@ -609,6 +797,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
          * @param w The value to add to the current weight.
          **/
         protected void updateAveragedWeight(int featureIndex, double w) {
+            averaged = null;
             double newWeight = averagedWeights.get(featureIndex, defaultWeight) + w;
             averagedWeights.set(featureIndex, newWeight, defaultWeight);
         }
@@ -697,7 +886,7 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
         public void write(ExceptionlessOutputStream out) {
             super.write(out);
             out.writeInt(examples);
-            averagedWeights.write(out);
+            writeWeights(out, averagedWeights);
         }
 
 
@@ -712,9 +901,23 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
          * @param in The input stream.
          **/
         public void read(ExceptionlessInputStream in) {
+            averaged = null;
             super.read(in);
             examples = in.readInt();
-            averagedWeights.read(in);
+            averagedWeights = readWeights(in, averagedWeights);
+        }
+
+
+        /**
+         * Replaces the storage of both the weights and the running sums with copies of the given
+         * precision, discarding {@link #averaged}.
+         *
+         * @param bits The number of bits used to store each weight.
+         **/
+        protected void storeWithPrecision(int bits) {
+            super.storeWithPrecision(bits);
+            averagedWeights = copyWithPrecision(averagedWeights, bits);
+            averaged = null;
         }
 
 
@@ -778,6 +981,8 @@ public class SparseAveragedPerceptron extends SparsePerceptron {
     			newvec = tmp;
     		}
     		this.averagedWeights = new DVector(newvec);
+    		if (averaged != null)
+    			materialize(averagedDefault);
     	}
     }
 }
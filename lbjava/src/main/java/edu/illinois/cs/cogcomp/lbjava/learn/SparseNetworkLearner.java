@@ -8,13 +8,20 @@
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
 import java.io.PrintStream;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.Map.Entry;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.OVector;
+import edu.illinois.cs.cogcomp.lbjava.classify.ArrayScoreSet;
 import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
 import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
 import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
@@ -41,6 +48,14 @@ import edu.illinois.cs.cogcomp.lbjava.learn.featurepruning.SparseNetworkOptimize
  * {@link SparseNetworkLearner.Parameters Parameters} class indicates the default value of the
  * parameter when using the latter type of constructor.
  *
+ * <p>
+ * When {@link #threads} is greater than 1, training examples are collected into batches of
+ * {@link #batchSize}, and the LTUs in the network are divided among that many threads. Each thread
+ * trains its LTUs on every example of the batch in the order the examples were received, so every
+ * LTU sees exactly the same sequence of examples it would have seen with a single thread, and the
+ * learned network is identical. Batches are learned before the network is used or written, at the
+ * end of each round, and when learning is done.
+ *
  * @author Nick Rizzolo
  **/
 public class SparseNetworkLearner extends Learner {
@@ -48,6 +63,10 @@ public class SparseNetworkLearner extends Learner {
 
     /** Default for {@link #baseLTU}. */
     public static final LinearThresholdUnit defaultBaseLTU = new SparseAveragedPerceptron();
+    /** Default for {@link #threads}. */
+    public static final int defaultThreads = 1;
+    /** The number of examples collected before they are learned in parallel. */
+    public static final int batchSize = 512;
 
     /**
      * The underlying algorithm used to learn each class separately as a binary classifier; default
@@ -71,6 +90,26 @@ public class SparseNetworkLearner extends Learner {
     /** Whether or not this learner's labeler produces conjunctive features. */
     protected boolean conjunctiveLabels;
 
+    /**
+     * The number of threads used to train the LTUs in the network; default {@link #defaultThreads}.
+     **/
+    protected int threads;
+
+    /**
+     * Examples waiting to be learned when {@link #threads} is greater than 1. Each element is an
+     * array containing the example's features, values, labels, and label values.
+     **/
+    protected transient ArrayList<Object[]> pending;
+
+    /** The threads that learn batches of examples, created when first needed. */
+    private transient ExecutorService pool;
+
+    /**
+     * The network's weights packed for {@link #scores(int[],double[],double[])}, built when first
+     * needed and discarded whenever the network learns.
+     **/
+    private transient volatile PackedWeights packed;
+
     /**
      * Instantiates this multi-class learner with the default learning algorithm:
      * {@link #defaultBaseLTU}.
@@ -151,9 +190,33 @@ public class SparseNetworkLearner extends Learner {
     }
 
     public OVector getNetwork() {
+        learnPending();
         return network;
     }
 
+    public int getThreads() {
+        return threads;
+    }
+
+    /**
+     * Sets the number of threads used to train the LTUs in the network. Any examples already
+     * collected are learned first.
+     *
+     * @param t The number of threads; must be at least 1.
+     **/
+    public void setThreads(int t) {
+        if (t < 1)
+            throw new IllegalArgumentException(
+                    "LBJava ERROR: SparseNetworkLearner.setThreads: The number of threads must be "
+                            + "positive, not " + t + ".");
+        learnPending();
+        if (pool != null && t != threads) {
+            pool.shutdown();
+            pool = null;
+        }
+        threads = t;
+    }
+
     public boolean isUsingConjunctiveLabels() {
         return conjunctiveLabels;
     }
@@ -166,6 +229,7 @@ public class SparseNetworkLearner extends Learner {
      * returns the i-th LTU; the type of this depends on the type of the baseLTU (see above).
      */
     public Object getLTU(int i) {
+        learnPending();
         return network.get(i);
     }
 
@@ -183,6 +247,7 @@ public class SparseNetworkLearner extends Learner {
         }
 
         setLTU(p.baseLTU);
+        setThreads(p.threads);
     }
 
     /**
@@ -194,6 +259,7 @@ public class SparseNetworkLearner extends Learner {
     public Learner.Parameters getParameters() {
         Parameters p = new Parameters(super.getParameters());
         p.baseLTU = baseLTU;
+        p.threads = threads;
         return p;
     }
 
@@ -209,6 +275,24 @@ public class SparseNetworkLearner extends Learner {
         baseLTU.name = name + "$baseLTU";
     }
 
+    /**
+     * Sets the number of bits with which the weights of every LTU in the network are written,
+     * including LTUs created after this method is executed.
+     *
+     * @param b The number of bits; 64, 32, 16, or 8.
+     * @see LinearThresholdUnit#setWeightPrecision(int)
+     **/
+    public void setWeightPrecision(int b) {
+        learnPending();
+        baseLTU.setWeightPrecision(b);
+        int N = network.size();
+        for (int i = 0; i < N; ++i) {
+            LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(i);
+            if (ltu != null)
+                ltu.setWeightPrecision(b);
+        }
+    }
+
     /**
      * Sets the labeler.
      *
@@ -234,6 +318,7 @@ public class SparseNetworkLearner extends Learner {
     public void setExtractor(Classifier e) {
         super.setExtractor(e);
         baseLTU.setExtractor(e);
+        learnPending();
         int N = network.size();
 
         for (int i = 0; i < N; ++i)
@@ -246,6 +331,8 @@ public class SparseNetworkLearner extends Learner {
      * @param label The label associated with the LTU
      */
     public void setNetworkLabel(int label) {
+        learnPending();
+        packed = null;
         LinearThresholdUnit ltu = (LinearThresholdUnit) baseLTU.clone();
         ltu.initialize(numExamples, numFeatures);
         network.set(label, ltu);
@@ -254,7 +341,8 @@ public class SparseNetworkLearner extends Learner {
     /**
      * Each example is treated as a positive example for the linear threshold unit associated with
      * the label's value that is active for the example and as a negative example for all other
-     * linear threshold units in the network.
+     * linear threshold units in the network. When {@link #threads} is greater than 1, the example
+     * is copied and learned later along with the rest of its batch.
      *
      * @param exampleFeatures The example's array of feature indices.
      * @param exampleValues The example's array of feature values.
@@ -263,7 +351,38 @@ public class SparseNetworkLearner extends Learner {
      **/
     public void learn(int[] exampleFeatures, double[] exampleValues, int[] exampleLabels,
             double[] labelValues) {
+        packed = null;
+        if (threads > 1) {
+            if (pending == null)
+                pending = new ArrayList<Object[]>(batchSize);
+            pending.add(new Object[] {exampleFeatures.clone(), exampleValues.clone(),
+                    exampleLabels.clone(), labelValues.clone()});
+            if (pending.size() >= batchSize)
+                learnPending();
+            return;
+        }
+
         int label = exampleLabels[0];
+        int N = createLTU(label);
+
+        int[] l = new int[1];
+        for (int i = 0; i < N; ++i) {
+            LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(i);
+            if (ltu == null)
+                continue;
+
+            l[0] = (i == label) ? 1 : 0;
+            ltu.learn(exampleFeatures, exampleValues, l, labelValues);
+        }
+    }
+
+    /**
+     * Adds an LTU for the given label to the network if there isn't one already.
+     *
+     * @param label The label.
+     * @return The number of LTUs, starting from the first, that learn the example with this label.
+     **/
+    private int createLTU(int label) {
         int N = network.size();
 
         if (label >= N || network.get(label) == null) {
@@ -275,30 +394,119 @@ public class SparseNetworkLearner extends Learner {
             N = label + 1;
         }
 
-        int[] l = new int[1];
-        for (int i = 0; i < N; ++i) {
-            LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(i);
-            if (ltu == null)
-                continue;
+        return N;
+    }
 
-            l[0] = (i == label) ? 1 : 0;
-            ltu.learn(exampleFeatures, exampleValues, l, labelValues);
+    /**
+     * Learns the examples collected while {@link #threads} is greater than 1. LTUs for labels seen
+     * for the first time are created in the order their examples arrived, and each is trained
+     * starting from the example that created it, exactly as when learning serially. The LTUs are
+     * then divided among the threads, and each thread trains its LTUs on the batch.
+     **/
+    protected void learnPending() {
+        if (pending == null || pending.isEmpty())
+            return;
+
+        final Object[][] batch = pending.toArray(new Object[pending.size()][]);
+        pending.clear();
+
+        int[] created = new int[batch.length];
+        final int[] limit = new int[batch.length];
+        for (int e = 0; e < batch.length; ++e) {
+            int label = ((int[]) batch[e][2])[0];
+            created[e] = label < network.size() && network.get(label) != null ? -1 : label;
+            limit[e] = createLTU(label);
+        }
+
+        final int N = network.size();
+        final int[] start = new int[N];
+        for (int e = 0; e < batch.length; ++e)
+            if (created[e] != -1)
+                start[created[e]] = e;
+
+        final int workers = Math.min(threads, N);
+        Future<?>[] futures = new Future<?>[workers];
+        for (int w = 0; w < workers; ++w) {
+            final int first = w;
+            futures[w] = getPool().submit(new Runnable() {
+                public void run() {
+                    int[] l = new int[1];
+                    for (int i = first; i < N; i += workers) {
+                        LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(i);
+                        if (ltu == null)
+                            continue;
+
+                        for (int e = start[i]; e < batch.length; ++e) {
+                            if (i >= limit[e])
+                                continue;
+                            Object[] example = batch[e];
+                            l[0] = ((int[]) example[2])[0] == i ? 1 : 0;
+                            ltu.learn((int[]) example[0], (double[]) example[1], l,
+                                    (double[]) example[3]);
+                        }
+                    }
+                }
+            });
+        }
+
+        for (int w = 0; w < workers; ++w) {
+            try {
+                futures[w].get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException("LBJava ERROR: SparseNetworkLearner: Interrupted while "
+                        + "learning a batch of examples.", e);
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException)
+                    throw (RuntimeException) cause;
+                if (cause instanceof Error)
+                    throw (Error) cause;
+                throw new RuntimeException(cause);
+            }
         }
     }
-    
+
+    /** Returns the threads that learn batches of examples, creating them if necessary. */
+    private ExecutorService getPool() {
+        if (pool == null) {
+            pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, name + "$trainer");
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+
+        return pool;
+    }
+
     /** 
      * When we complete learning, we will do an optimization.
      */
     public void doneTraining() {
+        learnPending();
         super.doneTraining();
         
         // do the optimization
         SparseNetworkOptimizer optimizer = new SparseNetworkOptimizer(this);
         optimizer.optimize();
+        packed = null;
     }
 
-    /** Simply calls <code>doneLearning()</code> on every LTU in the network. */
+    /**
+     * Learns any examples still waiting in a batch and calls <code>doneLearning()</code> on every
+     * LTU in the network.
+     **/
     public void doneLearning() {
+        learnPending();
+        packed = null;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+
         super.doneLearning();
         int N = network.size();
         for (int i = 0; i < N; ++i) {
@@ -316,9 +524,12 @@ public class SparseNetworkLearner extends Learner {
     }
 
     /**
-     * Simply calls {@link LinearThresholdUnit#doneWithRound()} on every LTU in the network.
+     * Learns any examples still waiting in a batch and calls
+     * {@link LinearThresholdUnit#doneWithRound()} on every LTU in the network.
      */
     public void doneWithRound() {
+        learnPending();
+        packed = null;
         super.doneWithRound();
         int N = network.size();
         for (int i = 0; i < N; ++i) {
@@ -329,9 +540,11 @@ public class SparseNetworkLearner extends Learner {
         }
     }
 
-    /** Clears the network. */
+    /** Clears the network and discards any examples waiting in a batch. */
     public void forget() {
         super.forget();
+        pending = null;
+        packed = null;
         network = new OVector();
     }
 
@@ -368,6 +581,7 @@ public class SparseNetworkLearner extends Learner {
      * @return Scores for only those labels in <code>candidates</code>.
      **/
     public ScoreSet scores(int[] exampleFeatures, double[] exampleValues, Collection candidates) {
+        learnPending();
         ScoreSet result = new ScoreSet();
         Iterator I = candidates.iterator();
 
@@ -390,16 +604,8 @@ public class SparseNetworkLearner extends Learner {
                                 ltu.score(exampleFeatures, exampleValues) - ltu.getThreshold());
                 }
             }
-        } else {
-            int N = network.size();
-            for (int l = 0; l < N; ++l) {
-                LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(l);
-                if (ltu == null)
-                    continue;
-                result.put(labelLexicon.lookupKey(l).getStringValue(),
-                        ltu.score(exampleFeatures, exampleValues) - ltu.getThreshold());
-            }
-        }
+        } else
+            return scores(exampleFeatures, exampleValues);
 
         return result;
     }
@@ -448,19 +654,66 @@ public class SparseNetworkLearner extends Learner {
      * @return The set of scores produced by the LTUs
      **/
     public ScoreSet scores(int[] exampleFeatures, double[] exampleValues) {
-        ScoreSet result = new ScoreSet();
+        learnPending();
         int N = network.size();
+        int[] labels = new int[N];
+        double[] scores = new double[N];
+        int size = 0;
 
         for (int l = 0; l < N; l++) {
             LinearThresholdUnit ltu = (LinearThresholdUnit) network.get(l);
             if (ltu == null)
                 continue;
 
-            result.put(labelLexicon.lookupKey(l).getStringValue(),
-                    ltu.score(exampleFeatures, exampleValues) - ltu.getThreshold());
+            labels[size] = l;
+            scores[size++] = ltu.score(exampleFeatures, exampleValues) - ltu.getThreshold();
         }
 
-        return result;
+        return new ArrayScoreSet(labelLexicon, labels, scores, size);
+    }
+
+    /**
+     * Computes the score of every label in the network, exactly as {@link #scores(int[],double[])}
+     * would, and stores them in the given array indexed by the labels' indexes in the label
+     * lexicon. Labels without a {@link LinearThresholdUnit} get
+     * <code>Double.NEGATIVE_INFINITY</code>.
+     *
+     * <p>
+     * Rather than taking a separate dot product for each LTU, this method makes a single pass over
+     * the example's features, reading all the labels' weights for each feature from one contiguous
+     * row of a packed weight matrix. The matrix is built from the network the first time it is
+     * needed and rebuilt after the network learns; it holds one <code>double</code> for every
+     * combination of feature and label, on the heap alongside the LTUs' own weights. Networks too
+     * large for one array and networks read from a {@link MappedModel} aren't packed, and are
+     * scored by each LTU in turn instead. Nothing is allocated once the matrix has been built, and
+     * any number of threads may call this method concurrently.
+     *
+     * @param exampleFeatures The example's array of feature indices.
+     * @param exampleValues The example's array of feature values.
+     * @param result An array at least as long as the network, which will hold the scores.
+     **/
+    public void scores(int[] exampleFeatures, double[] exampleValues, double[] result) {
+        learnPending();
+        PackedWeights p = packed;
+        if (p == null) {
+            p = new PackedWeights(network);
+            packed = p;
+        }
+
+        p.scores(exampleFeatures, exampleValues, result);
+    }
+
+    /**
+     * Computes the scores of many examples with {@link #scores(int[],double[],double[])}.
+     *
+     * @param exampleFeatures The examples' arrays of feature indices.
+     * @param exampleValues The examples' arrays of feature values.
+     * @param results An array with an element for each example, each of which is an array at least
+     *        as long as the network, which will hold that example's scores.
+     **/
+    public void scores(int[][] exampleFeatures, double[][] exampleValues, double[][] results) {
+        for (int i = 0; i < exampleFeatures.length; ++i)
+            scores(exampleFeatures[i], exampleValues[i], results[i]);
     }
 
     /**
@@ -472,6 +725,7 @@ public class SparseNetworkLearner extends Learner {
      * @return The classification of the example as a feature.
      **/
     public Feature featureValue(int[] f, double[] v) {
+        learnPending();
         double bestScore = Double.NEGATIVE_INFINITY;
         int bestValue = -1;
         int N = network.size();
@@ -540,6 +794,7 @@ public class SparseNetworkLearner extends Learner {
      *         of the specified labels.
      **/
     public Feature valueOf(int[] exampleFeatures, double[] exampleValues, Collection candidates) {
+        learnPending();
         double bestScore = Double.NEGATIVE_INFINITY;
         int bestValue = -1;
         Iterator cI = candidates.iterator();
@@ -632,6 +887,7 @@ public class SparseNetworkLearner extends Learner {
      * @param out The output stream.
      **/
     public void write(PrintStream out) {
+        learnPending();
         out.println(baseLTU.getClass().getName());
         baseLTU.write(out);
         int N = network.size();
@@ -656,6 +912,7 @@ public class SparseNetworkLearner extends Learner {
      * @param out The output stream.
      **/
     public void write(ExceptionlessOutputStream out) {
+        learnPending();
         super.write(out);
         baseLTU.write(out);
         out.writeBoolean(conjunctiveLabels);
@@ -681,6 +938,8 @@ public class SparseNetworkLearner extends Learner {
      **/
     public void read(ExceptionlessInputStream in) {
         super.read(in);
+        pending = null;
+        packed = null;
         baseLTU = (LinearThresholdUnit) Learner.readLearner(in);
         conjunctiveLabels = in.readBoolean();
         int N = in.readInt();
@@ -691,6 +950,7 @@ public class SparseNetworkLearner extends Learner {
 
     /** Returns a deep clone of this learning algorithm. */
     public Object clone() {
+        learnPending();
         SparseNetworkLearner clone = null;
         try {
             clone = (SparseNetworkLearner) super.clone();
@@ -700,6 +960,9 @@ public class SparseNetworkLearner extends Learner {
             System.exit(1);
         }
 
+        clone.pending = null;
+        clone.pool = null;
+        clone.packed = null;
         clone.baseLTU = (LinearThresholdUnit) baseLTU.clone();
         int N = network.size();
         clone.network = new OVector(N);
@@ -715,6 +978,103 @@ public class SparseNetworkLearner extends Learner {
         return clone;
     }
 
+    /**
+     * The weights of every LTU in a network packed into a single array, with the weights of all
+     * labels for a given feature stored contiguously. Features whose indexes are beyond the end of
+     * every LTU's weight vector when the matrix is built are scored by asking the LTUs directly.
+     *
+     * <p>
+     * Networks with more weights than fit in one array, and networks whose weights are in a
+     * {@link MappedModel}, aren't packed at all; every feature is then scored by the LTUs, just as
+     * in {@link SparseNetworkLearner#scores(int[],double[])}. Packing mapped weights would copy
+     * the whole model back onto the heap, which is what mapping it avoids.
+     **/
+    private static class PackedWeights {
+        /** The network. */
+        private final LinearThresholdUnit[] ltus;
+        /** The number of features with rows in {@link #weights}. */
+        private final int rows;
+        /**
+         * The weights, where the weight of feature <code>j</code> for label <code>l</code> is at
+         * index <code>j * ltus.length + l</code>.
+         **/
+        private final double[] weights;
+        /** The amount each LTU adds to its dot product. */
+        private final double[] biases;
+        /** Each LTU's threshold. */
+        private final double[] thresholds;
+
+
+        /**
+         * Packs the weights of the given network.
+         *
+         * @param network The network of LTUs, some of which may be <code>null</code>.
+         **/
+        public PackedWeights(OVector network) {
+            int L = network.size();
+            ltus = new LinearThresholdUnit[L];
+            biases = new double[L];
+            thresholds = new double[L];
+            int F = 0;
+            boolean mapped = false;
+
+            for (int l = 0; l < L; ++l) {
+                ltus[l] = (LinearThresholdUnit) network.get(l);
+                if (ltus[l] == null)
+                    continue;
+                biases[l] = ltus[l].getScoreBias();
+                thresholds[l] = ltus[l].getThreshold();
+                F = Math.max(F, ltus[l].getWeightVector().size());
+                if (ltus[l].getWeightVector().getRawWeights() instanceof MappedDVector)
+                    mapped = true;
+            }
+
+            if (mapped || (long) F * L > Integer.MAX_VALUE)
+                F = 0;
+
+            rows = F;
+            weights = new double[F * L];
+            for (int l = 0; l < L; ++l)
+                if (ltus[l] != null)
+                    for (int j = 0; j < F; ++j)
+                        weights[j * L + l] = ltus[l].getFeatureWeight(j);
+        }
+
+
+        /**
+         * Computes the scores of the given example.
+         *
+         * @param exampleFeatures The example's array of feature indices.
+         * @param exampleValues The example's array of feature values.
+         * @param result The array that will hold the scores.
+         **/
+        public void scores(int[] exampleFeatures, double[] exampleValues, double[] result) {
+            int L = ltus.length;
+            for (int l = 0; l < L; ++l)
+                result[l] = 0;
+
+            for (int i = 0; i < exampleFeatures.length; ++i) {
+                int j = exampleFeatures[i];
+                double v = exampleValues[i];
+
+                if (j < rows) {
+                    int row = j * L;
+                    for (int l = 0; l < L; ++l)
+                        result[l] += weights[row + l] * v;
+                } else {
+                    for (int l = 0; l < L; ++l)
+                        if (ltus[l] != null)
+                            result[l] += ltus[l].getFeatureWeight(j) * v;
+                }
+            }
+
+            for (int l = 0; l < L; ++l)
+                result[l] =
+                        ltus[l] == null ? Double.NEGATIVE_INFINITY : result[l] + biases[l]
+                                - thresholds[l];
+        }
+    }
+
     /**
      * Simply a container for all of {@link SparseNetworkLearner}'s configurable parameters. Using
      * instances of this class should make code more readable and constructors less complicated.
@@ -729,10 +1089,16 @@ public class SparseNetworkLearner extends Learner {
          * default {@link SparseNetworkLearner#defaultBaseLTU}.
          **/
         public LinearThresholdUnit baseLTU;
+        /**
+         * The number of threads used to train the LTUs in the network; default
+         * {@link SparseNetworkLearner#defaultThreads}.
+         **/
+        public int threads;
 
         /** Sets all the default values. */
         public Parameters() {
             baseLTU = (LinearThresholdUnit) defaultBaseLTU.clone();
+            threads = defaultThreads;
         }
 
         /**
@@ -742,12 +1108,14 @@ public class SparseNetworkLearner extends Learner {
         public Parameters(Learner.Parameters p) {
             super(p);
             baseLTU = (LinearThresholdUnit) defaultBaseLTU.clone();
+            threads = defaultThreads;
         }
 
         /** Copy constructor. */
         public Parameters(Parameters p) {
             super(p);
             baseLTU = p.baseLTU;
+            threads = p.threads;
         }
 
         /**
@@ -767,7 +1135,10 @@ public class SparseNetworkLearner extends Learner {
         public String nonDefaultString() {
             String name = baseLTU.getClass().getName();
             name = name.substring(name.lastIndexOf('.') + 1);
-            return name + ": " + baseLTU.getParameters().nonDefaultString();
+            String result = name + ": " + baseLTU.getParameters().nonDefaultString();
+            if (threads != defaultThreads)
+                result += ", threads = " + threads;
+            return result;
         }
     }
 }
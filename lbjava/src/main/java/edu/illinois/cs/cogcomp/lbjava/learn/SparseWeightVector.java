@@ -409,7 +409,151 @@ public class SparseWeightVector implements Cloneable, Serializable {
      **/
     public void write(ExceptionlessOutputStream out) {
         out.writeString(getClass().getName());
-        weights.write(out);
+        writeWeights(out, weights);
+    }
+
+
+    /**
+     * Writes a vector of weights in binary form. When a {@link MappedModel} is being written, the
+     * weights are stored in its flat weight arrays and only a reference to them is written here.
+     *
+     * @param out The output stream.
+     * @param v The weights.
+     **/
+    protected static void writeWeights(ExceptionlessOutputStream out, DVector v) {
+        if (MappedModel.writeVector(out, v))
+            return;
+        if (v instanceof FloatDVector || v instanceof QuantizedDVector)
+            out.writeInt(-precision(v));
+        v.write(out);
+    }
+
+
+    /**
+     * Reads a vector of weights as written by
+     * {@link #writeWeights(ExceptionlessOutputStream,DVector)}. When a {@link MappedModel} is being
+     * read, the returned vector is a read-only view of the weights in the mapped file. Weights
+     * written with reduced precision are read into a {@link FloatDVector} or a
+     * {@link QuantizedDVector}.
+     *
+     * @param in The input stream.
+     * @param v A vector to read the weights into if they aren't mapped.
+     * @return The vector containing the weights.
+     **/
+    protected static DVector readWeights(ExceptionlessInputStream in, DVector v) {
+        DVector mapped = MappedModel.readVector(in);
+        if (mapped != null)
+            return mapped;
+
+        // The size of a vector of doubles, or the negated precision of any other vector.
+        int n = in.readInt();
+        if (n < 0) {
+            v = n == -32 ? new FloatDVector() : new QuantizedDVector(-n);
+            v.read(in);
+            return v;
+        }
+
+        v = new DVector(Math.max(n, 1));
+        for (int i = 0; i < n; ++i)
+            v.set(i, in.readDouble());
+        return v;
+    }
+
+
+    /**
+     * Returns the number of bits used to store each of the given weights.
+     *
+     * @param v The weights.
+     * @return 64, 32, 16, or 8.
+     **/
+    protected static int precision(DVector v) {
+        if (v instanceof FloatDVector)
+            return 32;
+        if (v instanceof QuantizedDVector)
+            return ((QuantizedDVector) v).getBits();
+        if (v instanceof MappedDVector)
+            return ((MappedDVector) v).getPrecision();
+        return 64;
+    }
+
+
+    /**
+     * Throws an <code>IllegalArgumentException</code> unless weights can be stored with the given
+     * number of bits.
+     *
+     * @param bits The number of bits used to store each weight.
+     **/
+    protected static void checkPrecision(int bits) {
+        if (bits != 64 && bits != 32 && bits != 16 && bits != 8)
+            throw new IllegalArgumentException("LBJava ERROR: Weights can be stored with 64, 32, "
+                    + "16, or 8 bits, not " + bits + ".");
+    }
+
+
+    /**
+     * Copies the given weights into storage with the given precision.
+     *
+     * @param v The weights.
+     * @param bits The number of bits used to store each weight; 64, 32, 16, or 8.
+     * @return The copy.
+     **/
+    protected static DVector copyWithPrecision(DVector v, int bits) {
+        checkPrecision(bits);
+        if (bits == 64)
+            return new DVector(v.toArray());
+        if (bits == 32)
+            return new FloatDVector(v);
+        return new QuantizedDVector(v, bits);
+    }
+
+
+    /**
+     * Returns the number of bits used to store each weight in this vector. Weights are normally
+     * stored as <code>double</code>s, but a vector returned by {@link #withPrecision(int)} or read
+     * from a model written with reduced precision may store them in fewer bits.
+     *
+     * @return 64, 32, 16, or 8.
+     **/
+    public int getPrecision() {
+        return precision(weights);
+    }
+
+
+    /**
+     * Returns a copy of this vector whose weights are stored with the given number of bits each:
+     * 64 for <code>double</code>s, 32 for <code>float</code>s in a {@link FloatDVector}, or 16 or 8
+     * for integers in a {@link QuantizedDVector}. The copy is written and read with the same
+     * precision. A vector with quantized weights can't learn, but it takes a quarter or an eighth
+     * of the space, and the dot products it computes differ from this vector's by a small fraction
+     * of the largest weights.
+     *
+     * @param bits The number of bits used to store each weight.
+     * @return The copy.
+     **/
+    public SparseWeightVector withPrecision(int bits) {
+        SparseWeightVector result = null;
+
+        try {
+            result = (SparseWeightVector) super.clone();
+        } catch (Exception e) {
+            System.err.println("Error cloning " + getClass().getName() + ":");
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        result.storeWithPrecision(bits);
+        return result;
+    }
+
+
+    /**
+     * Replaces the storage of every vector of weights in this object with a copy of the given
+     * precision. Called on a shallow copy of this object by {@link #withPrecision(int)}.
+     *
+     * @param bits The number of bits used to store each weight.
+     **/
+    protected void storeWithPrecision(int bits) {
+        weights = copyWithPrecision(weights, bits);
     }
 
 
@@ -459,7 +603,7 @@ public class SparseWeightVector implements Cloneable, Serializable {
      * @param in The input stream.
      **/
     public void read(ExceptionlessInputStream in) {
-        weights.read(in);
+        weights = readWeights(in, weights);
     }
 
 
@@ -8,6 +8,7 @@
 package edu.illinois.cs.cogcomp.lbjava.learn;
 
 import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
 
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
 import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
@@ -32,9 +33,14 @@ import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
  * {@link edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent.Parameters Parameters}
  * class indicates the default value of the parameter when using the latter type of constructor.
  *
+ * <p>
+ * This learner may be trained on several threads at once; see {@link AsynchronousLearner}. Every
+ * example updates the bias, so during such a round the bias is updated atomically rather than
+ * being left to collide like the weights.
+ *
  * @author Nick Rizzolo
  **/
-public class StochasticGradientDescent extends Learner {
+public class StochasticGradientDescent extends Learner implements AsynchronousLearner {
     /** Default value for {@link #learningRate}. */
     public static final double defaultLearningRate = 0.1;
     /** Default for {@link #weightVector}. */
@@ -51,6 +57,11 @@ public class StochasticGradientDescent extends Learner {
      * The rate at which weights are updated; default {@link #defaultLearningRate}.
      **/
     protected double learningRate;
+    /**
+     * The bits of {@link #bias} while an asynchronous round is in progress, updated with
+     * compare-and-set so that no thread's update is lost, or <code>null</code> otherwise.
+     **/
+    private transient AtomicLong asynchronousBias;
 
 
     /**
@@ -169,6 +180,29 @@ public class StochasticGradientDescent extends Learner {
     }
 
 
+    /**
+     * Makes sure {@link #weightVector} holds a weight for every feature, so that no thread grows it
+     * while others are updating it.
+     *
+     * @param numFeatures All feature indexes in the round's examples are less than this number.
+     **/
+    public void startAsynchronousRound(int numFeatures) {
+        if (weightVector.size() < numFeatures)
+            weightVector.setWeight(numFeatures - 1, weightVector.getWeight(numFeatures - 1));
+        asynchronousBias = new AtomicLong(Double.doubleToLongBits(bias));
+    }
+
+
+    /** Stores the bias learned during an asynchronous round back in {@link #bias}. */
+    public void doneWithRound() {
+        if (asynchronousBias != null) {
+            bias = Double.longBitsToDouble(asynchronousBias.get());
+            asynchronousBias = null;
+        }
+        super.doneWithRound();
+    }
+
+
     /**
      * Returns a string describing the output feature type of this classifier.
      *
@@ -192,11 +226,21 @@ public class StochasticGradientDescent extends Learner {
         assert exampleLabels.length == 1 : "Example must have a single label.";
 
         double labelValue = labelValues[0];
+        AtomicLong shared = asynchronousBias;
+        long bits = shared == null ? 0 : shared.get();
+        double currentBias = shared == null ? bias : Double.longBitsToDouble(bits);
         double multiplier =
                 learningRate
-                        * (labelValue - weightVector.dot(exampleFeatures, exampleValues) - bias);
+                        * (labelValue - weightVector.dot(exampleFeatures, exampleValues)
+                        - currentBias);
         weightVector.scaledAdd(exampleFeatures, exampleValues, multiplier);
-        bias += multiplier;
+
+        if (shared == null)
+            bias += multiplier;
+        else
+            while (!shared.compareAndSet(bits,
+                    Double.doubleToLongBits(Double.longBitsToDouble(bits) + multiplier)))
+                bits = shared.get();
     }
 
 
@@ -305,6 +349,7 @@ public class StochasticGradientDescent extends Learner {
         }
 
         clone.weightVector = (SparseWeightVector) weightVector.clone();
+        clone.asynchronousBias = null;
         return clone;
     }
 
@@ -86,6 +86,48 @@ public class DatasetReader {
         return examples;
     }
 
+    /**
+     * Convert an NIST examples file and its labels file into a {@link MappedDataset} file, with
+     * the same values {@link #getExampleInputs(String)} and {@link #getExampleOutputs(String)}
+     * would return. Both are streamed one example at a time, so the data is never held in memory.
+     * @param imagesFile the examples file.
+     * @param labelsFile the labels file.
+     * @param datasetFile the dataset file to write.
+     * @throws IOException 
+     */
+    public static void convert(String imagesFile, String labelsFile, String datasetFile)
+            throws IOException {
+        InputStream images = new BufferedInputStream(new FileInputStream(new File(imagesFile)));
+        InputStream labels = new BufferedInputStream(new FileInputStream(new File(labelsFile)));
+        try {
+            int m1 = readInt(images);
+            if (m1 != 2051) 
+                throw new IOException("That was not an example file! magic code = "+m1);
+            int numExamples = readInt(images);
+            int totalpixels = readInt(images) * readInt(images);
+            m1 = readInt(labels);
+            if (m1 != 2049) 
+                throw new IOException("That was not an example file! magic code = "+m1);
+            if (readInt(labels) != numExamples)
+                throw new IOException("There must be the same number of examples and labels.");
+
+            MappedDataset.Writer writer = new MappedDataset.Writer(datasetFile, totalpixels, 1);
+            float[] example = new float[totalpixels];
+            float[] label = new float[1];
+            for (int i = 0 ; i < numExamples; i++) {
+                for (int j = 0; j < totalpixels; j++) {
+                    example[j] = (float)(images.read()/128f) - 1f;
+                }
+                label[0] = (float)(labels.read()/5f) - 1f;
+                writer.add(example, label);
+            }
+            writer.close();
+        } finally {
+            images.close();
+            labels.close();
+        }
+    }
+
     /**
      * @param a
      * @throws IOException
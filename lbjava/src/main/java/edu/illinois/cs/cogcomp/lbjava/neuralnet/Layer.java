@@ -8,6 +8,7 @@
 package edu.illinois.cs.cogcomp.lbjava.neuralnet;
 
 import java.io.PrintStream;
+import java.util.Arrays;
 import java.util.Random;
 
 /**
@@ -37,6 +38,22 @@ public class Layer {
     /** collects output values. */
     private float[] outputs;
 
+    /** does the dense arithmetic, or null to use the default kernel. */
+    private LayerKernel kernel = null;
+
+    /** the inputs active in the last sparse training example, whose weight deltas may be non
+     * zero. null means any of them may be, as after dense training. */
+    private int[] lastActive = new int[0];
+
+    /** marks the inputs active in the current sparse training example with {@link #generation}. */
+    private int[] activeMarks;
+
+    /** changes with each sparse training example, so the marks need never be cleared. */
+    private int generation;
+
+    /** where each marked input is in the merged indexes of a sparse example with duplicates. */
+    private int[] activeSlots;
+
     /**
      * The layer constructed.
      * @param numIn the number of inputs.
@@ -87,6 +104,21 @@ public class Layer {
         this.weights = weights;
     }
 
+    /**
+     * @return the kernel that does the dense arithmetic of this layer.
+     */
+    public LayerKernel getKernel() {
+        return kernel == null ? LayerKernel.getDefault() : kernel;
+    }
+
+    /**
+     * @param kernel the kernel to do the dense arithmetic of this layer, or null to use the
+     * default kernel.
+     */
+    public void setKernel(LayerKernel kernel) {
+        this.kernel = kernel;
+    }
+
     /**
      * @return the numberInputs
      */
@@ -140,10 +172,53 @@ public class Layer {
      * @return the set of predictions.
      */
     final public float[] activate(float[] inputs) {
+        this.getKernel().activate(weights, numberInputs, numberOutputs, inputs, outputs);
+        return outputs;
+    }
+
+    /**
+     * Throws an exception if a sparse input index is not an input of this layer, since it would
+     * otherwise be silently read as the weight of another output.
+     * @param indexes the indexes of the active inputs.
+     */
+    final private void checkIndexes(int[] indexes) {
+        for (int i = 0; i < indexes.length; i++)
+            if (indexes[i] < 0 || indexes[i] >= this.numberInputs)
+                throw new ArrayIndexOutOfBoundsException(indexes[i]);
+    }
+
+    /**
+     * Compute one output from sparse inputs, reading only the weights of the active inputs.
+     * @param index the index of the output to compute.
+     * @param indexes the indexes of the active inputs.
+     * @param values the values of the active inputs.
+     * @return the activation output.
+     */
+    final float computeOneOutput(int index, int[] indexes, double[] values) {
+        float result = 0.0f;
+        int nI = this.numberInputs;
+        int start = index * (nI+1);
+        for (int k = 0 ; k < indexes.length ; k++) {
+            result += weights[start+indexes[k]] * (float) values[k];
+        }
+        result += weights[start+nI];
+        return (float) sigmoid(result);
+    }
+
+    /**
+     * Given the active inputs of a sparse example, produce the set of activation values. All
+     * other inputs are zero, so the cost is proportional to the number of active inputs rather
+     * than the number of inputs. The values of inputs listed more than once are summed.
+     * @param indexes the indexes of the active inputs.
+     * @param values the values of the active inputs.
+     * @return the set of predictions.
+     */
+    final public float[] activate(int[] indexes, double[] values) {
+        checkIndexes(indexes);
         int nO = this.numberOutputs;
         float[] o = this.outputs;
         for (int j = 0 ; j < nO ; j++) {
-        	o[j] = this.computeOneOutput(j, inputs);
+            o[j] = this.computeOneOutput(j, indexes, values);
         }
         return outputs;
     }
@@ -191,29 +266,119 @@ public class Layer {
      * @return the errors from this layer.
      */
     final public float[] train(float[] error, float[] input, float[] output, float learningRate, float momentum) {
+        this.lastActive = null;
+        float[] nextError = new float[this.numberInputs+1/*for the bias*/];
+        this.getKernel().train(weights, dweights, numberInputs, numberOutputs, error, input, output,
+                learningRate, momentum, nextError);
+        return nextError;
+    }
+
+    /**
+     * Adjust the weights given the errors of this layer's outputs on a sparse example, which must
+     * be the first layer since no errors are computed for its inputs. The weights of inactive
+     * inputs get no gradient, but the weights of inputs active in the last sparse example still
+     * take their final momentum step, so the weights end up exactly as the dense
+     * {@link #train(float[], float[], float[], float, float)} would leave them, at a cost
+     * proportional to the number of inputs active in the two examples. As in
+     * {@link #activate(int[], double[])}, the values of inputs listed more than once are summed.
+     * @param error the output errors.
+     * @param indexes the indexes of the active inputs.
+     * @param values the values of the active inputs.
+     * @param output the computed output data.
+     * @param learningRate the rate of learning.
+     * @param momentum helps to avoid local minima.
+     */
+    final public void train(float[] error, int[] indexes, double[] values, float[] output, float learningRate, float momentum) {
+        checkIndexes(indexes);
         int nI = this.numberInputs+1/*for the bias*/;
-        float[] nextError = new float[nI];
+        if (this.activeMarks == null)
+            this.activeMarks = new int[this.numberInputs];
+        int[] marks = this.activeMarks;
+        int mark = this.nextMark();
+        boolean duplicates = false;
+        for (int k = 0; k < indexes.length; k++) {
+            if (marks[indexes[k]] == mark)
+                duplicates = true;
+            marks[indexes[k]] = mark;
+        }
+
+        // merge repeated inputs, since updating one weight twice would apply its momentum twice.
+        if (duplicates) {
+            if (this.activeSlots == null)
+                this.activeSlots = new int[this.numberInputs];
+            int[] slots = this.activeSlots;
+            int[] merged = new int[indexes.length];
+            double[] sums = new double[indexes.length];
+            int n = 0;
+            mark = this.nextMark();
+            for (int k = 0; k < indexes.length; k++) {
+                int j = indexes[k];
+                if (marks[j] == mark) {
+                    sums[slots[j]] += values[k];
+                } else {
+                    marks[j] = mark;
+                    slots[j] = n;
+                    merged[n] = j;
+                    sums[n++] = values[k];
+                }
+            }
+            indexes = Arrays.copyOf(merged, n);
+            values = Arrays.copyOf(sums, n);
+        }
+
+        int[] last = this.lastActive;
         for (int i = 0; i < this.numberOutputs; i++) {
-            //this.trainOne(error, input, output, learningRate, momentum, nextError, i);
-            
             int woffset = nI * i;
             float d = error[i] * (output[i] * (1 - output[i]));
-            for (int j = 0; j < this.numberInputs; j++) {
-                int windx = woffset + j;
-                nextError[j] += weights[windx] * d;
-                float dw = input[j] * d * learningRate;
+            for (int k = 0; k < indexes.length; k++) {
+                int windx = woffset + indexes[k];
+                float dw = (float) values[k] * d * learningRate;
                 weights[windx] += dweights[windx] * momentum + dw;
                 dweights[windx] = dw;
             }
-            
+
+            // inputs no longer active take their last momentum step, then their deltas are zero.
+            if (last == null) {
+                for (int j = 0; j < this.numberInputs; j++)
+                    if (marks[j] != mark)
+                        this.momentumStep(woffset + j, momentum);
+            } else {
+                for (int k = 0; k < last.length; k++)
+                    if (marks[last[k]] != mark)
+                        this.momentumStep(woffset + last[k], momentum);
+            }
+
             // compute the error for the bias, the fake bias input is always 1.
-            int windx = woffset + input.length;
-            nextError[input.length] += weights[windx] * d;
+            int windx = woffset + this.numberInputs;
             float dw = d * learningRate;
             weights[windx] += dweights[windx] * momentum + dw;
             dweights[windx] = dw;
         }
-        return nextError;
+        this.lastActive = indexes.clone();
+    }
+
+    /**
+     * @return a new mark for the inputs of a sparse example, distinct from every mark in
+     * {@link #activeMarks}.
+     */
+    final private int nextMark() {
+        int mark = ++this.generation;
+        if (mark == 0) {
+            Arrays.fill(this.activeMarks, 0);
+            mark = this.generation = 1;
+        }
+        return mark;
+    }
+
+    /**
+     * Apply the momentum of the last update to a weight whose input is zero, leaving its delta
+     * zero.
+     * @param windx the index of the weight.
+     * @param momentum the momentum.
+     */
+    final private void momentumStep(int windx, float momentum) {
+        weights[windx] += dweights[windx] * momentum;
+        dweights[windx] = 0;
     }
     
     /**
@@ -244,6 +409,15 @@ public class Layer {
      */
     public void setDweights(float[] dweights) {
         this.dweights = dweights;
+        this.lastActive = null;
+    }
+
+    /**
+     * forget which inputs the last sparse example had, for trainers that change the dweights
+     * directly, so the next sparse example takes the momentum step of every input.
+     */
+    void clearSparseState() {
+        this.lastActive = null;
     }
 
     /**
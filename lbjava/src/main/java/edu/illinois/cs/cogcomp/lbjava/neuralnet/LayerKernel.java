@@ -0,0 +1,269 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+/**
+ * The dense arithmetic of a {@link Layer}: the matrix-vector product that activates it, and the
+ * error backpropagation and outer-product weight update that train it. The weights are laid out
+ * as in <code>Layer</code>, one row of <code>numberInputs</code> weights followed by the bias for
+ * each output.
+ * <p>
+ * Two kernels are provided. {@link #SCALAR} is the straightforward loop, one output at a time.
+ * {@link #BLOCKED} works on {@link Blocked#rows} outputs at a time, so every input and error value
+ * loaded is used for several rows, and the rows' independent sums keep the processor busy, while
+ * the JIT compiler remains free to vectorize the inner loops. Both do exactly the same floating
+ * point operations in the same order for each weight and sum, so they compute identical results.
+ * <p>
+ * Each layer uses the kernel given by {@link Layer#setKernel(LayerKernel)}, or else the default,
+ * which is named by the system property <code>lbjava.nn.kernel</code>
+ * (<code>"scalar"</code> or <code>"blocked"</code>) and is {@link #BLOCKED} if it's not set.
+ */
+public abstract class LayerKernel {
+
+    /** the system property naming the default kernel. */
+    public static final String property = "lbjava.nn.kernel";
+
+    /** one output at a time. */
+    public static final LayerKernel SCALAR = new Scalar();
+
+    /** several outputs at a time. */
+    public static final LayerKernel BLOCKED = new Blocked();
+
+    /** the kernel used by layers that are not given one. */
+    private static LayerKernel defaultKernel = forName(System.getProperty(property, "blocked"));
+
+    /**
+     * @param name "scalar" or "blocked".
+     * @return the kernel with the given name.
+     */
+    public static LayerKernel forName(String name) {
+        if (name.equalsIgnoreCase("scalar"))
+            return SCALAR;
+        if (name.equalsIgnoreCase("blocked"))
+            return BLOCKED;
+        throw new IllegalArgumentException("LBJava ERROR: LayerKernel: Unknown kernel \"" + name
+                + "\"; use \"scalar\" or \"blocked\".");
+    }
+
+    /**
+     * @return the kernel used by layers that are not given one.
+     */
+    public static LayerKernel getDefault() {
+        return defaultKernel;
+    }
+
+    /**
+     * @param k the kernel to use in layers that are not given one.
+     */
+    public static void setDefault(LayerKernel k) {
+        defaultKernel = k;
+    }
+
+    /**
+     * Compute the sigmoid.
+     * @param x the input value
+     * @return the sigmoid
+     */
+    static float sigmoid(float x) {
+        return (float) (1.0 / (1.0 + Math.exp(-x)));
+    }
+
+    /**
+     * Compute the activation of every output: the sigmoid of the dot product of the output's
+     * weights and the inputs, plus its bias.
+     * @param weights the weights.
+     * @param nI the number of inputs.
+     * @param nO the number of outputs.
+     * @param inputs the inputs.
+     * @param outputs receives the activations.
+     */
+    public abstract void activate(float[] weights, int nI, int nO, float[] inputs, float[] outputs);
+
+    /**
+     * Backpropagate the errors of the outputs to the inputs, and adjust the weights by gradient
+     * descent with momentum. Each weight's contribution to the inputs' errors is computed before
+     * it is adjusted.
+     * @param weights the weights.
+     * @param dweights the last change of each weight, updated to the current change.
+     * @param nI the number of inputs.
+     * @param nO the number of outputs.
+     * @param error the errors of the outputs.
+     * @param input the input data.
+     * @param output the computed outputs.
+     * @param learningRate the rate of learning.
+     * @param momentum helps to avoid local minima.
+     * @param nextError receives the errors of the inputs, followed by that of the bias.
+     */
+    public abstract void train(float[] weights, float[] dweights, int nI, int nO, float[] error,
+            float[] input, float[] output, float learningRate, float momentum, float[] nextError);
+
+    /**
+     * One output at a time.
+     */
+    public static class Scalar extends LayerKernel {
+
+        @Override
+        public void activate(float[] weights, int nI, int nO, float[] inputs, float[] outputs) {
+            for (int j = 0; j < nO; j++) {
+                int start = j * (nI + 1);
+                float result = 0.0f;
+                for (int k = 0; k < nI; k++)
+                    result += weights[start + k] * inputs[k];
+                result += weights[start + nI];
+                outputs[j] = sigmoid(result);
+            }
+        }
+
+        @Override
+        public void train(float[] weights, float[] dweights, int nI, int nO, float[] error,
+                float[] input, float[] output, float learningRate, float momentum,
+                float[] nextError) {
+            train(weights, dweights, nI, nO, error, input, output, learningRate, momentum,
+                    nextError, 0);
+        }
+
+        /**
+         * Train the given number of outputs starting with the given one.
+         * @param weights the weights.
+         * @param dweights the last change of each weight, updated to the current change.
+         * @param nI the number of inputs.
+         * @param count the number of outputs to train.
+         * @param error the errors of the outputs.
+         * @param input the input data.
+         * @param output the computed outputs.
+         * @param learningRate the rate of learning.
+         * @param momentum helps to avoid local minima.
+         * @param nextError receives the errors of the inputs, followed by that of the bias.
+         * @param first the first output to train.
+         */
+        void train(float[] weights, float[] dweights, int nI, int count, float[] error,
+                float[] input, float[] output, float learningRate, float momentum,
+                float[] nextError, int first) {
+            for (int i = first; i < first + count; i++) {
+                int woffset = (nI + 1) * i;
+                float d = error[i] * (output[i] * (1 - output[i]));
+                for (int j = 0; j < nI; j++) {
+                    int windx = woffset + j;
+                    nextError[j] += weights[windx] * d;
+                    float dw = input[j] * d * learningRate;
+                    weights[windx] += dweights[windx] * momentum + dw;
+                    dweights[windx] = dw;
+                }
+
+                // compute the error for the bias, the fake bias input is always 1.
+                int windx = woffset + nI;
+                nextError[nI] += weights[windx] * d;
+                float dw = d * learningRate;
+                weights[windx] += dweights[windx] * momentum + dw;
+                dweights[windx] = dw;
+            }
+        }
+    }
+
+    /**
+     * {@link #rows} outputs at a time, with the remaining outputs done one at a time.
+     */
+    public static class Blocked extends Scalar {
+
+        /** the number of outputs computed together. */
+        public static final int rows = 4;
+
+        @Override
+        public void activate(float[] weights, int nI, int nO, float[] inputs, float[] outputs) {
+            int stride = nI + 1;
+            int j = 0;
+            for (; j + rows <= nO; j += rows) {
+                int w0 = j * stride, w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+                float s0 = 0.0f, s1 = 0.0f, s2 = 0.0f, s3 = 0.0f;
+                for (int k = 0; k < nI; k++) {
+                    float x = inputs[k];
+                    s0 += weights[w0 + k] * x;
+                    s1 += weights[w1 + k] * x;
+                    s2 += weights[w2 + k] * x;
+                    s3 += weights[w3 + k] * x;
+                }
+                outputs[j] = sigmoid(s0 + weights[w0 + nI]);
+                outputs[j + 1] = sigmoid(s1 + weights[w1 + nI]);
+                outputs[j + 2] = sigmoid(s2 + weights[w2 + nI]);
+                outputs[j + 3] = sigmoid(s3 + weights[w3 + nI]);
+            }
+            for (; j < nO; j++) {
+                int start = j * stride;
+                float result = 0.0f;
+                for (int k = 0; k < nI; k++)
+                    result += weights[start + k] * inputs[k];
+                outputs[j] = sigmoid(result + weights[start + nI]);
+            }
+        }
+
+        /**
+         * Backpropagate the error of one bias and adjust it.
+         * @param weights the weights.
+         * @param dweights the last change of each weight.
+         * @param windx the index of the bias.
+         * @param d the error times the derivative of the output.
+         * @param learningRate the rate of learning.
+         * @param momentum helps to avoid local minima.
+         * @param nextError the errors of the inputs, followed by that of the bias.
+         * @param nI the number of inputs.
+         */
+        private static void bias(float[] weights, float[] dweights, int windx, float d,
+                float learningRate, float momentum, float[] nextError, int nI) {
+            nextError[nI] += weights[windx] * d;
+            float dw = d * learningRate;
+            weights[windx] += dweights[windx] * momentum + dw;
+            dweights[windx] = dw;
+        }
+
+        @Override
+        public void train(float[] weights, float[] dweights, int nI, int nO, float[] error,
+                float[] input, float[] output, float learningRate, float momentum,
+                float[] nextError) {
+            int stride = nI + 1;
+            int i = 0;
+            for (; i + rows <= nO; i += rows) {
+                int w0 = i * stride, w1 = w0 + stride, w2 = w1 + stride, w3 = w2 + stride;
+                float d0 = error[i] * (output[i] * (1 - output[i]));
+                float d1 = error[i + 1] * (output[i + 1] * (1 - output[i + 1]));
+                float d2 = error[i + 2] * (output[i + 2] * (1 - output[i + 2]));
+                float d3 = error[i + 3] * (output[i + 3] * (1 - output[i + 3]));
+                for (int j = 0; j < nI; j++) {
+                    float x = input[j];
+                    float ne = nextError[j];
+                    ne += weights[w0 + j] * d0;
+                    ne += weights[w1 + j] * d1;
+                    ne += weights[w2 + j] * d2;
+                    ne += weights[w3 + j] * d3;
+                    nextError[j] = ne;
+
+                    float dw = x * d0 * learningRate;
+                    weights[w0 + j] += dweights[w0 + j] * momentum + dw;
+                    dweights[w0 + j] = dw;
+                    dw = x * d1 * learningRate;
+                    weights[w1 + j] += dweights[w1 + j] * momentum + dw;
+                    dweights[w1 + j] = dw;
+                    dw = x * d2 * learningRate;
+                    weights[w2 + j] += dweights[w2 + j] * momentum + dw;
+                    dweights[w2 + j] = dw;
+                    dw = x * d3 * learningRate;
+                    weights[w3 + j] += dweights[w3 + j] * momentum + dw;
+                    dweights[w3 + j] = dw;
+                }
+
+                // the biases, whose fake input is always 1.
+                bias(weights, dweights, w0 + nI, d0, learningRate, momentum, nextError, nI);
+                bias(weights, dweights, w1 + nI, d1, learningRate, momentum, nextError, nI);
+                bias(weights, dweights, w2 + nI, d2, learningRate, momentum, nextError, nI);
+                bias(weights, dweights, w3 + nI, d3, learningRate, momentum, nextError, nI);
+            }
+            if (i < nO)
+                super.train(weights, dweights, nI, nO - i, error, input, output, learningRate,
+                        momentum, nextError, i);
+        }
+    }
+}
@@ -0,0 +1,278 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Random;
+
+/**
+ * A dataset in a flat file of floats, mapped into memory rather than read onto the heap, so it may
+ * be larger than the heap, and loading it takes no time or memory at all. The file starts with
+ * four ints, {@link #magic}, the number of examples, and the numbers of inputs and outputs of each,
+ * followed by each example's inputs and then its outputs, all big endian as written by a
+ * <code>DataOutputStream</code>. Such files are written with a {@link Writer}, one example at a
+ * time, or converted from the NIST files by {@link DatasetReader#convert(String,String,String)}.
+ * <p>
+ * Since the mapping is only read through duplicates of its buffers, any number of threads may
+ * read chunks at once. A mapped file stays in memory until the dataset is garbage collected.
+ */
+public class MappedDataset implements NNDataset {
+
+    /** identifies a dataset file. */
+    public static final int magic = 0x4E4E4453;
+
+    /** the number of examples per chunk when none is given. */
+    public static final int defaultChunkSize = 1024;
+
+    /** the number of bytes before the first example. */
+    private static final int headerSize = 16;
+
+    /** the name of the file. */
+    private String filename;
+
+    /** the number of examples. */
+    private int examples;
+
+    /** the number of inputs of each example. */
+    private int inputs;
+
+    /** the number of outputs of each example. */
+    private int outputs;
+
+    /** the largest number of examples in a chunk. */
+    private int chunkSize;
+
+    /** the number of examples in each mapped segment, except maybe the last. */
+    private int examplesPerSegment;
+
+    /** the mapped segments of the file, each holding whole examples. */
+    private FloatBuffer[] segments;
+
+    /**
+     * Map the given dataset file, read in chunks of {@link #defaultChunkSize} examples.
+     * @param filename the name of the file.
+     * @throws IOException if the file can't be read or is not a dataset.
+     */
+    public MappedDataset(String filename) throws IOException {
+        this(filename, defaultChunkSize);
+    }
+
+    /**
+     * Map the given dataset file.
+     * @param filename the name of the file.
+     * @param chunkSize the largest number of examples in a chunk.
+     * @throws IOException if the file can't be read or is not a dataset.
+     */
+    public MappedDataset(String filename, int chunkSize) throws IOException {
+        this(filename, chunkSize, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Map the given dataset file in segments of at most the given size. Only tests need segments
+     * smaller than the largest a buffer can map.
+     * @param filename the name of the file.
+     * @param chunkSize the largest number of examples in a chunk.
+     * @param segmentBytes the largest number of bytes in a mapped segment.
+     * @throws IOException if the file can't be read or is not a dataset.
+     */
+    MappedDataset(String filename, int chunkSize, int segmentBytes) throws IOException {
+        if (chunkSize < 1)
+            throw new IllegalArgumentException("LBJava ERROR: MappedDataset: The chunk size must "
+                    + "be positive, not " + chunkSize + ".");
+        this.filename = filename;
+        this.chunkSize = chunkSize;
+
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            ByteBuffer header = ByteBuffer.allocate(headerSize);
+            while (header.hasRemaining() && channel.read(header) >= 0);
+            header.flip();
+            if (header.remaining() < headerSize || header.getInt() != magic)
+                throw new IOException("'" + filename + "' is not a dataset file.");
+            examples = header.getInt();
+            inputs = header.getInt();
+            outputs = header.getInt();
+            long recordSize = 4L * (inputs + outputs);
+            if (examples < 0 || inputs < 0 || outputs < 0
+                    || headerSize + examples * recordSize > channel.size())
+                throw new IOException("'" + filename + "' is truncated.");
+
+            examplesPerSegment = (int) Math.max(1, segmentBytes / Math.max(1, recordSize));
+            int count = examples == 0 ? 0 : (examples - 1) / examplesPerSegment + 1;
+            segments = new FloatBuffer[count];
+            for (int s = 0; s < count; s++) {
+                long first = (long) s * examplesPerSegment;
+                long n = Math.min(examplesPerSegment, examples - first);
+                segments[s] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        headerSize + first * recordSize, n * recordSize).asFloatBuffer();
+            }
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * @return the name of the file.
+     */
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public int size() {
+        return examples;
+    }
+
+    @Override
+    public int getInputCount() {
+        return inputs;
+    }
+
+    @Override
+    public int getOutputCount() {
+        return outputs;
+    }
+
+    @Override
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @Override
+    public int getChunkCount() {
+        return examples == 0 ? 0 : (examples - 1) / chunkSize + 1;
+    }
+
+    @Override
+    public int readChunk(int chunk, float[][] in, float[][] out) {
+        int first = chunk * chunkSize;
+        if (chunk < 0 || first >= examples)
+            throw new IndexOutOfBoundsException("LBJava ERROR: MappedDataset: There is no chunk "
+                    + chunk + " in '" + filename + "'.");
+        int n = Math.min(chunkSize, examples - first);
+        FloatBuffer segment = null;
+        int s = -1;
+        for (int k = 0; k < n; k++) {
+            int e = first + k;
+            if (e / examplesPerSegment != s) {
+                s = e / examplesPerSegment;
+                segment = segments[s].duplicate();
+                segment.position((e % examplesPerSegment) * (inputs + outputs));
+            }
+            segment.get(in[k], 0, inputs);
+            segment.get(out[k], 0, outputs);
+        }
+        return n;
+    }
+
+    /**
+     * Return the chunks in a random order.
+     * @param dataset the dataset.
+     * @param random the random number generator.
+     * @return the indexes of all the chunks, shuffled.
+     */
+    public static int[] shuffledChunks(NNDataset dataset, Random random) {
+        int[] order = new int[dataset.getChunkCount()];
+        for (int i = 0; i < order.length; i++)
+            order[i] = i;
+        shuffle(order, order.length, random);
+        return order;
+    }
+
+    /**
+     * Shuffle the first elements of an array in place.
+     * @param a the array.
+     * @param n the number of elements to shuffle.
+     * @param random the random number generator.
+     */
+    static void shuffle(int[] a, int n, Random random) {
+        for (int i = n - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int t = a[i];
+            a[i] = a[j];
+            a[j] = t;
+        }
+    }
+
+    /**
+     * Writes a dataset file one example at a time, so it never needs to be held in memory.
+     */
+    public static class Writer {
+
+        /** the name of the file. */
+        private String filename;
+
+        /** the file being written. */
+        private DataOutputStream out;
+
+        /** the number of inputs of each example. */
+        private int inputs;
+
+        /** the number of outputs of each example. */
+        private int outputs;
+
+        /** the number of examples written. */
+        private int examples = 0;
+
+        /**
+         * Create the file, writing a header that {@link #close()} completes.
+         * @param filename the name of the file.
+         * @param inputs the number of inputs of each example.
+         * @param outputs the number of outputs of each example.
+         * @throws IOException if the file can't be created.
+         */
+        public Writer(String filename, int inputs, int outputs) throws IOException {
+            this.filename = filename;
+            this.inputs = inputs;
+            this.outputs = outputs;
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename),
+                    1 << 16));
+            out.writeInt(magic);
+            out.writeInt(0);
+            out.writeInt(inputs);
+            out.writeInt(outputs);
+        }
+
+        /**
+         * Append an example.
+         * @param in the input data, of which the first {@link #inputs} values are written.
+         * @param o the desired outputs, of which the first {@link #outputs} values are written.
+         * @throws IOException if the example can't be written.
+         */
+        public void add(float[] in, float[] o) throws IOException {
+            for (int i = 0; i < inputs; i++)
+                out.writeFloat(in[i]);
+            for (int i = 0; i < outputs; i++)
+                out.writeFloat(o[i]);
+            examples++;
+        }
+
+        /**
+         * Finish the file, recording the number of examples in its header.
+         * @throws IOException if the file can't be written.
+         */
+        public void close() throws IOException {
+            out.close();
+            RandomAccessFile file = new RandomAccessFile(filename, "rw");
+            try {
+                file.seek(4);
+                file.writeInt(examples);
+            } finally {
+                file.close();
+            }
+        }
+    }
+}
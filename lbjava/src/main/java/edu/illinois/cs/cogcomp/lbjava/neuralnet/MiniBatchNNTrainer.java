@@ -0,0 +1,473 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * This trainer learns the layers from mini-batches of examples, data parallel. Each batch is split
+ * among a fixed pool of threads that live as long as the trainer. Each thread runs its examples
+ * forward and backward through the whole network on its own, adding the gradients into its own
+ * arrays while the weights are left untouched. Once all of them are done, the gradients are summed
+ * and the weights updated in a single reduction, so the threads meet twice per batch, rather than
+ * twice per layer for every example as in {@link ThreadedNNTrainer}.
+ * <p>
+ * The weights are updated with the gradient averaged over the batch, with the same learning rate
+ * and momentum as {@link SimpleNNTrainer}, making the same update it makes for each example when
+ * the batch size is one. Larger batches make fewer, larger steps, so they may need a higher
+ * learning rate or more epochs. The pool's threads are daemons; call {@link #shutdown()} to stop
+ * them sooner.
+ */
+public class MiniBatchNNTrainer implements NNTrainingInterface {
+
+    /** the number of examples per batch when none is given. */
+    public static final int defaultBatchSize = 32;
+
+    /** below this many weights in all, the reduction is not worth handing to the pool. */
+    private static final int parallelReductionThreshold = 1 << 14;
+
+    /** the layers of the neural network. */
+    private Layer[] layers;
+
+    /** scales the weight deltas for each iteration. */
+    private float learningRate = .3f;
+
+    /** this prevents local minimum capture. */
+    private float momentum = .6f;
+
+    /** the number of examples whose gradients are summed before the weights are updated. */
+    private int batchSize;
+
+    /** the number of threads the batches are split among. */
+    private int numThreads;
+
+    /** shuffles the examples every epoch. */
+    private Random random = new Random(34565);
+
+    /** the pool, created when first needed. */
+    private ExecutorService pool = null;
+
+    /** one per thread, each holding the gradients of its share of the batch. */
+    private Worker[] workers = null;
+
+    /** one per thread, each summing a slice of the gradients into the weights. */
+    private Reducer[] reducers = null;
+
+    /**
+     * Need the layer data, learning rate and momentum. Batches of {@link #defaultBatchSize}
+     * examples are split among as many threads as there are processors.
+     * @param l the layers of the neural net.
+     * @param rate the learning rate.
+     * @param mom the momentum.
+     */
+    public MiniBatchNNTrainer(Layer[] l, float rate, float mom) {
+        this(l, rate, mom, defaultBatchSize, Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Need the layer data, learning rate, momentum, the batch size and number of threads.
+     * @param l the layers of the neural net.
+     * @param rate the learning rate.
+     * @param mom the momentum.
+     * @param batch the number of examples per batch.
+     * @param numThreads number of threads to deploy.
+     */
+    public MiniBatchNNTrainer(Layer[] l, float rate, float mom, int batch, int numThreads) {
+        if (batch < 1)
+            throw new IllegalArgumentException("LBJava ERROR: MiniBatchNNTrainer: The batch size "
+                    + "must be positive, not " + batch + ".");
+        if (numThreads < 1)
+            throw new IllegalArgumentException("LBJava ERROR: MiniBatchNNTrainer: The number of "
+                    + "threads must be positive, not " + numThreads + ".");
+        this.layers = l;
+        this.learningRate = rate;
+        this.momentum = mom;
+        this.batchSize = batch;
+        this.numThreads = numThreads;
+    }
+
+    /**
+     * @return the number of examples per batch.
+     */
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    /**
+     * @return the number of threads the batches are split among.
+     */
+    public int getNumThreads() {
+        return numThreads;
+    }
+
+    /**
+     * given an input set of example, compute the output values, also return all the
+     * activation values in between, return them all. The results will be in the last
+     * vector in the returned array.
+     * @param inputs the inputs.
+     * @return the activation energies from all layers/
+     */
+    public final float [][] activate(float[] inputs) {
+        int layerCount = layers.length;
+        float [][] activations = new float[layerCount][];
+        float [] currentinputs = inputs;
+        for (int i = 0 ; i < layerCount ; i++) {
+            activations[i] = layers[i].activate(currentinputs);
+            currentinputs = activations[i];
+        }
+        return activations;
+    }
+
+    /**
+     * Execute the given number of epochs, each visiting every example once in a new random order,
+     * a batch at a time.
+     * @param inputs the input examples.
+     * @param outputs the labels.
+     * @param epochs the number of iterations to perform.
+     */
+    @Override
+    public void train(float[][] inputs, float[][] outputs, int epochs) {
+        if (inputs.length != outputs.length)
+            throw new RuntimeException("There must be the same number of input data records and "
+                    + "output data records.");
+        int numExamples = inputs.length;
+        if (numExamples == 0)
+            return;
+        this.start();
+
+        int[] order = new int[numExamples];
+        for (int i = 0; i < numExamples; i++)
+            order[i] = i;
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int i = numExamples - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int t = order[i];
+                order[i] = order[j];
+                order[j] = t;
+            }
+            for (int first = 0; first < numExamples; first += batchSize)
+                this.trainBatch(inputs, outputs, order, first,
+                        Math.min(numExamples, first + batchSize));
+        }
+
+        // the weight deltas were all set here, not just those of a sparse example's inputs.
+        for (Layer layer : layers)
+            layer.clearSparseState();
+    }
+
+    /**
+     * Execute the given number of epochs over a dataset that need not fit in memory. Each epoch
+     * visits the chunks in a new random order, and the examples of each chunk in a random order,
+     * a batch at a time, so only one chunk is held in memory at a time.
+     * @param data the examples.
+     * @param epochs the number of iterations to perform.
+     */
+    public void train(NNDataset data, int epochs) {
+        if (data.size() == 0)
+            return;
+        this.start();
+
+        int chunkSize = data.getChunkSize();
+        float[][] inputs = new float[chunkSize][data.getInputCount()];
+        float[][] outputs = new float[chunkSize][data.getOutputCount()];
+        int[] order = new int[chunkSize];
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int chunk : MappedDataset.shuffledChunks(data, random)) {
+                int n = data.readChunk(chunk, inputs, outputs);
+                for (int i = 0; i < n; i++)
+                    order[i] = i;
+                MappedDataset.shuffle(order, n, random);
+                for (int first = 0; first < n; first += batchSize)
+                    this.trainBatch(inputs, outputs, order, first, Math.min(n, first + batchSize));
+            }
+        }
+
+        for (Layer layer : layers)
+            layer.clearSparseState();
+    }
+
+    /**
+     * Compute the gradients of one batch on the pool's threads, then update the weights.
+     * @param inputs the input examples.
+     * @param outputs the labels.
+     * @param order the order in which the examples are visited.
+     * @param first the position in <code>order</code> of the batch's first example.
+     * @param end the position in <code>order</code> just past the batch's last example.
+     */
+    private void trainBatch(float[][] inputs, float[][] outputs, int[] order, int first, int end) {
+        int count = end - first;
+        int used = Math.min(numThreads, count);
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(used);
+        for (int t = 0; t < used; t++) {
+            workers[t].setup(inputs, outputs, order, first + count * t / used,
+                    first + count * (t + 1) / used);
+            tasks.add(workers[t]);
+        }
+        this.run(tasks);
+
+        float scale = learningRate / count;
+        int totalWeights = 0;
+        for (Layer layer : layers)
+            totalWeights += layer.getWeights().length;
+        if (reducers.length == 1 || totalWeights < parallelReductionThreshold) {
+            this.reduce(0, 1, used, scale);
+        } else {
+            tasks.clear();
+            for (Reducer r : reducers) {
+                r.setup(used, scale);
+                tasks.add(r);
+            }
+            this.run(tasks);
+        }
+    }
+
+    /**
+     * Sum a slice of every layer's gradients from the workers that were used, zeroing them for the
+     * next batch, and update the corresponding weights.
+     * @param part which slice.
+     * @param parts the number of slices.
+     * @param used the number of workers that computed gradients.
+     * @param scale the learning rate divided by the number of examples in the batch.
+     */
+    private void reduce(int part, int parts, int used, float scale) {
+        for (int l = 0; l < layers.length; l++) {
+            float[] weights = layers[l].getWeights();
+            float[] dweights = layers[l].getDweights();
+            int from = (int) ((long) weights.length * part / parts);
+            int to = (int) ((long) weights.length * (part + 1) / parts);
+            for (int k = from; k < to; k++) {
+                float sum = 0;
+                for (int t = 0; t < used; t++) {
+                    float[] g = workers[t].gradients[l];
+                    sum += g[k];
+                    g[k] = 0;
+                }
+                float dw = sum * scale;
+                weights[k] += dweights[k] * momentum + dw;
+                dweights[k] = dw;
+            }
+        }
+    }
+
+    /**
+     * Run the given tasks and wait for all of them to finish. A single task is simply run on the
+     * calling thread.
+     * @param tasks the tasks.
+     */
+    private void run(List<Callable<Void>> tasks) {
+        try {
+            if (tasks.size() == 1) {
+                tasks.get(0).call();
+                return;
+            }
+            for (Future<Void> f : pool.invokeAll(tasks))
+                f.get();
+        } catch (ExecutionException e) {
+            Throwable t = e.getCause();
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException(t);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LBJava ERROR: MiniBatchNNTrainer: Interrupted while "
+                    + "training.", e);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * Create the pool and the workers' arrays if this has not been done yet.
+     */
+    private synchronized void start() {
+        if (workers == null) {
+            workers = new Worker[numThreads];
+            for (int t = 0; t < numThreads; t++)
+                workers[t] = new Worker();
+            reducers = new Reducer[numThreads];
+            for (int t = 0; t < numThreads; t++)
+                reducers[t] = new Reducer(t, numThreads);
+        }
+        if (pool == null && numThreads > 1) {
+            pool = Executors.newFixedThreadPool(numThreads, new ThreadFactory() {
+                private int inc = 0;
+                public synchronized Thread newThread(Runnable r) {
+                    Thread t = new Thread(r, "MiniBatchNNTrainer-" + inc++);
+                    t.setDaemon(true);
+                    return t;
+                }
+            });
+        }
+    }
+
+    /**
+     * Stop the pool's threads. They are started again if this trainer is used to train again.
+     */
+    public synchronized void shutdown() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    /**
+     * Computes the gradients of its share of a batch, accumulating them in its own arrays, which
+     * are laid out like the layers' weights.
+     */
+    private class Worker implements Callable<Void> {
+
+        /** the summed gradients, one array per layer. */
+        final float[][] gradients;
+
+        /** the activations of each layer for the current example. */
+        final float[][] activations;
+
+        /** the errors of each layer's outputs for the current example. */
+        final float[][] errors;
+
+        /** the input examples. */
+        float[][] inputs;
+
+        /** the labels. */
+        float[][] outputs;
+
+        /** the order in which the examples are visited. */
+        int[] order;
+
+        /** the range of positions in <code>order</code> to train on. */
+        int first, end;
+
+        /**
+         * Allocate the arrays for the current layers.
+         */
+        Worker() {
+            int ll = layers.length;
+            gradients = new float[ll][];
+            activations = new float[ll][];
+            errors = new float[ll][];
+            for (int l = 0; l < ll; l++) {
+                gradients[l] = new float[layers[l].getWeights().length];
+                activations[l] = new float[layers[l].getNumberOutputs()];
+                errors[l] = new float[layers[l].getNumberOutputs()];
+            }
+        }
+
+        /**
+         * Give this worker its share of the next batch.
+         * @param in the input examples.
+         * @param out the labels.
+         * @param o the order in which the examples are visited.
+         * @param f the position in <code>o</code> of the first example.
+         * @param e the position in <code>o</code> just past the last example.
+         */
+        void setup(float[][] in, float[][] out, int[] o, int f, int e) {
+            inputs = in;
+            outputs = out;
+            order = o;
+            first = f;
+            end = e;
+        }
+
+        /**
+         * Run each example forward, then back, adding its gradients to ours. The weights are only
+         * read.
+         */
+        @Override
+        public Void call() {
+            int ll = layers.length;
+            for (int p = first; p < end; p++) {
+                int iI = order[p];
+                float[] currentinputs = inputs[iI];
+                for (int l = 0; l < ll; l++) {
+                    Layer layer = layers[l];
+                    layer.getKernel().activate(layer.getWeights(), layer.getNumberInputs(),
+                            layer.getNumberOutputs(), currentinputs, activations[l]);
+                    currentinputs = activations[l];
+                }
+
+                float[] error = errors[ll - 1];
+                for (int i = 0; i < error.length; i++)
+                    error[i] = outputs[iI][i] - currentinputs[i]; // negative error
+
+                for (int l = ll - 1; l >= 0; l--) {
+                    Layer layer = layers[l];
+                    float[] weights = layer.getWeights();
+                    float[] g = gradients[l];
+                    float[] input = l == 0 ? inputs[iI] : activations[l - 1];
+                    float[] output = activations[l];
+                    float[] nextError = l == 0 ? null : errors[l - 1];
+                    if (nextError != null)
+                        Arrays.fill(nextError, 0.0f);
+                    int nI = layer.getNumberInputs();
+                    error = errors[l];
+                    for (int i = 0; i < output.length; i++) {
+                        int woffset = (nI + 1) * i;
+                        float d = error[i] * (output[i] * (1 - output[i]));
+                        if (nextError != null)
+                            for (int j = 0; j < nI; j++)
+                                nextError[j] += weights[woffset + j] * d;
+                        for (int j = 0; j < nI; j++)
+                            g[woffset + j] += input[j] * d;
+                        g[woffset + nI] += d; // the bias input is always 1.
+                    }
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Sums one slice of the workers' gradients into the weights.
+     */
+    private class Reducer implements Callable<Void> {
+
+        /** which slice, and how many there are. */
+        final int part, parts;
+
+        /** the number of workers used in the batch. */
+        int used;
+
+        /** the learning rate divided by the number of examples in the batch. */
+        float scale;
+
+        /**
+         * @param p which slice.
+         * @param n the number of slices.
+         */
+        Reducer(int p, int n) {
+            part = p;
+            parts = n;
+        }
+
+        /**
+         * @param u the number of workers used in the batch.
+         * @param s the learning rate divided by the number of examples in the batch.
+         */
+        void setup(int u, float s) {
+            used = u;
+            scale = s;
+        }
+
+        @Override
+        public Void call() {
+            reduce(part, parts, used, scale);
+            return null;
+        }
+    }
+}
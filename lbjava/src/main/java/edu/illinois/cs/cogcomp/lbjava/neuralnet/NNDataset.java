@@ -0,0 +1,53 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+/**
+ * A set of training examples that need not fit in memory at once. The examples are divided into
+ * chunks of consecutive examples, which trainers read one at a time into arrays they reuse, in a
+ * different order each epoch, so only one chunk of examples is ever held on the heap.
+ * @see MappedDataset
+ */
+public interface NNDataset {
+
+    /**
+     * @return the number of examples.
+     */
+    public int size();
+
+    /**
+     * @return the number of inputs of each example.
+     */
+    public int getInputCount();
+
+    /**
+     * @return the number of outputs of each example.
+     */
+    public int getOutputCount();
+
+    /**
+     * @return the largest number of examples in a chunk.
+     */
+    public int getChunkSize();
+
+    /**
+     * @return the number of chunks.
+     */
+    public int getChunkCount();
+
+    /**
+     * Copy the examples of a chunk into the given arrays, which must have at least
+     * {@link #getChunkSize()} rows of {@link #getInputCount()} and {@link #getOutputCount()}
+     * values.
+     * @param chunk the index of the chunk.
+     * @param inputs receives the input data.
+     * @param outputs receives the desired outputs.
+     * @return the number of examples in the chunk.
+     */
+    public int readChunk(int chunk, float[][] inputs, float[][] outputs);
+}
@@ -88,6 +88,48 @@ public class SimpleNNTrainer implements NNTrainingInterface {
         return activations;
     }
     
+    /**
+     * given the active inputs of a sparse example, compute the output values, also return all
+     * the activation values in between. Only the weights of the active inputs are read in the
+     * first layer, so the cost does not grow with the number of inputs.
+     * @param indexes the indexes of the active inputs.
+     * @param values the values of the active inputs.
+     * @return the activation energies from all layers/
+     */
+    public final float [][] activate(int[] indexes, double[] values) {
+        
+        int layerCount = layers.length;
+        float [][] activations = new float[layerCount][];
+        activations[0] = layers[0].activate(indexes, values);
+        for (int i = 1 ; i < layerCount ; i++) {
+            activations[i] = layers[i].activate(activations[i-1]);
+        }
+        return activations;
+    }
+    
+    /**
+     * Train with one sparse example, where all inputs not listed are zero. The weights end up
+     * the same as if the dense inputs had been given to {@link #train(float[], float[])}, but
+     * only the first layer weights of the active inputs are visited.
+     * @param indexes the indexes of the active inputs; the values of an index listed more than
+     *        once are summed, as if it had been listed once with their sum.
+     * @param values the values of the active inputs.
+     * @param outputs the labeled data.
+     */
+    public void train(int[] indexes, double[] values, float[] outputs) {
+        float [][] activations = this.activate(indexes, values);
+        float[] calcOut = activations[activations.length-1];
+        int errlen = calcOut.length;
+        float [] error = new float[errlen];
+        for (int i = 0; i < errlen; i++) {
+            error[i] = outputs[i] - calcOut[i]; // negative error
+        }
+        for (int i = layers.length - 1; i > 0; i--) {
+            error = layers[i].train(error,activations[i-1],activations[i], this.learningRate, this.momentum);
+        }
+        layers[0].train(error, indexes, values, activations[0], this.learningRate, this.momentum);
+    }
+    
     /**
      * Train with one example.
      * @param inputs input data.
@@ -147,4 +189,29 @@ public class SimpleNNTrainer implements NNTrainingInterface {
             }
         }
     }
+
+    /**
+     * Execute the given number of epochs over a dataset that need not fit in memory. Each epoch
+     * visits the chunks in a new random order, and the examples of each chunk in a random order,
+     * so only one chunk is held in memory at a time.
+     * @param data the examples.
+     * @param epochs the number of iterations to perform.
+     */
+    public void train(NNDataset data, int epochs) {
+        int chunkSize = data.getChunkSize();
+        float[][] inputs = new float[chunkSize][data.getInputCount()];
+        float[][] outputs = new float[chunkSize][data.getOutputCount()];
+        int[] order = new int[chunkSize];
+        Random r = new Random(34565);
+        for (int epoch = 0; epoch < epochs; epoch++) {
+            for (int chunk : MappedDataset.shuffledChunks(data, r)) {
+                int n = data.readChunk(chunk, inputs, outputs);
+                for (int i = 0; i < n; i++)
+                    order[i] = i;
+                MappedDataset.shuffle(order, n, r);
+                for (int i = 0; i < n; i++)
+                    this.train(inputs[order[i]], outputs[order[i]]);
+            }
+        }
+    }
 }
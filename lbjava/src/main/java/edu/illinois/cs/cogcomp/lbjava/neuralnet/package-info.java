@@ -11,7 +11,11 @@
  * efficiency in mind. The implementation contract includes an API for trainers
  * {@see NNTrainingInterface} that defines the API for the any trainers. A single
  * threaded trainer is provided. There is also a multithreaded trainer, which helps
- * when there are a very large number of weights between layers.<p>
+ * when there are a very large number of weights between layers, and a mini-batch
+ * trainer {@see MiniBatchNNTrainer} that spreads each batch of examples over a pool
+ * of threads, which pays off even for small layers. Both of those can also train
+ * from a {@see NNDataset}, such as a memory mapped {@see MappedDataset}, a chunk at a
+ * time, for data that does not fit on the heap.<p>
  * 
  * There is also a {@see Layer} class which implements functionality specific 
  * to neural net layers within the system. However, there is no representation of
@@ -12,6 +12,7 @@ import java.io.ByteArrayInputStream;
 import java.io.DataInputStream;
 import java.io.EOFException;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.util.zip.ZipFile;
 import java.util.zip.ZipInputStream;
 
@@ -89,6 +90,58 @@ public class ArrayFileParser implements Parser {
     }
 
 
+    /** For use by subclasses that read examples some other way. */
+    protected ArrayFileParser() {}
+
+
+    /**
+     * Creates a parser for the given example file, memory mapping it with a
+     * {@link MappedArrayFileParser} unless it is compressed, either by zipping or in the format
+     * written by {@link CompactExampleOutputStream}.
+     *
+     * @param exampleFile The name of the file containing the examples.
+     * @param zip Whether or not the file is compressed.
+     * @return A parser for the file.
+     **/
+    public static ArrayFileParser open(String exampleFile, boolean zip) {
+        if (zip)
+            return new ArrayFileParser(exampleFile, true);
+
+        boolean compact = false;
+        try {
+            DataInputStream stream =
+                    new DataInputStream(new BufferedInputStream(new FileInputStream(exampleFile),
+                            4));
+            compact = isCompact(stream);
+            stream.close();
+        } catch (Exception e) {
+            System.err.println("Can't read from '" + exampleFile + "':");
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        if (compact)
+            return new ArrayFileParser(exampleFile, false);
+        return new MappedArrayFileParser(exampleFile);
+    }
+
+
+    /**
+     * Creates a new parser that reads the same examples as this one, starting from the beginning.
+     * The new parser shares no state with this one that changes while parsing, so the two may be
+     * used by different threads at once.
+     *
+     * @return The new parser.
+     **/
+    public ArrayFileParser duplicate() {
+        ArrayFileParser result =
+                exampleFileName != null ? new ArrayFileParser(exampleFileName, zipped)
+                        : new ArrayFileParser(exampleData, zipped);
+        result.includePruned = includePruned;
+        return result;
+    }
+
+
     /** Setter for {@link #includePruned}. */
     public void setIncludePruned(boolean b) {
         includePruned = b;
@@ -204,6 +257,11 @@ public class ArrayFileParser implements Parser {
                 in = new DataInputStream(new BufferedInputStream(zip));
             } else
                 in = new DataInputStream(new ByteArrayInputStream(exampleData));
+
+            if (isCompact(in))
+                in =
+                        new DataInputStream(new BufferedInputStream(
+                                new CompactExampleInputStream(in)));
         } catch (Exception e) {
             System.err.println("Can't open '" + exampleFileName + "' for input:");
             e.printStackTrace();
@@ -212,6 +270,26 @@ public class ArrayFileParser implements Parser {
     }
 
 
+    /**
+     * Determines whether the given stream, positioned at the beginning of an example file, holds
+     * examples in the format written by {@link CompactExampleOutputStream}. The stream is left
+     * where it was.
+     *
+     * @param stream A stream that supports <code>mark</code>.
+     * @return <code>true</code> iff the stream starts with {@link CompactExampleOutputStream#magic}.
+     **/
+    protected static boolean isCompact(DataInputStream stream) throws IOException {
+        stream.mark(4);
+        try {
+            return stream.readInt() == CompactExampleOutputStream.magic;
+        } catch (EOFException e) {
+            return false;
+        } finally {
+            stream.reset();
+        }
+    }
+
+
     /** Frees any resources this parser may be holding. */
     public void close() {
         if (in == null)
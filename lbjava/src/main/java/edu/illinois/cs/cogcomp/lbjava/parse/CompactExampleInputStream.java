@@ -0,0 +1,315 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+
+/**
+ * Reads examples in the compact format written by {@link CompactExampleOutputStream}, producing
+ * the same bytes as the examples would have had in the format read by {@link ArrayFileParser}.
+ * Blocks are decompressed one at a time as they are needed, and {@link #skipBlock()} passes over a
+ * block without decompressing it.
+ *
+ * @see CompactExampleOutputStream
+ **/
+public class CompactExampleInputStream extends InputStream {
+    /** The stream in the compact format. */
+    private final DataInputStream in;
+    /** Whether values are stored as <code>float</code>s. */
+    private final boolean floats;
+    /** Decompresses the blocks. */
+    private final Inflater inflater = new Inflater();
+
+    /** The current compressed block. */
+    private byte[] compressed = new byte[1 << 16];
+    /** The current decompressed block. */
+    private byte[] block = new byte[1 << 16];
+    /** The position of the next encoded record in {@link #block}. */
+    private int blockPosition;
+    /** The number of bytes in {@link #block}. */
+    private int blockLength;
+
+    /** The current record in the format read by {@link ArrayFileParser}. */
+    private byte[] record = new byte[1 << 10];
+    /** The position of the next byte to read from {@link #record}. */
+    private int recordPosition;
+    /** The number of bytes in {@link #record}. */
+    private int recordLength;
+
+
+    /**
+     * Creates a stream that reads the compact format from the given stream, starting with the
+     * header.
+     *
+     * @param in The stream in the compact format.
+     * @throws IOException If the stream doesn't begin with a supported compact format header.
+     **/
+    public CompactExampleInputStream(InputStream in) throws IOException {
+        this.in = in instanceof DataInputStream ? (DataInputStream) in : new DataInputStream(in);
+        if (this.in.readInt() != CompactExampleOutputStream.magic
+                || this.in.readInt() != CompactExampleOutputStream.version)
+            throw new IOException("LBJava ERROR: CompactExampleInputStream: Stream does not "
+                    + "contain examples in a supported compact format.");
+        floats = (this.in.readInt() & CompactExampleOutputStream.floatFlag) != 0;
+    }
+
+
+    /**
+     * Returns the next byte of examples in the format read by {@link ArrayFileParser}.
+     *
+     * @return The byte, or -1 at the end of the stream.
+     **/
+    public int read() throws IOException {
+        if (recordPosition == recordLength && !decodeRecord())
+            return -1;
+        return record[recordPosition++] & 0xFF;
+    }
+
+
+    /**
+     * Reads bytes of examples in the format read by {@link ArrayFileParser}.
+     *
+     * @param b The array into which bytes are read.
+     * @param off The position in <code>b</code> of the first byte read.
+     * @param len The largest number of bytes to read.
+     * @return The number of bytes read, or -1 at the end of the stream.
+     **/
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0)
+            return 0;
+        if (recordPosition == recordLength && !decodeRecord())
+            return -1;
+
+        int n = Math.min(len, recordLength - recordPosition);
+        System.arraycopy(record, recordPosition, b, off, n);
+        recordPosition += n;
+        return n;
+    }
+
+
+    /**
+     * Skips the remainder of the current block without decoding it, along with the next block if
+     * the current one has been entirely read.
+     *
+     * @return The number of examples in the block that was skipped, or -1 at the end of the stream.
+     **/
+    public int skipBlock() throws IOException {
+        recordPosition = recordLength = 0;
+        if (blockPosition < blockLength) {
+            int examples = 0;
+            while (blockPosition < blockLength) {
+                decodeRecord();
+                if (recordLength > 4)
+                    ++examples;
+            }
+            recordPosition = recordLength = 0;
+            return examples;
+        }
+
+        int[] header = readBlockHeader();
+        if (header == null)
+            return -1;
+        skipFully(header[1]);
+        return header[3];
+    }
+
+
+    /**
+     * Counts the examples remaining in the stream, skipping blocks without decompressing them.
+     * The stream is left at its end.
+     *
+     * @return The number of examples.
+     **/
+    public int countExamples() throws IOException {
+        int result = 0;
+        for (int examples = skipBlock(); examples != -1; examples = skipBlock())
+            result += examples;
+        return result;
+    }
+
+
+    /**
+     * Reads the header of the next block.
+     *
+     * @return The block's uncompressed length, compressed length, number of records, and number of
+     *         examples, or <code>null</code> at the end of the stream.
+     **/
+    private int[] readBlockHeader() throws IOException {
+        int uncompressed;
+        try {
+            uncompressed = in.readInt();
+        } catch (EOFException e) {
+            return null;
+        }
+        return new int[] {uncompressed, in.readInt(), in.readInt(), in.readInt()};
+    }
+
+
+    /** Skips the given number of bytes of the underlying stream. */
+    private void skipFully(int n) throws IOException {
+        while (n > 0) {
+            int skipped = in.skipBytes(n);
+            if (skipped <= 0)
+                throw new EOFException();
+            n -= skipped;
+        }
+    }
+
+
+    /**
+     * Decodes the next record into {@link #record}, reading and decompressing the next block if
+     * necessary.
+     *
+     * @return <code>false</code> if the end of the stream has been reached.
+     **/
+    private boolean decodeRecord() throws IOException {
+        if (blockPosition == blockLength && !readBlock())
+            return false;
+
+        recordPosition = recordLength = 0;
+        int L = (int) readVarint() - 1;
+        putInt(L);
+        if (L == -1)
+            return true;
+
+        for (int i = 0; i < L; ++i)
+            readEntry(false);
+
+        int unpruned = (int) readVarint();
+        int pruned = (int) readVarint();
+        putInt(unpruned);
+        putInt(pruned);
+
+        for (int i = 0; i < unpruned; ++i)
+            readEntry(i > 0);
+        for (int i = 0; i < pruned; ++i)
+            readEntry(i > 0);
+
+        return true;
+    }
+
+
+    /**
+     * Decodes a label or feature and appends it to {@link #record}.
+     *
+     * @param delta Whether the encoded index is the difference from the previous entry's index.
+     **/
+    private void readEntry(boolean delta) throws IOException {
+        long v = readVarint();
+        int index = (int) (v >>> 1);
+        if (delta)
+            index += getInt(recordLength - 12);
+
+        double value = 1;
+        if ((v & 1) == 0) {
+            if (floats)
+                value = Float.intBitsToFloat(readBlockInt());
+            else
+                value = Double.longBitsToDouble((long) readBlockInt() << 32 | readBlockInt()
+                        & 0xFFFFFFFFL);
+        }
+
+        putInt(index);
+        long bits = Double.doubleToLongBits(value);
+        putInt((int) (bits >>> 32));
+        putInt((int) bits);
+    }
+
+
+    /**
+     * Reads and decompresses the next block.
+     *
+     * @return <code>false</code> if the end of the stream has been reached.
+     **/
+    private boolean readBlock() throws IOException {
+        int[] header = readBlockHeader();
+        if (header == null)
+            return false;
+
+        if (compressed.length < header[1])
+            compressed = new byte[header[1]];
+        if (block.length < header[0])
+            block = new byte[header[0]];
+        in.readFully(compressed, 0, header[1]);
+
+        inflater.reset();
+        inflater.setInput(compressed, 0, header[1]);
+        try {
+            int n = 0;
+            while (n < header[0] && !inflater.finished())
+                n += inflater.inflate(block, n, header[0] - n);
+            if (n != header[0])
+                throw new IOException("LBJava ERROR: CompactExampleInputStream: Block is "
+                        + "shorter than its header claims.");
+        } catch (DataFormatException e) {
+            throw new IOException("LBJava ERROR: CompactExampleInputStream: Corrupt block: " + e);
+        }
+
+        blockPosition = 0;
+        blockLength = header[0];
+        return true;
+    }
+
+
+    /** Decodes a variable length quantity from the current block. */
+    private long readVarint() throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (blockPosition == blockLength)
+                throw new EOFException();
+            byte b = block[blockPosition++];
+            result |= (long) (b & 0x7F) << shift;
+            if (b >= 0)
+                return result;
+        }
+        throw new IOException("LBJava ERROR: CompactExampleInputStream: Malformed integer.");
+    }
+
+
+    /** Reads an integer from the current block, most significant byte first. */
+    private int readBlockInt() throws IOException {
+        if (blockPosition + 4 > blockLength)
+            throw new EOFException();
+        int p = blockPosition;
+        blockPosition += 4;
+        return (block[p] & 0xFF) << 24 | (block[p + 1] & 0xFF) << 16 | (block[p + 2] & 0xFF) << 8
+                | block[p + 3] & 0xFF;
+    }
+
+
+    /** Appends an integer to {@link #record}, most significant byte first. */
+    private void putInt(int v) {
+        if (recordLength + 4 > record.length)
+            record = Arrays.copyOf(record, record.length * 2);
+        record[recordLength++] = (byte) (v >>> 24);
+        record[recordLength++] = (byte) (v >>> 16);
+        record[recordLength++] = (byte) (v >>> 8);
+        record[recordLength++] = (byte) v;
+    }
+
+
+    /** Reads an integer out of {@link #record}. */
+    private int getInt(int p) {
+        return (record[p] & 0xFF) << 24 | (record[p + 1] & 0xFF) << 16
+                | (record[p + 2] & 0xFF) << 8 | record[p + 3] & 0xFF;
+    }
+
+
+    /** Closes the underlying stream. */
+    public void close() throws IOException {
+        inflater.end();
+        in.close();
+    }
+}
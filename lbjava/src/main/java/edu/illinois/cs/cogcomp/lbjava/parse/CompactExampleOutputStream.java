@@ -0,0 +1,357 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+
+/**
+ * Converts examples written in the format read by {@link ArrayFileParser} into a more compact
+ * format as they are written. The examples are written to this stream exactly as they would be to
+ * an example file, typically through an
+ * {@link edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream} by
+ * {@link edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer#writeExample BatchTrainer.writeExample},
+ * and {@link ArrayFileParser} recognizes and reads the compact format on its own.
+ *
+ * <p>
+ * The compact format begins with the four byte integers {@link #magic}, {@link #version}, and a set
+ * of flags, the only one of which says whether values are stored as <code>float</code>s. The rest
+ * of the file is a sequence of blocks, each of which starts with four integers: the lengths of the
+ * block before and after compression, the number of records in the block, and the number of those
+ * records that are examples rather than fold separators. The records in a block are compressed
+ * together, independently of every other block, so a reader can skip a block without decompressing
+ * it. Each record is encoded as follows, where every integer is a variable length quantity of 7 bit
+ * groups, least significant first:
+ *
+ * <ul>
+ * <li> One more than the number of labels, or 0 for a fold separator.
+ * <li> For each label, its index shifted left once, with a 1 in the low bit if its value is 1.
+ * Values other than 1 follow the index.
+ * <li> The numbers of unpruned and pruned features.
+ * <li> The unpruned features and then the pruned features, each sorted by index and encoded like
+ * labels, except that the difference between each index and the previous one in the same group is
+ * stored instead of the index.
+ * </ul>
+ *
+ * <p>
+ * Since binary features have value 1 and nearby indexes, most features take a single byte before
+ * compression. When values are stored as <code>float</code>s, values other than 1 lose precision.
+ *
+ * @see CompactExampleInputStream
+ **/
+public class CompactExampleOutputStream extends FilterOutputStream {
+    /** The first four bytes of a file in the compact format: "LBJX". */
+    public static final int magic = 0x4C424A58;
+    /** The version of the compact format written by this class. */
+    public static final int version = 1;
+    /** The flag indicating that values are stored as <code>float</code>s. */
+    public static final int floatFlag = 1;
+    /** The default number of bytes of encoded records in a block before compression. */
+    public static final int defaultBlockSize = 1 << 16;
+
+    /** Whether values are stored as <code>float</code>s. */
+    private final boolean floats;
+    /** The number of bytes of encoded records at which a block is compressed and written. */
+    private final int blockSize;
+    /** Compresses the blocks. */
+    private final Deflater deflater = new Deflater();
+
+    /** Bytes written to this stream that don't yet form a complete record. */
+    private byte[] pending = new byte[1 << 12];
+    /** The number of bytes in {@link #pending}. */
+    private int pendingLength;
+    /** The number of bytes {@link #pending} must hold before another record might be complete. */
+    private int needed = 4;
+
+    /** The encoded records of the current block. */
+    private byte[] block = new byte[1 << 16];
+    /** The number of bytes in {@link #block}. */
+    private int blockLength;
+    /** The number of records in the current block. */
+    private int blockRecords;
+    /** The number of examples in the current block. */
+    private int blockExamples;
+    /** Holds the compressed block. */
+    private byte[] compressed = new byte[1 << 16];
+
+    /** Holds the features of a record while they are sorted. */
+    private long[] order = new long[64];
+
+
+    /**
+     * Creates a stream that writes examples in the compact format to the given stream, storing
+     * values as <code>double</code>s.
+     *
+     * @param out The stream to which the compact format is written.
+     **/
+    public CompactExampleOutputStream(OutputStream out) {
+        this(out, false);
+    }
+
+    /**
+     * Creates a stream that writes examples in the compact format to the given stream.
+     *
+     * @param out The stream to which the compact format is written.
+     * @param f Whether values are stored as <code>float</code>s.
+     **/
+    public CompactExampleOutputStream(OutputStream out, boolean f) {
+        this(out, f, defaultBlockSize);
+    }
+
+    /**
+     * Creates a stream that writes examples in the compact format to the given stream.
+     *
+     * @param out The stream to which the compact format is written.
+     * @param f Whether values are stored as <code>float</code>s.
+     * @param b The number of bytes of encoded records at which a block is compressed and written.
+     **/
+    public CompactExampleOutputStream(OutputStream out, boolean f, int b) {
+        super(out);
+        floats = f;
+        blockSize = b;
+
+        try {
+            writeInt(out, magic);
+            writeInt(out, version);
+            writeInt(out, floats ? floatFlag : 0);
+        } catch (IOException e) {
+            System.err.println("Can't write compact example header:");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /** Writes an integer to the given stream, most significant byte first. */
+    private static void writeInt(OutputStream out, int v) throws IOException {
+        out.write(v >>> 24);
+        out.write(v >>> 16);
+        out.write(v >>> 8);
+        out.write(v);
+    }
+
+
+    /**
+     * Accepts a byte of examples in the format read by {@link ArrayFileParser}.
+     *
+     * @param b The byte.
+     **/
+    public void write(int b) throws IOException {
+        if (pendingLength == pending.length)
+            pending = Arrays.copyOf(pending, pendingLength * 2);
+        pending[pendingLength++] = (byte) b;
+        if (pendingLength >= needed)
+            encodePending();
+    }
+
+
+    /**
+     * Accepts bytes of examples in the format read by {@link ArrayFileParser}.
+     *
+     * @param b The bytes.
+     * @param off The position of the first byte in <code>b</code>.
+     * @param len The number of bytes.
+     **/
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (pendingLength + len > pending.length)
+            pending = Arrays.copyOf(pending, Math.max(pending.length * 2, pendingLength + len));
+        System.arraycopy(b, off, pending, pendingLength, len);
+        pendingLength += len;
+        if (pendingLength >= needed)
+            encodePending();
+    }
+
+
+    /** Encodes every complete record in {@link #pending}. */
+    private void encodePending() throws IOException {
+        int start = 0;
+
+        while (true) {
+            int available = pendingLength - start;
+            needed = 4;
+            if (available < needed)
+                break;
+
+            int L = getInt(start);
+            if (L == -1) {
+                writeVarint(0);
+                ++blockRecords;
+                start += 4;
+                continue;
+            }
+
+            int header = 4 + 12 * L;
+            needed = header + 8;
+            if (available < needed)
+                break;
+            int unpruned = getInt(start + header);
+            int pruned = getInt(start + header + 4);
+            needed += 12 * (unpruned + pruned);
+            if (available < needed)
+                break;
+
+            writeVarint(L + 1);
+            for (int i = 0; i < L; ++i)
+                writeEntry(getInt(start + 4 + 12 * i), getDouble(start + 8 + 12 * i));
+
+            writeVarint(unpruned);
+            writeVarint(pruned);
+            writeFeatures(start + header + 8, unpruned);
+            writeFeatures(start + header + 8 + 12 * unpruned, pruned);
+
+            ++blockRecords;
+            ++blockExamples;
+            start += needed;
+            if (blockLength >= blockSize)
+                writeBlock();
+        }
+
+        pendingLength -= start;
+        System.arraycopy(pending, start, pending, 0, pendingLength);
+    }
+
+
+    /**
+     * Sorts a group of features by index and encodes them.
+     *
+     * @param position The position in {@link #pending} of the first feature.
+     * @param n The number of features.
+     **/
+    private void writeFeatures(int position, int n) throws IOException {
+        if (order.length < n)
+            order = new long[Math.max(n, order.length * 2)];
+
+        for (int i = 0; i < n; ++i) {
+            int index = getInt(position + 12 * i);
+            if (index < 0)
+                throw new IOException("LBJava ERROR: CompactExampleOutputStream: Negative feature "
+                        + "index " + index + ".");
+            order[i] = (long) index << 32 | i;
+        }
+
+        Arrays.sort(order, 0, n);
+        int previous = 0;
+        for (int i = 0; i < n; ++i) {
+            int index = (int) (order[i] >>> 32);
+            int p = position + 12 * (int) order[i];
+            writeEntry(index - previous, getDouble(p + 4));
+            previous = index;
+        }
+    }
+
+
+    /**
+     * Encodes a label or feature.
+     *
+     * @param index The label's index or the feature's index difference.
+     * @param value The value.
+     **/
+    private void writeEntry(int index, double value) {
+        boolean unit = value == 1;
+        writeVarint(((long) index & 0xFFFFFFFFL) << 1 | (unit ? 1 : 0));
+
+        if (!unit) {
+            if (floats)
+                writeBlockInt(Float.floatToIntBits((float) value));
+            else {
+                long bits = Double.doubleToLongBits(value);
+                writeBlockInt((int) (bits >>> 32));
+                writeBlockInt((int) bits);
+            }
+        }
+    }
+
+
+    /** Appends a variable length quantity to the current block. */
+    private void writeVarint(long v) {
+        ensureBlockCapacity(10);
+        while ((v & ~0x7FL) != 0) {
+            block[blockLength++] = (byte) (v & 0x7F | 0x80);
+            v >>>= 7;
+        }
+        block[blockLength++] = (byte) v;
+    }
+
+
+    /** Appends an integer to the current block, most significant byte first. */
+    private void writeBlockInt(int v) {
+        ensureBlockCapacity(4);
+        block[blockLength++] = (byte) (v >>> 24);
+        block[blockLength++] = (byte) (v >>> 16);
+        block[blockLength++] = (byte) (v >>> 8);
+        block[blockLength++] = (byte) v;
+    }
+
+
+    /** Makes sure the current block has room for the given number of bytes. */
+    private void ensureBlockCapacity(int n) {
+        if (blockLength + n > block.length)
+            block = Arrays.copyOf(block, Math.max(block.length * 2, blockLength + n));
+    }
+
+
+    /** Reads an integer out of {@link #pending}. */
+    private int getInt(int p) {
+        return (pending[p] & 0xFF) << 24 | (pending[p + 1] & 0xFF) << 16
+                | (pending[p + 2] & 0xFF) << 8 | pending[p + 3] & 0xFF;
+    }
+
+
+    /** Reads a <code>double</code> out of {@link #pending}. */
+    private double getDouble(int p) {
+        return Double.longBitsToDouble((long) getInt(p) << 32 | getInt(p + 4) & 0xFFFFFFFFL);
+    }
+
+
+    /** Compresses and writes the current block, if it contains any records. */
+    private void writeBlock() throws IOException {
+        if (blockRecords == 0)
+            return;
+
+        deflater.reset();
+        deflater.setInput(block, 0, blockLength);
+        deflater.finish();
+        int compressedLength = 0;
+        while (!deflater.finished()) {
+            if (compressedLength == compressed.length)
+                compressed = Arrays.copyOf(compressed, compressed.length * 2);
+            compressedLength +=
+                    deflater.deflate(compressed, compressedLength, compressed.length
+                            - compressedLength);
+        }
+
+        writeInt(out, blockLength);
+        writeInt(out, compressedLength);
+        writeInt(out, blockRecords);
+        writeInt(out, blockExamples);
+        out.write(compressed, 0, compressedLength);
+
+        blockLength = 0;
+        blockRecords = 0;
+        blockExamples = 0;
+    }
+
+
+    /**
+     * Writes the last block and closes the underlying stream.
+     *
+     * @throws IOException If the examples written to this stream ended in the middle of a record.
+     **/
+    public void close() throws IOException {
+        writeBlock();
+        deflater.end();
+        super.close();
+        if (pendingLength > 0)
+            throw new IOException("LBJava ERROR: CompactExampleOutputStream: The last example "
+                    + "is incomplete.");
+    }
+}
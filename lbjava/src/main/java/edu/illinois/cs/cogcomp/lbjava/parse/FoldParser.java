@@ -152,6 +152,27 @@ public class FoldParser implements Parser {
     }
 
 
+    /**
+     * Creates a parser that partitions the examples of the given parser into the same folds as
+     * another fold parser partitions its own. This is useful when <code>parser</code> produces the
+     * same examples as <code>f</code>'s parser, since the random split policy would otherwise
+     * partition them differently. The new parser starts with the same pivot as <code>f</code>,
+     * extracting examples from the pivot iff <code>f</code> does.
+     *
+     * @param f The fold parser whose partitioning is copied.
+     * @param parser The parser whose examples are being filtered.
+     **/
+    public FoldParser(FoldParser f, Parser parser) {
+        K = f.K;
+        splitPolicy = f.splitPolicy;
+        fromPivot = f.fromPivot;
+        examples = f.examples;
+        shuffled = f.shuffled;
+        this.parser = parser;
+        setPivot(f.pivot);
+    }
+
+
     /**
      * Retrieves the value of {@link #K}, which may have been computed in the constructor if the
      * splitting policy is manual.
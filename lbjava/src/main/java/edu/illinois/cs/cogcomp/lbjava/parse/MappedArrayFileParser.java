@@ -0,0 +1,467 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+
+/**
+ * Reads an uncompressed example file, as written by
+ * {@link edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer}, by mapping it into memory. The file is
+ * scanned once when the parser is created to find the examples' boundaries, and from then on
+ * {@link #reset()} and {@link #seek(int)} only move a cursor, so each round of training begins
+ * immediately.
+ *
+ * <p>
+ * Besides the {@link Parser} interface, which returns newly allocated arrays for each example just
+ * as {@link ArrayFileParser} does, this class offers a cursor that reads an example's labels and
+ * features directly out of the mapped file without allocating anything. Call {@link #advance()} to
+ * move to the next record; then, unless {@link #isSeparator()}, its contents can be read with
+ * {@link #getLabelCount()}, {@link #getLabel(int)}, {@link #getFeatureCount()},
+ * {@link #getFeature(int)}, and so on.
+ *
+ * <p>
+ * Files larger than 2 GB are mapped in several segments, each of which ends on an example boundary.
+ * A mapped file stays in memory until the parser is closed or garbage collected, along with every
+ * parser {@link #duplicate() duplicated} from it, and the Java runtime releases the mapping.
+ *
+ * @see ArrayFileParser#open(String,boolean)
+ **/
+public class MappedArrayFileParser extends ArrayFileParser {
+    /** The largest number of bytes mapped in a single segment by default. */
+    public static final int defaultSegmentSize = 1 << 30;
+    /** The number of records between the positions remembered for {@link #seek(int)}. */
+    protected static final int checkpointInterval = 1024;
+
+    /** The mapped segments of the file. */
+    private MappedByteBuffer[] segments;
+    /** The offset in the file of the first record in each segment, followed by the file's size. */
+    private long[] segmentStarts;
+    /** The offset in the file of every {@link #checkpointInterval}th record. */
+    private long[] checkpoints;
+    /** The number of records, including fold separators, in the file. */
+    private int records;
+    /** The indexes of the records that are fold separators, in ascending order. */
+    private int[] separators;
+    /** The number of elements of {@link #separators} in use. */
+    private int separatorCount;
+
+    /** The number of records the cursor has moved past. */
+    private int record;
+    /** The offset in the file of the record after the cursor. */
+    private long nextOffset;
+    /** The index of the segment containing the cursor. */
+    private int segment;
+    /** The position of the current record in its segment. */
+    private int position;
+    /** The number of labels in the current record, or -1 if it is a fold separator. */
+    private int labels;
+    /** The number of unpruned features in the current record. */
+    private int unpruned;
+    /** The number of pruned features in the current record. */
+    private int pruned;
+
+
+    /**
+     * Maps the given uncompressed example file.
+     *
+     * @param exampleFile The name of the file containing the examples.
+     **/
+    public MappedArrayFileParser(String exampleFile) {
+        this(exampleFile, defaultSegmentSize);
+    }
+
+    /**
+     * Maps the given uncompressed example file in segments of at most the given size.
+     *
+     * @param exampleFile The name of the file containing the examples.
+     * @param segmentSize The largest number of bytes to map at once; each example must fit in a
+     *        segment.
+     **/
+    public MappedArrayFileParser(String exampleFile, int segmentSize) {
+        exampleFileName = exampleFile;
+        zipped = false;
+
+        try {
+            RandomAccessFile file = new RandomAccessFile(exampleFile, "r");
+            FileChannel channel = file.getChannel();
+            index(channel, segmentSize);
+            file.close();
+        } catch (IOException e) {
+            System.err.println("Can't map '" + exampleFile + "':");
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+        reset();
+    }
+
+
+    /**
+     * Creates a parser that shares the mapped segments and index of the given parser, with its own
+     * cursor at the beginning of the file.
+     *
+     * @param p The parser whose mapping is shared.
+     **/
+    protected MappedArrayFileParser(MappedArrayFileParser p) {
+        exampleFileName = p.exampleFileName;
+        zipped = false;
+        includePruned = p.includePruned;
+        segments = p.segments;
+        segmentStarts = p.segmentStarts;
+        checkpoints = p.checkpoints;
+        records = p.records;
+        separators = p.separators;
+        separatorCount = p.separatorCount;
+        reset();
+    }
+
+
+    /**
+     * Creates a new parser over the same mapped file without mapping or scanning it again. Since
+     * the mapped segments are only read with absolute gets, the two parsers may be used by
+     * different threads at once.
+     *
+     * @return The new parser.
+     **/
+    public ArrayFileParser duplicate() {
+        return new MappedArrayFileParser(this);
+    }
+
+
+    /**
+     * Scans the file, mapping its segments and recording the number of records and the positions
+     * of the checkpoints.
+     *
+     * @param channel The open file.
+     * @param segmentSize The largest number of bytes to map at once.
+     **/
+    private void index(FileChannel channel, int segmentSize) throws IOException {
+        long length = channel.size();
+        segments = new MappedByteBuffer[0];
+        segmentStarts = new long[0];
+        checkpoints = new long[16];
+        separators = new int[4];
+        long offset = 0;
+        MappedByteBuffer b = null;
+        long start = 0;
+
+        if (length >= 4) {
+            b = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(length, segmentSize));
+            if (b.getInt(0) == 0x504B0304)
+                throw new IllegalArgumentException("LBJava ERROR: MappedArrayFileParser: '"
+                        + exampleFileName + "' is compressed.");
+            addSegment(b, 0);
+        }
+
+        while (offset + 4 <= length) {
+            long size = recordSize(b, offset - start, length - offset);
+
+            if (size == 0 || size > 0 && offset - start + size > b.limit()) {
+                // The record runs past the end of the segment, so a new one starts with it.
+                start = offset;
+                b = channel.map(FileChannel.MapMode.READ_ONLY, start,
+                        Math.min(length - start, segmentSize));
+                addSegment(b, start);
+                size = recordSize(b, 0, length - offset);
+                if (size == 0 || size > b.limit())
+                    throw new IllegalArgumentException("LBJava ERROR: MappedArrayFileParser: An "
+                            + "example in '" + exampleFileName + "' is larger than "
+                            + segmentSize + " bytes.");
+            }
+
+            if (size < 0)
+                break; // The last record is truncated.
+
+            if (records % checkpointInterval == 0) {
+                int c = records / checkpointInterval;
+                if (c == checkpoints.length)
+                    checkpoints = Arrays.copyOf(checkpoints, c * 2);
+                checkpoints[c] = offset;
+            }
+
+            if (size == 4) {
+                if (separatorCount == separators.length)
+                    separators = Arrays.copyOf(separators, separatorCount * 2);
+                separators[separatorCount++] = records;
+            }
+
+            ++records;
+            offset += size;
+        }
+
+        segmentStarts = Arrays.copyOf(segmentStarts, segments.length + 1);
+        segmentStarts[segments.length] = offset;
+    }
+
+
+    /**
+     * Maps the segments found by {@link #index(FileChannel,int)} again, after {@link #close()}.
+     **/
+    private void map() {
+        try {
+            RandomAccessFile file = new RandomAccessFile(exampleFileName, "r");
+            FileChannel channel = file.getChannel();
+            MappedByteBuffer[] mapped = new MappedByteBuffer[segmentStarts.length - 1];
+            for (int s = 0; s < mapped.length; ++s)
+                mapped[s] = channel.map(FileChannel.MapMode.READ_ONLY, segmentStarts[s],
+                        segmentStarts[s + 1] - segmentStarts[s]);
+            file.close();
+            segments = mapped;
+        } catch (IOException e) {
+            System.err.println("Can't map '" + exampleFileName + "':");
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+
+
+    /**
+     * Adds a segment to the list.
+     *
+     * @param b The segment.
+     * @param start The offset in the file of its first byte.
+     **/
+    private void addSegment(MappedByteBuffer b, long start) {
+        int n = segments.length;
+        if (n > 0 && segmentStarts[n - 1] == start) {
+            segments[n - 1] = b;
+            return;
+        }
+        segments = Arrays.copyOf(segments, n + 1);
+        segmentStarts = Arrays.copyOf(segmentStarts, n + 1);
+        segments[n] = b;
+        segmentStarts[n] = start;
+    }
+
+
+    /**
+     * Computes the size of the record at the given position in a segment.
+     *
+     * @param b The segment.
+     * @param p The position of the record in the segment.
+     * @param remaining The number of bytes in the file from the record to the end.
+     * @return The size of the record, 0 if more of it must be mapped to tell, or -1 if it is
+     *         truncated.
+     **/
+    private static long recordSize(ByteBuffer b, long p, long remaining) {
+        if (p + 4 > b.limit())
+            return 0;
+        int L = b.getInt((int) p);
+        if (L == -1)
+            return 4;
+
+        long header = 4 + 12L * L;
+        if (header + 8 > remaining)
+            return -1;
+        if (p + header + 8 > b.limit())
+            return 0;
+
+        int features = b.getInt((int) (p + header)) + b.getInt((int) (p + header + 4));
+        long size = header + 8 + 12L * features;
+        return size > remaining ? -1 : size;
+    }
+
+
+    /** Returns the number of records, including fold separators, in the file. */
+    public int getNumRecords() {
+        return records;
+    }
+
+
+    /**
+     * Returns the number of examples left in the file, which is known without reading it again. As
+     * in {@link ArrayFileParser}, {@link #reset()} is called afterward.
+     *
+     * @return The number of examples left in the file.
+     **/
+    public int getNumExamples() {
+        int s = Arrays.binarySearch(separators, 0, separatorCount, record);
+        if (s < 0)
+            s = -s - 1;
+        int result = records - record - (separatorCount - s);
+        reset();
+        return result;
+    }
+
+
+    /**
+     * Moves the cursor so that the next record read will be the one with the given index, where
+     * the first record has index 0 and fold separators are counted as records.
+     *
+     * @param r The index of the next record to read.
+     **/
+    public void seek(int r) {
+        if (segments == null)
+            map();
+        if (r < 0 || r > records)
+            throw new IndexOutOfBoundsException("LBJava ERROR: MappedArrayFileParser.seek: "
+                    + "Record " + r + " is not in a file of " + records + " records.");
+
+        if (r == records) {
+            record = records;
+            nextOffset = segmentStarts[segments.length];
+        } else {
+            int c = r / checkpointInterval;
+            record = c * checkpointInterval;
+            nextOffset = checkpoints[c];
+        }
+
+        segment = Arrays.binarySearch(segmentStarts, 0, segments.length, nextOffset);
+        if (segment < 0)
+            segment = -segment - 2;
+        labels = -1;
+
+        while (record < r)
+            advance();
+    }
+
+
+    /** Moves the cursor back to the beginning of the file. */
+    public void reset() {
+        seek(0);
+    }
+
+
+    /**
+     * Moves the cursor to the next record in the file.
+     *
+     * @return <code>true</code> if there was another record, or <code>false</code> if the end of
+     *         the file has been reached.
+     **/
+    public boolean advance() {
+        if (record == records)
+            return false;
+        while (nextOffset >= segmentStarts[segment + 1])
+            ++segment;
+
+        ByteBuffer b = segments[segment];
+        position = (int) (nextOffset - segmentStarts[segment]);
+        labels = b.getInt(position);
+        if (labels == -1)
+            nextOffset += 4;
+        else {
+            int p = position + 4 + 12 * labels;
+            unpruned = b.getInt(p);
+            pruned = b.getInt(p + 4);
+            nextOffset += 4 + 12L * labels + 8 + 12L * (unpruned + pruned);
+        }
+
+        ++record;
+        return true;
+    }
+
+
+    /** Returns whether the current record is a fold separator. */
+    public boolean isSeparator() {
+        return labels == -1;
+    }
+
+
+    /** Returns the number of labels in the current example. */
+    public int getLabelCount() {
+        return labels;
+    }
+
+
+    /**
+     * Returns the lexicon index of one of the current example's labels.
+     *
+     * @param i The position of the label in the example.
+     * @return The label's index.
+     **/
+    public int getLabel(int i) {
+        return segments[segment].getInt(position + 4 + 12 * i);
+    }
+
+
+    /**
+     * Returns the value of one of the current example's labels.
+     *
+     * @param i The position of the label in the example.
+     * @return The label's value.
+     **/
+    public double getLabelValue(int i) {
+        return segments[segment].getDouble(position + 8 + 12 * i);
+    }
+
+
+    /**
+     * Returns the number of features in the current example, including the pruned features if
+     * {@link #includePruned} is set.
+     **/
+    public int getFeatureCount() {
+        return includePruned ? unpruned + pruned : unpruned;
+    }
+
+
+    /**
+     * Returns the lexicon index of one of the current example's features.
+     *
+     * @param i The position of the feature in the example.
+     * @return The feature's index.
+     **/
+    public int getFeature(int i) {
+        return segments[segment].getInt(position + 12 + 12 * (labels + i));
+    }
+
+
+    /**
+     * Returns the value of one of the current example's features.
+     *
+     * @param i The position of the feature in the example.
+     * @return The feature's value.
+     **/
+    public double getFeatureValue(int i) {
+        return segments[segment].getDouble(position + 16 + 12 * (labels + i));
+    }
+
+
+    /**
+     * Returns either an <code>Object[]</code> containing newly allocated arrays as described in
+     * {@link ArrayFileParser} or a {@link FoldSeparator}.
+     **/
+    public Object next() {
+        if (!advance())
+            return null;
+        if (labels == -1)
+            return FoldSeparator.separator;
+
+        int[] exampleLabels = new int[labels];
+        double[] labelValues = new double[labels];
+        for (int i = 0; i < labels; ++i) {
+            exampleLabels[i] = getLabel(i);
+            labelValues[i] = getLabelValue(i);
+        }
+
+        int F = getFeatureCount();
+        int[] exampleFeatures = new int[F];
+        double[] exampleValues = new double[F];
+        for (int i = 0; i < F; ++i) {
+            exampleFeatures[i] = getFeature(i);
+            exampleValues[i] = getFeatureValue(i);
+        }
+
+        return new Object[] {exampleFeatures, exampleValues, exampleLabels, labelValues};
+    }
+
+
+    /**
+     * Drops this parser's references to the mapped segments, so that the file can be unmapped once
+     * no {@link #duplicate() duplicate} refers to them either. As with {@link ArrayFileParser}, the
+     * parser reads the file again after {@link #reset()}; it maps the file again to do so.
+     **/
+    public void close() {
+        segments = null;
+    }
+}
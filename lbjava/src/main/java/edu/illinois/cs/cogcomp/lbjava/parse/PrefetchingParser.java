@@ -0,0 +1,197 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.parse;
+
+import java.util.concurrent.ArrayBlockingQueue;
+
+
+/**
+ * Reads examples from another parser on a background thread, keeping up to a fixed number of them
+ * waiting in a buffer, so that reading and parsing the raw data overlaps with whatever the caller
+ * does with each example, such as extracting its features or learning from it. Examples are
+ * returned in the same order as the other parser returns them, including any
+ * {@link FoldSeparator#separator}s, and <code>null</code> still marks the end of the data.
+ *
+ * <p>
+ * The background thread is started by the first call to {@link #next()} and stops when the other
+ * parser runs out of examples. {@link #reset()} and {@link #close()} first wait for any call the
+ * background thread has in progress to return, discarding the examples it read ahead, so the other
+ * parser is never used by two threads at once. Only its <code>next()</code> method is called from
+ * the background thread. If that method throws an exception, the exception is rethrown by the
+ * call to {@link #next()} that would have returned the example.
+ *
+ * <p>
+ * This class is not itself meant to be used by several threads at once.
+ *
+ * @see edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer#setPrefetch(int)
+ **/
+public class PrefetchingParser implements Parser {
+    /** The default number of examples read ahead. */
+    public static final int defaultCapacity = 1024;
+    /** Stands for the end of the data in {@link #buffer}, which can't hold <code>null</code>. */
+    private static final Object end = new Object();
+
+
+    /** The parser whose examples are read ahead. */
+    protected Parser parser;
+    /** The examples read ahead, in order. */
+    protected ArrayBlockingQueue<Object> buffer;
+    /** The thread reading ahead, or <code>null</code> if none has been started since a reset. */
+    protected Thread reader;
+    /** Set to tell {@link #reader} to stop. */
+    protected volatile boolean stopping;
+    /** Whatever {@link #reader} caught from {@link #parser}, or <code>null</code>. */
+    protected volatile Throwable failure;
+    /** Whether the end of the data has been returned since the last reset. */
+    protected boolean exhausted;
+
+
+    /**
+     * Reads ahead up to {@link #defaultCapacity} examples.
+     *
+     * @param p The parser whose examples are read ahead.
+     **/
+    public PrefetchingParser(Parser p) {
+        this(p, defaultCapacity);
+    }
+
+    /**
+     * Reads ahead up to the given number of examples.
+     *
+     * @param p The parser whose examples are read ahead.
+     * @param c The maximum number of examples waiting to be returned; must be positive.
+     **/
+    public PrefetchingParser(Parser p, int c) {
+        if (c < 1)
+            throw new IllegalArgumentException("LBJava ERROR: PrefetchingParser: The number of "
+                    + "examples read ahead must be positive, not " + c + ".");
+        parser = p;
+        buffer = new ArrayBlockingQueue<Object>(c);
+    }
+
+
+    /** Returns the parser whose examples are read ahead. */
+    public Parser getParser() {
+        return parser;
+    }
+
+
+    /** Returns the maximum number of examples waiting to be returned. */
+    public int getCapacity() {
+        return buffer.size() + buffer.remainingCapacity();
+    }
+
+
+    /** Starts {@link #reader}. */
+    protected void start() {
+        stopping = false;
+        reader = new Thread(new Runnable() {
+            public void run() {
+                Object example;
+                do {
+                    try {
+                        example = parser.next();
+                    } catch (Throwable t) {
+                        failure = t;
+                        example = null;
+                    }
+
+                    try {
+                        buffer.put(example == null ? end : example);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                } while (example != null && !stopping);
+            }
+        }, "PrefetchingParser");
+        reader.setDaemon(true);
+        reader.start();
+    }
+
+
+    /**
+     * Stops {@link #reader}, waiting for any call it has in progress to {@link #parser} to return,
+     * and discards the examples it read ahead.
+     **/
+    protected void stop() {
+        if (reader == null)
+            return;
+        stopping = true;
+
+        boolean interrupted = false;
+        while (reader.isAlive()) {
+            // Make room, in case the reader is waiting to add an example.
+            buffer.clear();
+            try {
+                reader.join(10);
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+
+        if (interrupted)
+            Thread.currentThread().interrupt();
+        reader = null;
+        buffer.clear();
+        failure = null;
+    }
+
+
+    /**
+     * Returns the next example read by the background thread, waiting for it if necessary.
+     *
+     * @return The next example, or <code>null</code> if there are no more.
+     **/
+    public Object next() {
+        if (exhausted)
+            return null;
+        if (reader == null)
+            start();
+
+        Object result;
+        try {
+            result = buffer.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("LBJava ERROR: PrefetchingParser: Interrupted while "
+                    + "waiting for an example.", e);
+        }
+
+        if (result != end)
+            return result;
+
+        exhausted = true;
+        Throwable t = failure;
+        if (t != null) {
+            failure = null;
+            if (t instanceof RuntimeException)
+                throw (RuntimeException) t;
+            if (t instanceof Error)
+                throw (Error) t;
+            throw new RuntimeException(t);
+        }
+
+        return null;
+    }
+
+
+    /** Stops reading ahead and sets the other parser back to the beginning of the raw data. */
+    public void reset() {
+        stop();
+        exhausted = false;
+        parser.reset();
+    }
+
+
+    /** Stops reading ahead and closes the other parser. */
+    public void close() {
+        stop();
+        exhausted = true;
+        parser.close();
+    }
+}
@@ -0,0 +1,386 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.util;
+
+import java.io.FileOutputStream;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+
+/**
+ * A thread-safe registry of named measurements, such as the number of examples per second a
+ * {@link edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer} processes or the time an
+ * {@link edu.illinois.cs.cogcomp.lbjava.infer.ILPInference} spends solving. Each time a value is
+ * recorded under a name, the {@link Statistic} for that name is updated and every registered
+ * {@link Listener} is notified, so measurements can be both summarized at the end of a run and
+ * followed as they happen.
+ *
+ * <p>
+ * Both forms are machine readable: {@link #toJSON()} and {@link #writeJSON(String)} produce a JSON
+ * object mapping each name to its summary, and a {@link JSONLinesListener} writes each measurement
+ * as a JSON object on its own line as soon as it is recorded.
+ *
+ * <p>
+ * Names are dot-separated, starting with the component that recorded the value, and each value
+ * has a unit, such as <code>"s"</code> for seconds or <code>"examples/s"</code>.
+ **/
+public class Metrics {
+    /** The summaries of the values recorded so far, in the order their names first appeared. */
+    private final Map<String, Statistic> statistics = new LinkedHashMap<String, Statistic>();
+    /** The objects notified of every value recorded. */
+    private final CopyOnWriteArrayList<Listener> listeners = new CopyOnWriteArrayList<Listener>();
+
+
+    /**
+     * Records a value, updating its name's summary and notifying every listener.
+     *
+     * @param name The name of the measurement.
+     * @param value The value.
+     * @param unit The unit of the value.
+     **/
+    public void record(String name, double value, String unit) {
+        synchronized (statistics) {
+            Statistic s = statistics.get(name);
+            if (s == null) {
+                s = new Statistic(unit);
+                statistics.put(name, s);
+            }
+            s.add(value);
+        }
+
+        for (Iterator<Listener> I = listeners.iterator(); I.hasNext();)
+            I.next().recorded(name, value, unit);
+    }
+
+
+    /**
+     * Records a duration in seconds.
+     *
+     * @param name The name of the measurement.
+     * @param nanoseconds The duration in nanoseconds, as measured with
+     *        <code>System.nanoTime()</code>.
+     **/
+    public void recordSeconds(String name, long nanoseconds) {
+        record(name, nanoseconds / 1e9, "s");
+    }
+
+
+    /**
+     * Returns a copy of the summary of the values recorded under the given name.
+     *
+     * @param name The name of the measurement.
+     * @return The summary, or <code>null</code> if no value has been recorded under the name.
+     **/
+    public Statistic get(String name) {
+        synchronized (statistics) {
+            Statistic s = statistics.get(name);
+            return s == null ? null : (Statistic) s.clone();
+        }
+    }
+
+
+    /** Returns copies of the summaries of every name, in the order the names first appeared. */
+    public Map<String, Statistic> getStatistics() {
+        Map<String, Statistic> result = new LinkedHashMap<String, Statistic>();
+        synchronized (statistics) {
+            for (Map.Entry<String, Statistic> e : statistics.entrySet())
+                result.put(e.getKey(), (Statistic) e.getValue().clone());
+        }
+        return result;
+    }
+
+
+    /** Forgets every value recorded so far. Listeners stay registered. */
+    public void clear() {
+        synchronized (statistics) {
+            statistics.clear();
+        }
+    }
+
+
+    /**
+     * Registers an object to be notified of every value recorded from now on.
+     *
+     * @param l The listener.
+     **/
+    public void addListener(Listener l) {
+        listeners.add(l);
+    }
+
+
+    /**
+     * Stops notifying the given object.
+     *
+     * @param l The listener.
+     **/
+    public void removeListener(Listener l) {
+        listeners.remove(l);
+    }
+
+
+    /**
+     * Returns a JSON object mapping each name to an object with the fields <code>unit</code>,
+     * <code>count</code>, <code>sum</code>, <code>mean</code>, <code>min</code>, <code>max</code>,
+     * and <code>last</code>.
+     **/
+    public String toJSON() {
+        StringBuffer result = new StringBuffer("{");
+        boolean first = true;
+
+        for (Map.Entry<String, Statistic> e : getStatistics().entrySet()) {
+            if (!first)
+                result.append(",");
+            first = false;
+            result.append("\n  ");
+            appendString(result, e.getKey());
+            result.append(": ");
+            e.getValue().toJSON(result);
+        }
+
+        return result.append(first ? "}" : "\n}").toString();
+    }
+
+
+    /**
+     * Writes the output of {@link #toJSON()} to the named file.
+     *
+     * @param filename The name of the file.
+     **/
+    public void writeJSON(String filename) {
+        PrintStream out = null;
+        try {
+            out = new PrintStream(new FileOutputStream(filename), false, "UTF-8");
+        } catch (Exception e) {
+            System.err.println("Can't create '" + filename + "' for output: " + e);
+            System.exit(1);
+        }
+
+        out.println(toJSON());
+        out.close();
+    }
+
+
+    /**
+     * Appends the given string to the given buffer as a JSON string literal.
+     *
+     * @param buffer The buffer.
+     * @param s The string.
+     **/
+    protected static void appendString(StringBuffer buffer, String s) {
+        buffer.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\')
+                buffer.append('\\').append(c);
+            else if (c < 0x20)
+                buffer.append(String.format("\\u%04x", (int) c));
+            else
+                buffer.append(c);
+        }
+        buffer.append('"');
+    }
+
+
+    /**
+     * Appends the given number to the given buffer as a JSON number, or <code>null</code> if it is
+     * infinite or not a number, since JSON can't represent those.
+     *
+     * @param buffer The buffer.
+     * @param d The number.
+     **/
+    protected static void appendNumber(StringBuffer buffer, double d) {
+        if (Double.isNaN(d) || Double.isInfinite(d))
+            buffer.append("null");
+        else if (d == Math.rint(d) && Math.abs(d) < 1e15)
+            buffer.append((long) d);
+        else
+            buffer.append(d);
+    }
+
+
+    /**
+     * Notified of every value recorded in a {@link Metrics} registry it is added to. Listeners may
+     * be called from any thread that records a value, including several at once.
+     **/
+    public static interface Listener {
+        /**
+         * Called when a value has been recorded.
+         *
+         * @param name The name of the measurement.
+         * @param value The value.
+         * @param unit The unit of the value.
+         **/
+        void recorded(String name, double value, String unit);
+    }
+
+
+    /**
+     * Writes each value recorded as a JSON object on its own line, with the fields
+     * <code>time</code> (milliseconds since the epoch), <code>name</code>, <code>value</code>, and
+     * <code>unit</code>.
+     **/
+    public static class JSONLinesListener implements Listener {
+        /** The stream written to. */
+        protected PrintStream out;
+
+
+        /**
+         * Creates a listener that writes to the given stream.
+         *
+         * @param o The stream.
+         **/
+        public JSONLinesListener(PrintStream o) {
+            out = o;
+        }
+
+
+        /**
+         * Writes the given value as a line of JSON.
+         *
+         * @param name The name of the measurement.
+         * @param value The value.
+         * @param unit The unit of the value.
+         **/
+        public void recorded(String name, double value, String unit) {
+            StringBuffer line = new StringBuffer("{\"time\": ");
+            line.append(System.currentTimeMillis());
+            line.append(", \"name\": ");
+            appendString(line, name);
+            line.append(", \"value\": ");
+            appendNumber(line, value);
+            line.append(", \"unit\": ");
+            appendString(line, unit);
+            line.append("}");
+
+            synchronized (out) {
+                out.println(line);
+                out.flush();
+            }
+        }
+    }
+
+
+    /** A summary of the values recorded under one name. */
+    public static class Statistic implements Cloneable {
+        /** The unit of the values. */
+        private String unit;
+        /** The number of values. */
+        private long count;
+        /** The sum of the values. */
+        private double sum;
+        /** The smallest value. */
+        private double min = Double.POSITIVE_INFINITY;
+        /** The largest value. */
+        private double max = Double.NEGATIVE_INFINITY;
+        /** The most recent value. */
+        private double last = Double.NaN;
+
+
+        /**
+         * Creates an empty summary.
+         *
+         * @param u The unit of the values.
+         **/
+        Statistic(String u) {
+            unit = u;
+        }
+
+
+        /**
+         * Adds a value to the summary.
+         *
+         * @param v The value.
+         **/
+        void add(double v) {
+            ++count;
+            sum += v;
+            min = Math.min(min, v);
+            max = Math.max(max, v);
+            last = v;
+        }
+
+
+        /** Returns the unit of the values. */
+        public String getUnit() {
+            return unit;
+        }
+
+        /** Returns the number of values. */
+        public long getCount() {
+            return count;
+        }
+
+        /** Returns the sum of the values. */
+        public double getSum() {
+            return sum;
+        }
+
+        /** Returns the mean of the values, or <code>NaN</code> if there are none. */
+        public double getMean() {
+            return count == 0 ? Double.NaN : sum / count;
+        }
+
+        /** Returns the smallest value. */
+        public double getMin() {
+            return min;
+        }
+
+        /** Returns the largest value. */
+        public double getMax() {
+            return max;
+        }
+
+        /** Returns the most recent value. */
+        public double getLast() {
+            return last;
+        }
+
+
+        /**
+         * Appends this summary to the given buffer as a JSON object.
+         *
+         * @param buffer The buffer.
+         **/
+        void toJSON(StringBuffer buffer) {
+            buffer.append("{\"unit\": ");
+            appendString(buffer, unit);
+            buffer.append(", \"count\": ").append(count);
+            buffer.append(", \"sum\": ");
+            appendNumber(buffer, sum);
+            buffer.append(", \"mean\": ");
+            appendNumber(buffer, getMean());
+            buffer.append(", \"min\": ");
+            appendNumber(buffer, min);
+            buffer.append(", \"max\": ");
+            appendNumber(buffer, max);
+            buffer.append(", \"last\": ");
+            appendNumber(buffer, last);
+            buffer.append("}");
+        }
+
+
+        /** Returns a copy of this summary. */
+        public Object clone() {
+            try {
+                return super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new Error(e);
+            }
+        }
+
+
+        /** Returns a short text representation of this summary. */
+        public String toString() {
+            return "mean " + getMean() + " " + unit + " over " + count + " (min " + min + ", max "
+                    + max + ", last " + last + ")";
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.ArrayScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Score;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.Log;
+import edu.illinois.cs.cogcomp.lbjava.learn.Sigmoid;
+import edu.illinois.cs.cogcomp.lbjava.learn.Softmax;
+
+/**
+ * Unit tests for <code>ArrayScoreSet</code>
+ */
+public class ArrayScoreSetTest {
+    private static final String[] values = {"c", "a", "d", "b"};
+    private static final double[] scores = {0.5, 2, -1, 2};
+
+    private static ArrayScoreSet arrayScoreSet() {
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < values.length; ++i)
+            lexicon.lookup(new DiscretePrimitiveStringFeature("test", "label", "", values[i]),
+                    true);
+        return new ArrayScoreSet(lexicon, new int[] {0, 1, 2, 3}, scores.clone(), values.length);
+    }
+
+    /**
+     * An <code>ArrayScoreSet</code> must behave exactly like a <code>ScoreSet</code> with the same
+     * scores.
+     */
+    @Test
+    public void testEquivalence() {
+        ScoreSet expected = new ScoreSet(values, scores);
+        ArrayScoreSet actual = arrayScoreSet();
+
+        assertEquals(expected.size(), actual.size());
+        assertEquals(expected.values(), actual.values());
+        assertEquals(expected.highScoreValue(), actual.highScoreValue());
+        assertEquals(expected.toString(), actual.toString());
+        for (int i = 0; i < values.length; ++i)
+            assertEquals(expected.get(values[i]), actual.get(values[i]), 0);
+
+        expected.put("e", 3);
+        actual.put("e", 3);
+        expected.put("a", 1);
+        actual.put("a", 1);
+        assertEquals(expected.toString(), actual.toString());
+        assertEquals(expected.toString(), actual.clone().toString());
+    }
+
+    /**
+     * Normalizing in place must give the same scores as normalizing <code>Score</code> objects.
+     */
+    @Test
+    public void testNormalize() {
+        ScoreSet expected = new Softmax().normalize(new ScoreSet(values, scores));
+        ScoreSet actual = new Softmax().normalize(arrayScoreSet());
+        for (int i = 0; i < values.length; ++i)
+            assertEquals(expected.get(values[i]), actual.get(values[i]), 1e-12);
+
+        expected = new Log(new Sigmoid(2)).normalize(new ScoreSet(values, scores));
+        actual = new Log(new Sigmoid(2)).normalize(arrayScoreSet());
+        for (int i = 0; i < values.length; ++i)
+            assertEquals(expected.get(values[i]), actual.get(values[i]), 0);
+
+        Score[] array = actual.toArray();
+        array[0].score = 7;
+        assertEquals(7, actual.get(array[0].value), 0);
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.AdaGrad;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+
+/**
+ * Unit tests for asynchronous training with <code>BatchTrainer</code>
+ */
+public class AsynchronousTrainingTest {
+    private static final int features = 500;
+    private static final int active = 12;
+    private static final int trainingExamples = 4000;
+    private static final int testingExamples = 1000;
+
+    /** A learner like those generated by the compiler, which <code>BatchTrainer</code> needs. */
+    public static class SGD extends StochasticGradientDescent {
+        public static boolean isTraining;
+
+        public SGD() {
+            super(0.02);
+        }
+
+        public SGD(double rate) {
+            super(rate);
+        }
+
+        public double getBias() {
+            return bias;
+        }
+    }
+
+    /** An AdaGrad learner like those generated by the compiler. */
+    public static class Ada extends AdaGrad {
+        public static boolean isTraining;
+    }
+
+    /**
+     * Sparse examples labeled +1 or -1 by the sign of a hidden linear function of their features.
+     */
+    private static class Data {
+        final int[][] f = new int[trainingExamples + testingExamples][];
+        final double[][] v = new double[f.length][];
+        final double[] y = new double[f.length];
+
+        Data() {
+            Random random = new Random(17);
+            double[] truth = new double[features];
+            for (int i = 0; i < features; ++i)
+                truth[i] = random.nextGaussian();
+            for (int e = 0; e < f.length; ++e) {
+                f[e] = new int[active];
+                v[e] = new double[active];
+                double dot = 0;
+                for (int k = 0; k < active; ++k) {
+                    f[e][k] = random.nextInt(features);
+                    v[e][k] = 1;
+                    dot += truth[f[e][k]];
+                }
+                y[e] = dot > 0 ? 1 : -1;
+            }
+        }
+
+        /** Returns the training examples in the format of a pre-extracted example file. */
+        byte[] trainingFile() {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+            for (int e = 0; e < trainingExamples; ++e)
+                BatchTrainer.writeExample(out, f[e], v[e], new int[] {0}, new double[] {y[e]},
+                        active);
+            out.close();
+            return bytes.toByteArray();
+        }
+
+        /** Returns the fraction of testing examples whose label has the sign of the prediction. */
+        double accuracy(StochasticGradientDescent learner) {
+            int correct = 0;
+            for (int e = trainingExamples; e < f.length; ++e)
+                if (learner.realValue(f[e], v[e]) * y[e] > 0)
+                    ++correct;
+            return correct / (double) testingExamples;
+        }
+    }
+
+    /** Trains a new learner over the given example file, on the given number of threads. */
+    private static StochasticGradientDescent train(byte[] file, int threads) {
+        StochasticGradientDescent learner = new SGD();
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < features; ++i)
+            lexicon.lookup(new DiscretePrimitiveStringFeature("test", "f", "", "" + i), true);
+        learner.setLexicon(lexicon);
+
+        BatchTrainer trainer = new BatchTrainer(learner, new ArrayFileParser(file, false));
+        trainer.fillInSizes();
+        trainer.setThreads(threads);
+        trainer.setAsynchronous(threads > 1);
+        trainer.train(10);
+        return learner;
+    }
+
+    /**
+     * Stochastic gradient descent trained on several threads at once must reach nearly the
+     * accuracy it reaches on one.
+     */
+    @Test
+    public void testAccuracyComparableToSerial() {
+        Data data = new Data();
+        byte[] file = data.trainingFile();
+        double serial = data.accuracy(train(file, 1));
+        double asynchronous = data.accuracy(train(file, 4));
+        assertTrue("serial accuracy " + serial, serial > 0.85);
+        assertTrue("asynchronous accuracy " + asynchronous + ", serial " + serial,
+                asynchronous > serial - 0.03);
+    }
+
+    /**
+     * Every example updates the bias, so no thread's update to it may be lost. Examples without
+     * features, all labeled 1, move only the bias, so it must end up the same, to within a fraction
+     * of one update, whether they are learned on one thread or on several at once.
+     */
+    @Test
+    public void testBiasComparableToSerial() throws Exception {
+        final int threads = 4, examples = 5000000;
+        final double rate = 1e-8;
+        SGD serial = new SGD(rate);
+        for (int e = 0; e < threads * examples; ++e)
+            serial.learn(new int[0], new double[0], new int[] {0}, new double[] {1});
+
+        final SGD asynchronous = new SGD(rate);
+        asynchronous.startAsynchronousRound(0);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            workers[t] = new Thread() {
+                public void run() {
+                    for (int e = 0; e < examples; ++e)
+                        asynchronous.learn(new int[0], new double[0], new int[] {0},
+                                new double[] {1});
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; ++t)
+            workers[t].join();
+        asynchronous.doneWithRound();
+
+        assertEquals(serial.getBias(), asynchronous.getBias(), rate / 2);
+    }
+
+    /**
+     * Learners that aren't asynchronous must be refused.
+     */
+    @Test
+    public void testRefused() {
+        BatchTrainer trainer = new BatchTrainer(new Ada(), new ArrayFileParser(new byte[0], false));
+        try {
+            trainer.setAsynchronous(true);
+            fail("AdaGrad must not be trained asynchronously.");
+        } catch (IllegalArgumentException e) {
+        }
+        trainer.setAsynchronous(false);
+        assertFalse(trainer.getAsynchronous());
+    }
+}
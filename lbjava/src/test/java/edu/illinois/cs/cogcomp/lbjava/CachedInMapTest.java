@@ -0,0 +1,203 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.HashSet;
+import java.util.Scanner;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.junit.After;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.AST;
+import edu.illinois.cs.cogcomp.lbjava.IR.ClassifierAssignment;
+import edu.illinois.cs.cogcomp.lbjava.IR.Declaration;
+import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
+import edu.illinois.cs.cogcomp.lbjava.classify.ValueCache;
+import edu.illinois.cs.cogcomp.lbjava.frontend.Yylex;
+import edu.illinois.cs.cogcomp.lbjava.frontend.parser;
+
+/**
+ * Tests the <code>cachedinmap(</code><i>size</i><code>)</code> declaration through parsing,
+ * {@link SemanticAnalysis}, and {@link TranslateToJava}.
+ */
+public class CachedInMapTest {
+    private File directory;
+
+    /** Returns the declaration of a coded classifier with the given caching clause. */
+    private static String classifier(String name, String caching) {
+        return "discrete " + name + "(String s) " + caching + " <- {\n"
+                + "  if (s.length() > 3) return \"long\";\n" + "  return \"short\";\n" + "}\n";
+    }
+
+    /** Parses the given LBJava source. */
+    private static AST parse(String source) throws Exception {
+        Yylex scanner = new Yylex(new ByteArrayInputStream(source.getBytes()));
+        return (AST) new parser(scanner).parse().value;
+    }
+
+    /** Parses the given LBJava source, which must declare one classifier, and returns it. */
+    private static ClassifierAssignment parseOne(String source) throws Exception {
+        Declaration[] declarations = parse(source).declarations.toArray();
+        assertEquals(1, declarations.length);
+        return (ClassifierAssignment) declarations[0];
+    }
+
+    /** Runs semantic analysis, returning the errors and warnings it reported. */
+    private static String analyze(AST ast) throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(bytes, true));
+        try {
+            new SemanticAnalysis(ast).run();
+            Pass.printErrorsAndWarnings();
+        } finally {
+            System.setErr(err);
+        }
+        return bytes.toString();
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        directory = File.createTempFile("cachedinmap", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        Main.fileNames = new HashSet<String>();
+        Main.sourceFilename = "CachedInMapTest.lbj";
+        Main.generatedSourceDirectory = directory.getPath();
+        Main.classDirectory = Main.classPackageDirectory = directory.getPath();
+        Pass.fatalError = false;
+    }
+
+    @After
+    public void cleanup() {
+        File[] files = directory.listFiles();
+        for (int i = 0; i < files.length; ++i)
+            files[i].delete();
+        directory.delete();
+        Main.generatedSourceDirectory = null;
+        Main.classDirectory = Main.classPackageDirectory = null;
+        Pass.fatalError = false;
+    }
+
+    /** Every placement of the size and of <code>cached</code> is parsed. */
+    @Test
+    public void testParse() throws Exception {
+        ClassifierAssignment ca = parseOne(classifier("A", "cachedinmap(100)"));
+        assertEquals(100, ca.cacheSize);
+        assertEquals(ClassifierAssignment.mapCache, ca.cacheIn.toString());
+        assertFalse(ca.singleExampleCache);
+        assertTrue(ca.toString(), ca.toString().contains("cachedinmap(100)"));
+
+        ca = parseOne(classifier("B", "cached cachedinmap(5)"));
+        assertEquals(5, ca.cacheSize);
+        assertTrue(ca.singleExampleCache);
+
+        ca = parseOne(classifier("C", "cachedinmap(7) cached"));
+        assertEquals(7, ca.cacheSize);
+        assertTrue(ca.singleExampleCache);
+
+        // Without a size, the map is unbounded.
+        ca = parseOne(classifier("D", "cachedinmap"));
+        assertEquals(0, ca.cacheSize);
+        assertEquals(ClassifierAssignment.mapCache, ca.cacheIn.toString());
+        assertFalse(ca.toString(), ca.toString().contains("cachedinmap("));
+
+        // A size that isn't a positive integer is kept as -1 until semantic analysis reports it.
+        assertEquals(-1, parseOne(classifier("E", "cachedinmap(0)")).cacheSize);
+    }
+
+    /** The full constructor takes the size as given. */
+    @Test
+    public void testConstructor() throws Exception {
+        ClassifierAssignment parsed = parseOne(classifier("A", "cachedinmap(100)"));
+        ClassifierAssignment ca =
+                new ClassifierAssignment(null, parsed.returnType, parsed.name, parsed.argument,
+                        parsed.expression, parsed.cacheIn, 42, true);
+        assertEquals(42, ca.cacheSize);
+        assertTrue(ca.singleExampleCache);
+        assertEquals(42, ((ClassifierAssignment) ca.clone()).cacheSize);
+    }
+
+    /** Semantic analysis passes the size on to the classifier's expression. */
+    @Test
+    public void testSemanticAnalysis() throws Exception {
+        AST ast = parse(classifier("Sized", "cachedinmap(100)"));
+        assertEquals("", analyze(ast));
+        assertFalse(Pass.fatalError);
+        ClassifierAssignment ca = (ClassifierAssignment) ast.declarations.toArray()[0];
+        assertEquals(100, ca.expression.cacheSize);
+        assertEquals(ClassifierAssignment.mapCache, ca.expression.cacheIn.toString());
+    }
+
+    /** B63: the size must be positive. */
+    @Test
+    public void testZeroSize() throws Exception {
+        String errors = analyze(parse(classifier("Zero", "cachedinmap(0)")));
+        assertTrue(Pass.fatalError);
+        assertTrue(errors, errors.startsWith("Error on line 1:"));
+        assertTrue(errors, errors.replaceAll("\\s+", " ").contains(
+                "The size of a cachedinmap cache must be a positive integer."));
+    }
+
+    /**
+     * The generated classifier caches its values in a <code>ValueCache</code> of the given size,
+     * returned by its static <code>getValueCache()</code> method.
+     */
+    @Test
+    public void testGeneratedValueCache() throws Exception {
+        AST ast = parse(classifier("Bounded", "cachedinmap(100)"));
+        assertEquals("", analyze(ast));
+        new RevisionAnalysis(ast).run(ast);
+        new ClassifierCSE(ast).run(ast);
+        new TranslateToJava(ast).run(ast);
+        assertFalse(Pass.fatalError);
+
+        File source = new File(directory, "Bounded.java");
+        Scanner scanner = new Scanner(source, "UTF-8").useDelimiter("\\A");
+        String code = scanner.next();
+        scanner.close();
+        assertTrue(code,
+                code.contains("new edu.illinois.cs.cogcomp.lbjava.classify.ValueCache(100)"));
+        assertTrue(code, code.contains("getValueCache()"));
+        assertFalse(code, code.contains("synchronizedMap(new WeakHashMap())"));
+
+        // Compile the generated classifier, when a compiler is available, and use its cache.
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        Assume.assumeNotNull(compiler);
+        assertEquals(0, compiler.run(null, null, null, "-nowarn", "-cp",
+                System.getProperty("java.class.path"), "-d", directory.getPath(),
+                source.getPath()));
+
+        URLClassLoader loader =
+                new URLClassLoader(new URL[] {directory.toURI().toURL()}, getClass()
+                        .getClassLoader());
+        Class<?> bounded = loader.loadClass("Bounded");
+        ValueCache cache = (ValueCache) bounded.getMethod("getValueCache").invoke(null);
+        assertEquals(100, cache.getCapacity());
+
+        Classifier classifier = (Classifier) bounded.newInstance();
+        assertEquals("long", classifier.discreteValue("abcdef"));
+        assertEquals("long", classifier.discreteValue("abcdef"));
+        assertEquals("short", classifier.discreteValue("ab"));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(2, cache.size());
+    }
+}
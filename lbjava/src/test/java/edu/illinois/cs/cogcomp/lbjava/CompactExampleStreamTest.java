@@ -0,0 +1,145 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.CompactExampleOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.parse.FoldSeparator;
+
+/**
+ * Unit tests for <code>CompactExampleOutputStream</code> and its reading by
+ * <code>ArrayFileParser</code>
+ */
+public class CompactExampleStreamTest {
+    private static final int examples = 500;
+    private static final int separatorEvery = 97;
+
+    /** One written example: features, their values, labels, label values, and unpruned count. */
+    private static class Example {
+        int[] features;
+        double[] values;
+        int[] labels;
+        double[] labelValues;
+        int unpruned;
+    }
+
+    /**
+     * Generates examples with distinct feature indexes in random order, some pruned, with values
+     * that are either 1, exact as floats, or arbitrary if <code>floats</code> is not set.
+     */
+    private static Example[] generate(boolean floats) {
+        Random random = new Random(11);
+        Example[] result = new Example[examples];
+        for (int e = 0; e < examples; ++e) {
+            Example x = new Example();
+            int F = random.nextInt(30);
+            x.features = new int[F];
+            x.values = new double[F];
+            for (int f = 0; f < F; ++f) {
+                x.features[f] = f * 37 + random.nextInt(37) + (e % 3 == 0 ? 1 << 20 : 0);
+                int kind = random.nextInt(3);
+                x.values[f] =
+                        kind == 0 ? 1 : kind == 1 || floats ? random.nextInt(64) / 4.0 - 8
+                                : random.nextGaussian();
+            }
+            for (int f = F - 1; f > 0; --f) {
+                int g = random.nextInt(f + 1);
+                int t = x.features[f];
+                x.features[f] = x.features[g];
+                x.features[g] = t;
+            }
+            x.unpruned = F == 0 ? 0 : random.nextInt(F + 1);
+            x.labels = new int[] {random.nextInt(5)};
+            x.labelValues = new double[] {random.nextBoolean() ? 1 : 0.5};
+            result[e] = x;
+        }
+        return result;
+    }
+
+    /** Writes the examples, with a fold separator every {@link #separatorEvery} examples. */
+    private static void write(ExceptionlessOutputStream out, Example[] data) {
+        for (int e = 0; e < data.length; ++e) {
+            if (e > 0 && e % separatorEvery == 0)
+                out.writeInt(-1);
+            Example x = data[e];
+            BatchTrainer.writeExample(out, x.features, x.values, x.labels, x.labelValues,
+                    x.unpruned);
+        }
+        out.close();
+    }
+
+    /** Maps the indexes of the given range of features to their values. */
+    private static Map<Integer, Double> features(int[] f, double[] v, int from, int to) {
+        Map<Integer, Double> result = new HashMap<Integer, Double>();
+        for (int i = from; i < to; ++i)
+            result.put(f[i], v[i]);
+        return result;
+    }
+
+    /** Reads every example back and compares it to what was written. */
+    private static void check(ArrayFileParser parser, Example[] data, boolean pruned) {
+        parser.setIncludePruned(pruned);
+        for (int e = 0; e < data.length; ++e) {
+            if (e > 0 && e % separatorEvery == 0)
+                assertSame(FoldSeparator.separator, parser.next());
+            Object[] read = (Object[]) parser.next();
+            Example x = data[e];
+            int[] f = (int[]) read[0];
+            double[] v = (double[]) read[1];
+            assertEquals(pruned ? x.features.length : x.unpruned, f.length);
+            assertEquals(features(x.features, x.values, 0, x.unpruned),
+                    features(f, v, 0, x.unpruned));
+            if (pruned)
+                assertEquals(features(x.features, x.values, x.unpruned, x.features.length),
+                        features(f, v, x.unpruned, f.length));
+            assertArrayEquals(x.labels, (int[]) read[2]);
+            assertArrayEquals(x.labelValues, (double[]) read[3], 0);
+        }
+        assertNull(parser.next());
+    }
+
+    /**
+     * Examples written in the compact format, with doubles or floats and with blocks small enough
+     * that records span many of them, must be read back exactly, including fold separators and
+     * pruned features, both from memory and from a file.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        for (boolean floats : new boolean[] {false, true}) {
+            Example[] data = generate(floats);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            write(new ExceptionlessOutputStream(new CompactExampleOutputStream(bytes, floats, 256)),
+                    data);
+            check(new ArrayFileParser(bytes.toByteArray(), false), data, false);
+            check(new ArrayFileParser(bytes.toByteArray(), false), data, true);
+
+            File file = File.createTempFile("compact", ".ex");
+            file.deleteOnExit();
+            write(new ExceptionlessOutputStream(new CompactExampleOutputStream(
+                    new FileOutputStream(file), floats)), data);
+            ArrayFileParser parser = ArrayFileParser.open(file.getPath(), false);
+            check(parser, data, true);
+            parser.reset();
+            check(parser, data, false);
+            parser.close();
+        }
+    }
+}
@@ -0,0 +1,88 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.learn.ConcurrentLexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+
+/**
+ * Unit tests for <code>ConcurrentLexicon</code>
+ */
+public class ConcurrentLexiconTest {
+    private static final int threads = 8;
+    private static final int features = 5000;
+
+    private static Feature feature(int i) {
+        return new DiscretePrimitiveStringFeature("test", "c", "f", "" + i);
+    }
+
+    /**
+     * Many threads adding overlapping features must produce a dense index space in which every
+     * feature appears exactly once and every occurrence is counted.
+     */
+    @Test
+    public void testConcurrentGrowth() throws Exception {
+        final ConcurrentLexicon lexicon = new ConcurrentLexicon();
+        lexicon.countFeatures(Lexicon.CountPolicy.global);
+
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; ++t) {
+            final int offset = t * 7;
+            workers[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < features; ++i)
+                        lexicon.lookup(feature((i + offset) % features), true);
+                }
+            };
+            workers[t].start();
+        }
+        for (int t = 0; t < threads; ++t)
+            workers[t].join();
+
+        assertEquals(features, lexicon.size());
+        Set<Integer> indexes = new HashSet<Integer>();
+        for (int i = 0; i < features; ++i) {
+            int index = lexicon.lookup(feature(i));
+            assertTrue(index >= 0 && index < features);
+            indexes.add(index);
+            assertEquals(feature(i), lexicon.lookupKey(index));
+        }
+        assertEquals(features, indexes.size());
+
+        Lexicon.PruningPolicy policy = new Lexicon.PruningPolicy(threads);
+        for (int i = 0; i < features; ++i)
+            assertFalse(lexicon.isPruned(i, policy));
+        assertTrue(lexicon.isPruned(0, new Lexicon.PruningPolicy(threads + 1)));
+    }
+
+    /**
+     * Converting a lexicon must preserve its indexes.
+     */
+    @Test
+    public void testConvert() {
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < 100; ++i)
+            lexicon.lookup(feature(i), true);
+
+        Lexicon converted = lexicon.convertTo(ConcurrentLexicon.class);
+        assertTrue(converted instanceof ConcurrentLexicon);
+        assertEquals(lexicon.size(), converted.size());
+        for (int i = 0; i < 100; ++i)
+            assertEquals(lexicon.lookup(feature(i)), converted.lookup(feature(i)));
+        assertEquals(100, converted.lookup(feature(100), true));
+    }
+}
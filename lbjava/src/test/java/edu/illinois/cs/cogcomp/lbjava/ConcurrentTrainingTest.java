@@ -0,0 +1,162 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression;
+import edu.illinois.cs.cogcomp.lbjava.IR.LearningClassifierExpression.Clause;
+
+/**
+ * Tests the order in which {@link Train} trains learners when {@link Main#concurrentTraining} is
+ * enabled.
+ */
+public class ConcurrentTrainingTest {
+    private boolean concurrentTraining;
+
+    /**
+     * Schedules learners the way <code>Train</code> does, but records when each starts and
+     * finishes instead of training it.
+     */
+    private static class Scheduler extends Train {
+        final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+        final HashSet<String> failing = new HashSet<String>();
+        final CountDownLatch together;
+        volatile boolean overlapped;
+
+        Scheduler(int threads, int independent) {
+            super(null, 0);
+            threadMap = new HashMap();
+            learnerDependencies = new HashMap();
+            pool = Executors.newFixedThreadPool(threads);
+            together = new CountDownLatch(independent);
+        }
+
+        /** Adds a learner that depends on the named learners. */
+        void add(String name, String... dependencies) {
+            learnerDependencies.put(name, new HashSet<String>(Arrays.asList(dependencies)));
+            threadMap.put(name, new Recording(name));
+        }
+
+        /** Trains every learner added, returning the events in the order they happened. */
+        List<String> train() {
+            executeReadyThreads(null);
+            awaitTraining();
+            return events;
+        }
+
+        /** Records its start and finish, and only lets the learners that depend on it go on. */
+        class Recording extends TrainingThread {
+            Recording(String name) {
+                super(name, 0, codeOnly());
+            }
+
+            public void run() {
+                events.add("start " + getName());
+                if (learnerDependencies.get(getName()) != null
+                        && ((HashSet) learnerDependencies.get(getName())).isEmpty()
+                        && together.getCount() > 0) {
+                    // Learners without dependencies wait to see each other running.
+                    together.countDown();
+                    try {
+                        if (together.await(10, TimeUnit.SECONDS))
+                            overlapped = true;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+                events.add("end " + getName());
+
+                // Training that fails stops before the learners that depend on it are started.
+                if (!failing.contains(getName()))
+                    executeReadyThreads(getName());
+            }
+        }
+    }
+
+    /** Returns an expression for a learner whose code is generated but which is not trained. */
+    private static LearningClassifierExpression codeOnly() {
+        LearningClassifierExpression result =
+                new LearningClassifierExpression(new LinkedList<Clause>(), 0, 0);
+        result.onlyCodeGeneration = true;
+        return result;
+    }
+
+    @Before
+    public void setUp() {
+        concurrentTraining = Main.concurrentTraining;
+        Main.concurrentTraining = true;
+    }
+
+    @After
+    public void cleanup() {
+        Main.concurrentTraining = concurrentTraining;
+    }
+
+    /**
+     * Learners without dependencies between them train at once, and each of the others starts only
+     * after everything it depends on has finished. <code>awaitTraining()</code> waits for learners
+     * submitted by other learners as they finish.
+     */
+    @Test(timeout = 30000)
+    public void testDependencies() {
+        Scheduler scheduler = new Scheduler(2, 2);
+        scheduler.add("a");
+        scheduler.add("b");
+        scheduler.add("c", "a", "b");
+        scheduler.add("d", "c");
+        scheduler.add("e", "a");
+        List<String> events = scheduler.train();
+
+        assertEquals(events.toString(), 10, events.size());
+        assertTrue(scheduler.overlapped);
+        assertBefore(events, "end a", "start c");
+        assertBefore(events, "end b", "start c");
+        assertBefore(events, "end c", "start d");
+        assertBefore(events, "end a", "start e");
+        assertTrue(scheduler.pool.isShutdown());
+        assertEquals(0, scheduler.running);
+    }
+
+    /** A learner whose dependency fails is never started, but training still comes to an end. */
+    @Test(timeout = 30000)
+    public void testFailedDependency() {
+        Scheduler scheduler = new Scheduler(2, 0);
+        scheduler.failing.add("a");
+        scheduler.add("a");
+        scheduler.add("b", "a");
+        scheduler.add("c");
+        List<String> events = scheduler.train();
+
+        assertEquals(events.toString(), 4, events.size());
+        assertFalse(events.contains("start b"));
+        assertTrue(events.contains("end c"));
+        assertTrue(scheduler.pool.isShutdown());
+    }
+
+    /** Asserts that the first event happened before the second. */
+    private static void assertBefore(List<String> events, String first, String second) {
+        int i = events.indexOf(first), j = events.indexOf(second);
+        assertTrue(events.toString(), i >= 0 && j >= 0 && i < j);
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.MappedArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+
+/**
+ * Unit tests for <code>BatchTrainer</code> writing example files over the file it is reading
+ */
+public class ExampleFileReplacementTest {
+    private static final int features = 300;
+    private static final int examples = 500;
+
+    /** A learner like those generated by the compiler, which <code>BatchTrainer</code> needs. */
+    public static class SGD extends StochasticGradientDescent {
+        public static boolean isTraining;
+    }
+
+    private final int[][] f = new int[examples][];
+    private final double[][] v = new double[examples][];
+    private final double[] y = new double[examples];
+
+    /** Writes random examples to the given file. */
+    private void write(File file) {
+        Random random = new Random(23);
+        ExceptionlessOutputStream out = ExceptionlessOutputStream.openBufferedStream(file.getPath());
+        for (int e = 0; e < examples; ++e) {
+            int F = 1 + random.nextInt(10);
+            f[e] = new int[F];
+            v[e] = new double[F];
+            for (int k = 0; k < F; ++k) {
+                f[e][k] = k * 30 + random.nextInt(30);
+                v[e][k] = random.nextInt(4) + 1;
+            }
+            y[e] = random.nextGaussian();
+            BatchTrainer.writeExample(out, f[e], v[e], new int[] {0}, new double[] {y[e]}, F);
+        }
+        out.close();
+    }
+
+    /** Maps the indexes of the given features to their values. */
+    private static Map<Integer, Double> features(int[] f, double[] v) {
+        Map<Integer, Double> result = new HashMap<Integer, Double>();
+        for (int i = 0; i < f.length; ++i)
+            result.put(f[i], v[i]);
+        return result;
+    }
+
+    /**
+     * Reads every example from the parser and compares it to what was written, in any order of
+     * features, since pre-extraction sorts them.
+     */
+    private void check(Parser parser) {
+        for (int e = 0; e < examples; ++e) {
+            Object[] read = (Object[]) parser.next();
+            assertNotNull(read);
+            assertEquals(features(f[e], v[e]), features((int[]) read[0], (double[]) read[1]));
+            assertEquals(y[e], ((double[]) read[3])[0], 0);
+        }
+        assertNull(parser.next());
+    }
+
+    /** Returns the names of the files in the given directory other than the given one. */
+    private static String others(File directory, String name) {
+        StringBuilder result = new StringBuilder();
+        for (String n : directory.list())
+            if (!n.equals(name))
+                result.append(n).append(' ');
+        return result.toString();
+    }
+
+    /**
+     * Pre-extracting and pruning into the example file that the trainer is reading, memory mapped,
+     * must replace it with the same examples and leave no temporary files behind.
+     */
+    @Test
+    public void testRewriteMappedExampleFile() throws Exception {
+        File directory = File.createTempFile("examples", "");
+        assertTrue(directory.delete() && directory.mkdir());
+        File file = new File(directory, "test.ex");
+        try {
+            write(file);
+            Learner learner = new SGD();
+            Lexicon lexicon = new Lexicon();
+            for (int i = 0; i < features; ++i)
+                lexicon.lookup(new DiscretePrimitiveStringFeature("test", "f", "", "" + i), true);
+            learner.setLexicon(lexicon);
+            learner.setLexiconLocation(new File(directory, "test.lex").getPath());
+
+            BatchTrainer trainer = new BatchTrainer(learner, file.getPath(), false);
+            assertTrue(trainer.getParser() instanceof MappedArrayFileParser);
+
+            Learner preExtractLearner =
+                    trainer.preExtract(file.getPath(), false, Lexicon.CountPolicy.global);
+            assertTrue(trainer.getParser() instanceof MappedArrayFileParser);
+            assertEquals("", others(directory, "test.ex"));
+            check(trainer.getParser());
+            check(ArrayFileParser.open(file.getPath(), false));
+
+            trainer.getParser().reset();
+            trainer.pruneDataset(file.getPath(), false, new Lexicon.PruningPolicy(),
+                    preExtractLearner);
+            assertEquals("test.lex ", others(directory, "test.ex"));
+            check(trainer.getParser());
+            check(new ArrayFileParser(file.getPath(), false));
+        } finally {
+            for (File f : directory.listFiles())
+                f.delete();
+            directory.delete();
+        }
+    }
+
+    /**
+     * A mapped parser that has been closed must read the file again after it is reset.
+     */
+    @Test
+    public void testCloseAndReset() throws Exception {
+        File file = File.createTempFile("examples", ".ex");
+        try {
+            write(file);
+            MappedArrayFileParser parser = new MappedArrayFileParser(file.getPath());
+            ArrayFileParser duplicate = parser.duplicate();
+            check(parser);
+            parser.close();
+            check(duplicate);
+            parser.reset();
+            check(parser);
+            parser.close();
+            parser.close();
+            parser.reset();
+            assertEquals(examples, parser.getNumExamples());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscreteConjunctiveFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.RealPrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.FingerprintLexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+
+/**
+ * Unit tests for <code>FingerprintLexicon</code>
+ */
+public class FingerprintLexiconTest {
+    private static final int features = 3000;
+
+    private static Feature feature(int i) {
+        switch (i % 3) {
+            case 0:
+                return new DiscretePrimitiveStringFeature("test", "c", "f", "" + i);
+            case 1:
+                return new RealPrimitiveStringFeature("test", "r", "" + i, i / 7.0);
+            default:
+                return new DiscreteConjunctiveFeature("test", "conj",
+                        (DiscretePrimitiveStringFeature) feature(i - 2),
+                        (DiscretePrimitiveStringFeature) feature(i + 1));
+        }
+    }
+
+    /**
+     * Equivalent features must have equal fingerprints.
+     */
+    @Test
+    public void testFingerprint() {
+        for (int i = 0; i < 30; ++i)
+            assertEquals(feature(i).fingerprint(), feature(i).fingerprint());
+        assertFalse(feature(0).fingerprint() == feature(3).fingerprint());
+    }
+
+    /**
+     * A fingerprint lexicon must assign the same indexes as a <code>Lexicon</code>, including after
+     * conversion and pruning.
+     */
+    @Test
+    public void testLookup() {
+        Lexicon plain = new Lexicon();
+        FingerprintLexicon lexicon = new FingerprintLexicon();
+        plain.countFeatures(Lexicon.CountPolicy.global);
+        lexicon.countFeatures(Lexicon.CountPolicy.global);
+        for (int i = 0; i < features; ++i) {
+            for (int j = 0; j <= i % 2; ++j) {
+                assertEquals(plain.lookup(feature(i), true), lexicon.lookup(feature(i), true));
+            }
+        }
+
+        assertEquals(features, lexicon.size());
+        assertEquals(lexicon.getCutoff(), lexicon.lookup(feature(features)));
+        assertFalse(lexicon.contains(feature(features)));
+
+        Lexicon converted = plain.convertTo(FingerprintLexicon.class);
+        for (int i = 0; i < features; ++i)
+            assertEquals(plain.lookup(feature(i)), converted.lookup(feature(i)));
+
+        Lexicon.PruningPolicy policy = new Lexicon.PruningPolicy(2);
+        plain.prune(policy);
+        lexicon.prune(policy);
+        assertEquals(plain.getCutoff(), lexicon.getCutoff());
+        for (int i = 0; i < features; ++i)
+            assertEquals(plain.lookup(feature(i)), lexicon.lookup(feature(i)));
+    }
+}
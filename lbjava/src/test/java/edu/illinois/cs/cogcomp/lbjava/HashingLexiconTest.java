@@ -0,0 +1,108 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.classify.RealPrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.HashingLexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+
+/**
+ * Unit tests for <code>HashingLexicon</code>
+ */
+public class HashingLexiconTest {
+    private static final int features = 2000;
+    private static final int buckets = 97;
+
+    private static Feature feature(int i) {
+        if (i % 2 == 0)
+            return new DiscretePrimitiveStringFeature("test", "c", "f", "" + i);
+        return new RealPrimitiveStringFeature("test", "r", "" + i, 1 + i / 7.0);
+    }
+
+    /**
+     * Buckets must be in range and stable, signs must be +1 or -1 and appear both ways when
+     * hashing is signed, and <code>hash</code> must agree with <code>lookup</code> and
+     * <code>sign</code>.
+     */
+    @Test
+    public void testBucketsAndSigns() {
+        HashingLexicon lexicon = new HashingLexicon(buckets, true);
+        HashingLexicon unsigned = new HashingLexicon(buckets, false);
+        assertEquals(buckets, lexicon.size());
+
+        FeatureVector vector = new FeatureVector();
+        for (int i = 0; i < features; ++i)
+            vector.addFeature(feature(i));
+        int[] indexes = new int[features];
+        double[] values = new double[features];
+        lexicon.hash(vector, indexes, values);
+
+        int negative = 0;
+        boolean[] used = new boolean[buckets];
+        for (int i = 0; i < features; ++i) {
+            Feature f = feature(i).getFeatureKey(lexicon);
+            int bucket = lexicon.lookup(f);
+            assertTrue(bucket >= 0 && bucket < buckets);
+            assertEquals(bucket, lexicon.lookup(feature(i).getFeatureKey(lexicon), true));
+            assertEquals(bucket, unsigned.lookup(f));
+            used[bucket] = true;
+
+            double sign = lexicon.sign(f);
+            assertTrue(sign == 1 || sign == -1);
+            if (sign < 0)
+                ++negative;
+            assertEquals(1, unsigned.sign(f), 0);
+
+            assertEquals(bucket, indexes[i]);
+            assertEquals(sign * feature(i).getStrength(), values[i], 0);
+        }
+
+        assertTrue(negative > features / 4 && negative < 3 * features / 4);
+        for (int b = 0; b < buckets; ++b)
+            assertTrue(used[b]);
+    }
+
+    /**
+     * A lexicon read back must have the same settings and map features to the same buckets.
+     */
+    @Test
+    public void testWriteRead() {
+        for (boolean signed : new boolean[] {true, false}) {
+            HashingLexicon lexicon = new HashingLexicon(buckets, signed);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+            lexicon.write(out);
+            out.close();
+
+            Lexicon read =
+                    Lexicon.readLexicon(new ExceptionlessInputStream(new ByteArrayInputStream(
+                            bytes.toByteArray())));
+            assertTrue(read instanceof HashingLexicon);
+            HashingLexicon hashing = (HashingLexicon) read;
+            assertEquals(lexicon, hashing);
+            assertEquals(buckets, hashing.getBuckets());
+            assertEquals(signed, hashing.isSigned());
+            for (int i = 0; i < features; ++i) {
+                assertEquals(lexicon.lookup(feature(i)), hashing.lookup(feature(i)));
+                assertEquals(lexicon.sign(feature(i)), hashing.sign(feature(i)), 0);
+            }
+        }
+    }
+}
@@ -0,0 +1,441 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.infer.ilp.ILPSolver;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Score;
+import edu.illinois.cs.cogcomp.lbjava.infer.AtLeastQuantifier;
+import edu.illinois.cs.cogcomp.lbjava.infer.AtMostQuantifier;
+import edu.illinois.cs.cogcomp.lbjava.infer.EqualityArgumentReplacer;
+import edu.illinois.cs.cogcomp.lbjava.infer.ExistentialQuantifier;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstant;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderConstraint;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDisjunction;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderDoubleImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithValue;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderEqualityWithVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderImplication;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderNegation;
+import edu.illinois.cs.cogcomp.lbjava.infer.FirstOrderVariable;
+import edu.illinois.cs.cogcomp.lbjava.infer.ILPInference;
+import edu.illinois.cs.cogcomp.lbjava.infer.InferenceNotOptimalException;
+import edu.illinois.cs.cogcomp.lbjava.infer.UniversalQuantifier;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+/**
+ * Unit tests for <code>ILPConstraintCompiler</code>, comparing the optima of random constraints
+ * compiled directly into ILP rows with those of the same constraints propositionalized, and with
+ * the optima found by trying every assignment.
+ */
+public class ILPConstraintCompilerTest {
+    private static final String[] labels = {"0", "1", "2"};
+    private static final int features = 200;
+
+    /** Scores each example's labels. */
+    private static SparseNetworkLearner network;
+    /** Examples, each an array of feature indexes and an array of their values. */
+    private static Object[][] examples;
+
+    /** The examples constrained in the current trial. */
+    private Object[] chain;
+    /** Generates the current trial's constraint. */
+    private Random random;
+
+    /**
+     * Solves ILP problems over discrete and Boolean variables exactly, by trying every assignment
+     * that the rows over the variables assigned so far allow. When <code>distinct</code> is set,
+     * it also checks that no row names a variable twice or with a zero coefficient.
+     */
+    private static class ExhaustiveSolver implements ILPSolver {
+        final boolean distinct;
+        double[] costs = new double[0];
+        int size;
+        /** The first variable of each discrete variable mapped to all of its variables. */
+        final HashMap<Integer, int[]> discrete = new HashMap<Integer, int[]>();
+        final List<int[]> rowIndexes = new ArrayList<int[]>();
+        final List<double[]> rowCoefficients = new ArrayList<double[]>();
+        final List<Double> bounds = new ArrayList<Double>();
+        /** 0 for equality, 1 for at least, and -1 for at most. */
+        final List<Integer> types = new ArrayList<Integer>();
+        /** The rows whose last variable is each variable. */
+        List<Integer>[] rowsEndingAt;
+        boolean[] best;
+        double bestValue;
+        boolean solved;
+
+        ExhaustiveSolver(boolean d) {
+            distinct = d;
+        }
+
+        public void setMaximize(boolean d) {
+            assertTrue(d);
+        }
+
+        public int addBooleanVariable(double c) {
+            costs = Arrays.copyOf(costs, size + 1);
+            costs[size] = c;
+            return size++;
+        }
+
+        public int addRealVariable(double c) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int addIntegerVariable(double c) {
+            throw new UnsupportedOperationException();
+        }
+
+        public int[] addDiscreteVariable(double[] c) {
+            int[] result = new int[c.length];
+            for (int i = 0; i < c.length; ++i)
+                result[i] = addBooleanVariable(c[i]);
+            discrete.put(result[0], result);
+            return result;
+        }
+
+        public int[] addDiscreteVariable(Score[] c) {
+            throw new UnsupportedOperationException();
+        }
+
+        private void addRow(int[] i, double[] a, double b, int type) {
+            if (distinct) {
+                int[] sorted = i.clone();
+                Arrays.sort(sorted);
+                for (int k = 1; k < sorted.length; ++k)
+                    assertTrue("Variable " + sorted[k] + " is repeated in a row.",
+                            sorted[k] != sorted[k - 1]);
+                for (int k = 0; k < a.length; ++k)
+                    assertTrue("A row has a zero coefficient.", a[k] != 0);
+            }
+            rowIndexes.add(i.clone());
+            rowCoefficients.add(a.clone());
+            bounds.add(b);
+            types.add(type);
+        }
+
+        public void addEqualityConstraint(int[] i, double[] a, double b) {
+            addRow(i, a, b, 0);
+        }
+
+        public void addGreaterThanConstraint(int[] i, double[] a, double b) {
+            addRow(i, a, b, 1);
+        }
+
+        public void addLessThanConstraint(int[] i, double[] a, double b) {
+            addRow(i, a, b, -1);
+        }
+
+        private boolean holds(int r, boolean[] x) {
+            int[] i = rowIndexes.get(r);
+            double[] a = rowCoefficients.get(r);
+            double sum = 0;
+            for (int k = 0; k < i.length; ++k)
+                if (x[i[k]])
+                    sum += a[k];
+            double b = bounds.get(r);
+            int type = types.get(r);
+            return type == 0 ? Math.abs(sum - b) < 1e-9 : type > 0 ? sum >= b - 1e-9
+                    : sum <= b + 1e-9;
+        }
+
+        private boolean holdsUpTo(int v, boolean[] x) {
+            for (int r : rowsEndingAt[v])
+                if (!holds(r, x))
+                    return false;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        public boolean solve() {
+            rowsEndingAt = new List[size];
+            for (int v = 0; v < size; ++v)
+                rowsEndingAt[v] = new ArrayList<Integer>();
+            best = null;
+            bestValue = Double.NEGATIVE_INFINITY;
+            solved = true;
+            for (int r = 0; r < rowIndexes.size(); ++r) {
+                int last = 0;
+                for (int v : rowIndexes.get(r))
+                    last = Math.max(last, v);
+                // Unsatisfiable constraints get a row over variable 0 even if there is none.
+                if (last >= size)
+                    return false;
+                rowsEndingAt[last].add(r);
+            }
+            search(0, new boolean[size]);
+            return best != null;
+        }
+
+        private void search(int v, boolean[] x) {
+            if (v == size) {
+                double value = 0;
+                for (int i = 0; i < size; ++i)
+                    if (x[i])
+                        value += costs[i];
+                if (value > bestValue + 1e-12) {
+                    bestValue = value;
+                    best = x.clone();
+                }
+                return;
+            }
+
+            int[] group = discrete.get(v);
+            if (group == null) {
+                for (int value = 0; value < 2; ++value) {
+                    x[v] = value == 1;
+                    if (holdsUpTo(v, x))
+                        search(v + 1, x);
+                }
+                x[v] = false;
+                return;
+            }
+
+            for (int chosen = 0; chosen < group.length; ++chosen) {
+                boolean allowed = true;
+                for (int k = 0; k < group.length; ++k)
+                    x[group[k]] = k == chosen;
+                for (int k = 0; k < group.length && allowed; ++k)
+                    allowed = holdsUpTo(group[k], x);
+                if (allowed)
+                    search(v + group.length, x);
+            }
+            for (int k = 0; k < group.length; ++k)
+                x[group[k]] = false;
+        }
+
+        public boolean isSolved() {
+            return solved;
+        }
+
+        public boolean getBooleanValue(int i) {
+            return best[i];
+        }
+
+        public int getIntegerValue(int i) {
+            return 0;
+        }
+
+        public double getRealValue(int i) {
+            return 0;
+        }
+
+        public double objectiveValue() {
+            return bestValue;
+        }
+
+        public void reset() {
+            solved = false;
+        }
+
+        public void write(StringBuffer buffer) {}
+    }
+
+    /** Trains a network on random examples, so that each example's labels get varied scores. */
+    @BeforeClass
+    public static void train() {
+        Random random = new Random(3);
+        examples = new Object[300][];
+        network = new SparseNetworkLearner(new SparseAveragedPerceptron());
+        for (String l : labels)
+            network.getLabelLexicon().lookup(
+                    new DiscretePrimitiveStringFeature("test", "label", "", l), true);
+
+        for (int e = 0; e < examples.length; ++e) {
+            int[] f = new int[5];
+            for (int j = 0; j < f.length; ++j)
+                f[j] = random.nextInt(features);
+            examples[e] = new Object[] {f, new double[] {1, 1, 1, 1, 1}};
+        }
+        for (int round = 0; round < 2; ++round)
+            for (int e = 0; e < examples.length; ++e)
+                network.learn((int[]) examples[e][0], (double[]) examples[e][1],
+                        new int[] {random.nextInt(labels.length)}, new double[] {1});
+        network.doneLearning();
+    }
+
+    /** Returns a random constraint of the given depth over the given variables. */
+    private FirstOrderConstraint constraint(FirstOrderVariable[] x, int depth) {
+        switch (depth == 0 ? random.nextInt(3) : random.nextInt(10)) {
+            case 0:
+            case 1:
+                return new FirstOrderEqualityWithValue(random.nextBoolean(),
+                        x[random.nextInt(x.length)], labels[random.nextInt(labels.length)]);
+            case 2:
+                return new FirstOrderEqualityWithVariable(random.nextBoolean(),
+                        x[random.nextInt(x.length)], x[random.nextInt(x.length)]);
+            case 3:
+                return new FirstOrderConjunction(constraint(x, depth - 1),
+                        constraint(x, depth - 1));
+            case 4:
+                return new FirstOrderDisjunction(constraint(x, depth - 1),
+                        constraint(x, depth - 1));
+            case 5:
+                return new FirstOrderNegation(constraint(x, depth - 1));
+            case 6:
+                return new FirstOrderImplication(constraint(x, depth - 1),
+                        constraint(x, depth - 1));
+            case 7:
+                return new FirstOrderDoubleImplication(constraint(x, depth - 1),
+                        constraint(x, depth - 1));
+            case 8:
+                return new FirstOrderConstant(random.nextInt(4) != 0);
+            default:
+                return new FirstOrderDisjunction(constraint(x, depth - 1),
+                        new FirstOrderConjunction(constraint(x, depth - 1), constraint(x,
+                                depth - 1)));
+        }
+    }
+
+    /** Returns a constraint that at least or at most <code>m</code> examples have the label. */
+    private FirstOrderConstraint counting(int m, String label, boolean atMost) {
+        List<Object> collection = Arrays.asList(chain);
+        FirstOrderConstraint equality =
+                new FirstOrderEqualityWithValue(true, new FirstOrderVariable(network, chain[0]),
+                        label, new EqualityArgumentReplacer(new Object[0], true) {
+                            public Object getLeftObject() {
+                                return quantificationVariables.get(quantificationVariables
+                                        .size() - 1);
+                            }
+                        });
+        return atMost ? new AtMostQuantifier("e", collection, equality, m)
+                : new AtLeastQuantifier("e", collection, equality, m);
+    }
+
+    /** Returns a constraint that every example's label differs from that of some example. */
+    private FirstOrderConstraint nested() {
+        List<Object> collection = Arrays.asList(chain);
+        FirstOrderConstraint equality =
+                new FirstOrderEqualityWithVariable(false, new FirstOrderVariable(network,
+                        chain[0]), new FirstOrderVariable(network, chain[1]),
+                        new EqualityArgumentReplacer(new Object[0]) {
+                            public Object getLeftObject() {
+                                return quantificationVariables.get(0);
+                            }
+
+                            public Object getRightObject() {
+                                return quantificationVariables.get(1);
+                            }
+                        });
+        return new UniversalQuantifier("a", collection, new ExistentialQuantifier("b",
+                collection, equality));
+    }
+
+    /**
+     * Returns the score of the best labeling of {@link #chain} that satisfies the constraint, or
+     * negative infinity if there is none, by solving the ILP problem.
+     */
+    private double solve(FirstOrderConstraint c, boolean compiled) throws Exception {
+        ILPInference inference = new ILPInference(chain, new ExhaustiveSolver(compiled));
+        inference.setCompileConstraints(compiled);
+        inference.addConstraint(c);
+        String[] solution = new String[chain.length];
+        double result = 0;
+        try {
+            for (int i = 0; i < chain.length; ++i) {
+                solution[i] = inference.valueOf(network, chain[i]);
+                result += network.scores(chain[i]).get(solution[i]);
+            }
+        } catch (InferenceNotOptimalException e) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        assertTrue("The solution violates the constraint.", satisfies(c, solution));
+        return result;
+    }
+
+    /** Returns whether the labeling satisfies the constraint. */
+    private boolean satisfies(FirstOrderConstraint c, String[] solution) {
+        FirstOrderVariable[] x = variables(c);
+        for (int i = 0; i < chain.length; ++i)
+            x[i].setValue(solution[i]);
+        return c.evaluate();
+    }
+
+    /** Returns the variables the constraint uses for the examples of {@link #chain}. */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private FirstOrderVariable[] variables(FirstOrderConstraint c) {
+        HashMap map = new HashMap();
+        c.consolidateVariables(map);
+        FirstOrderVariable[] result = new FirstOrderVariable[chain.length];
+        for (int i = 0; i < chain.length; ++i) {
+            FirstOrderVariable v = new FirstOrderVariable(network, chain[i]);
+            result[i] = map.containsKey(v) ? (FirstOrderVariable) map.get(v) : v;
+        }
+        return result;
+    }
+
+    /** Returns the score of the best labeling that satisfies the constraint, trying them all. */
+    private double exhaustive(FirstOrderConstraint c) {
+        FirstOrderVariable[] x = variables(c);
+        double result = Double.NEGATIVE_INFINITY;
+        int assignments = (int) Math.pow(labels.length, chain.length);
+        for (int a = 0; a < assignments; ++a) {
+            double score = 0;
+            for (int i = 0, k = a; i < chain.length; ++i, k /= labels.length) {
+                x[i].setValue(labels[k % labels.length]);
+                score += network.scores(chain[i]).get(labels[k % labels.length]);
+            }
+            if (score > result && c.evaluate())
+                result = score;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the given trial's random constraint over {@link #chain}. Solving and evaluating a
+     * constraint sets the values of its variables, so each use gets a new copy, generated from the
+     * same seed.
+     */
+    private FirstOrderConstraint constraint(int trial, long seed) {
+        random = new Random(seed);
+        FirstOrderVariable[] x = new FirstOrderVariable[chain.length];
+        for (int i = 0; i < chain.length; ++i)
+            x[i] = new FirstOrderVariable(network, chain[i]);
+
+        if (trial % 5 == 0)
+            return new FirstOrderConjunction(constraint(x, 3), counting(1 + random.nextInt(2),
+                    labels[random.nextInt(labels.length)], random.nextBoolean()));
+        if (trial % 5 == 1)
+            return new FirstOrderConjunction(nested(), constraint(x, 2));
+        return constraint(x, 4);
+    }
+
+    /**
+     * Random constraints, which often repeat or negate a literal, with nested quantifiers, at least
+     * and at most quantifiers, equalities between two variables, and negations, must have the same
+     * optimum whether compiled or propositionalized, and it must be the true optimum. Compiled
+     * rows must not name a variable twice.
+     */
+    @Test
+    public void testRandomConstraints() throws Exception {
+        Random trials = new Random(7);
+        for (int trial = 0; trial < 300; ++trial) {
+            int length = 3 + trials.nextInt(4);
+            int first = trials.nextInt(examples.length - length);
+            chain = Arrays.copyOfRange(examples, first, first + length);
+            long seed = trials.nextLong();
+
+            double expected = exhaustive(constraint(trial, seed));
+            assertEquals("trial " + trial, expected, solve(constraint(trial, seed), true), 1e-9);
+            assertEquals("trial " + trial, expected, solve(constraint(trial, seed), false), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,149 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.Feature;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.MappedLexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.MappedModel;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+/**
+ * Unit tests for <code>MappedModel</code> and <code>MappedLexicon</code>
+ */
+public class MappedModelTest {
+    private static final int features = 200;
+    private static final int labels = 3;
+
+    private static Feature feature(int i) {
+        return new DiscretePrimitiveStringFeature("test", "c", "f", "" + i);
+    }
+
+    /** A feature whose fingerprint is always the same, so that any two of them collide. */
+    public static class CollidingFeature extends DiscretePrimitiveStringFeature {
+        public CollidingFeature() {}
+
+        public CollidingFeature(String v) {
+            super("test", "c", "f", v);
+        }
+
+        public long fingerprint() {
+            return 42;
+        }
+    }
+
+    /** Returns the <code>i</code>th of the 8 strings made of three "Aa"s and "BB"s. */
+    private static String colliding(int i) {
+        StringBuffer result = new StringBuffer();
+        for (int j = 0; j < 3; ++j)
+            result.append((i >> j & 1) == 0 ? "Aa" : "BB");
+        return result.toString();
+    }
+
+    /**
+     * A converted learner and lexicon must give exactly the same scores and indexes as the
+     * originals.
+     */
+    @Test
+    public void testRoundTrip() throws Exception {
+        SparseNetworkLearner learner = new SparseNetworkLearner(new SparseAveragedPerceptron());
+        for (int l = 0; l < labels; ++l)
+            learner.getLabelLexicon().lookup(
+                    new DiscretePrimitiveStringFeature("test", "label", "", "" + l), true);
+        for (int i = 0; i < features; ++i)
+            learner.getLexicon().lookup(feature(i), true);
+
+        Random random = new Random(0);
+        int[][] examples = new int[100][];
+        for (int e = 0; e < examples.length; ++e) {
+            examples[e] = new int[5];
+            for (int j = 0; j < 5; ++j)
+                examples[e][j] = random.nextInt(features);
+            int label = examples[e][0] % labels;
+            learner.learn(examples[e], new double[] {1, 1, 1, 1, 1}, new int[] {label},
+                    new double[] {1});
+        }
+        learner.doneLearning();
+
+        File lc = File.createTempFile("mapped", ".lc");
+        File lex = File.createTempFile("mapped", ".lex");
+        lc.deleteOnExit();
+        lex.deleteOnExit();
+        MappedModel.writeLearner(learner, lc.getPath(), false);
+        MappedLexicon.write(learner.getLexicon(), lex.getPath());
+
+        Learner mapped = Learner.readLearner(lc.getPath());
+        assertTrue(mapped instanceof SparseNetworkLearner);
+        for (int e = 0; e < examples.length; ++e) {
+            double[] values = {1, 1, 1, 1, 1};
+            ScoreSet expected = learner.scores(examples[e], values);
+            ScoreSet actual = mapped.scores(examples[e], values);
+            for (int l = 0; l < labels; ++l)
+                assertEquals(expected.get("" + l), actual.get("" + l), 0);
+        }
+
+        Lexicon lexicon = Lexicon.readLexicon(lex.getPath());
+        assertTrue(lexicon instanceof MappedLexicon);
+        assertEquals(features, lexicon.size());
+        for (int i = 0; i < features; ++i) {
+            assertEquals(i, lexicon.lookup(feature(i)));
+            assertEquals(feature(i), lexicon.lookupKey(i));
+        }
+        assertEquals(lexicon.getCutoff(), lexicon.lookup(feature(features)));
+    }
+
+    /**
+     * Features whose strings share a hash code must get distinct fingerprints, and features that
+     * share a fingerprint must still be written, found at their own indexes, and not be confused
+     * with unseen features that share it too.
+     */
+    @Test
+    public void testCollisions() throws Exception {
+        Lexicon original = new Lexicon();
+        for (int i = 0; i < 6; ++i)
+            original.lookup(new DiscretePrimitiveStringFeature("test", "c", "f", colliding(i)),
+                    true);
+        for (int i = 0; i < 5; ++i)
+            original.lookup(new CollidingFeature("" + i), true);
+        for (int i = 0; i < features; ++i)
+            original.lookup(feature(i), true);
+
+        assertEquals(colliding(0).hashCode(), colliding(7).hashCode());
+        assertNotEquals(
+                new DiscretePrimitiveStringFeature("test", "c", "f", colliding(0)).fingerprint(),
+                new DiscretePrimitiveStringFeature("test", "c", "f", colliding(7)).fingerprint());
+
+        File lex = File.createTempFile("mapped", ".lex");
+        lex.deleteOnExit();
+        MappedLexicon.write(original, lex.getPath());
+        Lexicon lexicon = Lexicon.readLexicon(lex.getPath());
+        assertEquals(original.size(), lexicon.size());
+        for (int i = 0; i < original.size(); ++i) {
+            assertEquals(i, lexicon.lookup(original.lookupKey(i)));
+            assertEquals(original.lookupKey(i), lexicon.lookupKey(i));
+        }
+
+        int cutoff = lexicon.getCutoff();
+        assertEquals(cutoff, lexicon.lookup(new DiscretePrimitiveStringFeature("test", "c", "f",
+                colliding(6))));
+        assertEquals(cutoff, lexicon.lookup(new DiscretePrimitiveStringFeature("test", "c", "f",
+                colliding(7))));
+        assertEquals(cutoff, lexicon.lookup(new CollidingFeature("5")));
+    }
+}
@@ -0,0 +1,218 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.StochasticGradientDescent;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.util.Metrics;
+
+/**
+ * Unit tests for <code>Metrics</code> and the measurements <code>BatchTrainer</code> records in it
+ */
+public class MetricsTest {
+    private static final int features = 50;
+    private static final int examples = 200;
+    private static final String[] phases = {"train.parsingSeconds", "train.extractionSeconds",
+            "train.learningSeconds"};
+
+    /**
+     * A learner shaped like those <code>TranslateToJava</code> generates, which override
+     * <code>learn(Object)</code> only to check the example's type and delegate to a clone's
+     * instance.
+     */
+    public static class Generated extends StochasticGradientDescent {
+        public static boolean isTraining;
+        private boolean isClone;
+
+        public Generated() {
+            super("generated", 0.02);
+        }
+
+        public void unclone() {
+            isClone = false;
+        }
+
+        public void learn(Object example) {
+            if (isClone) {
+                System.err.println("Generated: clones are not trained in this test");
+                System.exit(1);
+            }
+
+            Object[] exampleArray = (Object[]) example;
+            if (exampleArray.length > 0 && exampleArray[0] instanceof int[])
+                super.learn(exampleArray);
+            else
+                super.learn(example);
+        }
+    }
+
+    /** A hand written learner whose <code>learn(Object)</code> may do anything at all. */
+    public static class Custom extends StochasticGradientDescent {
+        public static boolean isTraining;
+
+        public Custom() {
+            super("custom", 0.02);
+        }
+
+        public void learn(Object example) {
+            super.learn(example);
+        }
+    }
+
+    /** Returns random examples in the format of a pre-extracted example file. */
+    private static byte[] exampleFile() {
+        Random random = new Random(3);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        for (int e = 0; e < examples; ++e) {
+            int[] f = {random.nextInt(features), random.nextInt(features)};
+            BatchTrainer.writeExample(out, f, new double[] {1, 1}, new int[] {0},
+                    new double[] {random.nextBoolean() ? 1 : -1}, f.length);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Trains the given learner over the example file for two rounds, recording metrics. */
+    private static Metrics train(StochasticGradientDescent learner) {
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < features; ++i)
+            lexicon.lookup(new DiscretePrimitiveStringFeature("test", "f", "", "" + i), true);
+        learner.setLexicon(lexicon);
+
+        Metrics metrics = new Metrics();
+        BatchTrainer trainer = new BatchTrainer(learner, new ArrayFileParser(exampleFile(), false));
+        trainer.setMetrics(metrics);
+        assertSame(metrics, trainer.getMetrics());
+        trainer.fillInSizes();
+        trainer.train(2);
+        return metrics;
+    }
+
+    /** Each name's summary must count, total, and bound the values recorded under it. */
+    @Test
+    public void testStatistics() {
+        Metrics metrics = new Metrics();
+        assertNull(metrics.get("a"));
+        metrics.record("a", 3, "x");
+        metrics.record("a", -1, "x");
+        metrics.record("a", 4, "x");
+        metrics.recordSeconds("b", 2500000000L);
+
+        Metrics.Statistic a = metrics.get("a");
+        assertEquals("x", a.getUnit());
+        assertEquals(3, a.getCount());
+        assertEquals(6, a.getSum(), 0);
+        assertEquals(2, a.getMean(), 0);
+        assertEquals(-1, a.getMin(), 0);
+        assertEquals(4, a.getMax(), 0);
+        assertEquals(4, a.getLast(), 0);
+        assertEquals("s", metrics.get("b").getUnit());
+        assertEquals(2.5, metrics.get("b").getLast(), 0);
+
+        // get() returns a copy.
+        metrics.record("a", 10, "x");
+        assertEquals(3, a.getCount());
+        assertEquals(2, metrics.getStatistics().size());
+
+        metrics.clear();
+        assertNull(metrics.get("a"));
+        assertEquals("{}", metrics.toJSON());
+    }
+
+    /** The summaries are written as one JSON object, in the order their names were recorded. */
+    @Test
+    public void testJSON() {
+        Metrics metrics = new Metrics();
+        metrics.record("b", 1, "s");
+        metrics.record("b", 2, "s");
+        metrics.record("a\"q", 0.5, "u");
+        metrics.record("c", Double.NaN, "u");
+        assertEquals("{\n"
+                + "  \"b\": {\"unit\": \"s\", \"count\": 2, \"sum\": 3, \"mean\": 1.5, \"min\": 1,"
+                + " \"max\": 2, \"last\": 2},\n"
+                + "  \"a\\\"q\": {\"unit\": \"u\", \"count\": 1, \"sum\": 0.5, \"mean\": 0.5,"
+                + " \"min\": 0.5, \"max\": 0.5, \"last\": 0.5},\n"
+                + "  \"c\": {\"unit\": \"u\", \"count\": 1, \"sum\": null, \"mean\": null,"
+                + " \"min\": null, \"max\": null, \"last\": null}\n"
+                + "}", metrics.toJSON());
+    }
+
+    /** A <code>JSONLinesListener</code> writes one line per value, until it is removed. */
+    @Test
+    public void testJSONLinesListener() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Metrics.Listener listener = new Metrics.JSONLinesListener(new PrintStream(bytes, true));
+        Metrics metrics = new Metrics();
+        metrics.addListener(listener);
+        metrics.record("m.count", 42, "examples");
+        metrics.recordSeconds("m.time", 1250000000L);
+        metrics.record("tab\there", Double.POSITIVE_INFINITY, "u");
+        metrics.removeListener(listener);
+        metrics.record("m.count", 1, "examples");
+
+        String[] lines = bytes.toString("UTF-8").split("\n");
+        assertEquals(3, lines.length);
+        String time = "\\{\"time\": \\d+, ";
+        assertTrue(lines[0], lines[0].matches(time
+                + "\"name\": \"m.count\", \"value\": 42, \"unit\": \"examples\"\\}"));
+        assertTrue(lines[1], lines[1].matches(time
+                + "\"name\": \"m.time\", \"value\": 1.25, \"unit\": \"s\"\\}"));
+        assertTrue(lines[2], lines[2].matches(time
+                + "\"name\": \"tab\\\\u0009here\", \"value\": null, \"unit\": \"u\"\\}"));
+    }
+
+    /**
+     * <code>BatchTrainer</code> records each round's size, duration, and throughput under the
+     * learner's name, and splits the duration into phases for learners generated by the compiler,
+     * even though those override <code>learn(Object)</code>.
+     */
+    @Test
+    public void testTrainingMetrics() {
+        Metrics metrics = train(new Generated());
+        for (String name : new String[] {"train.examples", "train.roundSeconds",
+                "train.examplesPerSecond"})
+            assertEquals(name, 2, metrics.get("generated." + name).getCount());
+        assertEquals(examples, metrics.get("generated.train.examples").getLast(), 0);
+        assertEquals("examples/s", metrics.get("generated.train.examplesPerSecond").getUnit());
+
+        double phaseTotal = 0;
+        for (String name : phases) {
+            Metrics.Statistic s = metrics.get("generated." + name);
+            assertNotNull(name, s);
+            assertEquals(name, 2, s.getCount());
+            assertEquals(name, "s", s.getUnit());
+            phaseTotal += s.getSum();
+        }
+        assertEquals(metrics.get("generated.train.roundSeconds").getSum(), phaseTotal, 1e-6);
+    }
+
+    /**
+     * A hand written <code>learn(Object)</code> may do its own extraction, so its time can't be
+     * split into phases, though the rest is still recorded.
+     */
+    @Test
+    public void testCustomLearnerNotSplit() {
+        Metrics metrics = train(new Custom());
+        assertEquals(2, metrics.get("custom.train.roundSeconds").getCount());
+        for (String name : phases)
+            assertNull(name, metrics.get("custom." + name));
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.LinearThresholdUnit;
+import edu.illinois.cs.cogcomp.lbjava.learn.MappedModel;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseWinnow;
+
+/**
+ * Unit tests for the packed scoring methods of <code>SparseNetworkLearner</code>
+ */
+public class PackedScoresTest {
+    private static final int features = 200;
+    private static final int labels = 5;
+
+    private static void check(LinearThresholdUnit ltu) throws Exception {
+        SparseNetworkLearner learner = new SparseNetworkLearner(ltu);
+        for (int l = 0; l < labels; ++l)
+            learner.getLabelLexicon().lookup(
+                    new DiscretePrimitiveStringFeature("test", "label", "", "" + l), true);
+
+        Random random = new Random(0);
+        int[][] examples = new int[500][];
+        double[][] values = new double[examples.length][];
+        for (int e = 0; e < examples.length; ++e) {
+            examples[e] = new int[4];
+            values[e] = new double[4];
+            for (int j = 0; j < 4; ++j) {
+                examples[e][j] = random.nextInt(features);
+                values[e][j] = random.nextDouble();
+            }
+            if (e < 400)
+                learner.learn(examples[e], values[e], new int[] {examples[e][0] % labels},
+                        new double[] {1});
+        }
+        learner.doneLearning();
+
+        // Features never seen in training are scored too.
+        examples[0][0] = features * 2;
+        compare(learner, examples, values);
+
+        // Mapped weights aren't packed, but must be scored the same way.
+        File lc = File.createTempFile("packed", ".lc");
+        lc.deleteOnExit();
+        MappedModel.writeLearner(learner, lc.getPath(), false);
+        compare((SparseNetworkLearner) Learner.readLearner(lc.getPath()), examples, values);
+    }
+
+    private static void compare(SparseNetworkLearner learner, int[][] examples, double[][] values) {
+        double[][] results = new double[examples.length][labels];
+        learner.scores(examples, values, results);
+        for (int e = 0; e < examples.length; ++e) {
+            ScoreSet expected = learner.scores(examples[e], values[e]);
+            for (int l = 0; l < labels; ++l)
+                assertEquals(expected.get("" + l), results[e][l], 0);
+        }
+    }
+
+    /**
+     * Packed scores must be identical to those in the <code>ScoreSet</code>, whether or not the
+     * network's weights are mapped.
+     */
+    @Test
+    public void testScores() throws Exception {
+        check(new SparseAveragedPerceptron());
+        check(new SparseWinnow());
+    }
+}
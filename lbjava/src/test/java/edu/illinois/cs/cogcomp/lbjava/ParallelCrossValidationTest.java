@@ -0,0 +1,233 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.Accuracy;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseWinnow;
+import edu.illinois.cs.cogcomp.lbjava.parse.ArrayFileParser;
+import edu.illinois.cs.cogcomp.lbjava.parse.FoldParser;
+
+/**
+ * Tests that cross validation and parameter tuning over pre-extracted examples reach the same
+ * results on several threads as on one.
+ */
+public class ParallelCrossValidationTest {
+    private static final int features = 60;
+    private static final int labels = 3;
+    private static final int active = 5;
+    private static final int examples = 600;
+    private static final byte[] data = exampleFile();
+
+    /** A network learner like those generated by the compiler. */
+    public static class Network extends SparseNetworkLearner {
+        public static boolean isTraining;
+
+        public Network() {
+            super("network");
+        }
+    }
+
+    /**
+     * Records which settings were abandoned, and can abandon one of its own choosing after giving
+     * it a perfect score on every fold it completed.
+     */
+    private static class Abandoning extends BatchTrainer {
+        boolean[] abandoned;
+        int victim = -1;
+
+        Abandoning(Learner l) {
+            super(l, new ArrayFileParser(data, false));
+        }
+
+        protected void abandonLosers(double[][][] performances, int n, double alpha,
+                boolean[] a, int[] folds) {
+            if (victim >= 0 && !a[victim]) {
+                for (int r = 0; r < performances[victim].length; ++r)
+                    Arrays.fill(performances[victim][r], 0, n, 100);
+                a[victim] = true;
+                folds[victim] = n;
+            }
+            super.abandonLosers(performances, n, alpha, a, folds);
+            abandoned = a.clone();
+        }
+    }
+
+    /**
+     * Returns examples in the format of a pre-extracted example file, each labeled with whichever
+     * of several hidden linear functions of its features is largest.
+     */
+    private static byte[] exampleFile() {
+        Random random = new Random(11);
+        double[][] truth = new double[labels][features];
+        for (int l = 0; l < labels; ++l)
+            for (int i = 0; i < features; ++i)
+                truth[l][i] = random.nextGaussian();
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        for (int e = 0; e < examples; ++e) {
+            int[] f = new int[active];
+            double[] v = new double[active];
+            double[] dot = new double[labels];
+            for (int k = 0; k < active; ++k) {
+                f[k] = random.nextInt(features);
+                v[k] = 1;
+                for (int l = 0; l < labels; ++l)
+                    dot[l] += truth[l][f[k]];
+            }
+            int label = 0;
+            for (int l = 1; l < labels; ++l)
+                if (dot[l] > dot[label])
+                    label = l;
+            BatchTrainer.writeExample(out, f, v, new int[] {label}, new double[] {1}, active);
+        }
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** Returns a new learner whose lexicons hold every feature and label in the examples. */
+    private static Learner learner() {
+        Network learner = new Network();
+        Lexicon lexicon = new Lexicon();
+        for (int i = 0; i < features; ++i)
+            lexicon.lookup(new DiscretePrimitiveStringFeature("test", "f", "", "" + i), true);
+        learner.setLexicon(lexicon);
+        Lexicon labelLexicon = new Lexicon();
+        for (int l = 0; l < labels; ++l)
+            labelLexicon.lookup(new DiscretePrimitiveStringFeature("test", "label", "", "" + l),
+                    true);
+        learner.setLabelLexicon(labelLexicon);
+        return learner;
+    }
+
+    /** Prepares the given trainer to run on the given number of threads. */
+    private static BatchTrainer prepare(BatchTrainer trainer, int threads) {
+        trainer.fillInSizes();
+        trainer.setThreads(threads);
+        return trainer;
+    }
+
+    /** Returns a new trainer over the example file, run on the given number of threads. */
+    private static BatchTrainer trainer(int threads) {
+        return prepare(new BatchTrainer(learner(), new ArrayFileParser(data, false)), threads);
+    }
+
+    /**
+     * Returns parameter settings of differing quality. The third never learns anything, so it is
+     * by far the worst.
+     */
+    private static Learner.Parameters[] settings() {
+        SparseNetworkLearner.Parameters[] result = new SparseNetworkLearner.Parameters[4];
+        for (int i = 0; i < result.length; ++i)
+            result[i] = new SparseNetworkLearner.Parameters();
+        result[0].baseLTU = new SparseAveragedPerceptron(0.1, 0);
+        result[1].baseLTU = new SparseAveragedPerceptron(0.1, 3);
+        result[2].baseLTU = new SparseAveragedPerceptron(0, 0);
+        result[3].baseLTU = new SparseWinnow(1.35, 0.8);
+        return result;
+    }
+
+    /** Returns the index of the given element of the array. */
+    private static int indexOf(Object[] array, Object element) {
+        for (int i = 0; i < array.length; ++i)
+            if (array[i] == element)
+                return i;
+        fail("the returned parameters are not among those given");
+        return -1;
+    }
+
+    /** Tunes over 5 folds, returning the index of the best setting, and the best rounds. */
+    private static int[] tune(BatchTrainer trainer) {
+        Learner.Parameters[] parameters = settings();
+        Learner.Parameters best =
+                trainer.tune(parameters, new int[] {1, 2, 4}, 5,
+                        FoldParser.SplitPolicy.sequential, 0.05, new Accuracy());
+        int[] result = new int[parameters.length + 1];
+        result[0] = indexOf(parameters, best);
+        for (int i = 0; i < parameters.length; ++i)
+            result[i + 1] = parameters[i].rounds;
+        return result;
+    }
+
+    /**
+     * Folds cross validated at once, each by a clone sharing the learner's lexicon, must perform
+     * exactly as they do one after another.
+     */
+    @Test
+    public void testCrossValidation() {
+        for (FoldParser.SplitPolicy policy : new FoldParser.SplitPolicy[] {
+                FoldParser.SplitPolicy.sequential, FoldParser.SplitPolicy.kth}) {
+            double[][] serial =
+                    trainer(1).crossValidation(new int[] {1, 3}, 4, policy, 0.05, new Accuracy(),
+                            false);
+            BatchTrainer parallel = trainer(3);
+            double[][] concurrent =
+                    parallel.crossValidation(new int[] {3, 1}, 4, policy, 0.05, new Accuracy(),
+                            false);
+
+            assertEquals(2, serial.length);
+            assertTrue("accuracy " + serial[1][0], serial[1][0] > 60);
+            for (int r = 0; r < serial.length; ++r)
+                assertArrayEquals(policy + ", rounds index " + r, serial[r], concurrent[r], 0);
+            assertTrue(parallel.getParser() instanceof ArrayFileParser);
+        }
+    }
+
+    /** Without abandonment, tuning at once must choose what tuning one setting at a time does. */
+    @Test
+    public void testTuneWithoutAbandonment() {
+        int[] serial = tune(trainer(1));
+        BatchTrainer parallel = trainer(3);
+        parallel.setAbandonAfter(0);
+        assertArrayEquals(serial, tune(parallel));
+        assertTrue(serial[0] != 2);
+    }
+
+    /** A setting far behind the best is abandoned, and the best setting is still found. */
+    @Test
+    public void testAbandonment() {
+        int[] serial = tune(trainer(1));
+        Abandoning parallel = (Abandoning) prepare(new Abandoning(learner()), 3);
+        assertEquals(2, parallel.getAbandonAfter());
+        int[] concurrent = tune(parallel);
+        assertNotNull(parallel.abandoned);
+        assertTrue(parallel.abandoned[2]);
+        assertFalse(parallel.abandoned[serial[0]]);
+        assertEquals(serial[0], concurrent[0]);
+    }
+
+    /**
+     * A setting that was abandoned can't be chosen, even if its performance over the folds it
+     * completed is the best.
+     */
+    @Test
+    public void testAbandonedCantWin() {
+        int best = tune(trainer(1))[0];
+        Abandoning parallel = (Abandoning) prepare(new Abandoning(learner()), 3);
+        parallel.victim = best;
+        int chosen = tune(parallel)[0];
+        assertTrue(parallel.abandoned[best]);
+        assertTrue(chosen != best);
+        assertFalse(parallel.abandoned[chosen]);
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.ScoreSet;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseAveragedPerceptron;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+
+/**
+ * Unit tests for parallel training in <code>SparseNetworkLearner</code>
+ */
+public class ParallelNetworkTest {
+    private static final int features = 300;
+    private static final int labels = 7;
+
+    private static SparseNetworkLearner train(int threads, int[][] examples) {
+        SparseNetworkLearner learner = new SparseNetworkLearner(new SparseAveragedPerceptron());
+        learner.setThreads(threads);
+        for (int l = 0; l < labels; ++l)
+            learner.getLabelLexicon().lookup(
+                    new DiscretePrimitiveStringFeature("test", "label", "", "" + l), true);
+
+        for (int round = 0; round < 3; ++round) {
+            for (int e = 0; e < examples.length; ++e) {
+                int label = (examples[e][0] + examples[e][1]) % labels;
+                learner.learn(examples[e], new double[] {1, 1, 1, 1, 1}, new int[] {label},
+                        new double[] {1});
+            }
+            learner.doneWithRound();
+        }
+
+        learner.doneLearning();
+        return learner;
+    }
+
+    /**
+     * A network trained with several threads must be identical to one trained with a single
+     * thread.
+     */
+    @Test
+    public void testDeterminism() {
+        Random random = new Random(0);
+        int[][] examples = new int[1500][];
+        for (int e = 0; e < examples.length; ++e) {
+            examples[e] = new int[5];
+            for (int j = 0; j < 5; ++j)
+                examples[e][j] = random.nextInt(features);
+        }
+
+        SparseNetworkLearner serial = train(1, examples);
+        SparseNetworkLearner parallel = train(4, examples);
+        assertEquals(serial.getNetwork().size(), parallel.getNetwork().size());
+
+        for (int e = 0; e < examples.length; ++e) {
+            double[] values = {1, 1, 1, 1, 1};
+            ScoreSet expected = serial.scores(examples[e], values);
+            ScoreSet actual = parallel.scores(examples[e], values);
+            for (int l = 0; l < labels; ++l)
+                assertEquals(expected.get("" + l), actual.get("" + l), 0);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.classify.Classifier;
+import edu.illinois.cs.cogcomp.lbjava.classify.DiscretePrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.classify.FeatureVector;
+import edu.illinois.cs.cogcomp.lbjava.classify.RealPrimitiveStringFeature;
+import edu.illinois.cs.cogcomp.lbjava.learn.BatchTrainer;
+import edu.illinois.cs.cogcomp.lbjava.learn.Learner;
+import edu.illinois.cs.cogcomp.lbjava.learn.Lexicon;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseNetworkLearner;
+import edu.illinois.cs.cogcomp.lbjava.parse.FoldSeparator;
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+
+/**
+ * Tests that pre-extraction on several threads writes exactly what it writes on one.
+ */
+public class ParallelPreExtractionTest {
+    /** Spans several of the chunks in which examples are handed to the extracting threads. */
+    private static final int examples = 1500;
+    private static final List<Object> sentences = sentences();
+
+    /** A network learner like those generated by the compiler. */
+    public static class Network extends SparseNetworkLearner {
+        public static boolean isTraining;
+
+        public Network() {
+            super("network");
+        }
+    }
+
+    /** Each word of a sentence and its length. */
+    private static class Words extends Classifier {
+        public String getOutputType() {
+            return "mixed%";
+        }
+
+        public FeatureVector classify(Object o) {
+            FeatureVector result = new FeatureVector();
+            for (String word : ((String) o).split(" ")) {
+                result.addFeature(new DiscretePrimitiveStringFeature("test", "Words", "", word));
+                result.addFeature(new RealPrimitiveStringFeature("test", "Length", word, word
+                        .length()));
+            }
+            return result;
+        }
+    }
+
+    /** The label of a sentence is its first word. */
+    private static class Label extends Classifier {
+        public String getOutputType() {
+            return "discrete";
+        }
+
+        public FeatureVector classify(Object o) {
+            String s = (String) o;
+            return new FeatureVector(new DiscretePrimitiveStringFeature("test", "Label", "",
+                    s.substring(0, s.indexOf(' '))));
+        }
+    }
+
+    /** Returns the sentences in a list. */
+    private static class ListParser implements Parser {
+        private int position;
+
+        public Object next() {
+            return position < sentences.size() ? sentences.get(position++) : null;
+        }
+
+        public void reset() {
+            position = 0;
+        }
+
+        public void close() {}
+    }
+
+    /**
+     * Returns random sentences whose words are drawn from a vocabulary far larger than one chunk
+     * of sentences uses, so that the lexicon keeps growing, with a fold separator every so often.
+     */
+    private static List<Object> sentences() {
+        Random random = new Random(5);
+        List<Object> result = new ArrayList<Object>();
+        for (int e = 0; e < examples; ++e) {
+            StringBuilder sentence = new StringBuilder("label" + random.nextInt(4));
+            for (int w = random.nextInt(8); w >= 0; --w)
+                sentence.append(" w").append(random.nextInt(1 + 3 * e));
+            result.add(sentence.toString());
+            if (e % 400 == 399)
+                result.add(FoldSeparator.separator);
+        }
+        return result;
+    }
+
+    /** Returns the bytes of the given file. */
+    private static byte[] read(File file) throws Exception {
+        RandomAccessFile in = new RandomAccessFile(file, "r");
+        byte[] result = new byte[(int) in.length()];
+        in.readFully(result);
+        in.close();
+        return result;
+    }
+
+    /** Returns the given lexicon as written to disk. */
+    private static byte[] write(Lexicon lexicon) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ExceptionlessOutputStream out = new ExceptionlessOutputStream(bytes);
+        lexicon.write(out);
+        out.close();
+        return bytes.toByteArray();
+    }
+
+    /** The example file, feature lexicon, and label lexicon written by one pre-extraction. */
+    private static class Extraction {
+        final byte[] examples;
+        final byte[] lexicon;
+        final byte[] labels;
+        final int lexiconSize;
+
+        Extraction(int threads, Lexicon.CountPolicy policy) throws Exception {
+            Learner learner = new Network();
+            learner.setLabeler(new Label());
+            learner.setExtractor(new Words());
+
+            File file = File.createTempFile("preExtract", ".ex");
+            file.delete();
+            BatchTrainer trainer = new BatchTrainer(learner, new ListParser());
+            trainer.setThreads(threads);
+            Learner extracted = trainer.preExtract(file.getPath(), false, policy);
+
+            examples = read(file);
+            file.delete();
+            lexicon = write(extracted.getLexicon());
+            labels = write(extracted.getLabelLexicon());
+            lexiconSize = extracted.getLexicon().size();
+        }
+    }
+
+    /**
+     * Features extracted on several threads must be indexed, counted, and written in the order the
+     * examples were read, as they are on one.
+     */
+    @Test
+    public void testSameAsSingleThread() throws Exception {
+        for (Lexicon.CountPolicy policy : new Lexicon.CountPolicy[] {Lexicon.CountPolicy.none,
+                Lexicon.CountPolicy.global, Lexicon.CountPolicy.perClass}) {
+            Extraction serial = new Extraction(1, policy);
+            assertTrue(serial.lexiconSize > 1000);
+            for (int threads : new int[] {2, 4}) {
+                Extraction parallel = new Extraction(threads, policy);
+                String message = policy + " policy, " + threads + " threads";
+                assertEquals(message, serial.lexiconSize, parallel.lexiconSize);
+                assertArrayEquals(message, serial.examples, parallel.examples);
+                assertArrayEquals(message, serial.lexicon, parallel.lexicon);
+                assertArrayEquals(message, serial.labels, parallel.labels);
+            }
+        }
+    }
+}
@@ -0,0 +1,213 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.parse.FoldSeparator;
+import edu.illinois.cs.cogcomp.lbjava.parse.Parser;
+import edu.illinois.cs.cogcomp.lbjava.parse.PrefetchingParser;
+
+/**
+ * Unit tests for <code>PrefetchingParser</code>
+ */
+public class PrefetchingParserTest {
+    /**
+     * Returns the examples in a list, or as many as asked for if the list is <code>null</code>,
+     * noting how far it has read and whether two threads ever used it at once.
+     */
+    private static class ListParser implements Parser {
+        final List<Object> examples;
+        final int size;
+        final AtomicInteger busy = new AtomicInteger();
+        volatile int position;
+        volatile int resets;
+        volatile boolean closed;
+        volatile boolean overlapped;
+        RuntimeException failure;
+        int failAt = -1;
+
+        ListParser(List<Object> e) {
+            examples = e;
+            size = e.size();
+        }
+
+        ListParser(int s) {
+            examples = null;
+            size = s;
+        }
+
+        private void enter() {
+            if (busy.incrementAndGet() != 1)
+                overlapped = true;
+        }
+
+        public Object next() {
+            enter();
+            try {
+                if (position == failAt) {
+                    ++position;
+                    throw failure;
+                }
+                if (position >= size)
+                    return null;
+                Object result = examples == null ? (Object) position : examples.get(position);
+                ++position;
+                return result;
+            } finally {
+                busy.decrementAndGet();
+            }
+        }
+
+        public void reset() {
+            enter();
+            position = 0;
+            ++resets;
+            busy.decrementAndGet();
+        }
+
+        public void close() {
+            enter();
+            closed = true;
+            busy.decrementAndGet();
+        }
+    }
+
+    /** Returns examples numbered from 0, with a fold separator after every fourth. */
+    private static List<Object> examples(int n) {
+        List<Object> result = new ArrayList<Object>();
+        for (int i = 0; i < n; ++i) {
+            result.add("example " + i);
+            if (i % 4 == 3)
+                result.add(FoldSeparator.separator);
+        }
+        return result;
+    }
+
+    /** Reads the given number of examples from the parser, or all of them if it is negative. */
+    private static List<Object> read(Parser parser, int n) {
+        List<Object> result = new ArrayList<Object>();
+        for (Object example = null; n-- != 0 && (example = parser.next()) != null;)
+            result.add(example);
+        return result;
+    }
+
+    /** Waits until the parser has read at least the given number of examples. */
+    private static void awaitPosition(ListParser parser, int position) throws Exception {
+        while (parser.position < position)
+            Thread.sleep(1);
+    }
+
+    /**
+     * Examples and fold separators must come back in the order the other parser returns them, and
+     * the end of the data must stay the end.
+     */
+    @Test
+    public void testOrder() {
+        for (int capacity : new int[] {1, 3, 1000}) {
+            List<Object> expected = examples(50);
+            ListParser source = new ListParser(expected);
+            PrefetchingParser parser = new PrefetchingParser(source, capacity);
+            assertEquals(capacity, parser.getCapacity());
+
+            List<Object> actual = new ArrayList<Object>();
+            for (Object example; (example = parser.next()) != null;) {
+                actual.add(example);
+                // Examples read ahead either wait in the buffer or are in the reader's hands.
+                assertTrue(source.position - actual.size() <= capacity + 1);
+            }
+            assertEquals(expected, actual);
+            assertSame(FoldSeparator.separator, actual.get(4));
+            assertNull(parser.next());
+            assertNull(parser.next());
+            parser.close();
+            assertTrue(source.closed);
+            assertFalse(source.overlapped);
+        }
+    }
+
+    /** Resetting part way through must discard what was read ahead and start over. */
+    @Test
+    public void testReset() {
+        List<Object> expected = examples(40);
+        ListParser source = new ListParser(expected);
+        PrefetchingParser parser = new PrefetchingParser(source, 4);
+
+        assertEquals(expected.subList(0, 7), read(parser, 7));
+        parser.reset();
+        assertEquals(1, source.resets);
+        assertEquals(expected, read(parser, -1));
+
+        // Resetting after the end of the data makes it readable again.
+        parser.reset();
+        assertEquals(expected.subList(0, 3), read(parser, 3));
+        parser.reset();
+        parser.reset();
+        assertEquals(expected, read(parser, -1));
+        assertEquals(4, source.resets);
+        assertFalse(source.overlapped);
+    }
+
+    /**
+     * Closing while the background thread is waiting for room in a full buffer must stop it, and
+     * the other parser must not be read from afterward.
+     */
+    @Test(timeout = 10000)
+    public void testCloseWhileBlocked() throws Exception {
+        ListParser source = new ListParser(1000000);
+        PrefetchingParser parser = new PrefetchingParser(source, 2);
+        assertEquals(0, parser.next());
+
+        // One example returned, two in the buffer, and one waiting to be added.
+        awaitPosition(source, 4);
+        Thread.sleep(20);
+        assertEquals(4, source.position);
+
+        parser.close();
+        assertTrue(source.closed);
+        int position = source.position;
+        Thread.sleep(20);
+        assertEquals(position, source.position);
+        assertNull(parser.next());
+        assertFalse(source.overlapped);
+    }
+
+    /**
+     * An exception thrown by the other parser must be rethrown by the call to <code>next()</code>
+     * that would have returned its example, after the examples before it.
+     */
+    @Test
+    public void testException() {
+        List<Object> expected = examples(10);
+        ListParser source = new ListParser(expected);
+        source.failure = new IllegalStateException("bad example");
+        source.failAt = 5;
+        PrefetchingParser parser = new PrefetchingParser(source, 3);
+
+        assertEquals(expected.subList(0, 5), read(parser, 5));
+        try {
+            parser.next();
+            fail("the exception from the other parser wasn't rethrown");
+        } catch (IllegalStateException e) {
+            assertSame(source.failure, e);
+        }
+        assertNull(parser.next());
+
+        // A reset clears the failure, and the other parser may succeed this time.
+        source.failAt = -1;
+        parser.reset();
+        assertEquals(expected, read(parser, -1));
+        assertFalse(source.overlapped);
+    }
+}
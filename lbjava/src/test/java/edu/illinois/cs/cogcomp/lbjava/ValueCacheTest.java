@@ -0,0 +1,156 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.lbjava.classify.ValueCache;
+
+/**
+ * Unit tests for <code>ValueCache</code>
+ */
+public class ValueCacheTest {
+    /** Keys that all have the same hash code, and so all land in the same segment. */
+    private static class Colliding {
+        final int id;
+
+        Colliding(int i) {
+            id = i;
+        }
+
+        public int hashCode() {
+            return 7;
+        }
+
+        public boolean equals(Object o) {
+            return o instanceof Colliding && ((Colliding) o).id == id;
+        }
+    }
+
+    /** A cache can't be given a size below one. */
+    @Test(expected = IllegalArgumentException.class)
+    public void testNonPositiveCapacity() {
+        new ValueCache(0);
+    }
+
+    /**
+     * When a segment is full, the entry evicted to make room is the one least recently read or
+     * written, and keys are compared with <code>equals(Object)</code>.
+     */
+    @Test
+    public void testLeastRecentlyUsedEviction() {
+        // Sixteen segments of two entries each.
+        ValueCache cache = new ValueCache(32);
+        Colliding a = new Colliding(1), b = new Colliding(2), c = new Colliding(3);
+        assertNull(cache.put(a, "a"));
+        assertNull(cache.put(b, "b"));
+        assertEquals("a", cache.get(new Colliding(1)));
+
+        // b is now the least recently used.
+        assertNull(cache.put(c, "c"));
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get(b));
+        assertEquals("a", cache.get(a));
+        assertEquals("c", cache.get(c));
+        assertEquals(2, cache.size());
+
+        // Replacing a value evicts nothing, but makes its key the most recently used.
+        assertEquals("c", cache.put(c, "C"));
+        assertEquals(1, cache.getEvictions());
+        cache.put(b, "b");
+        assertNull(cache.get(a));
+        assertEquals("C", cache.get(c));
+        assertEquals(2, cache.getEvictions());
+    }
+
+    /** However keys are spread over segments, the cache never holds more than its capacity. */
+    @Test
+    public void testCapacity() {
+        for (int capacity : new int[] {1, 2, 3, 17, 37, 1000}) {
+            ValueCache cache = new ValueCache(capacity);
+            assertEquals(capacity, cache.getCapacity());
+            int keys = capacity * 20;
+            for (int i = 0; i < keys; ++i) {
+                cache.put("key " + i, i);
+                assertTrue(cache.size() <= capacity);
+            }
+
+            // Enough keys were added to fill every segment.
+            assertEquals(capacity, cache.size());
+            assertEquals(keys - capacity, cache.getEvictions());
+
+            int found = 0;
+            for (int i = 0; i < keys; ++i)
+                if (cache.get("key " + i) != null)
+                    ++found;
+            assertEquals(capacity, found);
+        }
+    }
+
+    /** Hits, misses, and evictions are counted until the counters are reset. */
+    @Test
+    public void testCounters() {
+        ValueCache cache = new ValueCache(1);
+        assertEquals(0, cache.getHitRate(), 0);
+        assertNull(cache.get("x"));
+        cache.put("x", 1.5);
+        assertEquals(1.5, cache.get("x"));
+        assertEquals(1.5, cache.get("x"));
+        cache.put("y", 2.5);
+        assertNull(cache.get("x"));
+
+        assertEquals(2, cache.getHits());
+        assertEquals(2, cache.getMisses());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(0.5, cache.getHitRate(), 0);
+        assertEquals("ValueCache(1 / 1 entries, 2 hits, 2 misses, 1 evictions)", cache.toString());
+
+        // Clearing the cache leaves the counters alone; resetting them leaves the entries.
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(2, cache.getHits());
+        cache.put("y", 2.5);
+        cache.resetCounters();
+        assertEquals(0, cache.getHits());
+        assertEquals(0, cache.getMisses());
+        assertEquals(0, cache.getEvictions());
+        assertEquals(2.5, cache.get("y"));
+    }
+
+    /** Threads using the cache at once must keep it within its capacity and count every call. */
+    @Test
+    public void testConcurrentUse() throws Exception {
+        final ValueCache cache = new ValueCache(100);
+        final int calls = 20000;
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; ++t) {
+            final int seed = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < calls; ++i) {
+                        Integer key = (i * 31 + seed * 7) % 300;
+                        if (cache.get(key) == null)
+                            cache.put(key, key);
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads)
+            thread.join();
+
+        assertEquals(threads.length * calls, cache.getHits() + cache.getMisses());
+        assertEquals(100, cache.size());
+        for (int key = 0; key < 300; ++key) {
+            Object value = cache.get(key);
+            assertTrue(value == null || value.equals(key));
+        }
+    }
+}
@@ -0,0 +1,161 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import org.junit.Test;
+
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.DVector;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessInputStream;
+import edu.illinois.cs.cogcomp.core.datastructures.vectors.ExceptionlessOutputStream;
+import edu.illinois.cs.cogcomp.lbjava.learn.FloatDVector;
+import edu.illinois.cs.cogcomp.lbjava.learn.QuantizedDVector;
+import edu.illinois.cs.cogcomp.lbjava.learn.SparseWeightVector;
+
+/**
+ * Unit tests for <code>FloatDVector</code>, <code>QuantizedDVector</code>, and
+ * <code>SparseWeightVector.withPrecision</code>
+ */
+public class WeightPrecisionTest {
+    /** Not a multiple of the quantization block size, so the last block is partial. */
+    private static final int size = 1000;
+
+    private static DVector weights() {
+        Random random = new Random(5);
+        DVector result = new DVector(size);
+        for (int i = 0; i < size; ++i)
+            result.set(i, i / QuantizedDVector.blockSize == 3 ? 0 : random.nextGaussian()
+                    * (1 + i % 7));
+        return result;
+    }
+
+    private ByteArrayOutputStream bytes;
+
+    private ExceptionlessOutputStream output() {
+        bytes = new ByteArrayOutputStream();
+        return new ExceptionlessOutputStream(bytes);
+    }
+
+    private ExceptionlessInputStream input(ExceptionlessOutputStream out) {
+        out.close();
+        return new ExceptionlessInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Returns the largest error a quantized copy of the given element may have: half a step of the
+     * scale of its block.
+     */
+    private static double tolerance(DVector v, int i, int bits) {
+        int start = i - i % QuantizedDVector.blockSize;
+        double magnitude = 0;
+        for (int j = start; j < Math.min(start + QuantizedDVector.blockSize, v.size()); ++j)
+            magnitude = Math.max(magnitude, Math.abs(v.get(j)));
+        return magnitude / ((1 << (bits - 1)) - 1) / 2 * 1.0001;
+    }
+
+    /**
+     * A float vector must hold every element rounded to single precision, and read back exactly
+     * what it wrote.
+     */
+    @Test
+    public void testFloatDVector() {
+        DVector original = weights();
+        FloatDVector floats = new FloatDVector(original);
+        assertEquals(size, floats.size());
+        for (int i = 0; i < size; ++i)
+            assertEquals((float) original.get(i), floats.get(i), 0);
+
+        ExceptionlessOutputStream out = output();
+        floats.write(out);
+        FloatDVector read = new FloatDVector();
+        read.read(input(out));
+        assertEquals(size, read.size());
+        for (int i = 0; i < size; ++i)
+            assertEquals(floats.get(i), read.get(i), 0);
+        assertEquals(floats, read);
+    }
+
+    /**
+     * A quantized vector must be within half a step of the original, keep zero blocks zero, read
+     * back exactly what it wrote, and refuse modification.
+     */
+    @Test
+    public void testQuantizedDVector() {
+        DVector original = weights();
+        for (int bits : new int[] {16, 8}) {
+            QuantizedDVector quantized = new QuantizedDVector(original, bits);
+            assertEquals(size, quantized.size());
+            assertEquals(bits, quantized.getBits());
+            for (int i = 0; i < size; ++i)
+                assertEquals(original.get(i), quantized.get(i), tolerance(original, i, bits));
+            assertEquals(0, quantized.get(3 * QuantizedDVector.blockSize), 0);
+
+            ExceptionlessOutputStream out = output();
+            quantized.write(out);
+            QuantizedDVector read = new QuantizedDVector(bits);
+            read.read(input(out));
+            assertEquals(size, read.size());
+            for (int i = 0; i < size; ++i)
+                assertEquals(quantized.get(i), read.get(i), 0);
+
+            try {
+                quantized.set(0, 1);
+                fail("A quantized vector must not be modifiable.");
+            } catch (UnsupportedOperationException e) {
+            }
+        }
+    }
+
+    /**
+     * A weight vector copied with reduced precision must report it, leave the original alone,
+     * compute nearly the same dot products, and be written and read back with the same precision
+     * and weights.
+     */
+    @Test
+    public void testWithPrecision() {
+        DVector original = weights();
+        SparseWeightVector vector = new SparseWeightVector();
+        for (int i = 0; i < size; ++i)
+            vector.setWeight(i, original.get(i));
+
+        int[] features = new int[size];
+        double[] values = new double[size];
+        double magnitude = 0;
+        for (int i = 0; i < size; ++i) {
+            features[i] = i;
+            values[i] = 1;
+            magnitude += Math.abs(original.get(i));
+        }
+        double dot = vector.dot(features, values);
+
+        for (int bits : new int[] {64, 32, 16, 8}) {
+            SparseWeightVector copy = vector.withPrecision(bits);
+            assertEquals(bits, copy.getPrecision());
+            assertEquals(64, vector.getPrecision());
+            for (int i = 0; i < size; ++i) {
+                assertEquals(original.get(i), vector.getWeight(i), 0);
+                double tolerance = bits == 64 ? 0 : bits == 32 ? 1e-6 * Math.abs(original.get(i))
+                        : tolerance(original, i, bits);
+                assertEquals(original.get(i), copy.getWeight(i), tolerance);
+            }
+            assertEquals(dot, copy.dot(features, values), bits == 64 ? 0 : magnitude / 100);
+
+            ExceptionlessOutputStream out = output();
+            copy.write(out);
+            SparseWeightVector read = SparseWeightVector.readWeightVector(input(out));
+            assertEquals(bits, read.getPrecision());
+            for (int i = 0; i < size; ++i)
+                assertEquals(copy.getWeight(i), read.getWeight(i), 0);
+        }
+    }
+}
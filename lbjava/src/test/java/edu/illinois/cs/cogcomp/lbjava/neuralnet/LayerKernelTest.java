@@ -0,0 +1,77 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for <code>LayerKernel</code>
+ */
+public class LayerKernelTest {
+    /** Output counts that are and are not multiples of the blocked kernel's rows. */
+    private static final int[] outputCounts = {1, 3, 4, 5, 8, 9};
+
+    /** Input counts, including none but the bias. */
+    private static final int[] inputCounts = {0, 1, 7, 33};
+
+    /**
+     * The blocked kernel must compute exactly the activations, weights, deltas, and input errors
+     * of the scalar kernel, over several training steps so that momentum is carried along.
+     */
+    @Test
+    public void testBlockedMatchesScalar() {
+        for (int nO : outputCounts)
+            for (int nI : inputCounts)
+                compare(nI, nO);
+    }
+
+    private static void compare(int nI, int nO) {
+        String where = nI + " inputs, " + nO + " outputs";
+        Layer scalar = new Layer(nI, nO, new Random(nI * 31 + nO));
+        Layer blocked = new Layer(nI, nO, new Random(nI * 31 + nO));
+        scalar.setKernel(LayerKernel.SCALAR);
+        blocked.setKernel(LayerKernel.BLOCKED);
+
+        Random random = new Random(nO * 31 + nI);
+        for (int step = 0; step < 20; step++) {
+            float[] input = new float[nI];
+            for (int i = 0; i < nI; i++)
+                input[i] = random.nextFloat() * 2 - 1;
+            float[] expected = scalar.activate(input).clone();
+            float[] actual = blocked.activate(input).clone();
+            assertArrayEquals("activations, " + where, expected, actual, 0);
+
+            float[] error = new float[nO];
+            for (int o = 0; o < nO; o++)
+                error[o] = random.nextFloat() - expected[o];
+            float[] scalarError = scalar.train(error, input, expected, 0.4f, 0.7f);
+            float[] blockedError = blocked.train(error, input, actual, 0.4f, 0.7f);
+            assertArrayEquals("input errors, " + where, scalarError, blockedError, 0);
+            assertArrayEquals("weights, " + where, scalar.getWeights(), blocked.getWeights(), 0);
+            assertArrayEquals("deltas, " + where, scalar.getDweights(), blocked.getDweights(), 0);
+        }
+    }
+
+    /**
+     * Kernels must be found by name, in any case, and unknown names rejected.
+     */
+    @Test
+    public void testForName() {
+        assertSame(LayerKernel.SCALAR, LayerKernel.forName("scalar"));
+        assertSame(LayerKernel.BLOCKED, LayerKernel.forName("Blocked"));
+        try {
+            LayerKernel.forName("simd");
+            fail("An unknown kernel must be rejected.");
+        } catch (IllegalArgumentException e) {
+        }
+    }
+}
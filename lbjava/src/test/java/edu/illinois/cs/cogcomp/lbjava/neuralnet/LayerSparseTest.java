@@ -0,0 +1,110 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for the sparse <code>activate</code> and <code>train</code> of <code>Layer</code>
+ */
+public class LayerSparseTest {
+    private static final int inputs = 40;
+    private static final int outputs = 6;
+    private static final float rate = 0.3f;
+    private static final float momentum = 0.7f;
+
+    private static void assertSameWeights(Layer expected, Layer actual) {
+        float[] w = expected.getWeights(), v = actual.getWeights();
+        float[] dw = expected.getDweights(), dv = actual.getDweights();
+        for (int i = 0; i < w.length; ++i) {
+            assertEquals("weight " + i, w[i], v[i], 0);
+            assertEquals("delta " + i, dw[i], dv[i], 0);
+        }
+    }
+
+    /**
+     * Trains one layer on sparse examples and another on the same examples made dense, and checks
+     * that their weights and deltas stay identical, including the momentum of inputs that stop
+     * being active, inputs listed more than once, and a dense example in between.
+     */
+    @Test
+    public void testSparseMatchesDense() {
+        Layer sparse = new Layer(inputs, outputs, new Random(1));
+        Layer dense = new Layer(inputs, outputs, new Random(1));
+        sparse.setKernel(LayerKernel.SCALAR);
+        dense.setKernel(LayerKernel.SCALAR);
+        assertSameWeights(dense, sparse);
+
+        Random random = new Random(2);
+        for (int e = 0; e < 200; ++e) {
+            float[] error = new float[outputs];
+            float[] output = new float[outputs];
+            for (int o = 0; o < outputs; ++o) {
+                error[o] = random.nextFloat() - 0.5f;
+                output[o] = random.nextFloat();
+            }
+
+            // every 25th example is dense, which forgets which inputs were active.
+            if (e % 25 == 24) {
+                float[] input = new float[inputs];
+                for (int i = 0; i < inputs; ++i)
+                    input[i] = random.nextFloat();
+                sparse.train(error, input, output, rate, momentum);
+                dense.train(error, input, output, rate, momentum);
+                assertSameWeights(dense, sparse);
+                continue;
+            }
+
+            // few inputs, drawn from a small range so they often repeat within and across examples.
+            int n = random.nextInt(8);
+            int[] indexes = new int[n];
+            double[] values = new double[n];
+            double[] sums = new double[inputs];
+            for (int k = 0; k < n; ++k) {
+                indexes[k] = random.nextInt(e % 2 == 0 ? 10 : inputs);
+                values[k] = random.nextInt(4) == 0 ? 1 : random.nextDouble() * 2 - 1;
+                sums[indexes[k]] += values[k];
+            }
+            float[] input = new float[inputs];
+            for (int i = 0; i < inputs; ++i)
+                input[i] = (float) sums[i];
+
+            sparse.train(error, indexes, values, output, rate, momentum);
+            dense.train(error, input, output, rate, momentum);
+            assertSameWeights(dense, sparse);
+        }
+    }
+
+    /**
+     * Sparse activation must sum the values of repeated inputs and closely match dense activation.
+     */
+    @Test
+    public void testActivate() {
+        Layer layer = new Layer(inputs, outputs, new Random(3));
+        int[] indexes = {3, 17, 3, 39};
+        double[] values = {0.25, -1, 0.5, 2};
+        float[] input = new float[inputs];
+        input[3] = 0.75f;
+        input[17] = -1;
+        input[39] = 2;
+        float[] expected = layer.activate(input).clone();
+        float[] actual = layer.activate(indexes, values);
+        for (int o = 0; o < outputs; ++o)
+            assertEquals(expected[o], actual[o], 1e-6);
+
+        try {
+            layer.activate(new int[] {inputs}, new double[] {1});
+            fail("An index past the last input must be rejected.");
+        } catch (ArrayIndexOutOfBoundsException e) {
+        }
+    }
+}
@@ -0,0 +1,148 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for <code>MappedDataset</code>
+ */
+public class MappedDatasetTest {
+    private static final int examples = 103;
+    private static final int inputs = 5;
+    private static final int outputs = 2;
+
+    private static float input(int e, int i) {
+        return e * 10 + i + 0.25f;
+    }
+
+    private static float output(int e, int o) {
+        return -e - o / 8f;
+    }
+
+    private static File write() throws IOException {
+        File file = File.createTempFile("dataset", ".nn");
+        file.deleteOnExit();
+        MappedDataset.Writer writer = new MappedDataset.Writer(file.getPath(), inputs, outputs);
+        float[] in = new float[inputs + 3];
+        float[] out = new float[outputs];
+        for (int e = 0; e < examples; ++e) {
+            for (int i = 0; i < inputs; ++i)
+                in[i] = input(e, i);
+            for (int o = 0; o < outputs; ++o)
+                out[o] = output(e, o);
+            writer.add(in, out);
+        }
+        writer.close();
+        return file;
+    }
+
+    private static void check(MappedDataset dataset, int chunkSize) {
+        assertEquals(examples, dataset.size());
+        assertEquals(inputs, dataset.getInputCount());
+        assertEquals(outputs, dataset.getOutputCount());
+        assertEquals(chunkSize, dataset.getChunkSize());
+        assertEquals((examples + chunkSize - 1) / chunkSize, dataset.getChunkCount());
+
+        float[][] in = new float[chunkSize][inputs];
+        float[][] out = new float[chunkSize][outputs];
+        int seen = 0;
+        for (int c = 0; c < dataset.getChunkCount(); ++c) {
+            int n = dataset.readChunk(c, in, out);
+            assertEquals(Math.min(chunkSize, examples - c * chunkSize), n);
+            for (int k = 0; k < n; ++k, ++seen) {
+                int e = c * chunkSize + k;
+                for (int i = 0; i < inputs; ++i)
+                    assertEquals(input(e, i), in[k][i], 0);
+                for (int o = 0; o < outputs; ++o)
+                    assertEquals(output(e, o), out[k][o], 0);
+            }
+        }
+        assertEquals(examples, seen);
+
+        try {
+            dataset.readChunk(dataset.getChunkCount(), in, out);
+            fail("Reading past the last chunk must fail.");
+        } catch (IndexOutOfBoundsException e) {
+        }
+    }
+
+    /**
+     * Examples written by a <code>Writer</code> must be read back exactly, in whole and partial
+     * chunks.
+     */
+    @Test
+    public void testRoundTrip() throws IOException {
+        File file = write();
+        check(new MappedDataset(file.getPath()), MappedDataset.defaultChunkSize);
+        check(new MappedDataset(file.getPath(), 8), 8);
+    }
+
+    /**
+     * With segments of 10 examples and chunks of 7, many chunks span two segments, and must still
+     * be read back exactly.
+     */
+    @Test
+    public void testSegmentBoundaries() throws IOException {
+        File file = write();
+        int record = 4 * (inputs + outputs);
+        check(new MappedDataset(file.getPath(), 7, 10 * record), 7);
+        check(new MappedDataset(file.getPath(), 1, record), 1);
+        check(new MappedDataset(file.getPath(), 25, 10 * record + 3), 25);
+    }
+
+    /**
+     * Shuffled chunk orders must be permutations of all the chunks.
+     */
+    @Test
+    public void testShuffledChunks() throws IOException {
+        MappedDataset dataset = new MappedDataset(write().getPath(), 7);
+        int[] order = MappedDataset.shuffledChunks(dataset, new Random(3));
+        int[] sorted = order.clone();
+        Arrays.sort(sorted);
+        for (int c = 0; c < sorted.length; ++c)
+            assertEquals(c, sorted[c]);
+        assertEquals(dataset.getChunkCount(), order.length);
+    }
+
+    /**
+     * Files that aren't datasets, or are truncated, must be rejected.
+     */
+    @Test
+    public void testInvalidFiles() throws IOException {
+        File file = File.createTempFile("dataset", ".nn");
+        file.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(file);
+        out.write(new byte[] {1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        out.close();
+        try {
+            new MappedDataset(file.getPath());
+            fail("A file without the magic number must be rejected.");
+        } catch (IOException e) {
+        }
+
+        File truncated = write();
+        RandomAccessFile raf = new RandomAccessFile(truncated, "rw");
+        raf.setLength(raf.length() - 4);
+        raf.close();
+        try {
+            new MappedDataset(truncated.getPath());
+            fail("A truncated file must be rejected.");
+        } catch (IOException e) {
+        }
+    }
+}
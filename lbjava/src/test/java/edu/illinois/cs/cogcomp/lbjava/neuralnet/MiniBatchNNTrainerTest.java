@@ -0,0 +1,146 @@
+/**
+ * This software is released under the University of Illinois/Research and Academic Use License. See
+ * the LICENSE file in the root folder for details. Copyright (c) 2016
+ *
+ * Developed by: The Cognitive Computations Group, University of Illinois at Urbana-Champaign
+ * http://cogcomp.cs.illinois.edu/
+ */
+package edu.illinois.cs.cogcomp.lbjava.neuralnet;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Unit tests for <code>MiniBatchNNTrainer</code>
+ */
+public class MiniBatchNNTrainerTest {
+    private static final int inputs = 12;
+    private static final int hidden = 7;
+    private static final int outputs = 3;
+    private static final float rate = 0.3f;
+    private static final float momentum = 0.6f;
+
+    /** Examples held in memory, split into chunks so that they are visited in shuffled order. */
+    private static class ArrayDataset implements NNDataset {
+        final float[][] in, out;
+        final int chunkSize;
+
+        ArrayDataset(float[][] in, float[][] out, int chunkSize) {
+            this.in = in;
+            this.out = out;
+            this.chunkSize = chunkSize;
+        }
+
+        public int size() {
+            return in.length;
+        }
+
+        public int getInputCount() {
+            return in[0].length;
+        }
+
+        public int getOutputCount() {
+            return out[0].length;
+        }
+
+        public int getChunkSize() {
+            return chunkSize;
+        }
+
+        public int getChunkCount() {
+            return (in.length + chunkSize - 1) / chunkSize;
+        }
+
+        public int readChunk(int chunk, float[][] inputs, float[][] outputs) {
+            int first = chunk * chunkSize;
+            int n = Math.min(chunkSize, in.length - first);
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(in[first + i], 0, inputs[i], 0, in[0].length);
+                System.arraycopy(out[first + i], 0, outputs[i], 0, out[0].length);
+            }
+            return n;
+        }
+    }
+
+    private static Layer[] network() {
+        Random random = new Random(8);
+        return new Layer[] {new Layer(inputs, hidden, random), new Layer(hidden, outputs, random)};
+    }
+
+    private static ArrayDataset data() {
+        Random random = new Random(9);
+        int n = 101;
+        float[][] in = new float[n][inputs];
+        float[][] out = new float[n][outputs];
+        for (int e = 0; e < n; e++) {
+            for (int i = 0; i < inputs; i++)
+                in[e][i] = random.nextInt(3) == 0 ? random.nextFloat() : 0;
+            out[e][random.nextInt(outputs)] = 1;
+        }
+        return new ArrayDataset(in, out, 16);
+    }
+
+    private static void assertSameWeights(Layer[] expected, Layer[] actual) {
+        for (int l = 0; l < expected.length; l++) {
+            assertArrayEquals("weights of layer " + l, expected[l].getWeights(),
+                    actual[l].getWeights(), 0);
+            assertArrayEquals("deltas of layer " + l, expected[l].getDweights(),
+                    actual[l].getDweights(), 0);
+        }
+    }
+
+    /**
+     * With batches of one example, the weights must be exactly those learned by
+     * <code>SimpleNNTrainer</code>, which visits the examples in the same order, and the momentum
+     * carried into a later sparse example must be the same.
+     */
+    @Test
+    public void testBatchOfOneMatchesSimple() {
+        ArrayDataset data = data();
+        Layer[] simple = network();
+        Layer[] batched = network();
+        assertSameWeights(simple, batched);
+
+        new SimpleNNTrainer(simple, rate, momentum).train(data, 3);
+        MiniBatchNNTrainer trainer = new MiniBatchNNTrainer(batched, rate, momentum, 1, 1);
+        trainer.train(data, 3);
+        trainer.shutdown();
+        assertSameWeights(simple, batched);
+
+        int[] indexes = {1, 5, 6};
+        double[] values = {0.5, 1, -0.25};
+        float[] label = {0, 1, 0};
+        new SimpleNNTrainer(simple, rate, momentum).train(indexes, values, label);
+        new SimpleNNTrainer(batched, rate, momentum).train(indexes, values, label);
+        assertSameWeights(simple, batched);
+    }
+
+    /**
+     * Larger batches split among several threads must still learn the training data.
+     */
+    @Test
+    public void testBatchesLearn() {
+        ArrayDataset data = data();
+        Layer[] layers = network();
+        MiniBatchNNTrainer trainer = new MiniBatchNNTrainer(layers, 1, momentum, 4, 2);
+        double before = error(layers, data);
+        trainer.train(data.in, data.out, 200);
+        trainer.shutdown();
+        assertTrue(error(layers, data) < before / 2);
+    }
+
+    /** Returns the squared error of the network over the data. */
+    private static double error(Layer[] layers, ArrayDataset data) {
+        SimpleNNTrainer net = new SimpleNNTrainer(layers, rate, momentum);
+        double sum = 0;
+        for (int e = 0; e < data.size(); e++) {
+            float[] out = net.classify(data.in[e]);
+            for (int o = 0; o < outputs; o++)
+                sum += (data.out[e][o] - out[o]) * (data.out[e][o] - out[o]);
+        }
+        return sum;
+    }
+}